@@ -0,0 +1,27 @@
+package com.kopi.kopi.controller;
+
+import com.kopi.kopi.service.OutboundHttp;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/apiv1/adminPanel/integrations")
+@RequiredArgsConstructor
+public class AdminIntegrationController {
+
+    private final OutboundHttp outboundHttp;
+
+    // Độ trễ, lỗi và trạng thái circuit breaker của các lời gọi ra ngoài, theo từng integration + host
+    @GetMapping("/http")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, List<OutboundHttp.HostStats>>> httpStats() {
+        return ResponseEntity.ok(Map.of("data", outboundHttp.stats()));
+    }
+}
@@ -1,11 +1,13 @@
 package com.kopi.kopi.controller;
 
 import com.kopi.kopi.service.ReportService;
+import com.kopi.kopi.service.RevenueRollup;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.*;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
@@ -18,6 +20,7 @@ import java.util.Map;
 public class AdminReportController {
 
     private final ReportService reportService;
+    private final RevenueRollup revenueRollup;
 
     @GetMapping("/reports")
     @PreAuthorize("hasRole('ADMIN')")
@@ -54,22 +57,54 @@ public class AdminReportController {
 
     @GetMapping("/reports/export")
     @PreAuthorize("hasRole('ADMIN')")
-    public ResponseEntity<byte[]> export(
+    public ResponseEntity<StreamingResponseBody> export(
             @RequestParam(name = "view", defaultValue = "monthly") String view,
             @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
             @RequestParam(name = "to",   required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
             @RequestParam(name = "buckets", defaultValue = "7") int buckets) {
 
         var g = parseView(view);
-        byte[] bytes = reportService.exportRevenueToExcel(g, from, to, buckets);
-
         String fn = "revenue_" + g.name() + "_" + LocalDate.now().format(DateTimeFormatter.ISO_DATE) + ".xlsx";
+        return xlsx(fn, out -> reportService.exportRevenueToExcel(g, from, to, buckets, out));
+    }
+
+    // Xuất đơn hàng (và từng món nếu items=true) theo ngày tạo; ghi trực tiếp ra response
+    @GetMapping("/reports/export/orders")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportOrders(
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to",   required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(name = "items", defaultValue = "true") boolean items) {
+
+        String fn = "orders_" + LocalDate.now().format(DateTimeFormatter.ISO_DATE) + ".xlsx";
+        return xlsx(fn, out -> reportService.exportOrdersToExcel(from, to, items, out));
+    }
+
+    private ResponseEntity<StreamingResponseBody> xlsx(String filename, StreamingResponseBody body) {
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.parseMediaType(
                 "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
-        headers.setContentDispositionFormData("attachment", fn);
-        headers.setContentLength(bytes.length);
-        return new ResponseEntity<>(bytes, headers, HttpStatus.OK);
+        headers.setContentDispositionFormData("attachment", filename);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    // Tính lại bảng doanh thu theo giờ/ngày/tháng (sau khi sửa dữ liệu payments trực tiếp trong DB)
+    @PostMapping("/reports/rollups/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildRollups(
+            @RequestParam(name = "from", required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(name = "to",   required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from != null && to != null && from.isAfter(to)) {
+            return ResponseEntity.badRequest().body(Map.of("message", "from phải trước hoặc bằng to"));
+        }
+        long t0 = System.currentTimeMillis();
+        int days = (from == null && to == null)
+                ? revenueRollup.rebuildAll()
+                : revenueRollup.rebuild(from != null ? from : to, to != null ? to : LocalDate.now());
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("days", days);
+        body.put("tookMs", System.currentTimeMillis() - t0);
+        return ResponseEntity.ok(body);
     }
 
     // Parse view an toàn: không phân biệt hoa/thường + alias
@@ -80,6 +115,7 @@ public class AdminReportController {
         try { return ReportService.Granularity.valueOf(s.toUpperCase()); } catch (Exception ignore) {}
         try { return ReportService.Granularity.valueOf(s.toLowerCase()); } catch (Exception ignore) {}
         return switch (s.toLowerCase()) {
+            case "hour","h","hourly"        -> ReportService.Granularity.hourly;
             case "day","d","daily"          -> ReportService.Granularity.daily;
             case "week","w","weekly"        -> ReportService.Granularity.weekly;
             case "month","m","monthly"      -> ReportService.Granularity.monthly;
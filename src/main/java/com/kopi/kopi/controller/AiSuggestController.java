@@ -3,6 +3,7 @@ package com.kopi.kopi.controller;
 import com.kopi.kopi.dto.ai.AiSuggestResponse;
 import com.kopi.kopi.dto.ai.AiSuggestionRequest;
 import com.kopi.kopi.service.IAiSuggestService;
+import com.kopi.kopi.service.TrendSnapshots;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -11,14 +12,17 @@ import org.springframework.web.bind.annotation.*;
 @RequestMapping("/apiv1/ai/suggestions")
 public class AiSuggestController {
     private final IAiSuggestService svc;
+    private final TrendSnapshots snapshots;
 
-    public AiSuggestController(IAiSuggestService svc) {
+    public AiSuggestController(IAiSuggestService svc, TrendSnapshots snapshots) {
         this.svc = svc;
+        this.snapshots = snapshots;
     }
 
     @PostMapping("/search")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<AiSuggestResponse> search(@RequestBody AiSuggestionRequest req) {
-        return ResponseEntity.ok(svc.search(req));
+        // preset thì dùng snapshot mới nhất, còn lại tính trực tiếp
+        return ResponseEntity.ok(svc.toSuggestions(snapshots.trends(req)));
     }
 }
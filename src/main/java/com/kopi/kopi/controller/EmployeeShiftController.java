@@ -2,6 +2,9 @@ package com.kopi.kopi.controller;
 
 import com.kopi.kopi.repository.EmployeeShiftRepository;
 import com.kopi.kopi.service.EmployeeShiftService;
+import com.kopi.kopi.service.RosterIndex;
+import com.kopi.kopi.service.RosterSolver;
+import com.kopi.kopi.service.ShiftAutoAssigner;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -13,11 +16,17 @@ import java.util.Map;
 public class EmployeeShiftController {
     private final EmployeeShiftService employeeShiftService;
     private final EmployeeShiftRepository employeeShiftRepository;
+    private final RosterIndex rosterIndex;
+    private final ShiftAutoAssigner shiftAutoAssigner;
 
     public EmployeeShiftController(EmployeeShiftService employeeShiftService,
-                                   EmployeeShiftRepository employeeShiftRepository) {
+                                   EmployeeShiftRepository employeeShiftRepository,
+                                   RosterIndex rosterIndex,
+                                   ShiftAutoAssigner shiftAutoAssigner) {
         this.employeeShiftService = employeeShiftService;
         this.employeeShiftRepository = employeeShiftRepository;
+        this.rosterIndex = rosterIndex;
+        this.shiftAutoAssigner = shiftAutoAssigner;
     }
 
     public static class AddOpenRequest {
@@ -70,70 +79,9 @@ public class EmployeeShiftController {
             @org.springframework.web.bind.annotation.RequestParam String date,
             @org.springframework.web.bind.annotation.RequestParam(required = false) Integer shiftId) {
         LocalDate d = LocalDate.parse(date);
-        java.util.List<com.kopi.kopi.entity.EmployeeShift> list;
-        if (shiftId != null) {
-            list = employeeShiftRepository.findByShiftShiftIdAndShiftDate(shiftId, d);
-        } else {
-            list = employeeShiftRepository.findByShiftDate(d);
-        }
-        // Auto-mark MISSED for occurrences that ended without check-in
-        LocalDate today = LocalDate.now();
-        java.time.LocalTime now = java.time.LocalTime.now();
-        for (var es : list) {
-            if (es.getShiftDate() != null) {
-                if (es.getShiftDate().equals(today)) {
-                    java.time.LocalTime endTime = es.getOverrideEndTime() != null ? es.getOverrideEndTime()
-                            : (es.getShift() != null ? es.getShift().getEndTime() : null);
-                    if (endTime != null && now.isAfter(endTime) && es.getActualCheckIn() == null) {
-                        String st = es.getStatus() == null ? "" : es.getStatus().toLowerCase();
-                        if (!st.contains("miss") && !st.contains("completed")) {
-                            es.setStatus("MISSED");
-                            es.setUpdatedAt(java.time.LocalDateTime.now());
-                            employeeShiftRepository.save(es);
-                        }
-                    }
-                }
-            }
-        }
-
-        java.util.List<Map<String, Object>> out = list.stream().map(es -> {
-            Map<String, Object> m = new java.util.HashMap<>();
-            m.put("employeeShiftId", es.getEmployeeShiftId());
-            m.put("shiftId", es.getShift() != null ? es.getShift().getShiftId() : null);
-            m.put("shiftDate", es.getShiftDate().toString());
-            m.put("employeeId", es.getEmployee() != null ? es.getEmployee().getUserId() : null);
-            m.put("status", es.getStatus());
-            m.put("workScheduleId", es.getWorkSchedule() != null ? es.getWorkSchedule().getWorkScheduleId() : null);
-            m.put("overrideStartTime", es.getOverrideStartTime() != null ? es.getOverrideStartTime().toString() : null);
-            m.put("overrideEndTime", es.getOverrideEndTime() != null ? es.getOverrideEndTime().toString() : null);
-            m.put("actualCheckIn", es.getActualCheckIn() != null ? es.getActualCheckIn().toString() : null);
-            m.put("actualCheckOut", es.getActualCheckOut() != null ? es.getActualCheckOut().toString() : null);
-            // If DB has explicit overtimeMinutes use it. Otherwise, when we have
-            // actualCheckOut and overrideEndTime compute overtime as the positive
-            // difference between actualCheckOut and scheduled end time.
-            Integer ov = es.getOvertimeMinutes();
-            if (ov != null) {
-                // DB value is authoritative
-                m.put("overtimeMinutes", ov);
-            } else if (es.getActualCheckOut() != null && es.getOverrideEndTime() != null) {
-                // Compute overtime as time-of-day difference (minutes) between actual check-out
-                // and scheduled end time. Do NOT include date difference; use only local time
-                // within the day (as requested).
-                java.time.LocalTime actualT = es.getActualCheckOut().toLocalTime();
-                java.time.LocalTime scheduledT = es.getOverrideEndTime();
-                int actualMins = actualT.getHour() * 60 + actualT.getMinute();
-                int scheduledMins = scheduledT.getHour() * 60 + scheduledT.getMinute();
-                int diff = actualMins - scheduledMins;
-                if (diff < 0)
-                    diff = 0; // overtime only when actual > scheduled
-                m.put("overtimeMinutes", diff);
-            } else {
-                m.put("overtimeMinutes", null);
-            }
-            m.put("reason", es.getReason());
-            m.put("notes", es.getNotes());
-            return m;
-        }).toList();
+        // MISSED statuses are applied by the roster sweeper, not on read
+        java.util.List<Map<String, Object>> out = rosterIndex.range(d, d, shiftId).stream()
+                .map(e -> toMap(e, false)).toList();
         return ResponseEntity.ok(out);
     }
 
@@ -150,77 +98,53 @@ public class EmployeeShiftController {
             @org.springframework.web.bind.annotation.RequestParam(required = false) Integer shiftId) {
         LocalDate s = LocalDate.parse(start);
         LocalDate e = LocalDate.parse(end);
-        java.util.List<com.kopi.kopi.entity.EmployeeShift> list;
-        if (shiftId != null) {
-            list = employeeShiftRepository.findByShiftShiftIdAndShiftDateBetween(shiftId, s, e);
-        } else {
-            list = employeeShiftRepository.findByShiftDateBetween(s, e);
-        }
+        java.util.List<Map<String, Object>> out = rosterIndex.range(s, e, shiftId).stream()
+                .map(r -> toMap(r, true)).toList();
+        return ResponseEntity.ok(out);
+    }
 
-        // Auto-mark MISSED for occurrences that ended without check-in (for dates up to
-        // today)
-        LocalDate today = LocalDate.now();
-        java.time.LocalTime now = java.time.LocalTime.now();
-        for (var es : list) {
-            if (es.getShiftDate() != null) {
-                if (!es.getShiftDate().isAfter(today)) {
-                    java.time.LocalTime endTime = es.getOverrideEndTime() != null ? es.getOverrideEndTime()
-                            : (es.getShift() != null ? es.getShift().getEndTime() : null);
-                    if (end != null) {
-                        // if end is before now when date==today, or if date is before today
-                        boolean ended = es.getShiftDate().isBefore(today)
-                                || (es.getShiftDate().equals(today) && now.isAfter(endTime));
-                        if (ended && es.getActualCheckIn() == null) {
-                            String st = es.getStatus() == null ? "" : es.getStatus().toLowerCase();
-                            if (!st.contains("miss") && !st.contains("completed")) {
-                                es.setStatus("MISSED");
-                                es.setUpdatedAt(java.time.LocalDateTime.now());
-                                employeeShiftRepository.save(es);
-                            }
-                        }
-                    }
-                }
-            }
+    private static Map<String, Object> toMap(RosterIndex.Entry es, boolean withEmployee) {
+        Map<String, Object> m = new java.util.HashMap<>();
+        m.put("employeeShiftId", es.employeeShiftId());
+        m.put("shiftId", es.shiftId());
+        m.put("shiftDate", es.shiftDate().toString());
+        m.put("employeeId", es.employeeId());
+        m.put("status", es.status());
+        m.put("workScheduleId", es.workScheduleId());
+        // include convenient employee display fields
+        if (withEmployee && es.employeeId() != null) {
+            m.put("employeeName", es.employeeName());
+            m.put("employeePositionName", es.employeePositionName());
         }
-
-        java.util.List<Map<String, Object>> out = list.stream().map(es -> {
-            Map<String, Object> m = new java.util.HashMap<>();
-            m.put("employeeShiftId", es.getEmployeeShiftId());
-            m.put("shiftId", es.getShift() != null ? es.getShift().getShiftId() : null);
-            m.put("shiftDate", es.getShiftDate().toString());
-            m.put("employeeId", es.getEmployee() != null ? es.getEmployee().getUserId() : null);
-            m.put("status", es.getStatus());
-            m.put("workScheduleId", es.getWorkSchedule() != null ? es.getWorkSchedule().getWorkScheduleId() : null);
-            // include convenient employee display fields
-            if (es.getEmployee() != null) {
-                var emp = es.getEmployee();
-                m.put("employeeName", emp.getFullName() != null ? emp.getFullName() : emp.getUsername());
-                m.put("employeePositionName", emp.getPosition() != null ? emp.getPosition().getPositionName() : null);
-            }
-            m.put("overrideStartTime", es.getOverrideStartTime() != null ? es.getOverrideStartTime().toString() : null);
-            m.put("overrideEndTime", es.getOverrideEndTime() != null ? es.getOverrideEndTime().toString() : null);
-            m.put("actualCheckIn", es.getActualCheckIn() != null ? es.getActualCheckIn().toString() : null);
-            m.put("actualCheckOut", es.getActualCheckOut() != null ? es.getActualCheckOut().toString() : null);
-            Integer ov2 = es.getOvertimeMinutes();
-            if (ov2 != null) {
-                m.put("overtimeMinutes", ov2);
-            } else if (es.getActualCheckOut() != null && es.getOverrideEndTime() != null) {
-                java.time.LocalTime actualT = es.getActualCheckOut().toLocalTime();
-                java.time.LocalTime scheduledT = es.getOverrideEndTime();
-                int actualMins = actualT.getHour() * 60 + actualT.getMinute();
-                int scheduledMins = scheduledT.getHour() * 60 + scheduledT.getMinute();
-                int diff = actualMins - scheduledMins;
-                if (diff < 0)
-                    diff = 0;
-                m.put("overtimeMinutes", diff);
-            } else {
-                m.put("overtimeMinutes", null);
-            }
-            m.put("reason", es.getReason());
-            m.put("notes", es.getNotes());
-            return m;
-        }).toList();
-        return ResponseEntity.ok(out);
+        m.put("overrideStartTime", es.overrideStartTime() != null ? es.overrideStartTime().toString() : null);
+        m.put("overrideEndTime", es.overrideEndTime() != null ? es.overrideEndTime().toString() : null);
+        m.put("actualCheckIn", es.actualCheckIn() != null ? es.actualCheckIn().toString() : null);
+        m.put("actualCheckOut", es.actualCheckOut() != null ? es.actualCheckOut().toString() : null);
+        // If DB has explicit overtimeMinutes use it. Otherwise, when we have
+        // actualCheckOut and overrideEndTime compute overtime as the positive
+        // difference between actualCheckOut and scheduled end time.
+        Integer ov = es.overtimeMinutes();
+        if (ov != null) {
+            // DB value is authoritative
+            m.put("overtimeMinutes", ov);
+        } else if (es.actualCheckOut() != null && es.overrideEndTime() != null) {
+            // Compute overtime as time-of-day difference (minutes) between actual check-out
+            // and scheduled end time. Do NOT include date difference; use only local time
+            // within the day (as requested).
+            java.time.LocalTime actualT = es.actualCheckOut().toLocalTime();
+            java.time.LocalTime scheduledT = es.overrideEndTime();
+            int actualMins = actualT.getHour() * 60 + actualT.getMinute();
+            int scheduledMins = scheduledT.getHour() * 60 + scheduledT.getMinute();
+            int diff = actualMins - scheduledMins;
+            if (diff < 0)
+                diff = 0; // overtime only when actual > scheduled
+            m.put("overtimeMinutes", diff);
+        } else {
+            m.put("overtimeMinutes", null);
+        }
+        m.put("reason", es.reason());
+        m.put("notes", es.notes());
+        return m;
     }
 
     // Return whether a shift has any employee_shift occurrence on any date.
@@ -257,6 +181,52 @@ public class EmployeeShiftController {
         }
     }
 
+    // Admin: fill the position rules' required counts for a date range
+    public static class AutoAssignRequest {
+        public String start; // YYYY-MM-DD
+        public String end;   // YYYY-MM-DD
+        public Boolean preview = false;
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping("/apiv1/admin/employee-shifts/auto-assign")
+    public ResponseEntity<?> autoAssign(@RequestBody AutoAssignRequest req) {
+        Integer adminUserId = null;
+        var auth = org.springframework.security.core.context.SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getPrincipal() instanceof com.kopi.kopi.security.UserPrincipal up) {
+            adminUserId = up.getUser().getUserId();
+        }
+        try {
+            var result = shiftAutoAssigner.autoAssign(LocalDate.parse(req.start), LocalDate.parse(req.end),
+                    Boolean.TRUE.equals(req.preview), adminUserId);
+            var solution = result.solution();
+            Map<String, Object> out = new java.util.LinkedHashMap<>();
+            out.put("preview", result.preview());
+            out.put("assigned", solution.assignments().size());
+            out.put("filledOpenSlots", result.filledOpenSlots());
+            out.put("created", result.created());
+            out.put("repaired", solution.repaired());
+            out.put("solveMicros", solution.elapsedMicros());
+            java.util.List<Map<String, Object>> gaps = new java.util.ArrayList<>();
+            for (RosterSolver.Gap g : solution.gaps()) {
+                gaps.add(Map.of("date", g.date().toString(), "shiftId", g.shiftId(),
+                        "positionId", g.positionId(), "missing", g.missing()));
+            }
+            out.put("gaps", gaps);
+            if (result.preview()) {
+                java.util.List<Map<String, Object>> assignments = new java.util.ArrayList<>();
+                for (RosterSolver.Assignment a : solution.assignments()) {
+                    assignments.add(Map.of("date", a.date().toString(), "shiftId", a.shiftId(),
+                            "employeeId", a.userId(), "positionId", a.positionId()));
+                }
+                out.put("assignments", assignments);
+            }
+            return ResponseEntity.ok(out);
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            return ResponseEntity.status(400).body(Map.of("error", e.getMessage()));
+        }
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @DeleteMapping("/apiv1/admin/employee-shifts/{id}")
     public ResponseEntity<?> deleteAssignment(@PathVariable Integer id) {
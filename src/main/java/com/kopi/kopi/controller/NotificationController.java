@@ -3,6 +3,7 @@ package com.kopi.kopi.controller;
 import com.kopi.kopi.entity.Notification;
 import com.kopi.kopi.repository.NotificationRepository;
 import com.kopi.kopi.security.UserPrincipal;
+import com.kopi.kopi.service.NotificationHub;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.LoggerFactory;
 import org.springframework.data.domain.Page;
@@ -13,6 +14,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.HashMap;
 import java.util.List;
@@ -25,6 +27,30 @@ import java.util.stream.Collectors;
 public class NotificationController {
 
     private final NotificationRepository notificationRepository;
+    private final NotificationHub notificationHub;
+
+    /**
+     * Luồng Server-Sent Events: thông báo mới ("notification", id = notificationId) và số chưa đọc
+     * ("unread-count"), thay cho việc poll /unread-count.
+     * GET /apiv1/notifications/stream (header Last-Event-ID để nhận lại các thông báo bị lỡ)
+     */
+    @GetMapping(value = "/stream", produces = "text/event-stream")
+    public SseEmitter stream(@RequestHeader(name = "Last-Event-ID", required = false) String lastEventId) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        UserPrincipal principal = (UserPrincipal) auth.getPrincipal();
+        String userRole = principal.getUser().getRole() != null
+                ? principal.getUser().getRole().getName()
+                : "CUSTOMER";
+        Long lastId = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                lastId = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException ignored) {
+                // unknown id: start fresh
+            }
+        }
+        return notificationHub.connect(principal.getUser().getUserId(), userRole, lastId);
+    }
 
     /**
      * Lấy danh sách thông báo của user hiện tại (có phân trang)
@@ -176,6 +202,7 @@ public class NotificationController {
         if (!Boolean.TRUE.equals(notification.getIsRead())) {
             notification.setIsRead(true);
             notificationRepository.save(notification);
+            notificationHub.refreshUnread(currentUserId);
         }
         return ResponseEntity.ok(Map.of(
                 "message", "OK",
@@ -196,6 +223,7 @@ public class NotificationController {
         List<Notification> unreadNotifications = notificationRepository.findByUser_UserIdAndIsReadFalseOrderByCreatedAtDesc(userId);
         unreadNotifications.forEach(n -> n.setIsRead(true));
         notificationRepository.saveAll(unreadNotifications);
+        notificationHub.refreshUnread(userId);
 
         return ResponseEntity.ok(Map.of("message", "OK", "count", unreadNotifications.size()));
     }
@@ -218,6 +246,9 @@ public class NotificationController {
         }
 
         notificationRepository.delete(notification);
+        if (!Boolean.TRUE.equals(notification.getIsRead())) {
+            notificationHub.refreshUnread(userId);
+        }
         return ResponseEntity.ok(Map.of("message", "OK"));
     }
 
@@ -228,46 +259,7 @@ public class NotificationController {
      * @param userRole Role của user hiện tại (CUSTOMER, STAFF, ADMIN)
      */
     private Map<String, Object> notificationToMap(Notification n, String userRole) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", n.getNotificationId());
-        map.put("title", n.getTitle());
-        map.put("message", n.getMessage());
-        map.put("type", n.getType());
-        map.put("isRead", n.getIsRead());
-        map.put("createdAt", n.getCreatedAt());
-        // Thêm thông tin order nếu có
-        if (n.getOrder() != null) {
-            Map<String, Object> orderInfo = new HashMap<>();
-            orderInfo.put("orderId", n.getOrder().getOrderId());
-            orderInfo.put("orderCode", n.getOrder().getOrderCode());
-            orderInfo.put("status", n.getOrder().getStatus());
-            // Xác định loại đơn hàng: SHIPPING (có address) hoặc TABLE (có table)
-            String orderType = null;
-            if (n.getOrder().getAddress() != null) {
-                orderType = "SHIPPING";
-            } else if (n.getOrder().getTable() != null) {
-                orderType = "TABLE";
-                orderInfo.put("tableNumber", n.getOrder().getTable().getNumber());
-            }
-            orderInfo.put("orderType", orderType);
-            String redirectUrl = null;
-            if ("ADMIN".equalsIgnoreCase(userRole)) {
-                redirectUrl = "/manage-order";
-            }
-            else if ("CUSTOMER".equalsIgnoreCase(userRole)) {
-                redirectUrl = "/history/" + n.getOrder().getOrderId();
-            }
-            else if (orderType != null) {
-                if ("SHIPPING".equals(orderType)) {
-                    redirectUrl = "/shipping-order";
-                } else if ("TABLE".equals(orderType)) {
-                    redirectUrl = "/table-order";
-                }
-            }
-            orderInfo.put("redirectUrl", redirectUrl);
-            map.put("order", orderInfo);
-        }
-        return map;
+        return NotificationHub.toMap(n, userRole);
     }
 }
 
@@ -5,7 +5,10 @@ import com.kopi.kopi.entity.Payment;
 import com.kopi.kopi.entity.enums.PaymentStatus;
 import com.kopi.kopi.config.PayOSConfig;
 import com.kopi.kopi.dto.PayOSPaymentResponse;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.RevenueRollup;
 import com.kopi.kopi.service.impl.PayOSService;
+import com.kopi.kopi.service.impl.PayOSWebhookProcessor;
 import com.kopi.kopi.util.PayOSUtil;
 import com.kopi.kopi.dto.PaymentDTO;
 import com.kopi.kopi.service.impl.PaymentService;
@@ -36,19 +39,25 @@ public class PaymentController {
 	private final OrderRepository orderRepository;
 	private final PaymentRepository paymentRepository;
 	private final PayOSService payOSService;
+	private final PayOSWebhookProcessor payOSWebhookProcessor;
 	private final PayOSConfig payOSConfig;
 	private final VNPAYConfig vnpayConfig;
+	private final RevenueRollup revenueRollup;
+	private final OrderBoard orderBoard;
 
 	@Value("${app.frontend.url:https://kopi-coffee-fe.vercel.app}")
 	private String frontendUrl;
 
-	public PaymentController(PaymentService paymentService, OrderRepository orderRepository, PaymentRepository paymentRepository, PayOSService payOSService, PayOSConfig payOSConfig, VNPAYConfig vnpayConfig) {
+	public PaymentController(PaymentService paymentService, OrderRepository orderRepository, PaymentRepository paymentRepository, PayOSService payOSService, PayOSWebhookProcessor payOSWebhookProcessor, PayOSConfig payOSConfig, VNPAYConfig vnpayConfig, RevenueRollup revenueRollup, OrderBoard orderBoard) {
 		this.paymentService = paymentService;
 		this.orderRepository = orderRepository;
 		this.paymentRepository = paymentRepository;
 		this.payOSService = payOSService;
+		this.payOSWebhookProcessor = payOSWebhookProcessor;
 		this.payOSConfig = payOSConfig;
 		this.vnpayConfig = vnpayConfig;
+		this.revenueRollup = revenueRollup;
+		this.orderBoard = orderBoard;
 	}
 
 	@GetMapping("/vn-pay")
@@ -109,6 +118,8 @@ public class PaymentController {
 						pay.setTxnRef(txnRef);
 					}
 					paymentRepository.save(pay);
+					revenueRollup.touch(pay.getPaidAt());
+					orderBoard.touch(orderId);
 				}
 				redirect = frontendUrl + "/history/" + orderId;
 			} else {
@@ -123,6 +134,8 @@ public class PaymentController {
 									&& orderToDelete.getPayments().stream().anyMatch(p -> p.getStatus() == PaymentStatus.PAID);
 							if (!hasPaid) {
 								orderRepository.delete(orderToDelete);
+								// the re-read finds no order and drops its card
+								orderBoard.touch(orderId);
 							}
 						}
 					} catch (Exception ignored) {}
@@ -165,7 +178,6 @@ public class PaymentController {
 	}
 
 	@PostMapping("/payos/webhook")
-	@Transactional
 	public ResponseEntity<?> payOSWebhook(@RequestBody Map<String, Object> body) {
 		try {
 			System.out.println("=== PayOS Webhook Received ===");
@@ -181,48 +193,19 @@ public class PaymentController {
 			}
 
 			// Lấy thông tin từ webhook
-			Integer orderCode = (Integer) body.get("orderCode");
+			Number orderCodeValue = (Number) body.get("orderCode");
 			Integer code = (Integer) body.get("code");
 			String desc = (String) body.get("desc");
 			
-			System.out.println("PayOS Webhook - orderCode: " + orderCode + ", code: " + code + ", desc: " + desc);
-
-			// Tìm payment theo txnRef (format: "ORD-{orderCode}-{orderId}")
-			// Tìm payment có txnRef bắt đầu bằng "ORD-" + orderCode + "-"
-			String txnRefPrefix = "ORD-" + orderCode + "-";
-			Payment payment = paymentRepository.findAll().stream()
-					.filter(p -> p.getTxnRef() != null && p.getTxnRef().startsWith(txnRefPrefix))
-					.findFirst()
-					.orElseThrow(() -> new IllegalArgumentException("Payment not found for orderCode: " + orderCode));
-
-			System.out.println("PayOS Webhook - Found payment: " + payment.getPaymentId() + ", current status: " + payment.getStatus());
-
-			// Cập nhật trạng thái thanh toán
-			if (code != null && code == 0) {
-				// Thanh toán thành công
-				payment.setStatus(PaymentStatus.PAID);
-				payment.setPaidAt(LocalDateTime.now());
-				paymentRepository.save(payment);
-
-				System.out.println("PayOS Webhook - Payment updated to PAID");
-			} else {
-				// Thanh toán thất bại
-				payment.setStatus(PaymentStatus.CANCELLED);
-				paymentRepository.save(payment);
-				System.out.println("PayOS Webhook - Payment updated to CANCELLED");
-				// Delete pre-created order if no successful payment exists
-				try {
-					OrderEntity orderToDelete = payment.getOrder();
-					if (orderToDelete != null) {
-						boolean hasPaid = orderToDelete.getPayments() != null
-								&& orderToDelete.getPayments().stream().anyMatch(p -> p.getStatus() == PaymentStatus.PAID);
-						if (!hasPaid) {
-							orderRepository.delete(orderToDelete);
-						}
-					}
-				} catch (Exception ignored) {}
+			System.out.println("PayOS Webhook - orderCode: " + orderCodeValue + ", code: " + code + ", desc: " + desc);
+			if (orderCodeValue == null) {
+				throw new IllegalArgumentException("Missing orderCode");
 			}
 
+			// Cập nhật trạng thái thanh toán (tra cứu theo index, bỏ qua lần gửi lặp lại)
+			PayOSWebhookProcessor.Outcome outcome = payOSWebhookProcessor.process(orderCodeValue.longValue(), code);
+			System.out.println("PayOS Webhook - orderCode " + orderCodeValue + " -> " + outcome);
+
 			// PayOS yêu cầu trả về format này
 			return ResponseEntity.ok(Map.of(
 					"error", 0,
@@ -248,11 +231,8 @@ public class PaymentController {
 			// Tìm payment từ orderCode và kiểm tra status từ database
 			if (orderCodeStr != null) {
 				try {
-					Integer orderCode = Integer.parseInt(orderCodeStr);
-					String txnRefPrefix = "ORD-" + orderCode + "-";
-					paymentOpt = paymentRepository.findAll().stream()
-							.filter(p -> p.getTxnRef() != null && p.getTxnRef().startsWith(txnRefPrefix))
-							.findFirst();
+					long orderCode = Long.parseLong(orderCodeStr);
+					paymentOpt = payOSWebhookProcessor.findByOrderCode(orderCode);
 					
 					if (paymentOpt.isPresent()) {
 						Payment payment = paymentOpt.get();
@@ -2,12 +2,15 @@ package com.kopi.kopi.controller;
 
 import com.kopi.kopi.entity.User;
 import com.kopi.kopi.security.UserPrincipal;
+import com.kopi.kopi.service.OrderBoard;
 import com.kopi.kopi.service.OrderService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.util.List;
 import java.util.Map;
 import java.math.BigDecimal;
 
@@ -15,9 +18,11 @@ import java.math.BigDecimal;
 @RequestMapping("/apiv1")
 public class TransactionController {
     private final OrderService orderService;
+    private final OrderBoard orderBoard;
 
-    public TransactionController(OrderService orderService) {
+    public TransactionController(OrderService orderService, OrderBoard orderBoard) {
         this.orderService = orderService;
+        this.orderBoard = orderBoard;
     }
 
     @GetMapping("/userPanel/transactions")
@@ -47,6 +52,31 @@ public class TransactionController {
         return orderService.listPending(status, type, page, limit);
     }
 
+    // Open orders of the kitchen board, oldest first; type is TABLE, SHIPPING or ALL
+    @GetMapping("/transactions/board")
+    public Map<String, Object> board(
+            @RequestParam(name = "type", required = false, defaultValue = "ALL") String type
+    ) {
+        List<Map<String, Object>> data = orderBoard.snapshot(type);
+        return Map.of("data", data, "total", data.size());
+    }
+
+    // Board changes as they commit; a reconnect with Last-Event-ID gets only what it missed
+    @GetMapping(path = "/transactions/board/stream", produces = "text/event-stream")
+    public SseEmitter boardStream(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        Long lastId = null;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                lastId = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException ignored) {
+                // unknown id: start from a snapshot
+            }
+        }
+        return orderBoard.subscribe(lastId);
+    }
+
     @PatchMapping("/transactions/{id}/status")
     public ResponseEntity<?> changeStatus(
             @PathVariable("id") Integer id,
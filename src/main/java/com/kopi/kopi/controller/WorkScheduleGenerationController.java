@@ -1,47 +1,44 @@
 package com.kopi.kopi.controller;
 
 import com.kopi.kopi.entity.WorkSchedule;
+import com.kopi.kopi.entity.WorkScheduleGeneration;
 import com.kopi.kopi.repository.EmployeeShiftRepository;
-import com.kopi.kopi.repository.RecurrencePatternRepository;
-import com.kopi.kopi.repository.UserRepository;
 import com.kopi.kopi.repository.WorkScheduleRepository;
+import com.kopi.kopi.service.RosterIndex;
+import com.kopi.kopi.service.ScheduleGenerationJobs;
+import com.kopi.kopi.service.ShiftGenerationEngine;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 public class WorkScheduleGenerationController {
     private final WorkScheduleRepository workScheduleRepository;
     private final EmployeeShiftRepository employeeShiftRepository;
-    private final UserRepository userRepository;
-    private final RecurrencePatternRepository recurrencePatternRepository;
+    private final ShiftGenerationEngine shiftGenerationEngine;
+    private final ScheduleGenerationJobs generationJobs;
+    private final RosterIndex rosterIndex;
     private final com.kopi.kopi.repository.WorkScheduleGenerationRepository workScheduleGenerationRepository;
-    // jdbcTemplate was previously used to detect the presence of the generation
-    // history table; persistence is disabled so this field is no longer needed.
-    // Keep the field for compatibility with constructor injection but do not use
-    // it.
-    private final JdbcTemplate jdbcTemplate;
 
     public WorkScheduleGenerationController(WorkScheduleRepository workScheduleRepository,
                                             EmployeeShiftRepository employeeShiftRepository,
-                                            UserRepository userRepository,
-                                            RecurrencePatternRepository recurrencePatternRepository,
-                                            com.kopi.kopi.repository.WorkScheduleGenerationRepository workScheduleGenerationRepository,
-                                            JdbcTemplate jdbcTemplate) {
+                                            ShiftGenerationEngine shiftGenerationEngine,
+                                            ScheduleGenerationJobs generationJobs,
+                                            RosterIndex rosterIndex,
+                                            com.kopi.kopi.repository.WorkScheduleGenerationRepository workScheduleGenerationRepository) {
         this.workScheduleRepository = workScheduleRepository;
         this.employeeShiftRepository = employeeShiftRepository;
-        this.userRepository = userRepository;
-        this.recurrencePatternRepository = recurrencePatternRepository;
+        this.shiftGenerationEngine = shiftGenerationEngine;
+        this.generationJobs = generationJobs;
+        this.rosterIndex = rosterIndex;
         this.workScheduleGenerationRepository = workScheduleGenerationRepository;
-        this.jdbcTemplate = jdbcTemplate;
     }
 
     public static class GenerateRequest {
@@ -56,6 +53,7 @@ public class WorkScheduleGenerationController {
         public Integer recurrenceId; // optional: reference to an existing recurrence pattern
         public Boolean preview = false;
         public Boolean overwrite = false;
+        public Boolean async = true; // false: wait for the generation job to finish
     }
 
     @PreAuthorize("hasRole('ADMIN')")
@@ -72,31 +70,23 @@ public class WorkScheduleGenerationController {
         if (start.isAfter(end))
             return ResponseEntity.badRequest().body(Map.of("message", "startDate must be before endDate"));
 
-        List<LocalDate> candidates = computeCandidates(req.type, anchor, start, end, req.interval, req.daysOfWeek);
+        List<LocalDate> candidates = ShiftGenerationEngine.candidates(req.type, anchor, start, end, req.interval,
+                req.daysOfWeek);
 
         LocalDate today = LocalDate.now();
 
         if (req.preview != null && req.preview) {
+            Set<LocalDate> occupied = shiftGenerationEngine.occupiedDates(candidates);
             List<Map<String, Object>> rows = new ArrayList<>();
             for (LocalDate d : candidates) {
                 // treat today as non-creatable as well: "past or present" should be skipped
                 boolean isPast = !d.isAfter(today);
-                boolean hasConflict = !employeeShiftRepository.findByShiftDate(d).isEmpty();
+                boolean hasConflict = occupied.contains(d);
                 rows.add(Map.of("date", d.toString(), "isPast", isPast, "hasConflict", hasConflict));
             }
             return ResponseEntity.ok(Map.of("totalCount", rows.size(), "candidates", rows));
         }
 
-        // load anchor shifts once (we'll copy these to other dates)
-        List<com.kopi.kopi.entity.EmployeeShift> anchorShifts = employeeShiftRepository.findByShiftDate(anchor);
-
-        // Perform generation: create or update work_schedules and copy anchor shifts
-        // where allowed
-        int created = 0;
-        int updated = 0;
-        int skipped = 0;
-        List<String> conflicts = new ArrayList<>();
-
         // resolve admin user id from security context when available
         Integer adminUserId = null;
         var auth = org.springframework.security.core.context.SecurityContextHolder.getContext().getAuthentication();
@@ -104,162 +94,89 @@ public class WorkScheduleGenerationController {
             adminUserId = up.getUser().getUserId();
         }
 
-        // Evaluate per-date decisions first so we can create a single WorkSchedule
-        // spanning the entire requested range if we will create any shifts.
-        Map<LocalDate, Boolean> willCreate = new LinkedHashMap<>();
-        boolean anyWillCreate = false;
-        if (anchorShifts == null || anchorShifts.isEmpty()) {
-            // nothing to create at all
-            for (LocalDate d : candidates) {
-                willCreate.put(d, false);
-            }
-        } else {
-            for (LocalDate d : candidates) {
-                if (!d.isAfter(today)) {
-                    willCreate.put(d, false);
-                    continue;
-                }
-                List<com.kopi.kopi.entity.EmployeeShift> existing = employeeShiftRepository.findByShiftDate(d);
-                boolean will;
+        ShiftGenerationEngine.Spec spec = new ShiftGenerationEngine.Spec(req.name, req.description, anchor, start, end,
+                req.recurrenceId, Boolean.TRUE.equals(req.overwrite), adminUserId);
+        ScheduleGenerationJobs.Ticket ticket;
+        try {
+            ticket = generationJobs.submit(spec, req.type.toUpperCase(), req.interval, candidates);
+        } catch (RejectedExecutionException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("message", "Too many schedule generations are running, please try again later"));
+        }
 
-                if (Boolean.TRUE.equals(req.overwrite)) {
-                    will = true;
-                } else {
-                    will = (existing == null || existing.isEmpty());
-                }
-                willCreate.put(d, will);
-                if (will)
-                    anyWillCreate = true;
-            }
+        if (!Boolean.FALSE.equals(req.async)) {
+            // poll GET /apiv1/admin/work-schedules/generations/{generationId} for progress
+            Map<String, Object> accepted = new HashMap<>();
+            accepted.put("generationId", ticket.generationId());
+            accepted.put("status", ScheduleGenerationJobs.QUEUED);
+            accepted.put("totalDates", candidates.size());
+            return ResponseEntity.accepted().body(accepted);
+        }
+
+        // async=false: wait for the job and answer in the original synchronous shape
+        WorkScheduleGeneration g;
+        try {
+            g = ticket.done().get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.accepted().body(Map.of("generationId", ticket.generationId()));
+        } catch (ExecutionException ex) {
+            return ResponseEntity.internalServerError()
+                    .body(Map.of("message", "Generation failed", "generationId", ticket.generationId()));
+        }
+        if (ScheduleGenerationJobs.FAILED.equals(g.getStatus())) {
+            Map<String, Object> failed = new HashMap<>();
+            failed.put("message", "Generation failed: " + g.getErrorMessage());
+            failed.put("generationId", g.getGenerationId());
+            failed.put("created", g.getCreatedCount());
+            failed.put("processedDates", g.getProcessedDates());
+            return ResponseEntity.internalServerError().body(failed);
         }
 
-        if (!anyWillCreate) {
+        List<String> candStr = new ArrayList<>();
+        for (LocalDate d : candidates)
+            candStr.add(d.toString());
+
+        if (g.getWorkScheduleId() == null) {
             // nothing to change
             Map<String, Object> outNoChange = new HashMap<>();
             outNoChange.put("created", 0);
             outNoChange.put("updated", 0);
             outNoChange.put("skipped", candidates.size());
             outNoChange.put("message", "No date to change");
-            List<String> candList = new ArrayList<>();
-            for (LocalDate dd : candidates)
-                candList.add(dd.toString());
-            outNoChange.put("candidates", candList);
-            outNoChange.put("anchorShiftCount", anchorShifts != null ? anchorShifts.size() : 0);
+            outNoChange.put("candidates", candStr);
+            outNoChange.put("anchorShiftCount", shiftGenerationEngine.templates(anchor).size());
+            outNoChange.put("generationId", g.getGenerationId());
             return ResponseEntity.ok(outNoChange);
         }
 
-        // Create a single WorkSchedule for the whole requested range
-        WorkSchedule spanWs = WorkSchedule.builder()
-                .startDate(start)
-                .endDate(end)
-                .name(req.name != null ? req.name : ("Generated: " + start.toString() + ".." + end.toString()))
-                .description(req.description)
-                .createdAt(LocalDateTime.now())
-                .build();
-        if (adminUserId != null)
-            userRepository.findById(adminUserId).ifPresent(spanWs::setCreatedByUser);
-        if (req.recurrenceId != null) {
-            recurrencePatternRepository.findById(req.recurrenceId).ifPresent(spanWs::setRecurrencePattern);
-        }
-        spanWs = workScheduleRepository.save(spanWs);
-        created++;
-
-        // track old work schedules we modified so we can attempt to delete them if
-        // empty
-        Set<WorkSchedule> touchedOldWs = new HashSet<>();
-
-        for (LocalDate d : candidates) {
-            if (!Boolean.TRUE.equals(willCreate.get(d))) {
-                skipped++;
-                continue;
-            }
-
-            // If overwrite, delete existing shifts for that date (and remember old WS)
-            List<com.kopi.kopi.entity.EmployeeShift> existing = employeeShiftRepository.findByShiftDate(d);
-            if (Boolean.TRUE.equals(req.overwrite) && existing != null && !existing.isEmpty()) {
-                // collect old WS ids referenced
-                for (com.kopi.kopi.entity.EmployeeShift ex : existing) {
-                    if (ex.getWorkSchedule() != null)
-                        touchedOldWs.add(ex.getWorkSchedule());
-                }
-                employeeShiftRepository.deleteAll(existing);
-                updated += existing.size();
-            }
-
-            // create new rows for this date attached to spanWs
-            int createdThisDate = 0;
-            if (anchorShifts == null || anchorShifts.isEmpty())
-                continue;
-            for (com.kopi.kopi.entity.EmployeeShift anchorEs : anchorShifts) {
-                Integer shiftId = anchorEs.getShift() != null ? anchorEs.getShift().getShiftId() : null;
-                if (shiftId == null)
-                    continue;
-                // When copying anchor shifts, prefer the anchor's override times if set;
-                // otherwise fall back to the shift template times so generated rows
-                // always have a scheduled start/end to compare actual check-ins against.
-                java.time.LocalTime oStart = anchorEs.getOverrideStartTime();
-                java.time.LocalTime oEnd = anchorEs.getOverrideEndTime();
-                if (oStart == null && anchorEs.getShift() != null)
-                    oStart = anchorEs.getShift().getStartTime();
-                if (oEnd == null && anchorEs.getShift() != null)
-                    oEnd = anchorEs.getShift().getEndTime();
-
-                com.kopi.kopi.entity.EmployeeShift newEs = com.kopi.kopi.entity.EmployeeShift.builder()
-                        .workSchedule(spanWs)
-                        .employee(anchorEs.getEmployee())
-                        .shift(anchorEs.getShift())
-                        .shiftDate(d)
-                        .status(anchorEs.getStatus() != null ? anchorEs.getStatus() : "assigned")
-                        .notes(anchorEs.getNotes())
-                        .createdAt(LocalDateTime.now())
-                        .overrideStartTime(oStart)
-                        .overrideEndTime(oEnd)
-                        .build();
-                if (adminUserId != null)
-                    userRepository.findById(adminUserId).ifPresent(newEs::setCreatedByUser);
-                employeeShiftRepository.save(newEs);
-                createdThisDate++;
-            }
-            created += createdThisDate;
-        }
-
-        // If overwrite=true, attempt to delete any old work schedules that now have no
-        // shifts
-        if (Boolean.TRUE.equals(req.overwrite) && !touchedOldWs.isEmpty()) {
-            for (WorkSchedule old : touchedOldWs) {
-                try {
-                    boolean stillHas = employeeShiftRepository
-                            .existsByWorkScheduleWorkScheduleId(old.getWorkScheduleId());
-                    if (!stillHas) {
-                        workScheduleRepository.delete(old);
-                    }
-                } catch (Exception ex) {
-                    // ignore deletion failures
-                }
-            }
-        }
-
         Map<String, Object> out = new HashMap<>();
-        out.put("created", created);
-        out.put("updated", updated);
-        out.put("skipped", skipped);
-        out.put("conflicts", conflicts);
+        out.put("created", g.getCreatedCount());
+        out.put("updated", g.getUpdatedCount());
+        out.put("skipped", g.getSkippedCount());
+        out.put("conflicts", splitConflicts(g.getConflicts()));
+        out.put("workScheduleId", g.getWorkScheduleId());
         // diagnostics to help debug when no rows are created
-        List<String> candStr = new ArrayList<>();
-        for (LocalDate d : candidates)
-            candStr.add(d.toString());
         out.put("candidates", candStr);
-        out.put("anchorShiftCount", anchorShifts != null ? anchorShifts.size() : 0);
-        if (anchorShifts == null || anchorShifts.isEmpty()) {
+        int anchorShiftCount = shiftGenerationEngine.templates(anchor).size();
+        out.put("anchorShiftCount", anchorShiftCount);
+        if (anchorShiftCount == 0) {
             out.put("warning", "No anchor shifts found for anchorDate; no employee_shifts will be created.");
         }
-
-        // Persistence of generation history is disabled by configuration/choice.
-        out.put("generationPersisted", false);
-        out.put("generationReason", "persistence disabled; work_schedule_generations not used");
+        out.put("generationId", g.getGenerationId());
+        out.put("generationPersisted", true);
         return ResponseEntity.ok(out);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping("/apiv1/admin/work-schedules/generations/{id}")
+    public ResponseEntity<?> getGeneration(@PathVariable("id") Integer id) {
+        var opt = workScheduleGenerationRepository.findById(id);
+        if (opt.isEmpty())
+            return ResponseEntity.status(404).body(Map.of("message", "Generation not found"));
+        return ResponseEntity.ok(toMap(opt.get()));
+    }
+
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping("/apiv1/admin/work-schedules/generations")
     public ResponseEntity<?> listGenerations() {
@@ -267,21 +184,7 @@ public class WorkScheduleGenerationController {
             var list = workScheduleGenerationRepository.findAllByOrderByCreatedAtDesc();
             List<Map<String, Object>> out = new ArrayList<>();
             for (com.kopi.kopi.entity.WorkScheduleGeneration g : list) {
-                Map<String, Object> m = new HashMap<>();
-                m.put("generationId", g.getGenerationId());
-                m.put("name", g.getName());
-                m.put("description", g.getDescription());
-                m.put("anchorDate", g.getAnchorDate() != null ? g.getAnchorDate().toString() : null);
-                m.put("startDate", g.getStartDate() != null ? g.getStartDate().toString() : null);
-                m.put("endDate", g.getEndDate() != null ? g.getEndDate().toString() : null);
-                m.put("type", g.getType());
-                m.put("intervalDays", g.getIntervalDays());
-                m.put("createdAt", g.getCreatedAt() != null ? g.getCreatedAt().toString() : null);
-                m.put("createdCount", g.getCreatedCount());
-                m.put("updatedCount", g.getUpdatedCount());
-                m.put("skippedCount", g.getSkippedCount());
-                m.put("conflicts", g.getConflicts());
-                out.add(m);
+                out.add(toMap(g));
             }
             return ResponseEntity.ok(out);
         } catch (Exception ex) {
@@ -379,6 +282,9 @@ public class WorkScheduleGenerationController {
             }
         }
 
+        if (!shifts.isEmpty())
+            rosterIndex.touch(shifts.get(0).getShiftDate(), shifts.get(shifts.size() - 1).getShiftDate());
+
         boolean stillHas = employeeShiftRepository.existsByWorkScheduleWorkScheduleId(id);
         boolean deletedWs = false;
         if (!stillHas) {
@@ -442,6 +348,9 @@ public class WorkScheduleGenerationController {
             }
         }
 
+        if (!shifts.isEmpty())
+            rosterIndex.touch(target);
+
         Map<String, Object> out = new HashMap<>();
         out.put("deleted", deleted);
         out.put("unlinked", unlinked);
@@ -457,48 +366,34 @@ public class WorkScheduleGenerationController {
         return generate(req);
     }
 
-    private List<LocalDate> computeCandidates(String type, LocalDate anchor, LocalDate start, LocalDate end,
-            Integer interval, List<String> daysOfWeek) {
-        List<LocalDate> out = new ArrayList<>();
-        String t = (type == null) ? "" : type.toUpperCase();
-        if ("DAILY".equals(t)) {
-            int iv = (interval == null || interval < 1) ? 1 : interval;
-            // For DAILY patterns the step should be calculated from the provided start date
-            // (start is always selected). So include start and then step by interval days.
-            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(iv)) {
-                out.add(d);
-            }
-            return out;
-        }
-        if ("WEEKLY".equals(t)) {
-            Set<DayOfWeek> set = new HashSet<>();
-            if (daysOfWeek != null) {
-                for (String s : daysOfWeek) {
-                    if (s == null)
-                        continue;
-                    switch (s.trim().toUpperCase()) {
-                        case "MON", "MONDAY" -> set.add(DayOfWeek.MONDAY);
-                        case "TUE", "TUESDAY" -> set.add(DayOfWeek.TUESDAY);
-                        case "WED", "WEDNESDAY" -> set.add(DayOfWeek.WEDNESDAY);
-                        case "THU", "THURSDAY" -> set.add(DayOfWeek.THURSDAY);
-                        case "FRI", "FRIDAY" -> set.add(DayOfWeek.FRIDAY);
-                        case "SAT", "SATURDAY" -> set.add(DayOfWeek.SATURDAY);
-                        case "SUN", "SUNDAY" -> set.add(DayOfWeek.SUNDAY);
-                    }
-                }
-            }
-            int weekIv = (interval == null || interval < 1) ? 1 : interval;
-            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
-                if (!set.contains(d.getDayOfWeek()))
-                    continue;
-                long weeks = ChronoUnit.WEEKS.between(anchor, d);
-                long absWeeks = Math.abs(weeks);
-                if (absWeeks % weekIv == 0)
-                    out.add(d);
-            }
-            return out;
-        }
-        // default: no candidates
-        return out;
+    private static Map<String, Object> toMap(WorkScheduleGeneration g) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("generationId", g.getGenerationId());
+        m.put("name", g.getName());
+        m.put("description", g.getDescription());
+        m.put("anchorDate", g.getAnchorDate() != null ? g.getAnchorDate().toString() : null);
+        m.put("startDate", g.getStartDate() != null ? g.getStartDate().toString() : null);
+        m.put("endDate", g.getEndDate() != null ? g.getEndDate().toString() : null);
+        m.put("type", g.getType());
+        m.put("intervalDays", g.getIntervalDays());
+        m.put("createdAt", g.getCreatedAt() != null ? g.getCreatedAt().toString() : null);
+        m.put("createdCount", g.getCreatedCount());
+        m.put("updatedCount", g.getUpdatedCount());
+        m.put("skippedCount", g.getSkippedCount());
+        m.put("conflicts", g.getConflicts());
+        m.put("status", g.getStatus());
+        m.put("totalDates", g.getTotalDates());
+        m.put("processedDates", g.getProcessedDates());
+        m.put("workScheduleId", g.getWorkScheduleId());
+        m.put("errorMessage", g.getErrorMessage());
+        m.put("updatedAt", g.getUpdatedAt() != null ? g.getUpdatedAt().toString() : null);
+        m.put("finishedAt", g.getFinishedAt() != null ? g.getFinishedAt().toString() : null);
+        return m;
+    }
+
+    private static List<String> splitConflicts(String conflicts) {
+        if (conflicts == null || conflicts.isBlank())
+            return new ArrayList<>();
+        return new ArrayList<>(Arrays.asList(conflicts.split(",")));
     }
 }
@@ -1,15 +1,21 @@
 package com.kopi.kopi.controller.ai;
 
 import com.kopi.kopi.dto.ai.AiSuggestionRequest;
-import com.kopi.kopi.dto.ai.DishTrendsResponse;
+import com.kopi.kopi.dto.ai.TrendDiff;
+import com.kopi.kopi.entity.TrendSnapshot;
 import com.kopi.kopi.exception.YouTubeQuotaExceededException;
+import com.kopi.kopi.service.TrendSnapshots;
 import com.kopi.kopi.service.impl.AiSuggestServiceImpl;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/apiv1/trends")
@@ -17,6 +23,7 @@ import java.util.Map;
 public class TrendsController {
 
     private final AiSuggestServiceImpl svc;
+    private final TrendSnapshots snapshots;
 
     @GetMapping("/dishes")
     public ResponseEntity<?> dishes(
@@ -25,17 +32,81 @@ public class TrendsController {
             @RequestParam(required = false) Boolean shortsOnly
     ) {
         try {
+            // Preset (ai.trends.snapshot.presets): trả về snapshot mới nhất, không gọi Gemini/YouTube
+            if (snapshots.isPreset(days, maxResults)) {
+                return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                        .body(snapshots.payload(days, maxResults));
+            }
             AiSuggestionRequest req = new AiSuggestionRequest();
             req.setDays(days);
             req.setMaxResults(maxResults);
             req.setShortsOnly(shortsOnly);
             return ResponseEntity.ok(svc.groupedByDish(req));
         } catch (YouTubeQuotaExceededException e) {
-            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of(
-                "error", "QUOTA_EXCEEDED",
-                "message", e.getMessage(),
-                "resetTime", e.getResetTime()
-            ));
+            return quotaExceeded(e);
         }
     }
+
+    // Làm mới snapshot ngay (chạy nền); theo dõi bằng GET /apiv1/trends/snapshots/{snapshotId}
+    @PostMapping("/snapshots/refresh")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> refresh(
+            @RequestParam(required = false) Integer days,
+            @RequestParam(required = false) Integer maxResults
+    ) {
+        TrendSnapshots.Ticket ticket;
+        try {
+            ticket = snapshots.refresh(days, maxResults, "manual");
+        } catch (RejectedExecutionException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("message", "Trend snapshots are shutting down, please try again later"));
+        }
+        Map<String, Object> accepted = new HashMap<>();
+        accepted.put("snapshotId", ticket.snapshotId());
+        accepted.put("preset", TrendSnapshots.presetKey(days, maxResults));
+        accepted.put("status", snapshots.find(ticket.snapshotId()).map(TrendSnapshot::getStatus).orElse(TrendSnapshots.QUEUED));
+        return ResponseEntity.accepted().body(accepted);
+    }
+
+    @GetMapping("/snapshots/{snapshotId}")
+    public ResponseEntity<?> snapshot(@PathVariable Integer snapshotId) {
+        return snapshots.find(snapshotId)
+                .<ResponseEntity<?>>map(s -> {
+                    Map<String, Object> body = new HashMap<>();
+                    body.put("snapshotId", s.getSnapshotId());
+                    body.put("preset", s.getPresetKey());
+                    body.put("status", s.getStatus());
+                    body.put("trigger", s.getTriggerSource());
+                    body.put("dishCount", s.getDishCount());
+                    body.put("totalVideos", s.getTotalVideos());
+                    body.put("tookMs", s.getTookMs());
+                    body.put("errorMessage", s.getErrorMessage());
+                    body.put("createdAt", s.getCreatedAt());
+                    body.put("finishedAt", s.getFinishedAt());
+                    return ResponseEntity.ok(body);
+                })
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // So sánh snapshot mới nhất với snapshot cách đó ít nhất 1 tuần
+    @GetMapping("/snapshots/diff")
+    public ResponseEntity<?> diff(
+            @RequestParam(required = false) Integer days,
+            @RequestParam(required = false) Integer maxResults
+    ) {
+        TrendDiff diff = snapshots.diff(days, maxResults);
+        if (diff == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                    .body(Map.of("message", "No trend snapshot for " + TrendSnapshots.presetKey(days, maxResults) + " yet"));
+        }
+        return ResponseEntity.ok(diff);
+    }
+
+    private ResponseEntity<?> quotaExceeded(YouTubeQuotaExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(Map.of(
+            "error", "QUOTA_EXCEEDED",
+            "message", e.getMessage(),
+            "resetTime", e.getResetTime()
+        ));
+    }
 }
@@ -0,0 +1,17 @@
+package com.kopi.kopi.dto.ai;
+
+import lombok.*;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class DishTrendChange {
+    private String key;                  // slug
+    private String name;
+    private String status;               // new / up / down / same / dropped
+    private Integer rank;                // hạng hiện tại (1 = hot nhất), null nếu bị rớt
+    private Integer previousRank;        // hạng tuần trước, null nếu là món mới
+    private Integer rankChange;          // > 0: tăng hạng
+    private Double rating;
+    private Double previousRating;
+    private Integer totalVideos;
+    private Integer previousTotalVideos;
+}
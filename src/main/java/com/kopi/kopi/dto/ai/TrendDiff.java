@@ -0,0 +1,15 @@
+package com.kopi.kopi.dto.ai;
+
+import lombok.*;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class TrendDiff {
+    private String presetKey;              // ví dụ d30-m100
+    private Integer currentSnapshotId;
+    private LocalDateTime currentAt;
+    private Integer previousSnapshotId;    // null nếu chưa có snapshot cách đây >= 1 tuần
+    private LocalDateTime previousAt;
+    private List<DishTrendChange> dishes;  // theo hạng hiện tại, món bị rớt ở cuối
+}
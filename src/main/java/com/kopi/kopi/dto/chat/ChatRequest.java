@@ -17,5 +17,6 @@ public class ChatRequest {
     private List<ChatMessage> history; // Lịch sử chat để context
     private java.util.Map<String, Object> orderContext; // Context bước đặt hàng (từ assistant)
     private String orderState; // Trạng thái flow đặt hàng (ASKING_QUANTITY/DELIVERY/...)
+    private String sessionId; // Phiên chat của guest (server cấp ở response đầu tiên)
 }
 
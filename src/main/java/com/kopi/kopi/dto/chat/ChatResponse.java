@@ -27,5 +27,6 @@ public class ChatResponse {
     // Fields for order flow state
     private String orderState; // "SELECTING_PRODUCT", "ASKING_QUANTITY", "ASKING_DELIVERY_TYPE", "ASKING_TABLE", "ASKING_ADDRESS", "CREATING_ORDER"
     private Map<String, Object> orderContext; // Temporary data for order flow (productId, quantity, deliveryType, etc.)
+    private String sessionId; // Guest chat session; send it back so the server keeps the order flow state
 }
 
@@ -0,0 +1,41 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Cached Mapbox lookups: geocoding by normalized address line, driving distance by rounded coordinates
+@Entity
+@Table(name = "geo_cache", schema = "dbo")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GeoCacheEntry {
+	@Id
+	@Column(name = "cache_key", length = 400)
+	private String cacheKey;
+
+	@Column(name = "latitude")
+	private Double latitude;
+
+	@Column(name = "longitude")
+	private Double longitude;
+
+	@Column(name = "city", length = 100)
+	private String city;
+
+	@Column(name = "distance_meters")
+	private Double distanceMeters;
+
+	// true = Mapbox had no answer; kept for a shorter TTL
+	@Column(name = "failed", nullable = false)
+	private Boolean failed;
+
+	@Column(name = "expires_at", nullable = false)
+	private LocalDateTime expiresAt;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
@@ -9,7 +9,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders", schema = "dbo")
+@Table(name = "orders", schema = "dbo", indexes = {
+		@Index(name = "ix_orders_created_at", columnList = "created_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -0,0 +1,59 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// One queued mail; written with the business change that caused it and sent later by MailDispatcher
+@Entity
+@Table(name = "email_outbox", schema = "dbo", indexes = {
+        @Index(name = "ix_email_outbox_due", columnList = "status, priority, next_attempt_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboundEmail {
+    public static final int PRIORITY_URGENT = 0; // OTP, temporary passwords
+    public static final int PRIORITY_NORMAL = 5;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "email_id")
+    private Long emailId;
+
+    @Column(name = "recipient", nullable = false, length = 320)
+    private String recipient;
+
+    @Column(name = "subject", nullable = false, length = 255)
+    private String subject;
+
+    @Column(name = "body", nullable = false, length = 10000)
+    private String body;
+
+    @Column(name = "priority", nullable = false)
+    private Integer priority;
+
+    @Column(name = "status", nullable = false, length = 20)
+    private String status; // PENDING, SENDING, SENT, DEAD
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // set when a dispatcher claims the mail (status SENDING)
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
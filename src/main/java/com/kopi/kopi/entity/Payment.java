@@ -11,7 +11,11 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "payments", schema = "dbo")
+@Table(name = "payments", schema = "dbo", indexes = {
+		@Index(name = "ix_payments_txn_ref", columnList = "txn_ref"),
+		@Index(name = "ix_payments_payos_order_code", columnList = "payos_order_code"),
+		@Index(name = "ix_payments_status_paid_at", columnList = "status, paid_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -41,6 +45,10 @@ public class Payment {
 	@Column(name = "txn_ref", length = 100)
 	private String txnRef;
 
+	// PayOS orderCode for this payment (also embedded in txnRef as ORD-{orderCode}-{orderId})
+	@Column(name = "payos_order_code")
+	private Long payosOrderCode;
+
 	@Column(name = "paid_at")
 	private LocalDateTime paidAt;
 
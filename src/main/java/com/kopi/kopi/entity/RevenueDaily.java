@@ -0,0 +1,34 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Paid revenue of one day (by payments.paid_at); maintained by RevenueRollup, written over JDBC
+@Entity
+@Table(name = "revenue_daily", schema = "dbo")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueDaily {
+	@Id
+	@Column(name = "bucket_date")
+	private LocalDate bucketDate;
+
+	@Column(name = "total_amount", nullable = false, precision = 18, scale = 2)
+	private BigDecimal totalAmount;
+
+	// distinct orders with a paid payment in the bucket
+	@Column(name = "order_count", nullable = false)
+	private Integer orderCount;
+
+	@Column(name = "payment_count", nullable = false)
+	private Integer paymentCount;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
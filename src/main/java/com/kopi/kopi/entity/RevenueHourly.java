@@ -0,0 +1,33 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Paid revenue of one hour (by payments.paid_at); maintained by RevenueRollup, written over JDBC
+@Entity
+@Table(name = "revenue_hourly", schema = "dbo")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueHourly {
+	@Id
+	@Column(name = "bucket_start")
+	private LocalDateTime bucketStart;
+
+	@Column(name = "total_amount", nullable = false, precision = 18, scale = 2)
+	private BigDecimal totalAmount;
+
+	// distinct orders with a paid payment in the bucket
+	@Column(name = "order_count", nullable = false)
+	private Integer orderCount;
+
+	@Column(name = "payment_count", nullable = false)
+	private Integer paymentCount;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
@@ -0,0 +1,35 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Paid revenue of one calendar month, summed from its revenue_daily rows; maintained by RevenueRollup
+@Entity
+@Table(name = "revenue_monthly", schema = "dbo")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevenueMonthly {
+	// first day of the month
+	@Id
+	@Column(name = "bucket_month")
+	private LocalDate bucketMonth;
+
+	@Column(name = "total_amount", nullable = false, precision = 18, scale = 2)
+	private BigDecimal totalAmount;
+
+	// sum of the days' distinct orders
+	@Column(name = "order_count", nullable = false)
+	private Integer orderCount;
+
+	@Column(name = "payment_count", nullable = false)
+	private Integer paymentCount;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
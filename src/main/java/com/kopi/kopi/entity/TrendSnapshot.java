@@ -0,0 +1,65 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// One build of the dish trend ranking for a parameter preset; the row doubles as the refresh job
+@Entity
+@Table(name = "trend_snapshots", schema = "dbo", indexes = {
+        @Index(name = "ix_trend_snapshots_preset_status", columnList = "preset_key, status, snapshot_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class TrendSnapshot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "snapshot_id")
+    private Integer snapshotId;
+
+    // e.g. d30-m100
+    @Column(name = "preset_key", length = 40, nullable = false)
+    private String presetKey;
+
+    @Column(name = "days", nullable = false)
+    private Integer days;
+
+    @Column(name = "max_results", nullable = false)
+    private Integer maxResults;
+
+    // queued / running / completed / failed
+    @Column(name = "status", length = 20, nullable = false)
+    private String status;
+
+    // scheduled / manual / startup / on-demand
+    @Column(name = "trigger_source", length = 20)
+    private String triggerSource;
+
+    // DishTrendsResponse as JSON, set once completed
+    @Column(name = "payload", length = 2000000)
+    private String payload;
+
+    @Column(name = "dish_count")
+    private Integer dishCount;
+
+    @Column(name = "total_videos")
+    private Integer totalVideos;
+
+    @Column(name = "took_ms")
+    private Long tookMs;
+
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -60,6 +60,29 @@ public class WorkScheduleGeneration {
     @Column(name = "skipped_count")
     private Integer skippedCount;
 
-    @Column(name = "conflicts")
+    @Column(name = "conflicts", length = 4000)
     private String conflicts; // comma-separated dates or JSON
+
+    // queued / running / completed / failed
+    @Column(name = "status", length = 20)
+    private String status;
+
+    @Column(name = "total_dates")
+    private Integer totalDates;
+
+    @Column(name = "processed_dates")
+    private Integer processedDates;
+
+    // span work schedule the generated shifts are attached to (null when nothing was created)
+    @Column(name = "work_schedule_id")
+    private Integer workScheduleId;
+
+    @Column(name = "error_message", length = 500)
+    private String errorMessage;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
 }
@@ -0,0 +1,39 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+// Cached YouTube search results (search + video details) by normalized query and search options
+@Entity
+@Table(name = "youtube_cache", schema = "dbo", indexes = {
+		@Index(name = "ix_youtube_cache_stale_until", columnList = "stale_until")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class YouTubeCacheEntry {
+	@Id
+	@Column(name = "cache_key", length = 400)
+	private String cacheKey;
+
+	// JSON array of VideoItem
+	@Column(name = "payload", nullable = false, length = 1000000)
+	private String payload;
+
+	@Column(name = "result_count", nullable = false)
+	private Integer resultCount;
+
+	// served without refreshing until then
+	@Column(name = "fresh_until", nullable = false)
+	private LocalDateTime freshUntil;
+
+	// served while a refresh runs until then (longer when the daily quota is nearly spent)
+	@Column(name = "stale_until", nullable = false)
+	private LocalDateTime staleUntil;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
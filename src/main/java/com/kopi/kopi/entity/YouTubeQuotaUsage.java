@@ -0,0 +1,26 @@
+package com.kopi.kopi.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// YouTube Data API units spent per quota day (Pacific time, when Google resets the quota)
+@Entity
+@Table(name = "youtube_quota_usage", schema = "dbo")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class YouTubeQuotaUsage {
+	@Id
+	@Column(name = "usage_date")
+	private LocalDate usageDate;
+
+	@Column(name = "units", nullable = false)
+	private Integer units;
+
+	@Column(name = "updated_at", nullable = false)
+	private LocalDateTime updatedAt;
+}
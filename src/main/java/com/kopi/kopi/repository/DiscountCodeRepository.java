@@ -2,11 +2,59 @@ package com.kopi.kopi.repository;
 
 import com.kopi.kopi.entity.DiscountCode;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface DiscountCodeRepository extends JpaRepository<DiscountCode, Integer> {
     Optional<DiscountCode> findByCodeIgnoreCase(String code);
-}
 
+    // Promo admin listing: one page of (kind, id) over codes + events, newest start (else creation) first, newer rows first on ties.
+    // term: lower-cased LIKE pattern (\ escapes %, _, [ and \) or '' for no name filter; mode: '' | current | upcoming | available
+    // (active is bound as a parameter because bit/boolean literals differ between SQL Server and H2)
+    @Query(value = """
+           select p.kind, p.id from (
+               select 'CODE' as kind, dc.discount_code_id as id, coalesce(dc.starts_at, dc.created_at) as sort_at, dc.created_at as created_at
+               from dbo.discount_codes dc
+               where (:term = '' or lower(dc.code) like :term escape '\\' or lower(dc.description) like :term escape '\\')
+                 and (:mode = '' or (dc.is_active = :active and (
+                          (:mode = 'current' and dc.starts_at <= :now and dc.ends_at >= :now)
+                       or (:mode = 'upcoming' and dc.starts_at > :now)
+                       or (:mode = 'available' and dc.ends_at >= :now))))
+               union all
+               select 'EVENT' as kind, ev.discount_event_id as id, coalesce(ev.starts_at, ev.created_at) as sort_at, ev.created_at as created_at
+               from dbo.discount_events ev
+               where (:term = '' or lower(ev.name) like :term escape '\\' or lower(ev.description) like :term escape '\\')
+                 and (:mode = '' or (ev.is_active = :active and (
+                          (:mode = 'current' and ev.starts_at <= :now and ev.ends_at >= :now)
+                       or (:mode = 'upcoming' and ev.starts_at > :now)
+                       or (:mode = 'available' and ev.ends_at >= :now))))
+           ) p
+           order by p.sort_at desc, p.created_at desc, p.kind asc, p.id asc
+           offset :offset rows fetch next :limit rows only
+           """, nativeQuery = true)
+    List<Object[]> searchPromoPage(@Param("term") String term, @Param("mode") String mode, @Param("active") boolean active,
+                                   @Param("now") LocalDateTime now, @Param("offset") int offset, @Param("limit") int limit);
 
+    @Query(value = """
+           select (select count(*)
+                   from dbo.discount_codes dc
+                   where (:term = '' or lower(dc.code) like :term escape '\\' or lower(dc.description) like :term escape '\\')
+                     and (:mode = '' or (dc.is_active = :active and (
+                              (:mode = 'current' and dc.starts_at <= :now and dc.ends_at >= :now)
+                           or (:mode = 'upcoming' and dc.starts_at > :now)
+                           or (:mode = 'available' and dc.ends_at >= :now)))))
+                + (select count(*)
+                   from dbo.discount_events ev
+                   where (:term = '' or lower(ev.name) like :term escape '\\' or lower(ev.description) like :term escape '\\')
+                     and (:mode = '' or (ev.is_active = :active and (
+                              (:mode = 'current' and ev.starts_at <= :now and ev.ends_at >= :now)
+                           or (:mode = 'upcoming' and ev.starts_at > :now)
+                           or (:mode = 'available' and ev.ends_at >= :now)))))
+           """, nativeQuery = true)
+    long countPromos(@Param("term") String term, @Param("mode") String mode, @Param("active") boolean active,
+                     @Param("now") LocalDateTime now);
+}
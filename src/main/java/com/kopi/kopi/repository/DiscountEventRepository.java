@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 public interface DiscountEventRepository extends JpaRepository<DiscountEvent, Integer> {
@@ -31,6 +32,15 @@ public interface DiscountEventRepository extends JpaRepository<DiscountEvent, In
 			@Param("startAt") LocalDateTime startAt,
 			@Param("endAt") LocalDateTime endAt
 	);
-}
-
 
+	// Pricing index source: (productId, eventId, type, value, startsAt, endsAt) for every current or upcoming event
+	@Query("""
+		select dep.product.productId, ev.discountEventId, ev.discountType, ev.discountValue, ev.startsAt, ev.endsAt
+		from DiscountEventProduct dep
+		join dep.discountEvent ev
+		where ev.active = true
+		  and ev.endsAt >= :now
+		order by ev.startsAt asc
+		""")
+	List<Object[]> findActiveOrUpcomingProductWindows(@Param("now") LocalDateTime now);
+}
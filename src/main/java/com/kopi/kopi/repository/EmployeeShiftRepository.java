@@ -2,6 +2,8 @@ package com.kopi.kopi.repository;
 
 import com.kopi.kopi.entity.EmployeeShift;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDate;
 import java.util.List;
@@ -11,9 +13,27 @@ public interface EmployeeShiftRepository extends JpaRepository<EmployeeShift, In
 
     List<EmployeeShift> findByShiftDate(LocalDate date);
 
+    // Same as findByShiftDate but with the shift template loaded, for copying its times
+    @Query("select es from EmployeeShift es join fetch es.shift where es.shiftDate = :date")
+    List<EmployeeShift> findWithShiftByShiftDate(@Param("date") LocalDate date);
+
+    // Dates between start and end (inclusive) that already have at least one assignment
+    @Query("select distinct es.shiftDate from EmployeeShift es where es.shiftDate between :start and :end")
+    List<LocalDate> findOccupiedDates(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
     // Find assignments between two dates (inclusive)
     List<EmployeeShift> findByShiftDateBetween(LocalDate start, LocalDate end);
 
+    // Roster rows between two dates (inclusive) with everything the roster view renders
+    @Query("select es from EmployeeShift es left join fetch es.shift left join fetch es.employee e "
+            + "left join fetch e.position left join fetch es.workSchedule where es.shiftDate between :start and :end")
+    List<EmployeeShift> findRosterBetween(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    // Occurrences of a shift template from a date onwards
+    List<EmployeeShift> findByShiftShiftIdAndShiftDateGreaterThanEqual(Integer shiftId, LocalDate date);
+
+    long countByShiftShiftIdAndShiftDateBefore(Integer shiftId, LocalDate date);
+
     // Find assignments between two dates filtered by shiftId
     List<EmployeeShift> findByShiftShiftIdAndShiftDateBetween(Integer shiftId, LocalDate start,
             LocalDate end);
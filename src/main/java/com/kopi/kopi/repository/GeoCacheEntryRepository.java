@@ -0,0 +1,7 @@
+package com.kopi.kopi.repository;
+
+import com.kopi.kopi.entity.GeoCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface GeoCacheEntryRepository extends JpaRepository<GeoCacheEntry, String> {
+}
@@ -8,6 +8,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -28,5 +30,26 @@ public interface NotificationRepository extends JpaRepository<Notification, Inte
            "LEFT JOIN FETCH o.address a " +
            "WHERE n.user.userId = :userId ORDER BY n.createdAt DESC")
     List<Notification> findAllByUserIdWithOrder(@Param("userId") Integer userId);
+
+    // Notifications newer than afterId, oldest first (replay for a resumed event stream)
+    @Query("SELECT n FROM Notification n " +
+           "LEFT JOIN FETCH n.order o " +
+           "LEFT JOIN FETCH o.table t " +
+           "LEFT JOIN FETCH o.address a " +
+           "WHERE n.user.userId = :userId AND n.notificationId > :afterId ORDER BY n.notificationId ASC")
+    List<Notification> findAfterWithOrder(@Param("userId") Integer userId, @Param("afterId") Integer afterId,
+                                          Pageable pageable);
+
+    // Rows written together by one staff fan-out, with what the event stream needs
+    @Query("SELECT n FROM Notification n " +
+           "JOIN FETCH n.user u " +
+           "JOIN FETCH u.role r " +
+           "LEFT JOIN FETCH n.order o " +
+           "LEFT JOIN FETCH o.table t " +
+           "LEFT JOIN FETCH o.address a " +
+           "WHERE o.orderId = :orderId AND n.type = :type AND n.createdAt = :createdAt AND r.name IN :roles")
+    List<Notification> findForFanOut(@Param("orderId") Integer orderId, @Param("type") String type,
+                                     @Param("createdAt") LocalDateTime createdAt,
+                                     @Param("roles") Collection<String> roles);
 }
 
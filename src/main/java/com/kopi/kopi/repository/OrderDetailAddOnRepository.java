@@ -2,12 +2,22 @@ package com.kopi.kopi.repository;
 
 import com.kopi.kopi.entity.OrderDetailAddOn;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface OrderDetailAddOnRepository extends JpaRepository<OrderDetailAddOn, Integer> {
     List<OrderDetailAddOn> findByOrderDetail_OrderDetailId(Integer orderDetailId);
-}
-
 
+    // Batch-load add-ons (with their AddOn) for every detail of a page of orders
+    @Query("""
+           select oda
+           from OrderDetailAddOn oda
+           join fetch oda.addOn
+           where oda.orderDetail.orderDetailId in :detailIds
+           """)
+    List<OrderDetailAddOn> findWithAddOnByOrderDetailIdIn(@Param("detailIds") Collection<Integer> detailIds);
+}
@@ -1,10 +1,16 @@
 package com.kopi.kopi.repository;
 
 import com.kopi.kopi.entity.OrderEntity;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 public interface OrderRepository extends JpaRepository<OrderEntity, Integer> {
     Page<OrderEntity> findByCustomer_UserId(Integer userId, Pageable pageable);
@@ -13,8 +19,38 @@ public interface OrderRepository extends JpaRepository<OrderEntity, Integer> {
     Page<OrderEntity> findByStatusAndAddressIsNotNull(String status, Pageable pageable);
     Page<OrderEntity> findByStatusNotInAndAddressIsNotNull(List<String> statuses, Pageable pageable);
     Page<OrderEntity> findByStatusNotInAndAddressIsNull(List<String> statuses, Pageable pageable);
+    @Query("select o.orderId from OrderEntity o where o.status not in :statuses")
+    List<Integer> findIdsByStatusNotIn(@Param("statuses") Collection<String> statuses);
+
     long countByShipper_UserIdAndStatusNotIn(Integer userId, List<String> statuses);
     long countByTable_TableIdAndStatus(Integer tableId, String status);
-}
 
+    // Listing read path: orders + details (product, size) + delivery info in one round-trip
+    @Query("""
+           select distinct o
+           from OrderEntity o
+           left join fetch o.orderDetails d
+           left join fetch d.product
+           left join fetch d.size
+           left join fetch o.address
+           left join fetch o.table
+           left join fetch o.shipper
+           left join fetch o.customer
+           where o.orderId in :ids
+           """)
+    List<OrderEntity> findWithDetailsByOrderIdIn(@Param("ids") Collection<Integer> ids);
 
+    // Payments are a second bag, so they are fetched separately into the same persistence context
+    @Query("""
+           select distinct o
+           from OrderEntity o
+           left join fetch o.payments
+           where o.orderId in :ids
+           """)
+    List<OrderEntity> findWithPaymentsByOrderIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Row lock for status transitions that deduct stock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from OrderEntity o where o.orderId = :id")
+    Optional<OrderEntity> findForUpdateByOrderId(@Param("id") Integer id);
+}
@@ -0,0 +1,12 @@
+package com.kopi.kopi.repository;
+
+import com.kopi.kopi.entity.OutboundEmail;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface OutboundEmailRepository extends JpaRepository<OutboundEmail, Long> {
+    List<OutboundEmail> findByStatusOrderByEmailIdAsc(String status);
+}
@@ -3,6 +3,7 @@ package com.kopi.kopi.repository;
 import com.kopi.kopi.entity.ProductAddOn;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,6 +11,7 @@ import java.util.Optional;
 public interface ProductAddOnRepository extends JpaRepository<ProductAddOn, Integer> {
     List<ProductAddOn> findByProduct_ProductIdAndAvailableTrue(Integer productId);
     Optional<ProductAddOn> findByProduct_ProductIdAndAddOn_AddOnId(Integer productId, Integer addOnId);
-}
-
 
+    // Bulk cart pricing: every add-on price row for the products in a cart in one query
+    List<ProductAddOn> findByProduct_ProductIdIn(Collection<Integer> productIds);
+}
@@ -3,6 +3,7 @@ package com.kopi.kopi.repository;
 import com.kopi.kopi.entity.ProductSize;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -10,6 +11,7 @@ import java.util.Optional;
 public interface ProductSizeRepository extends JpaRepository<ProductSize, Integer> {
     List<ProductSize> findByProduct_ProductIdAndAvailableTrue(Integer productId);
     Optional<ProductSize> findByProduct_ProductIdAndSize_SizeId(Integer productId, Integer sizeId);
-}
-
 
+    // Bulk cart pricing: every size price row for the products in a cart in one query
+    List<ProductSize> findByProduct_ProductIdIn(Collection<Integer> productIds);
+}
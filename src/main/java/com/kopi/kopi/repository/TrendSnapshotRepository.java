@@ -0,0 +1,14 @@
+package com.kopi.kopi.repository;
+
+import com.kopi.kopi.entity.TrendSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface TrendSnapshotRepository extends JpaRepository<TrendSnapshot, Integer> {
+    Optional<TrendSnapshot> findFirstByPresetKeyAndStatusOrderBySnapshotIdDesc(String presetKey, String status);
+
+    Optional<TrendSnapshot> findFirstByPresetKeyAndStatusAndCreatedAtLessThanEqualOrderBySnapshotIdDesc(
+            String presetKey, String status, LocalDateTime createdAt);
+}
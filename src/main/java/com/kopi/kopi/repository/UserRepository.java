@@ -35,6 +35,12 @@ public interface UserRepository extends JpaRepository<User, Integer>, JpaSpecifi
             "WHERE u.role_id = :roleId", nativeQuery = true)
     List<Object[]> findUserIdFullNamePositionByRoleId(@Param("roleId") Integer roleId);
 
+    // Staff eligible for auto-assignment, with their position loaded in the same query
+    @Query("SELECT u FROM User u JOIN FETCH u.position JOIN u.role r " +
+            "WHERE r.name IN (:names) AND u.status = :status")
+    List<User> findWithPositionByRoleNamesAndStatus(@Param("names") Collection<String> names,
+            @Param("status") com.kopi.kopi.entity.enums.UserStatus status);
+
     java.util.List<User> findByRoleRoleId(Integer roleId);
 
     java.util.List<User> findByRoleRoleIdAndStatusNot(Integer roleId, com.kopi.kopi.entity.enums.UserStatus status);
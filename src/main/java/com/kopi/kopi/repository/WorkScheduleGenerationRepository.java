@@ -2,9 +2,23 @@ package com.kopi.kopi.repository;
 
 import com.kopi.kopi.entity.WorkScheduleGeneration;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 public interface WorkScheduleGenerationRepository extends JpaRepository<WorkScheduleGeneration, Integer> {
     List<WorkScheduleGeneration> findAllByOrderByCreatedAtDesc();
+
+    @Transactional
+    @Modifying
+    @Query("update WorkScheduleGeneration g set g.status = :failed, g.errorMessage = :message, g.finishedAt = :now, "
+            + "g.updatedAt = :now where g.status in :statuses and g.updatedAt < :before")
+    int failUnfinishedBefore(@Param("statuses") Collection<String> statuses, @Param("before") LocalDateTime before,
+                             @Param("failed") String failed, @Param("message") String message,
+                             @Param("now") LocalDateTime now);
 }
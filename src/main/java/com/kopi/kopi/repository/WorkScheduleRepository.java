@@ -10,6 +10,10 @@ import java.util.Optional;
 public interface WorkScheduleRepository extends JpaRepository<WorkSchedule, Integer> {
     Optional<WorkSchedule> findFirstByStartDateLessThanEqualAndEndDateGreaterThanEqual(LocalDate start, LocalDate end);
 
+    // Work schedules overlapping start..end, oldest first
+    List<WorkSchedule> findByStartDateLessThanEqualAndEndDateGreaterThanEqualOrderByWorkScheduleIdAsc(LocalDate end,
+            LocalDate start);
+
     // Find work schedules linked to a recurrence pattern
     List<WorkSchedule> findByRecurrencePatternRecurrenceId(Integer recurrenceId);
 
@@ -0,0 +1,7 @@
+package com.kopi.kopi.repository;
+
+import com.kopi.kopi.entity.YouTubeCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface YouTubeCacheEntryRepository extends JpaRepository<YouTubeCacheEntry, String> {
+}
@@ -103,6 +103,8 @@ public class SecurityConfig {
                 .cors(cors -> {})
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
+                        // SSE streams complete through an async dispatch, which carries no JWT
+                        .dispatcherTypeMatchers(jakarta.servlet.DispatcherType.ASYNC).permitAll()
                         .requestMatchers("/", "/index.html", "/static/**", "/app.js").permitAll()
                         .requestMatchers("/menu", "/menu.html", "/menu.js").permitAll()
                         .requestMatchers("/profile", "/profile.html", "/profile.js").permitAll()
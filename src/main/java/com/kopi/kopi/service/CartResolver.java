@@ -0,0 +1,131 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Product;
+import com.kopi.kopi.entity.ProductAddOn;
+import com.kopi.kopi.entity.ProductSize;
+import com.kopi.kopi.entity.Size;
+import com.kopi.kopi.repository.ProductAddOnRepository;
+import com.kopi.kopi.repository.ProductRepository;
+import com.kopi.kopi.repository.ProductSizeRepository;
+import com.kopi.kopi.repository.SizeRepository;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Prices a whole cart with a fixed number of IN-queries (products, size prices,
+ * add-on prices, sizes) no matter how many lines or add-ons it has.
+ */
+@Component
+public class CartResolver {
+    private final ProductRepository productRepository;
+    private final ProductSizeRepository productSizeRepository;
+    private final ProductAddOnRepository productAddOnRepository;
+    private final SizeRepository sizeRepository;
+    private final PricingEngine pricingEngine;
+
+    public record CartLine(Integer productId, int qty, Integer sizeId, List<Integer> addOnIds) {}
+
+    public record PricedLine(CartLine line, Product product, Size size, BigDecimal unitPrice, List<ProductAddOn> addOns) {
+        public BigDecimal lineTotal() {
+            return unitPrice.multiply(BigDecimal.valueOf(line.qty()));
+        }
+    }
+
+    public record PricedCart(List<PricedLine> lines, BigDecimal subtotal) {
+        /** First line whose requested quantity exceeds product stock, or null. */
+        public PricedLine firstOutOfStock() {
+            for (PricedLine pl : lines) {
+                Integer stock = pl.product().getStockQty();
+                if (stock != null && stock < pl.line().qty()) return pl;
+            }
+            return null;
+        }
+    }
+
+    public CartResolver(ProductRepository productRepository, ProductSizeRepository productSizeRepository,
+                        ProductAddOnRepository productAddOnRepository, SizeRepository sizeRepository,
+                        PricingEngine pricingEngine) {
+        this.productRepository = productRepository;
+        this.productSizeRepository = productSizeRepository;
+        this.productAddOnRepository = productAddOnRepository;
+        this.sizeRepository = sizeRepository;
+        this.pricingEngine = pricingEngine;
+    }
+
+    /** Load every product referenced by the cart in one query. */
+    public Map<Integer, Product> loadProducts(Collection<Integer> productIds) {
+        Map<Integer, Product> byId = new HashMap<>();
+        if (productIds == null || productIds.isEmpty()) return byId;
+        for (Product p : productRepository.findAllById(new HashSet<>(productIds))) {
+            byId.put(p.getProductId(), p);
+        }
+        return byId;
+    }
+
+    /**
+     * Resolve and price every line. Throws {@link NoSuchElementException} when a product id does not exist,
+     * matching the previous per-line {@code findById(..).orElseThrow()} behaviour.
+     */
+    public PricedCart resolve(List<CartLine> lines) {
+        if (lines == null || lines.isEmpty()) return new PricedCart(List.of(), BigDecimal.ZERO);
+        Set<Integer> productIds = new HashSet<>();
+        Set<Integer> sizeIds = new HashSet<>();
+        boolean anyAddOns = false;
+        for (CartLine l : lines) {
+            productIds.add(l.productId());
+            if (l.sizeId() != null) sizeIds.add(l.sizeId());
+            if (l.addOnIds() != null && !l.addOnIds().isEmpty()) anyAddOns = true;
+        }
+        Map<Integer, Product> products = loadProducts(productIds);
+
+        // productId -> sizeId -> ProductSize
+        Map<Integer, Map<Integer, ProductSize>> sizePrices = new HashMap<>();
+        Map<Integer, Size> sizes = new HashMap<>();
+        if (!sizeIds.isEmpty()) {
+            for (ProductSize ps : productSizeRepository.findByProduct_ProductIdIn(productIds)) {
+                sizePrices.computeIfAbsent(ps.getProduct().getProductId(), k -> new HashMap<>())
+                        .putIfAbsent(ps.getSize().getSizeId(), ps);
+            }
+            for (Size s : sizeRepository.findAllById(sizeIds)) sizes.put(s.getSizeId(), s);
+        }
+        // productId -> addOnId -> ProductAddOn
+        Map<Integer, Map<Integer, ProductAddOn>> addOnPrices = new HashMap<>();
+        if (anyAddOns) {
+            for (ProductAddOn pa : productAddOnRepository.findByProduct_ProductIdIn(productIds)) {
+                addOnPrices.computeIfAbsent(pa.getProduct().getProductId(), k -> new HashMap<>())
+                        .putIfAbsent(pa.getAddOn().getAddOnId(), pa);
+            }
+        }
+
+        List<PricedLine> priced = new ArrayList<>(lines.size());
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (CartLine l : lines) {
+            Product prod = products.get(l.productId());
+            if (prod == null) throw new NoSuchElementException("Product not found: " + l.productId());
+            BigDecimal unit = pricingEngine.discountedBasePrice(prod);
+            Size size = null;
+            if (l.sizeId() != null) {
+                size = sizes.get(l.sizeId());
+                ProductSize ps = sizePrices.getOrDefault(l.productId(), Map.of()).get(l.sizeId());
+                if (ps != null && ps.getPrice() != null) unit = unit.add(ps.getPrice());
+            }
+            List<ProductAddOn> lineAddOns = List.of();
+            if (l.addOnIds() != null && !l.addOnIds().isEmpty()) {
+                Map<Integer, ProductAddOn> available = addOnPrices.getOrDefault(l.productId(), Map.of());
+                lineAddOns = new ArrayList<>(l.addOnIds().size());
+                for (Integer aId : l.addOnIds()) {
+                    ProductAddOn pa = available.get(aId);
+                    if (pa == null) continue;
+                    lineAddOns.add(pa);
+                    if (pa.getPrice() != null) unit = unit.add(pa.getPrice());
+                }
+            }
+            PricedLine pl = new PricedLine(l, prod, size, unit, lineAddOns);
+            priced.add(pl);
+            subtotal = subtotal.add(pl.lineTotal());
+        }
+        return new PricedCart(priced, subtotal);
+    }
+}
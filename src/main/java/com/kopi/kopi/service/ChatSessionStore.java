@@ -0,0 +1,91 @@
+package com.kopi.kopi.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Server-side chat order flow state (orderState + orderContext) per user or guest session,
+ * so each message continues from the last parsed state instead of re-reading the history.
+ * Entries expire after {@code app.chat.session.ttl-ms} of inactivity (a read counts as activity)
+ * and the least recently used ones are dropped beyond {@code app.chat.session.max-sessions}.
+ */
+@Component
+public class ChatSessionStore {
+
+    public record Session(String orderState, Map<String, Object> orderContext, long touchedAtMs) {}
+
+    @Value("${app.chat.session.ttl-ms:1800000}")
+    private long ttlMs = 1800000;
+
+    @Value("${app.chat.session.max-sessions:10000}")
+    private int maxSessions = 10000;
+
+    LongSupplier clock = System::currentTimeMillis;
+
+    // access-ordered: eldest entry is the least recently used, and every access refreshes touchedAtMs,
+    // so the order is also touchedAtMs order
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+            return size() > maxSessions;
+        }
+    };
+
+    /** "user:{id}" for signed-in users, "guest:{sessionId}" for guests, null when neither is known. */
+    public static String keyFor(Integer userId, String guestSessionId) {
+        if (userId != null) return "user:" + userId;
+        if (guestSessionId != null && !guestSessionId.isBlank()) return "guest:" + guestSessionId.trim();
+        return null;
+    }
+
+    /** Current state for the key, or null when absent or expired. */
+    public synchronized Session get(String key) {
+        if (key == null) return null;
+        Session s = sessions.get(key);
+        if (s == null) return null;
+        long now = clock.getAsLong();
+        if (now - s.touchedAtMs() > ttlMs) {
+            sessions.remove(key);
+            return null;
+        }
+        Session touched = new Session(s.orderState(), s.orderContext(), now);
+        sessions.put(key, touched);
+        return touched;
+    }
+
+    /** Store the state a response left the flow in; a null state ends the flow and clears the session. */
+    public synchronized void update(String key, String orderState, Map<String, Object> orderContext) {
+        if (key == null) return;
+        long now = clock.getAsLong();
+        purgeExpired(now);
+        if (orderState == null && (orderContext == null || orderContext.isEmpty())) {
+            sessions.remove(key);
+            return;
+        }
+        Map<String, Object> ctx = orderContext == null ? Map.of() : new HashMap<>(orderContext);
+        sessions.put(key, new Session(orderState, ctx, now));
+    }
+
+    public synchronized void clear(String key) {
+        if (key != null) sessions.remove(key);
+    }
+
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    // Expired entries sit at the head of the access order; stop at the first live one
+    private void purgeExpired(long now) {
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().touchedAtMs() <= ttlMs) break;
+            it.remove();
+        }
+    }
+}
@@ -2,4 +2,9 @@ package com.kopi.kopi.service;
 
 public interface EmailService {
     void send(String to, String subject, String text);
+
+    /** Mail the user is waiting for (OTP, temporary password); goes ahead of other queued mail. */
+    default void sendUrgent(String to, String subject, String text) {
+        send(to, subject, text);
+    }
 }
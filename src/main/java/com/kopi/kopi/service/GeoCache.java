@@ -0,0 +1,194 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.GeoCacheEntry;
+import com.kopi.kopi.repository.GeoCacheEntryRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache for Mapbox lookups: an in-memory LRU in front of the {@code geo_cache} table.
+ * Lookups Mapbox answered with nothing (loader returns null) are cached too, for
+ * {@code app.mapbox.cache.negative-ttl-ms}; a loader that throws (timeout, error answer) is not
+ * cached at all, so the next request asks again. Concurrent misses for the same key share one
+ * loader call, and its exception. Rows are written on a writer thread, so a miss inside the
+ * caller's transaction never holds a second pooled connection for the write.
+ */
+@Component
+public class GeoCache {
+    private static final Logger log = LoggerFactory.getLogger(GeoCache.class);
+    private static final int MAX_KEY_LENGTH = 400;
+
+    /** Cached answer; a lookup that Mapbox could not answer is returned as null. */
+    public record Hit(Double lat, Double lng, String city, Double distanceMeters) {}
+
+    private record Slot(Hit hit, long expiresAtMs) {}
+
+    private final GeoCacheEntryRepository repository;
+    private final TransactionTemplate ownTx;
+
+    @Value("${app.mapbox.cache.ttl-ms:2592000000}")
+    private long ttlMs = 2592000000L;
+
+    @Value("${app.mapbox.cache.negative-ttl-ms:600000}")
+    private long negativeTtlMs = 600000;
+
+    @Value("${app.mapbox.cache.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    private final LinkedHashMap<String, Slot> memory = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<Hit>> inFlight = new ConcurrentHashMap<>();
+    // cache rows are optional: writes beyond the queue are dropped, the memory tier still answers
+    private final ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1000), SseConnection.daemonThreads("geo-cache-writer"),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    public GeoCache(GeoCacheEntryRepository repository, PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        // Cache rows are read and written in their own transaction so a cache error never rolls back the caller's order
+        this.ownTx = new TransactionTemplate(transactionManager);
+        this.ownTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PreDestroy
+    void stop() {
+        writer.shutdown();
+    }
+
+    /** Wait until the rows queued so far are written. */
+    void flush() throws ExecutionException, InterruptedException {
+        writer.submit(() -> {}).get();
+    }
+
+    public static String geocodeKey(String address) {
+        String norm = address == null ? "" : address.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        return boundedKey("geo:" + norm);
+    }
+
+    /** Coordinates rounded to 4 decimals (about 11 m), so nearby re-quotes share an entry. */
+    public static String routeKey(double fromLat, double fromLng, double toLat, double toLng) {
+        return String.format(Locale.ROOT, "route:%.4f,%.4f;%.4f,%.4f", fromLat, fromLng, toLat, toLng);
+    }
+
+    /** The cached or loaded hit; loader exceptions reach the caller and the waiters on the same key. */
+    public Hit get(String key, Supplier<Hit> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Slot slot = memory.get(key);
+            if (slot != null && slot.expiresAtMs() > now) return slot.hit();
+        }
+
+        CompletableFuture<Hit> mine = new CompletableFuture<>();
+        CompletableFuture<Hit> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException re) throw re;
+                throw ex;
+            }
+        }
+
+        try {
+            Hit hit;
+            Slot stored = loadStored(key, now);
+            if (stored != null) {
+                remember(key, stored);
+                hit = stored.hit();
+            } else {
+                hit = loader.get();
+                long ttl = hit == null ? negativeTtlMs : ttlMs;
+                Slot fresh = new Slot(hit, System.currentTimeMillis() + ttl);
+                remember(key, fresh);
+                writer.execute(() -> persist(key, fresh));
+            }
+            inFlight.remove(key, mine);
+            mine.complete(hit);
+            return hit;
+        } catch (RuntimeException | Error ex) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private void remember(String key, Slot slot) {
+        synchronized (memory) {
+            memory.put(key, slot);
+        }
+    }
+
+    private Slot loadStored(String key, long now) {
+        try {
+            GeoCacheEntry e = ownTx.execute(status -> repository.findById(key).orElse(null));
+            if (e == null || e.getExpiresAt() == null) return null;
+            long expiresAtMs = e.getExpiresAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            if (expiresAtMs <= now) return null;
+            Hit hit = Boolean.TRUE.equals(e.getFailed()) ? null
+                    : new Hit(e.getLatitude(), e.getLongitude(), e.getCity(), e.getDistanceMeters());
+            return new Slot(hit, expiresAtMs);
+        } catch (Exception ex) {
+            log.warn("geo_cache read failed for {}: {}", key, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void persist(String key, Slot slot) {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            Hit hit = slot.hit();
+            GeoCacheEntry e = GeoCacheEntry.builder()
+                    .cacheKey(key)
+                    .latitude(hit != null ? hit.lat() : null)
+                    .longitude(hit != null ? hit.lng() : null)
+                    .city(hit != null ? hit.city() : null)
+                    .distanceMeters(hit != null ? hit.distanceMeters() : null)
+                    .failed(hit == null)
+                    .expiresAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(slot.expiresAtMs()), ZoneId.systemDefault()))
+                    .updatedAt(now)
+                    .build();
+            ownTx.executeWithoutResult(status -> repository.save(e));
+        } catch (Exception ex) {
+            // Another node may have written the same key; the memory tier still has the answer
+            log.warn("geo_cache write failed for {}: {}", key, ex.getMessage());
+        }
+    }
+
+    private static String boundedKey(String key) {
+        if (key.length() <= MAX_KEY_LENGTH) return key;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return "geo#" + HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            return key.substring(0, MAX_KEY_LENGTH);
+        }
+    }
+}
@@ -2,7 +2,10 @@ package com.kopi.kopi.service;
 
 import com.kopi.kopi.dto.ai.AiSuggestResponse;
 import com.kopi.kopi.dto.ai.AiSuggestionRequest;
+import com.kopi.kopi.dto.ai.DishTrendsResponse;
 
 public interface IAiSuggestService {
     AiSuggestResponse search(AiSuggestionRequest req);
+
+    AiSuggestResponse toSuggestions(DishTrendsResponse trends);
 }
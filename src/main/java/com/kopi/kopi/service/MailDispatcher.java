@@ -0,0 +1,314 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.OutboundEmail;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drains {@code dbo.email_outbox} in batches, urgent mail first, over one SMTP connection that
+ * is kept open between batches until it idles. Failures are retried with exponential backoff;
+ * rejected addresses and mails out of attempts are parked as DEAD. Urgent mail (OTPs, temporary
+ * passwords) loses its body as soon as it is SENT or DEAD. Each recipient gets at most
+ * {@code per-recipient-per-minute} mails a minute, the rest wait without using an attempt.
+ * Everything runs on one worker thread. Several instances may share the table: a claim is a lease
+ * ({@code claimed_at}), and only mails whose lease is older than {@code claim-lease-ms} are taken
+ * back from an instance that stopped mid-batch.
+ */
+@Component
+public class MailDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(MailDispatcher.class);
+
+    static final String PENDING = "PENDING";
+    static final String SENDING = "SENDING";
+    static final String SENT = "SENT";
+    static final String DEAD = "DEAD";
+
+    private static final String SELECT_DUE = "SELECT email_id, recipient, subject, body, attempts FROM dbo.email_outbox "
+            + "WHERE status = 'PENDING' AND next_attempt_at <= ? ORDER BY priority, email_id "
+            + "OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY";
+    private static final String CLAIM = "UPDATE dbo.email_outbox SET status = 'SENDING', claimed_at = ? "
+            + "WHERE email_id = ? AND status = 'PENDING'";
+    private static final String REQUEUE_EXPIRED = "UPDATE dbo.email_outbox SET status = 'PENDING', claimed_at = NULL "
+            + "WHERE status = 'SENDING' AND (claimed_at IS NULL OR claimed_at < ?)";
+    // urgent mail carries OTPs and temporary passwords: its body is not kept once it is done with
+    private static final String REDACT_URGENT = "body = CASE WHEN priority = " + OutboundEmail.PRIORITY_URGENT
+            + " THEN '' ELSE body END";
+    private static final String MARK_SENT = "UPDATE dbo.email_outbox SET status = 'SENT', attempts = attempts + 1, "
+            + "sent_at = ?, last_error = NULL, " + REDACT_URGENT + " WHERE email_id = ?";
+    private static final String MARK_FAILED = "UPDATE dbo.email_outbox SET status = ?, attempts = ?, next_attempt_at = ?, "
+            + "last_error = ? WHERE email_id = ?";
+    private static final String REDACT_DEAD = "UPDATE dbo.email_outbox SET " + REDACT_URGENT
+            + " WHERE email_id = ? AND status = 'DEAD'";
+    private static final String DEFER = "UPDATE dbo.email_outbox SET status = 'PENDING', next_attempt_at = ? WHERE email_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JavaMailSender mailSender;
+
+    @Value("${app.mail.from:${spring.mail.username:}}")
+    private String from;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize = 50;
+
+    @Value("${app.mail.outbox.poll-ms:5000}")
+    private long pollMs = 5000;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts = 8;
+
+    @Value("${app.mail.outbox.backoff-base-ms:30000}")
+    private long backoffBaseMs = 30000;
+
+    @Value("${app.mail.outbox.backoff-max-ms:3600000}")
+    private long backoffMaxMs = 3600000;
+
+    @Value("${app.mail.outbox.per-recipient-per-minute:10}")
+    private int perRecipientPerMinute = 10;
+
+    @Value("${app.mail.outbox.transport-idle-ms:30000}")
+    private long transportIdleMs = 30000;
+
+    // longer than any batch takes to send
+    @Value("${app.mail.outbox.claim-lease-ms:600000}")
+    private long claimLeaseMs = 600000;
+
+    @Value("${app.mail.outbox.retention-days:7}")
+    private int retentionDays = 7;
+
+    // recipient -> send times within the last minute; worker thread only
+    private final Map<String, ArrayDeque<Long>> recentSends = new HashMap<>();
+    private final AtomicBoolean wakeQueued = new AtomicBoolean();
+    private ScheduledExecutorService worker;
+    private Transport transport;
+    private long transportUsedAt;
+    private long lastPurge;
+    private long lastRequeue;
+
+    record Row(long id, String recipient, String subject, String body, int attempts) {}
+
+    private static final class ConnectFailed extends MessagingException {
+        ConnectFailed(MessagingException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    public MailDispatcher(JdbcTemplate jdbcTemplate, JavaMailSender mailSender) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.mailSender = mailSender;
+    }
+
+    @PostConstruct
+    void start() {
+        requeueExpired();
+        worker = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("mail-dispatcher"));
+        worker.scheduleWithFixedDelay(this::cycle, pollMs, pollMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (worker != null) {
+            worker.shutdown();
+            try {
+                worker.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeTransport();
+    }
+
+    /** Drain soon instead of at the next poll, e.g. after mail was queued. */
+    public void wake() {
+        if (worker == null || worker.isShutdown()) return;
+        if (wakeQueued.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                wakeQueued.set(false);
+                cycle();
+            });
+        }
+    }
+
+    private void cycle() {
+        try {
+            while (drainOnce() >= batchSize) {
+                // a full batch: more may be due
+            }
+            if (transport != null && System.currentTimeMillis() - transportUsedAt > transportIdleMs) closeTransport();
+            if (System.currentTimeMillis() - lastRequeue >= 60_000) requeueExpired();
+            purgeSent();
+        } catch (Exception ex) {
+            log.warn("Mail dispatch failed: {}", ex.getMessage());
+        }
+    }
+
+    /** Send one batch of due mails; returns how many were due. Called from the worker thread (or tests). */
+    int drainOnce() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Row> due = jdbcTemplate.query(SELECT_DUE, (rs, i) -> new Row(rs.getLong("email_id"),
+                rs.getString("recipient"), rs.getString("subject"), rs.getString("body"), rs.getInt("attempts")),
+                Timestamp.valueOf(now), batchSize);
+        if (due.isEmpty()) return 0;
+
+        Timestamp claimedAt = Timestamp.valueOf(now);
+        List<Object[]> ids = new ArrayList<>();
+        for (Row r : due) ids.add(new Object[]{claimedAt, r.id()});
+        int[] claimed = jdbcTemplate.batchUpdate(CLAIM, ids);
+        List<Object[]> sent = new ArrayList<>();
+        List<Object[]> failed = new ArrayList<>();
+        List<Object[]> deferred = new ArrayList<>();
+        MessagingException connectError = null;
+        long clock = System.currentTimeMillis();
+        for (int i = 0; i < due.size(); i++) {
+            if (claimed[i] == 0) continue; // taken by another instance
+            Row r = due.get(i);
+            Long waitUntil = reserve(r.recipient().toLowerCase(Locale.ROOT), clock);
+            if (waitUntil != null) {
+                deferred.add(new Object[]{Timestamp.valueOf(now.plusNanos((waitUntil - clock) * 1_000_000)), r.id()});
+                continue;
+            }
+            try {
+                if (connectError != null) throw connectError;
+                send(r);
+                sent.add(new Object[]{Timestamp.valueOf(LocalDateTime.now()), r.id()});
+            } catch (Exception ex) {
+                // the server is unreachable: fail the rest of the batch without dialing again
+                if (ex instanceof ConnectFailed cf) connectError = cf;
+                failed.add(failure(r, ex, now));
+            }
+        }
+        if (!sent.isEmpty()) jdbcTemplate.batchUpdate(MARK_SENT, sent);
+        if (!failed.isEmpty()) {
+            jdbcTemplate.batchUpdate(MARK_FAILED, failed);
+            List<Object[]> dead = new ArrayList<>();
+            for (Object[] f : failed) if (DEAD.equals(f[0])) dead.add(new Object[]{f[4]});
+            if (!dead.isEmpty()) jdbcTemplate.batchUpdate(REDACT_DEAD, dead);
+        }
+        if (!deferred.isEmpty()) jdbcTemplate.batchUpdate(DEFER, deferred);
+        return due.size();
+    }
+
+    /**
+     * Put mails back to PENDING whose claim is older than the lease: their dispatcher stopped
+     * mid-batch. Claims of a dispatcher still sending are younger and stay. Returns how many.
+     */
+    int requeueExpired() {
+        lastRequeue = System.currentTimeMillis();
+        int reset = jdbcTemplate.update(REQUEUE_EXPIRED,
+                Timestamp.valueOf(LocalDateTime.now().minusNanos(claimLeaseMs * 1_000_000)));
+        if (reset > 0) log.info("Requeued {} outbox mails whose claim expired", reset);
+        return reset;
+    }
+
+    // null when the recipient may get a mail now (and it is counted), else when it may
+    private Long reserve(String recipient, long clock) {
+        ArrayDeque<Long> times = recentSends.computeIfAbsent(recipient, k -> new ArrayDeque<>());
+        while (!times.isEmpty() && clock - times.peekFirst() >= 60_000) times.removeFirst();
+        if (times.size() >= perRecipientPerMinute) return times.peekFirst() + 60_000;
+        times.addLast(clock);
+        // forget recipients who went quiet
+        if (recentSends.size() > 10_000) recentSends.values().removeIf(d -> d.isEmpty() || clock - d.peekLast() >= 60_000);
+        return null;
+    }
+
+    private Object[] failure(Row r, Exception ex, LocalDateTime now) {
+        int attempts = r.attempts() + 1;
+        boolean permanent = ex instanceof AddressException
+                || (ex instanceof SendFailedException sfe && sfe.getInvalidAddresses() != null
+                && sfe.getInvalidAddresses().length > 0);
+        String error = String.valueOf(ex.getMessage());
+        if (error.length() > 500) error = error.substring(0, 500);
+        if (permanent || attempts >= maxAttempts) {
+            log.warn("Outbox mail {} to {} is dead after {} attempt(s): {}", r.id(), r.recipient(), attempts, error);
+            return new Object[]{DEAD, attempts, Timestamp.valueOf(now), error, r.id()};
+        }
+        long delay = Math.min(backoffMaxMs, backoffBaseMs << Math.min(attempts - 1, 20));
+        return new Object[]{PENDING, attempts, Timestamp.valueOf(now.plusNanos(delay * 1_000_000)), error, r.id()};
+    }
+
+    private void send(Row r) throws MessagingException {
+        if (!(mailSender instanceof JavaMailSenderImpl impl)) {
+            // no session to hold on to: hand each message to the sender
+            SimpleMailMessage msg = new SimpleMailMessage();
+            if (from != null && !from.isBlank()) msg.setFrom(from);
+            msg.setTo(r.recipient());
+            msg.setSubject(r.subject());
+            msg.setText(r.body());
+            mailSender.send(msg);
+            return;
+        }
+        MimeMessage mime = impl.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mime, "UTF-8");
+        if (from != null && !from.isBlank()) helper.setFrom(from);
+        helper.setTo(r.recipient());
+        helper.setSubject(r.subject());
+        helper.setText(r.body());
+        mime.saveChanges();
+        Transport t = transport(impl);
+        try {
+            t.sendMessage(mime, mime.getAllRecipients());
+            transportUsedAt = System.currentTimeMillis();
+        } catch (SendFailedException ex) {
+            // the server refused this message; the connection stays usable
+            throw ex;
+        } catch (MessagingException ex) {
+            closeTransport();
+            throw ex;
+        }
+    }
+
+    private Transport transport(JavaMailSenderImpl impl) throws MessagingException {
+        if (transport != null) {
+            // servers drop idle connections; check before a new batch reuses one
+            if (System.currentTimeMillis() - transportUsedAt < 1000 || transport.isConnected()) return transport;
+            closeTransport();
+        }
+        Transport t = impl.getSession().getTransport(impl.getProtocol() != null ? impl.getProtocol() : "smtp");
+        try {
+            t.connect(impl.getHost(), impl.getPort(), impl.getUsername(), impl.getPassword());
+        } catch (MessagingException ex) {
+            throw new ConnectFailed(ex);
+        }
+        transport = t;
+        transportUsedAt = System.currentTimeMillis();
+        return t;
+    }
+
+    private void closeTransport() {
+        if (transport == null) return;
+        try {
+            transport.close();
+        } catch (Exception ignored) {
+        }
+        transport = null;
+    }
+
+    private void purgeSent() {
+        long clock = System.currentTimeMillis();
+        if (clock - lastPurge < 3_600_000) return;
+        lastPurge = clock;
+        jdbcTemplate.update("DELETE FROM dbo.email_outbox WHERE status = 'SENT' AND sent_at < ?",
+                Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays)));
+    }
+}
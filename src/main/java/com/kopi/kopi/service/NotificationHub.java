@@ -0,0 +1,264 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Notification;
+import com.kopi.kopi.repository.NotificationRepository;
+import com.kopi.kopi.service.SseConnection.Event;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process fan-out of notifications to Server-Sent Events streams, one or more per user.
+ * Events carry the notification id as their SSE id; a reconnect with {@code Last-Event-ID}
+ * is replayed from a small per-user ring, or from the database when the ring does not reach
+ * back far enough. Each connection has a bounded buffer drained on a virtual thread of its
+ * own, so a client whose socket stops accepting writes only stalls itself; once its buffer
+ * overflows it is disconnected and resumes from its last id.
+ */
+@Component
+public class NotificationHub {
+    private final NotificationRepository notificationRepository;
+    private final TransactionTemplate readTx;
+
+    @Value("${app.notifications.sse.timeout-ms:1800000}")
+    private long timeoutMs = 1800000;
+
+    @Value("${app.notifications.sse.heartbeat-ms:25000}")
+    private long heartbeatMs = 25000;
+
+    @Value("${app.notifications.sse.buffer-size:64}")
+    private int bufferSize = 64;
+
+    @Value("${app.notifications.sse.replay-size:50}")
+    private int replaySize = 50;
+
+    @Value("${app.notifications.sse.replay-users:2000}")
+    private int replayUsers = 2000;
+
+    private final ConcurrentHashMap<Integer, Set<SseConnection>> connections = new ConcurrentHashMap<>();
+    // unread counts of connected users, kept current in memory once read at connect
+    private final ConcurrentHashMap<Integer, AtomicLong> unread = new ConcurrentHashMap<>();
+    private final Map<Integer, Ring> replay = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Ring> eldest) {
+            return size() > replayUsers;
+        }
+    };
+    private ExecutorService sender;
+    private ScheduledExecutorService heartbeat;
+
+    public NotificationHub(NotificationRepository notificationRepository, PlatformTransactionManager transactionManager) {
+        this.notificationRepository = notificationRepository;
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTx.setReadOnly(true);
+    }
+
+    @PostConstruct
+    void start() {
+        // one virtual thread per drain: a blocking emitter.send parks that connection only
+        sender = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-sender-", 0).factory());
+        heartbeat = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("sse-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(() -> connections.values()
+                        .forEach(set -> set.forEach(c -> c.offer(SseConnection.HEARTBEAT))),
+                heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (heartbeat != null) heartbeat.shutdownNow();
+        if (sender != null) sender.shutdownNow();
+        connections.values().forEach(set -> List.copyOf(set).forEach(SseConnection::close));
+    }
+
+    /**
+     * Open a stream for the user. Missed notifications after {@code lastEventId} are replayed
+     * first, then the current unread count is sent.
+     */
+    public SseEmitter connect(Integer userId, String userRole, Long lastEventId) {
+        SseConnection c = new SseConnection(timeoutMs, bufferSize, sender, closed -> remove(userId, closed));
+        // register before reading so nothing published meanwhile is lost (the client drops duplicate ids)
+        connections.computeIfAbsent(userId, k -> ConcurrentHashMap.newKeySet()).add(c);
+
+        if (lastEventId != null) {
+            for (Event e : missedSince(userId, userRole, lastEventId)) c.offer(e);
+        }
+        Long count = readTx.execute(s -> notificationRepository.countByUser_UserIdAndIsReadFalse(userId));
+        long current = count != null ? count : 0;
+        unread.computeIfAbsent(userId, k -> new AtomicLong()).set(current);
+        c.offer(unreadEvent(current));
+        return c.emitter();
+    }
+
+    /** Push a saved notification to its user's streams once the current transaction commits. */
+    public void publish(Notification n) {
+        if (n == null || n.getUser() == null || n.getNotificationId() == null) return;
+        Integer userId = n.getUser().getUserId();
+        String role = n.getUser().getRole() != null ? n.getUser().getRole().getName() : "CUSTOMER";
+        // built now, while the order is still attached
+        Event event = new Event(n.getNotificationId(), "notification", toMap(n, role));
+        boolean unreadAdded = !Boolean.TRUE.equals(n.getIsRead());
+        afterCommit(() -> deliver(userId, event, unreadAdded));
+    }
+
+    /** Re-read and push the user's unread count, e.g. after notifications were read or deleted. */
+    public void refreshUnread(Integer userId) {
+        afterCommit(() -> {
+            AtomicLong counter = unread.get(userId);
+            if (counter == null) return;
+            Long count = readTx.execute(s -> notificationRepository.countByUser_UserIdAndIsReadFalse(userId));
+            counter.set(count != null ? count : 0);
+            broadcast(userId, unreadEvent(counter.get()));
+        });
+    }
+
+    public int connectionCount(Integer userId) {
+        Set<SseConnection> set = connections.get(userId);
+        return set != null ? set.size() : 0;
+    }
+
+    private void deliver(Integer userId, Event event, boolean unreadAdded) {
+        synchronized (replay) {
+            replay.computeIfAbsent(userId, k -> new Ring()).add(event, replaySize);
+        }
+        AtomicLong counter = unread.get(userId);
+        broadcast(userId, event);
+        if (counter != null && unreadAdded) broadcast(userId, unreadEvent(counter.incrementAndGet()));
+    }
+
+    private void broadcast(Integer userId, Event event) {
+        Set<SseConnection> set = connections.get(userId);
+        if (set != null) set.forEach(c -> c.offer(event));
+    }
+
+    private List<Event> missedSince(Integer userId, String role, long lastEventId) {
+        synchronized (replay) {
+            Ring ring = replay.get(userId);
+            if (ring != null && ring.covers(lastEventId)) return ring.after(lastEventId);
+        }
+        // not in memory (restart, long absence): read what is missing, capped to one buffer
+        List<Event> out = new ArrayList<>();
+        readTx.executeWithoutResult(s -> {
+            for (Notification n : notificationRepository.findAfterWithOrder(userId, (int) lastEventId,
+                    PageRequest.of(0, Math.max(1, bufferSize - 2)))) {
+                out.add(new Event(n.getNotificationId(), "notification", toMap(n, role)));
+            }
+        });
+        return out;
+    }
+
+    private void remove(Integer userId, SseConnection c) {
+        connections.computeIfPresent(userId, (k, set) -> {
+            set.remove(c);
+            if (set.isEmpty()) {
+                unread.remove(k);
+                return null;
+            }
+            return set;
+        });
+    }
+
+    private static Event unreadEvent(long count) {
+        return new Event(0, "unread-count", Map.of("unreadCount", count));
+    }
+
+    private static void afterCommit(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /**
+     * The JSON shape of a notification, shared by the REST listing and the stream.
+     *
+     * @param userRole role of the receiving user (CUSTOMER, STAFF, ADMIN), decides the redirect URL
+     */
+    public static Map<String, Object> toMap(Notification n, String userRole) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", n.getNotificationId());
+        map.put("title", n.getTitle());
+        map.put("message", n.getMessage());
+        map.put("type", n.getType());
+        map.put("isRead", n.getIsRead());
+        map.put("createdAt", n.getCreatedAt());
+        // Thêm thông tin order nếu có
+        if (n.getOrder() != null) {
+            Map<String, Object> orderInfo = new HashMap<>();
+            orderInfo.put("orderId", n.getOrder().getOrderId());
+            orderInfo.put("orderCode", n.getOrder().getOrderCode());
+            orderInfo.put("status", n.getOrder().getStatus());
+            // Xác định loại đơn hàng: SHIPPING (có address) hoặc TABLE (có table)
+            String orderType = null;
+            if (n.getOrder().getAddress() != null) {
+                orderType = "SHIPPING";
+            } else if (n.getOrder().getTable() != null) {
+                orderType = "TABLE";
+                orderInfo.put("tableNumber", n.getOrder().getTable().getNumber());
+            }
+            orderInfo.put("orderType", orderType);
+            String redirectUrl = null;
+            if ("ADMIN".equalsIgnoreCase(userRole)) {
+                redirectUrl = "/manage-order";
+            }
+            else if ("CUSTOMER".equalsIgnoreCase(userRole)) {
+                redirectUrl = "/history/" + n.getOrder().getOrderId();
+            }
+            else if (orderType != null) {
+                if ("SHIPPING".equals(orderType)) {
+                    redirectUrl = "/shipping-order";
+                } else if ("TABLE".equals(orderType)) {
+                    redirectUrl = "/table-order";
+                }
+            }
+            orderInfo.put("redirectUrl", redirectUrl);
+            map.put("order", orderInfo);
+        }
+        return map;
+    }
+
+    // Recent events of one user in delivery order. Ids are shared by all users and commits can
+    // land out of id order, so only a client whose last id is still held here can be replayed
+    // from it: everything delivered after that event follows it in the ring.
+    private static final class Ring {
+        private final ArrayDeque<Event> events = new ArrayDeque<>();
+
+        void add(Event e, int capacity) {
+            events.addLast(e);
+            while (events.size() > capacity) events.removeFirst();
+        }
+
+        boolean covers(long lastEventId) {
+            for (Event e : events) if (e.id() == lastEventId) return true;
+            return false;
+        }
+
+        List<Event> after(long lastEventId) {
+            List<Event> out = new ArrayList<>();
+            boolean seen = false;
+            for (Event e : events) {
+                if (seen) out.add(e);
+                else seen = e.id() == lastEventId;
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.*;
+import com.kopi.kopi.repository.OrderDetailAddOnRepository;
+import com.kopi.kopi.repository.OrderRepository;
+import com.kopi.kopi.service.SseConnection.Event;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * In-memory projection of the open (not cancelled, rejected or completed) orders, as the
+ * cards the kitchen and shipping screens show. Built once at startup; order writers call
+ * {@link #touch} and the single order is re-read after commit. Staff screens read
+ * {@link #snapshot} or subscribe to {@link #subscribe} for deltas: {@code order-added},
+ * {@code order-updated}, {@code status-changed} and {@code order-removed}.
+ */
+@Component
+public class OrderBoard {
+    private static final Logger log = LoggerFactory.getLogger(OrderBoard.class);
+
+    public static final List<String> CLOSED_STATUSES = List.of("CANCELLED", "REJECTED", "COMPLETED");
+    // card fields a status-changed delta carries; any other difference sends the whole card
+    private static final Set<String> STATUS_FIELDS = Set.of("status", "payment_method", "payment_status", "shipper_id");
+
+    private final OrderRepository orderRepository;
+    private final OrderDetailAddOnRepository orderDetailAddOnRepository;
+    private final TransactionTemplate readTx;
+
+    @Value("${app.order-board.load-chunk:500}")
+    private int loadChunk = 500;
+
+    @Value("${app.order-board.replay-size:200}")
+    private int replaySize = 200;
+
+    @Value("${app.order-board.sse.buffer-size:256}")
+    private int bufferSize = 256;
+
+    @Value("${app.order-board.sse.timeout-ms:1800000}")
+    private long timeoutMs = 1800000;
+
+    @Value("${app.order-board.sse.heartbeat-ms:25000}")
+    private long heartbeatMs = 25000;
+
+    // orderId -> card (unmodifiable); changed only under the board lock
+    private final ConcurrentSkipListMap<Integer, Map<String, Object>> cards = new ConcurrentSkipListMap<>();
+    private final ArrayDeque<Event> recent = new ArrayDeque<>();
+    // refreshes of one order read and apply under its stripe, so an older read never lands last
+    private final Object[] refreshLocks = new Object[64];
+    private final Set<SseConnection> subscribers = ConcurrentHashMap.newKeySet();
+    private long version;
+    private volatile boolean loaded;
+    private ExecutorService sender;
+    private ScheduledExecutorService heartbeat;
+
+    public OrderBoard(OrderRepository orderRepository, OrderDetailAddOnRepository orderDetailAddOnRepository,
+                      PlatformTransactionManager transactionManager) {
+        this.orderRepository = orderRepository;
+        this.orderDetailAddOnRepository = orderDetailAddOnRepository;
+        // Refreshes run from afterCommit callbacks, which need a transaction of their own
+        this.readTx = new TransactionTemplate(transactionManager);
+        this.readTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTx.setReadOnly(true);
+        // versions continue from the clock, so ids a client kept from before a restart never look current
+        this.version = System.currentTimeMillis();
+        for (int i = 0; i < refreshLocks.length; i++) refreshLocks[i] = new Object();
+    }
+
+    @PostConstruct
+    void start() {
+        sender = Executors.newSingleThreadExecutor(SseConnection.daemonThreads("order-board-sender"));
+        heartbeat = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("order-board-heartbeat"));
+        heartbeat.scheduleWithFixedDelay(() -> subscribers.forEach(c -> c.offer(SseConnection.HEARTBEAT)),
+                heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (heartbeat != null) heartbeat.shutdownNow();
+        if (sender != null) sender.shutdownNow();
+        List.copyOf(subscribers).forEach(SseConnection::close);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            ensureLoaded();
+        } catch (Exception ex) {
+            // the first read retries
+            log.warn("Order board warm-up failed: {}", ex.getMessage());
+        }
+    }
+
+    /** Open orders of a type (TABLE: no address, SHIPPING: with address, anything else: all), by id. */
+    public List<Map<String, Object>> snapshot(String type) {
+        ensureLoaded();
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (Map<String, Object> card : cards.values()) {
+            if (type == null || "ALL".equalsIgnoreCase(type) || type.equalsIgnoreCase((String) card.get("type")))
+                out.add(card);
+        }
+        return out;
+    }
+
+    /** Re-read the order after the current transaction commits (or now, outside one). */
+    public void touch(Integer orderId) {
+        if (orderId == null) return;
+        Runnable refresh = () -> {
+            try {
+                refresh(orderId);
+            } catch (Exception ex) {
+                log.warn("Order board refresh of {} failed: {}", orderId, ex.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh.run();
+                }
+            });
+        } else {
+            refresh.run();
+        }
+    }
+
+    /**
+     * Open a delta stream. A client resuming within the replay window gets the deltas it missed,
+     * anyone else starts with a {@code snapshot} event; event ids are board versions.
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        ensureLoaded();
+        SseConnection c = new SseConnection(timeoutMs, bufferSize, sender, subscribers::remove);
+        synchronized (this) {
+            subscribers.add(c);
+            Event first = recent.peekFirst();
+            if (lastEventId != null && lastEventId <= version
+                    && (lastEventId == version || (first != null && first.id() <= lastEventId + 1))) {
+                for (Event e : recent) if (e.id() > lastEventId) c.offer(e);
+            } else {
+                c.offer(new Event(version, "snapshot", Map.of("version", version, "orders", List.copyOf(cards.values()))));
+            }
+        }
+        return c.emitter();
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            long t0 = System.currentTimeMillis();
+            readTx.executeWithoutResult(s -> {
+                List<Integer> ids = orderRepository.findIdsByStatusNotIn(CLOSED_STATUSES);
+                for (int from = 0; from < ids.size(); from += loadChunk) {
+                    for (Map<String, Object> card : load(ids.subList(from, Math.min(ids.size(), from + loadChunk)))) {
+                        cards.put((Integer) card.get("id"), card);
+                    }
+                }
+            });
+            loaded = true;
+            log.info("Order board loaded {} open orders in {} ms", cards.size(), System.currentTimeMillis() - t0);
+        }
+    }
+
+    private void refresh(Integer orderId) {
+        if (!loaded) return; // the first read loads fresh rows
+        synchronized (refreshLocks[Math.floorMod(orderId, refreshLocks.length)]) {
+            apply(orderId, readTx.execute(s -> load(List.of(orderId))));
+        }
+    }
+
+    private void apply(Integer orderId, List<Map<String, Object>> fresh) {
+        Map<String, Object> card = fresh == null || fresh.isEmpty() ? null : fresh.get(0);
+        synchronized (this) {
+            Map<String, Object> old = cards.get(orderId);
+            if (card == null) {
+                if (old != null) {
+                    cards.remove(orderId);
+                    emit("order-removed", Map.of("id", orderId));
+                }
+            } else if (old == null) {
+                cards.put(orderId, card);
+                emit("order-added", card);
+            } else if (!old.equals(card)) {
+                cards.put(orderId, card);
+                if (onlyStatusChanged(old, card)) {
+                    Map<String, Object> delta = new HashMap<>();
+                    delta.put("id", orderId);
+                    for (String f : STATUS_FIELDS) delta.put(f, card.get(f));
+                    emit("status-changed", delta);
+                } else {
+                    emit("order-updated", card);
+                }
+            }
+        }
+    }
+
+    // Caller holds the board lock, so versions and delivery order match
+    private void emit(String name, Object data) {
+        Event e = new Event(++version, name, data);
+        recent.addLast(e);
+        while (recent.size() > replaySize) recent.removeFirst();
+        subscribers.forEach(c -> c.offer(e));
+    }
+
+    private static boolean onlyStatusChanged(Map<String, Object> old, Map<String, Object> card) {
+        for (String key : card.keySet()) {
+            if (!STATUS_FIELDS.contains(key) && !Objects.equals(old.get(key), card.get(key))) return false;
+        }
+        return true;
+    }
+
+    // Cards of the still-open orders among ids: orders with details, payments and add-ons in three queries
+    private List<Map<String, Object>> load(List<Integer> ids) {
+        List<OrderEntity> orders = orderRepository.findWithDetailsByOrderIdIn(ids);
+        orderRepository.findWithPaymentsByOrderIdIn(ids);
+        List<Integer> detailIds = new ArrayList<>();
+        for (OrderEntity o : orders) {
+            if (o.getOrderDetails() == null) continue;
+            for (OrderDetail d : o.getOrderDetails()) {
+                if (d.getOrderDetailId() != null) detailIds.add(d.getOrderDetailId());
+            }
+        }
+        Map<Integer, List<OrderDetailAddOn>> addOnsByDetail = new HashMap<>();
+        if (!detailIds.isEmpty()) {
+            for (OrderDetailAddOn oda : orderDetailAddOnRepository.findWithAddOnByOrderDetailIdIn(detailIds)) {
+                addOnsByDetail.computeIfAbsent(oda.getOrderDetail().getOrderDetailId(), k -> new ArrayList<>()).add(oda);
+            }
+        }
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (OrderEntity o : orders) {
+            if (o.getStatus() == null || CLOSED_STATUSES.contains(o.getStatus())) continue;
+            out.add(Collections.unmodifiableMap(toCard(o, addOnsByDetail)));
+        }
+        return out;
+    }
+
+    /** The listing shape of an order (as returned by the staff transactions listing), plus its board type. */
+    public static Map<String, Object> toCard(OrderEntity o, Map<Integer, List<OrderDetailAddOn>> addOnsByDetail) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("id", o.getOrderId());
+        m.put("type", o.getAddress() != null ? "SHIPPING" : "TABLE");
+        m.put("status", o.getStatus());
+        m.put("address", o.getAddress() != null ? o.getAddress().getAddressLine() : null);
+        // Include payment method and status for UI decisions (e.g., shipper button label)
+        if (o.getPayments() != null && !o.getPayments().isEmpty()) {
+            Payment p = o.getPayments().get(0);
+            m.put("payment_method", p.getMethod() != null ? p.getMethod().name() : null);
+            m.put("payment_status", p.getStatus() != null ? p.getStatus().name() : null);
+        } else {
+            m.put("payment_method", null);
+            m.put("payment_status", null);
+        }
+        m.put("created_at", o.getCreatedAt());
+        m.put("table_number", o.getTable() != null ? o.getTable().getNumber() : null);
+        m.put("total", orZero(o.getTotalAmount()));
+        m.put("subtotal", orZero(o.getSubtotalAmount()));
+        m.put("shipping_fee", orZero(o.getShippingAmount()));
+        m.put("discount", orZero(o.getDiscountAmount()));
+        m.put("shipper_id", o.getShipper() != null ? o.getShipper().getUserId() : null);
+
+        List<Map<String, Object>> products = new ArrayList<>();
+        if (o.getOrderDetails() != null) {
+            for (OrderDetail d : o.getOrderDetails()) {
+                Product prod = d.getProduct();
+                Map<String, Object> pd = new HashMap<>();
+                pd.put("product_name", d.getProductNameSnapshot());
+                pd.put("product_img", prod != null ? prod.getImgUrl() : null);
+                pd.put("qty", d.getQuantity());
+                pd.put("subtotal", orZero(d.getLineTotal()));
+                pd.put("size", d.getSize() != null ? d.getSize().getName() : null);
+                List<Map<String, Object>> addOns = new ArrayList<>();
+                List<OrderDetailAddOn> odas = addOnsByDetail.get(d.getOrderDetailId());
+                if (odas != null) {
+                    for (OrderDetailAddOn oda : odas) {
+                        Map<String, Object> ao = new HashMap<>();
+                        ao.put("name", oda.getAddOn() != null ? oda.getAddOn().getName() : null);
+                        ao.put("price", orZero(oda.getUnitPriceSnapshot()));
+                        addOns.add(ao);
+                    }
+                }
+                pd.put("add_ons", addOns);
+                products.add(pd);
+            }
+        }
+        m.put("products", products);
+        return m;
+    }
+
+    private static BigDecimal orZero(BigDecimal v) {
+        return v != null ? v : BigDecimal.ZERO;
+    }
+}
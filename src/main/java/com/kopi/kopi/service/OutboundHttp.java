@@ -0,0 +1,287 @@
+package com.kopi.kopi.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared client side of the outbound integrations (Gemini for trends and for chat, YouTube, Mapbox,
+ * PayOS). Each integration gets one {@link RestTemplate} on its own pooled JDK {@link HttpClient}
+ * (HTTP/2 where the server offers it, keep-alive connections otherwise), guarded by:
+ * <ul>
+ *   <li>connect and read timeouts,</li>
+ *   <li>a bulkhead of {@code max-concurrent} calls in flight; callers wait up to {@code acquire-timeout-ms},</li>
+ *   <li>a circuit breaker that opens for {@code open-ms} after {@code failure-threshold} consecutive
+ *       I/O errors, timeouts or 5xx answers, then lets one trial call decide whether to close,</li>
+ *   <li>up to {@code max-retries} retries with exponential backoff for GET/HEAD on I/O errors,
+ *       429 and 502/503/504.</li>
+ * </ul>
+ * Settings are {@code app.http.<integration>.*} and default to {@link #DEFAULTS}. Calls refused by
+ * the bulkhead or the breaker fail as {@link Rejected}, which RestTemplate wraps in a
+ * {@code ResourceAccessException} like any other I/O error.
+ */
+@Component
+public class OutboundHttp {
+    private static final Logger log = LoggerFactory.getLogger(OutboundHttp.class);
+
+    public record Policy(int connectTimeoutMs, int readTimeoutMs, int maxConcurrent, long acquireTimeoutMs,
+                         int maxRetries, long retryBackoffMs, int failureThreshold, long openMs) {}
+
+    /** Counters for one integration and host since startup; latencies in milliseconds. */
+    public record HostStats(String integration, String host, String circuit, long requests, long errors,
+                            long timeouts, long rejected, long retries, long avgMs, long maxMs) {}
+
+    /** The call was not sent: the circuit is open or the bulkhead stayed full. */
+    public static class Rejected extends IOException {
+        public Rejected(String message) {
+            super(message);
+        }
+    }
+
+    static final Map<String, Policy> DEFAULTS = Map.of(
+            "gemini", new Policy(5000, 60000, 8, 5000, 0, 0, 5, 30000),
+            "chat", new Policy(3000, 20000, 16, 1000, 0, 0, 5, 30000),
+            // no retries: every send costs quota units and YouTubeClient charges one per call
+            "youtube", new Policy(3000, 10000, 8, 5000, 0, 0, 5, 30000),
+            "mapbox", new Policy(3000, 5000, 16, 1000, 1, 200, 5, 15000),
+            "payos", new Policy(5000, 15000, 8, 3000, 0, 0, 5, 30000));
+    private static final Policy FALLBACK = new Policy(3000, 10000, 8, 2000, 0, 0, 5, 30000);
+
+    private final Environment env;
+    private final Map<String, RestTemplate> clients = new ConcurrentHashMap<>();
+    private final Map<String, Guard> guards = new ConcurrentHashMap<>();
+    private final Map<String, HostMetrics> metrics = new ConcurrentHashMap<>();
+
+    public OutboundHttp(Environment env) {
+        this.env = env;
+    }
+
+    /** The RestTemplate for an integration; built on first use and shared afterwards. */
+    public RestTemplate client(String integration) {
+        return clients.computeIfAbsent(integration, this::build);
+    }
+
+    public Policy policy(String integration) {
+        Policy d = DEFAULTS.getOrDefault(integration, FALLBACK);
+        String p = "app.http." + integration + ".";
+        return new Policy(
+                env.getProperty(p + "connect-timeout-ms", Integer.class, d.connectTimeoutMs()),
+                env.getProperty(p + "read-timeout-ms", Integer.class, d.readTimeoutMs()),
+                Math.max(1, env.getProperty(p + "max-concurrent", Integer.class, d.maxConcurrent())),
+                env.getProperty(p + "acquire-timeout-ms", Long.class, d.acquireTimeoutMs()),
+                Math.max(0, env.getProperty(p + "max-retries", Integer.class, d.maxRetries())),
+                env.getProperty(p + "retry-backoff-ms", Long.class, d.retryBackoffMs()),
+                Math.max(1, env.getProperty(p + "failure-threshold", Integer.class, d.failureThreshold())),
+                env.getProperty(p + "open-ms", Long.class, d.openMs()));
+    }
+
+    public List<HostStats> stats() {
+        List<HostStats> out = new ArrayList<>();
+        metrics.forEach((key, m) -> {
+            Guard g = guards.get(m.integration);
+            long n = m.requests.sum();
+            out.add(new HostStats(m.integration, m.host, g == null ? "closed" : g.state(), n, m.errors.sum(),
+                    m.timeouts.sum(), m.rejected.sum(), m.retries.sum(),
+                    n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(m.totalNanos.sum() / n),
+                    TimeUnit.NANOSECONDS.toMillis(m.maxNanos.get())));
+        });
+        out.sort(Comparator.comparing(HostStats::integration).thenComparing(HostStats::host));
+        return out;
+    }
+
+    private RestTemplate build(String integration) {
+        Policy policy = policy(integration);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(policy.connectTimeoutMs()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(client);
+        factory.setReadTimeout(Duration.ofMillis(policy.readTimeoutMs()));
+        RestTemplate rest = new RestTemplate(factory);
+        rest.getInterceptors().add(guards.computeIfAbsent(integration, i -> new Guard(i, policy)));
+        log.info("Outbound HTTP client '{}': {}", integration, policy);
+        return rest;
+    }
+
+    private HostMetrics metricsFor(String integration, String host) {
+        String h = host == null ? "-" : host;
+        return metrics.computeIfAbsent(integration + "|" + h, k -> new HostMetrics(integration, h));
+    }
+
+    private static boolean retryableStatus(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    private static final class HostMetrics {
+        final String integration;
+        final String host;
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder timeouts = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        HostMetrics(String integration, String host) {
+            this.integration = integration;
+            this.host = host;
+        }
+
+        void record(long nanos, boolean error) {
+            requests.increment();
+            if (error) errors.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /** Bulkhead, circuit breaker and retries for one integration. */
+    private final class Guard implements ClientHttpRequestInterceptor {
+        private final String integration;
+        private final Policy policy;
+        private final Semaphore slots;
+        private int consecutiveFailures;
+        private long openUntilMs;
+        private boolean trialInFlight;
+
+        Guard(String integration, Policy policy) {
+            this.integration = integration;
+            this.policy = policy;
+            this.slots = new Semaphore(policy.maxConcurrent(), true);
+        }
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            HostMetrics m = metricsFor(integration, request.getURI().getHost());
+            boolean idempotent = request.getMethod() == HttpMethod.GET || request.getMethod() == HttpMethod.HEAD;
+            int maxAttempts = idempotent ? policy.maxRetries() + 1 : 1;
+            for (int attempt = 1; ; attempt++) {
+                boolean last = attempt >= maxAttempts;
+                ClientHttpResponse response;
+                try {
+                    response = send(request, body, execution, m);
+                } catch (Rejected e) {
+                    throw e;
+                } catch (IOException e) {
+                    if (last) throw e;
+                    backoff(attempt, m);
+                    continue;
+                }
+                if (last || !retryableStatus(response.getStatusCode().value())) {
+                    return response;
+                }
+                response.close();
+                backoff(attempt, m);
+            }
+        }
+
+        private ClientHttpResponse send(HttpRequest request, byte[] body, ClientHttpRequestExecution execution,
+                                        HostMetrics m) throws IOException {
+            if (!allowRequest()) {
+                m.rejected.increment();
+                throw new Rejected("Circuit open for " + integration + " (" + m.host + ")");
+            }
+            boolean acquired;
+            try {
+                acquired = slots.tryAcquire(policy.acquireTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                releaseTrial();
+                throw new InterruptedIOException("Interrupted waiting for a " + integration + " slot");
+            }
+            if (!acquired) {
+                releaseTrial();
+                m.rejected.increment();
+                throw new Rejected("Too many concurrent " + integration + " calls (" + policy.maxConcurrent() + ")");
+            }
+            long t0 = System.nanoTime();
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                boolean serverError = response.getStatusCode().is5xxServerError();
+                m.record(System.nanoTime() - t0, response.getStatusCode().isError());
+                if (serverError) onFailure(); else onSuccess();
+                return response;
+            } catch (IOException e) {
+                m.record(System.nanoTime() - t0, true);
+                if (e instanceof HttpTimeoutException) m.timeouts.increment();
+                onFailure();
+                throw e;
+            } finally {
+                slots.release();
+            }
+        }
+
+        private void backoff(int attempt, HostMetrics m) throws IOException {
+            m.retries.increment();
+            long ms = policy.retryBackoffMs() << (attempt - 1);
+            if (ms <= 0) return;
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted before retrying " + integration);
+            }
+        }
+
+        // Closed: every call passes. Open: none until open-ms has passed, then one trial at a time.
+        private synchronized boolean allowRequest() {
+            if (openUntilMs == 0) return true;
+            if (trialInFlight || System.currentTimeMillis() < openUntilMs) return false;
+            trialInFlight = true;
+            return true;
+        }
+
+        private synchronized void releaseTrial() {
+            trialInFlight = false;
+        }
+
+        private synchronized void onSuccess() {
+            if (openUntilMs != 0) log.info("Circuit for {} closed", integration);
+            consecutiveFailures = 0;
+            openUntilMs = 0;
+            trialInFlight = false;
+        }
+
+        private synchronized void onFailure() {
+            trialInFlight = false;
+            consecutiveFailures++;
+            if (openUntilMs != 0 || consecutiveFailures >= policy.failureThreshold()) {
+                if (openUntilMs == 0) {
+                    log.warn("Circuit for {} opened after {} consecutive failures", integration, consecutiveFailures);
+                }
+                openUntilMs = System.currentTimeMillis() + policy.openMs();
+            }
+        }
+
+        synchronized String state() {
+            if (openUntilMs == 0) return "closed";
+            return System.currentTimeMillis() < openUntilMs ? "open" : "half-open";
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Product;
+import com.kopi.kopi.entity.enums.DiscountType;
+import com.kopi.kopi.repository.DiscountEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory index of current and upcoming discount events by product.
+ * Price lookups are map hits; the index is rebuilt lazily after promo changes,
+ * when the earliest indexed event ends, or after {@code app.pricing.max-age-ms}. A failed
+ * reload keeps the last good index and is not retried for {@code app.pricing.reload-retry-ms}.
+ */
+@Component
+public class PricingEngine {
+    private static final Logger log = LoggerFactory.getLogger(PricingEngine.class);
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+    private static final ActiveDiscount[] NONE = new ActiveDiscount[0];
+
+    public record ActiveDiscount(Integer eventId, DiscountType type, BigDecimal value,
+                                 LocalDateTime startsAt, LocalDateTime endsAt) {
+        boolean covers(LocalDateTime now) {
+            return !now.isBefore(startsAt) && !now.isAfter(endsAt);
+        }
+    }
+
+    private record Snapshot(Map<Integer, ActiveDiscount[]> byProduct, LocalDateTime nextExpiry, long loadedAtMs) {}
+
+    private final DiscountEventRepository discountEventRepository;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+    // served while the database cannot be read; null before the first successful load
+    private volatile Snapshot lastGood;
+    private volatile long retryAtMs;
+
+    // Safety net for events written outside PromoServiceImpl (seed data, manual SQL)
+    @Value("${app.pricing.max-age-ms:300000}")
+    private long maxAgeMs = 300000;
+
+    @Value("${app.pricing.reload-retry-ms:10000}")
+    private long reloadRetryMs = 10000;
+
+    public PricingEngine(DiscountEventRepository discountEventRepository) {
+        this.discountEventRepository = discountEventRepository;
+    }
+
+    /** Active event for a product at this instant, or null. */
+    public ActiveDiscount findActive(Integer productId) {
+        if (productId == null) return null;
+        LocalDateTime now = LocalDateTime.now();
+        ActiveDiscount[] windows = current(now).byProduct().getOrDefault(productId, NONE);
+        for (ActiveDiscount w : windows) {
+            if (w.covers(now)) return w;
+        }
+        return null;
+    }
+
+    /** Base price after the product's active event, never negative. */
+    public BigDecimal discountedBasePrice(Product prod) {
+        if (prod == null) return BigDecimal.ZERO;
+        BigDecimal base = prod.getPrice() != null ? prod.getPrice() : BigDecimal.ZERO;
+        ActiveDiscount ev = findActive(prod.getProductId());
+        return ev == null ? base : applyDiscount(base, ev.type(), ev.value());
+    }
+
+    /** Single implementation of the PERCENT / AMOUNT event math. */
+    public static BigDecimal applyDiscount(BigDecimal price, DiscountType type, BigDecimal value) {
+        if (price == null || type == null || value == null) return price;
+        BigDecimal result;
+        switch (type) {
+            case PERCENT -> {
+                // clamp percent between 0 and 100; price * (100 - pct) / 100
+                BigDecimal pct = value.signum() < 0 ? BigDecimal.ZERO : (value.compareTo(HUNDRED) > 0 ? HUNDRED : value);
+                result = price.multiply(HUNDRED.subtract(pct)).movePointLeft(2);
+            }
+            case AMOUNT -> result = price.subtract(value);
+            default -> { return price; }
+        }
+        return result.signum() < 0 ? BigDecimal.ZERO : result;
+    }
+
+    /**
+     * Drop the index so the next lookup reloads it. Inside a transaction the reload
+     * is deferred until after commit so readers never cache uncommitted promo state.
+     */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    drop();
+                }
+            });
+        } else {
+            drop();
+        }
+    }
+
+    private void drop() {
+        generation.incrementAndGet();
+        snapshot = null;
+        // the promo change just committed, so the database is answering again
+        retryAtMs = 0;
+    }
+
+    private Snapshot current(LocalDateTime now) {
+        Snapshot s = snapshot;
+        if (s == null
+                || (s.nextExpiry() != null && now.isAfter(s.nextExpiry()))
+                || System.currentTimeMillis() - s.loadedAtMs() > maxAgeMs) {
+            s = System.currentTimeMillis() < retryAtMs ? fallback() : reload(now);
+        }
+        return s;
+    }
+
+    private Snapshot fallback() {
+        Snapshot good = lastGood;
+        return good != null ? good : new Snapshot(Map.of(), null, 0);
+    }
+
+    private synchronized Snapshot reload(LocalDateTime now) {
+        Snapshot s = snapshot;
+        if (s != null && (s.nextExpiry() == null || !now.isAfter(s.nextExpiry()))
+                && System.currentTimeMillis() - s.loadedAtMs() <= maxAgeMs) {
+            return s;
+        }
+        long gen = generation.get();
+        Map<Integer, List<ActiveDiscount>> grouped = new HashMap<>();
+        LocalDateTime nextExpiry = null;
+        try {
+            for (Object[] row : discountEventRepository.findActiveOrUpcomingProductWindows(now)) {
+                Integer productId = (Integer) row[0];
+                ActiveDiscount w = new ActiveDiscount((Integer) row[1], (DiscountType) row[2], (BigDecimal) row[3],
+                        (LocalDateTime) row[4], (LocalDateTime) row[5]);
+                if (productId == null || w.startsAt() == null || w.endsAt() == null) continue;
+                grouped.computeIfAbsent(productId, k -> new ArrayList<>(1)).add(w);
+                if (nextExpiry == null || w.endsAt().isBefore(nextExpiry)) nextExpiry = w.endsAt();
+            }
+        } catch (Exception ex) {
+            // Keep serving the last good index (list prices before the first) rather than failing checkout
+            retryAtMs = System.currentTimeMillis() + reloadRetryMs;
+            log.warn("Failed to load discount events for pricing, retrying in {} ms: {}", reloadRetryMs, ex.getMessage());
+            return fallback();
+        }
+        Map<Integer, ActiveDiscount[]> byProduct = new HashMap<>(grouped.size() * 2);
+        grouped.forEach((k, v) -> byProduct.put(k, v.toArray(NONE)));
+        s = new Snapshot(byProduct, nextExpiry, System.currentTimeMillis());
+        // An invalidation that raced with this load wins; the next lookup reloads again
+        if (generation.get() == gen) snapshot = s;
+        lastGood = s;
+        return s;
+    }
+}
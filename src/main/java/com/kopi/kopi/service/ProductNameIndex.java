@@ -0,0 +1,240 @@
+package com.kopi.kopi.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory copy of the product catalog for the chat assistant. Names are stored
+ * lower-cased and diacritic-stripped, with a trigram inverted index so fuzzy lookups
+ * only score names that share text with the input. Rebuilt lazily after product
+ * changes ({@link #invalidate()}) or after {@code app.chat.product-index.max-age-ms}.
+ */
+@Component
+public class ProductNameIndex {
+    private static final Logger log = LoggerFactory.getLogger(ProductNameIndex.class);
+    private static final double MIN_SCORE = 0.35;
+
+    private record Entry(Map<String, Object> item, String lowerName, String norm, Set<String> tokens) {}
+
+    private record Snapshot(List<Entry> entries, Map<String, int[]> byTrigram, long loadedAtMs) {}
+
+    // Scratch rows for levenshtein, grown on demand and reused per thread
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
+    private final ProductService productService;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    @Value("${app.chat.product-index.catalog-limit:500}")
+    private int catalogLimit = 500;
+
+    // Stock and event prices change without going through ProductServiceImpl
+    @Value("${app.chat.product-index.max-age-ms:60000}")
+    private long maxAgeMs = 60000;
+
+    // ProductServiceImpl invalidates this index, so the service is resolved lazily
+    public ProductNameIndex(@Lazy ProductService productService) {
+        this.productService = productService;
+    }
+
+    /** Catalog items (same maps as {@link ProductService#list}) in catalog order. */
+    public List<Map<String, Object>> catalog(int limit) {
+        List<Entry> entries = current().entries();
+        List<Map<String, Object>> result = new ArrayList<>(Math.min(limit, entries.size()));
+        for (int i = 0; i < entries.size() && result.size() < limit; i++) result.add(entries.get(i).item());
+        return result;
+    }
+
+    /** Items whose name contains {@code term}, ignoring case, like the product list search. */
+    public List<Map<String, Object>> containing(String term, int limit) {
+        String needle = term == null ? "" : term.toLowerCase(Locale.ROOT);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Entry e : current().entries()) {
+            if (result.size() >= limit) break;
+            if (e.lowerName().contains(needle)) result.add(e.item());
+        }
+        return result;
+    }
+
+    /** Closest product by accent-insensitive name similarity, or null below the match threshold. */
+    public Map<String, Object> bestMatch(String rawInput) {
+        String input = normalize(rawInput);
+        if (input.isBlank()) return null;
+        Snapshot s = current();
+        if (s.entries().isEmpty()) return null;
+
+        Set<String> inputTokens = tokens(input);
+        int[] candidates = candidates(s, input);
+        double bestScore = 0.0;
+        Entry best = null;
+        for (int idx : candidates) {
+            Entry e = s.entries().get(idx);
+            double score = similarityScore(input, inputTokens, e, Math.max(bestScore, MIN_SCORE));
+            if (score > bestScore) {
+                bestScore = score;
+                best = e;
+            }
+        }
+        return bestScore >= MIN_SCORE ? best.item() : null;
+    }
+
+    /** Lower-case, strip Vietnamese diacritics and punctuation, collapse whitespace. */
+    public static String normalize(String s) {
+        if (s == null) return "";
+        String lower = s.toLowerCase(Locale.ROOT).trim();
+        String decomposed = Normalizer.normalize(lower, Normalizer.Form.NFD);
+        String noDiacritics = decomposed.replaceAll("\\p{M}+", "").replace('đ', 'd');
+        return noDiacritics.replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
+    }
+
+    /** Drop the index; inside a transaction the drop waits for commit. */
+    public void invalidate() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    drop();
+                }
+            });
+        } else {
+            drop();
+        }
+    }
+
+    private void drop() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot current() {
+        Snapshot s = snapshot;
+        if (s == null || System.currentTimeMillis() - s.loadedAtMs() > maxAgeMs) {
+            s = reload();
+        }
+        return s;
+    }
+
+    private synchronized Snapshot reload() {
+        Snapshot s = snapshot;
+        if (s != null && System.currentTimeMillis() - s.loadedAtMs() <= maxAgeMs) return s;
+        long gen = generation.get();
+        List<Map<String, Object>> items;
+        try {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> data = (List<Map<String, Object>>) productService
+                    .list(null, null, null, null, catalogLimit, 1).get("data");
+            items = data != null ? data : List.of();
+        } catch (Exception ex) {
+            // Serve nothing this time and retry on the next lookup
+            log.warn("Failed to load product catalog for chat: {}", ex.getMessage());
+            return new Snapshot(List.of(), Map.of(), System.currentTimeMillis());
+        }
+
+        List<Entry> entries = new ArrayList<>(items.size());
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (Map<String, Object> item : items) {
+            String name = String.valueOf(item.get("name"));
+            String norm = normalize(name);
+            int idx = entries.size();
+            entries.add(new Entry(item, name.toLowerCase(Locale.ROOT), norm, tokens(norm)));
+            for (String g : trigrams(norm)) postings.computeIfAbsent(g, k -> new ArrayList<>()).add(idx);
+        }
+        Map<String, int[]> byTrigram = new HashMap<>(postings.size() * 2);
+        postings.forEach((g, ids) -> byTrigram.put(g, ids.stream().mapToInt(Integer::intValue).toArray()));
+
+        s = new Snapshot(List.copyOf(entries), byTrigram, System.currentTimeMillis());
+        if (generation.get() == gen) snapshot = s;
+        return s;
+    }
+
+    // Entries sharing at least one trigram with the input; everything when none do (very short or odd input)
+    private static int[] candidates(Snapshot s, String input) {
+        BitSet hits = new BitSet(s.entries().size());
+        for (String g : trigrams(input)) {
+            int[] ids = s.byTrigram().get(g);
+            if (ids == null) continue;
+            for (int id : ids) hits.set(id);
+        }
+        if (hits.isEmpty()) hits.set(0, s.entries().size());
+        return hits.stream().toArray();
+    }
+
+    private static Set<String> trigrams(String norm) {
+        Set<String> grams = new HashSet<>();
+        String padded = " " + norm + " ";
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+
+    private static Set<String> tokens(String norm) {
+        Set<String> t = new HashSet<>(Arrays.asList(norm.split("\\s+")));
+        t.removeIf(String::isBlank);
+        return t;
+    }
+
+    /**
+     * Same scoring as the chat matcher always used: containment, then token overlap blended
+     * with Levenshtein. {@code floor} is the score to beat, so distances that cannot reach it
+     * stop early.
+     */
+    private static double similarityScore(String a, Set<String> at, Entry e, double floor) {
+        String b = e.norm();
+        if (a.equals(b)) return 1.0;
+        if (b.contains(a)) return Math.min(1.0, 0.9 * a.length() / Math.max(1, b.length()));
+        if (a.contains(b)) return Math.min(1.0, 0.9 * b.length() / Math.max(1, a.length()));
+
+        int maxLen = Math.max(Math.max(a.length(), b.length()), 1);
+        Set<String> bt = e.tokens();
+        if (!at.isEmpty() && !bt.isEmpty()) {
+            int intersect = 0;
+            for (String t : at) if (bt.contains(t)) intersect++;
+            double overlap = (double) intersect / Math.max(at.size(), bt.size());
+            double required = (floor - overlap * 0.2) / 0.8;
+            double lev = 1.0 - ((double) levenshtein(a, b, maxDistance(required, maxLen)) / maxLen);
+            return Math.max(overlap, lev * 0.8 + overlap * 0.2);
+        }
+        return 1.0 - ((double) levenshtein(a, b, maxDistance(floor, maxLen)) / maxLen);
+    }
+
+    private static int maxDistance(double requiredSimilarity, int maxLen) {
+        if (requiredSimilarity <= 0) return maxLen;
+        return (int) Math.floor((1.0 - requiredSimilarity) * maxLen);
+    }
+
+    /** Edit distance, or {@code maxDist + 1} as soon as it is certain to exceed {@code maxDist}. */
+    static int levenshtein(String s1, String s2, int maxDist) {
+        int len1 = s1.length();
+        int len2 = s2.length();
+        if (Math.abs(len1 - len2) > maxDist) return maxDist + 1;
+        int[][] rows = ROWS.get();
+        if (rows[0].length < len2 + 1) {
+            rows = new int[2][Math.max(len2 + 1, rows[0].length * 2)];
+            ROWS.set(rows);
+        }
+        int[] prev = rows[0];
+        int[] curr = rows[1];
+        for (int j = 0; j <= len2; j++) prev[j] = j;
+        for (int i = 1; i <= len1; i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            char c1 = s1.charAt(i - 1);
+            for (int j = 1; j <= len2; j++) {
+                int cost = (c1 == s2.charAt(j - 1)) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (curr[j] < rowMin) rowMin = curr[j];
+            }
+            if (rowMin > maxDist) return maxDist + 1;
+            int[] tmp = prev; prev = curr; curr = tmp;
+        }
+        return Math.min(prev[len2], maxDist + 1);
+    }
+}
@@ -2,12 +2,17 @@ package com.kopi.kopi.service;
 
 import com.kopi.kopi.dto.DashboardSummary;
 import com.kopi.kopi.dto.RevenuePoint;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 
 public interface ReportService {
-    enum Granularity { daily, weekly, monthly, quarterly, yearly }
+    enum Granularity { hourly, daily, weekly, monthly, quarterly, yearly }
     List<RevenuePoint> revenue(Granularity g, LocalDate from, LocalDate to, int buckets);
-    byte[] exportRevenueToExcel(Granularity g, LocalDate from, LocalDate to, int buckets);
+    // Ghi thẳng file .xlsx ra out (SXSSF), không giữ cả workbook trong bộ nhớ
+    void exportRevenueToExcel(Granularity g, LocalDate from, LocalDate to, int buckets, OutputStream out) throws IOException;
+    // Sheet "Orders" (một dòng mỗi đơn) và tùy chọn "Order items" (một dòng mỗi món), theo created_at trong [from, to]
+    void exportOrdersToExcel(LocalDate from, LocalDate to, boolean lineItems, OutputStream out) throws IOException;
     DashboardSummary summary();
 }
@@ -0,0 +1,281 @@
+package com.kopi.kopi.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hourly, daily and monthly paid-revenue buckets (dbo.revenue_hourly, dbo.revenue_daily,
+ * dbo.revenue_monthly), so reports read a row per bucket instead of scanning payments, and month,
+ * quarter and year figures read a row per full month plus the days of partial edge months. A payment whose paid state may have
+ * changed marks its day dirty; after commit the day is recomputed from its payments, which also
+ * covers payments that stop being paid, and its month is re-summed from the daily rows.
+ * Recomputes and rebuilds run on one worker thread, so they never interleave.
+ */
+@Component
+public class RevenueRollup {
+    private static final Logger log = LoggerFactory.getLogger(RevenueRollup.class);
+
+    /** One bucket; {@code orders} counts distinct orders, {@code payments} paid payments. */
+    public record Bucket(LocalDateTime start, BigDecimal total, int orders, int payments) {}
+
+    private static final String SELECT_PAID = "SELECT order_id, amount, paid_at FROM dbo.payments "
+            + "WHERE status = 'paid' AND paid_at >= ? AND paid_at < ?";
+    private static final String INSERT_HOURLY = "INSERT INTO dbo.revenue_hourly "
+            + "(bucket_start, total_amount, order_count, payment_count, updated_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_DAILY = "INSERT INTO dbo.revenue_daily "
+            + "(bucket_date, total_amount, order_count, payment_count, updated_at) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_MONTHLY = "INSERT INTO dbo.revenue_monthly "
+            + "(bucket_month, total_amount, order_count, payment_count, updated_at) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+
+    @Value("${app.reports.rollup.rebuild-chunk-days:31}")
+    private int rebuildChunkDays = 31;
+
+    private final Set<LocalDate> dirtyDays = ConcurrentHashMap.newKeySet();
+    private ExecutorService worker;
+
+    public RevenueRollup(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    void start() {
+        worker = Executors.newSingleThreadExecutor(SseConnection.daemonThreads("revenue-rollup"));
+    }
+
+    @PreDestroy
+    void stop() {
+        if (worker != null) worker.shutdownNow();
+    }
+
+    // First start on an existing database: fill the buckets from the payment history
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillIfEmpty() {
+        worker.execute(() -> {
+            try {
+                Integer days = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dbo.revenue_daily", Integer.class);
+                // months are empty too right after the migration that added them
+                Integer months = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dbo.revenue_monthly", Integer.class);
+                if (days == null || days == 0 || months == null || months == 0) {
+                    long t0 = System.currentTimeMillis();
+                    int filled = rebuildAllNow();
+                    log.info("Revenue rollups backfilled: {} days in {} ms", filled, System.currentTimeMillis() - t0);
+                }
+            } catch (Exception ex) {
+                log.warn("Revenue rollup backfill failed: {}", ex.getMessage());
+            }
+        });
+    }
+
+    /** Recompute the day of {@code paidAt} once the current transaction commits (or now, outside one). */
+    public void touch(LocalDateTime paidAt) {
+        if (paidAt == null) return;
+        LocalDate day = paidAt.toLocalDate();
+        Runnable mark = () -> {
+            dirtyDays.add(day);
+            worker.execute(this::recomputeDirty);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mark.run();
+                }
+            });
+        } else {
+            mark.run();
+        }
+    }
+
+    /** Recompute every bucket from {@code from} to {@code to} (inclusive); returns the days with revenue. */
+    public int rebuild(LocalDate from, LocalDate to) {
+        return await(worker.submit(() -> rebuildNow(from, to.plusDays(1))));
+    }
+
+    /** Recompute all buckets from the first paid payment until today. */
+    public int rebuildAll() {
+        return await(worker.submit(this::rebuildAllNow));
+    }
+
+    /** Wait until the recomputes queued so far are written. */
+    void flush() {
+        await(worker.submit(() -> 0));
+    }
+
+    public List<Bucket> hourly(LocalDateTime from, LocalDateTime toExclusive) {
+        return jdbcTemplate.query("SELECT bucket_start, total_amount, order_count, payment_count FROM dbo.revenue_hourly "
+                        + "WHERE bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start",
+                (rs, i) -> new Bucket(rs.getTimestamp(1).toLocalDateTime(), rs.getBigDecimal(2), rs.getInt(3), rs.getInt(4)),
+                Timestamp.valueOf(from), Timestamp.valueOf(toExclusive));
+    }
+
+    /** Days from {@code from} to {@code to} inclusive that had revenue, oldest first. */
+    public List<Bucket> daily(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query("SELECT bucket_date, total_amount, order_count, payment_count FROM dbo.revenue_daily "
+                        + "WHERE bucket_date >= ? AND bucket_date <= ? ORDER BY bucket_date",
+                (rs, i) -> new Bucket(rs.getDate(1).toLocalDate().atStartOfDay(), rs.getBigDecimal(2), rs.getInt(3),
+                        rs.getInt(4)),
+                java.sql.Date.valueOf(from), java.sql.Date.valueOf(to));
+    }
+
+    /** Months starting from {@code from} to {@code to} inclusive (first days of months) that had revenue, oldest first. */
+    public List<Bucket> monthly(LocalDate from, LocalDate to) {
+        return jdbcTemplate.query("SELECT bucket_month, total_amount, order_count, payment_count FROM dbo.revenue_monthly "
+                        + "WHERE bucket_month >= ? AND bucket_month <= ? ORDER BY bucket_month",
+                (rs, i) -> new Bucket(rs.getDate(1).toLocalDate().atStartOfDay(), rs.getBigDecimal(2), rs.getInt(3),
+                        rs.getInt(4)),
+                java.sql.Date.valueOf(from.withDayOfMonth(1)), java.sql.Date.valueOf(to.withDayOfMonth(1)));
+    }
+
+    /**
+     * Revenue per month of the days {@code from} to {@code to} inclusive, each bucket starting on the
+     * first of its month. Months fully inside the range read their month row; a partial first or
+     * last month is summed from its daily rows, so the totals cover exactly the requested days.
+     */
+    public List<Bucket> months(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return List.of();
+        LocalDate firstFull = from.getDayOfMonth() == 1 ? from : from.withDayOfMonth(1).plusMonths(1);
+        LocalDate afterFull = to.plusDays(1).withDayOfMonth(1); // the month after the last full one
+        if (!firstFull.isBefore(afterFull)) return sumMonths(daily(from, to));
+        List<Bucket> out = new ArrayList<>();
+        if (from.isBefore(firstFull)) out.addAll(sumMonths(daily(from, firstFull.minusDays(1))));
+        out.addAll(monthly(firstFull, afterFull.minusMonths(1)));
+        if (!to.isBefore(afterFull)) out.addAll(sumMonths(daily(afterFull, to)));
+        return out;
+    }
+
+    private static List<Bucket> sumMonths(List<Bucket> days) {
+        Map<LocalDate, Bucket> months = new TreeMap<>();
+        for (Bucket d : days) {
+            LocalDate month = d.start().toLocalDate().withDayOfMonth(1);
+            months.merge(month, new Bucket(month.atStartOfDay(), d.total(), d.orders(), d.payments()),
+                    (a, b) -> new Bucket(a.start(), a.total().add(b.total()), a.orders() + b.orders(),
+                            a.payments() + b.payments()));
+        }
+        return new ArrayList<>(months.values());
+    }
+
+    private void recomputeDirty() {
+        for (LocalDate day : List.copyOf(dirtyDays)) {
+            if (!dirtyDays.remove(day)) continue;
+            try {
+                recompute(day, day.plusDays(1));
+            } catch (Exception ex) {
+                dirtyDays.add(day); // retried with the next touch
+                log.warn("Revenue rollup of {} failed: {}", day, ex.getMessage());
+            }
+        }
+    }
+
+    private int rebuildAllNow() {
+        LocalDateTime first = jdbcTemplate.queryForObject(
+                "SELECT MIN(paid_at) FROM dbo.payments WHERE status = 'paid'", LocalDateTime.class);
+        LocalDate today = LocalDate.now();
+        LocalDate from = first != null ? first.toLocalDate() : today;
+        LocalDate until = today.plusDays(1);
+        // buckets outside the history can only be stale
+        jdbcTemplate.update("DELETE FROM dbo.revenue_hourly WHERE bucket_start < ? OR bucket_start >= ?",
+                Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(until.atStartOfDay()));
+        jdbcTemplate.update("DELETE FROM dbo.revenue_daily WHERE bucket_date < ? OR bucket_date >= ?",
+                java.sql.Date.valueOf(from), java.sql.Date.valueOf(until));
+        jdbcTemplate.update("DELETE FROM dbo.revenue_monthly WHERE bucket_month < ? OR bucket_month > ?",
+                java.sql.Date.valueOf(from.withDayOfMonth(1)), java.sql.Date.valueOf(today.withDayOfMonth(1)));
+        return rebuildNow(from, until);
+    }
+
+    private int rebuildNow(LocalDate from, LocalDate until) {
+        int days = 0;
+        for (LocalDate chunk = from; chunk.isBefore(until); chunk = chunk.plusDays(rebuildChunkDays)) {
+            LocalDate end = chunk.plusDays(rebuildChunkDays);
+            days += recompute(chunk, end.isAfter(until) ? until : end);
+        }
+        return days;
+    }
+
+    // Replace the buckets of [from, until) with aggregates of their paid payments; returns the days written
+    private int recompute(LocalDate from, LocalDate until) {
+        Integer written = tx.execute(s -> {
+            Map<LocalDateTime, Acc> hours = new TreeMap<>();
+            Map<LocalDate, Acc> days = new TreeMap<>();
+            jdbcTemplate.query(SELECT_PAID, rs -> {
+                int orderId = rs.getInt(1);
+                BigDecimal amount = rs.getBigDecimal(2);
+                LocalDateTime paidAt = rs.getTimestamp(3).toLocalDateTime();
+                hours.computeIfAbsent(paidAt.truncatedTo(ChronoUnit.HOURS), k -> new Acc()).add(orderId, amount);
+                days.computeIfAbsent(paidAt.toLocalDate(), k -> new Acc()).add(orderId, amount);
+            }, Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(until.atStartOfDay()));
+
+            jdbcTemplate.update("DELETE FROM dbo.revenue_hourly WHERE bucket_start >= ? AND bucket_start < ?",
+                    Timestamp.valueOf(from.atStartOfDay()), Timestamp.valueOf(until.atStartOfDay()));
+            jdbcTemplate.update("DELETE FROM dbo.revenue_daily WHERE bucket_date >= ? AND bucket_date < ?",
+                    java.sql.Date.valueOf(from), java.sql.Date.valueOf(until));
+
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            List<Object[]> hourRows = new ArrayList<>(hours.size());
+            hours.forEach((h, a) -> hourRows.add(new Object[]{Timestamp.valueOf(h), a.total, a.orders.size(), a.payments, now}));
+            List<Object[]> dayRows = new ArrayList<>(days.size());
+            days.forEach((d, a) -> dayRows.add(new Object[]{java.sql.Date.valueOf(d), a.total, a.orders.size(), a.payments, now}));
+            if (!hourRows.isEmpty()) jdbcTemplate.batchUpdate(INSERT_HOURLY, hourRows);
+            if (!dayRows.isEmpty()) jdbcTemplate.batchUpdate(INSERT_DAILY, dayRows);
+            resumMonths(from.withDayOfMonth(1), until.minusDays(1).withDayOfMonth(1).plusMonths(1), now);
+            return dayRows.size();
+        });
+        return written != null ? written : 0;
+    }
+
+    // Replace the month buckets of [fromMonth, untilMonth) with sums of their daily rows
+    private void resumMonths(LocalDate fromMonth, LocalDate untilMonth, Timestamp now) {
+        List<Bucket> months = sumMonths(daily(fromMonth, untilMonth.minusDays(1)));
+        jdbcTemplate.update("DELETE FROM dbo.revenue_monthly WHERE bucket_month >= ? AND bucket_month < ?",
+                java.sql.Date.valueOf(fromMonth), java.sql.Date.valueOf(untilMonth));
+        List<Object[]> rows = new ArrayList<>(months.size());
+        months.forEach(m -> rows.add(new Object[]{java.sql.Date.valueOf(m.start().toLocalDate()), m.total(),
+                m.orders(), m.payments(), now}));
+        if (!rows.isEmpty()) jdbcTemplate.batchUpdate(INSERT_MONTHLY, rows);
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the revenue rollup", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Revenue rollup failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static final class Acc {
+        BigDecimal total = BigDecimal.ZERO;
+        final Set<Integer> orders = new HashSet<>();
+        int payments;
+
+        void add(int orderId, BigDecimal amount) {
+            if (amount != null) total = total.add(amount);
+            orders.add(orderId);
+            payments++;
+        }
+    }
+}
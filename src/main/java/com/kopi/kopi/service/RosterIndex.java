@@ -0,0 +1,315 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.EmployeeShift;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory roster of {@code employee_shifts}, bucketed by date, for a rolling window around
+ * today ({@code app.roster.window.past-days} / {@code future-days}). Writers call
+ * {@link #touch} and the affected dates are reloaded after commit; MISSED statuses are set
+ * by a periodic sweeper, so reading the roster never writes.
+ */
+@Component
+public class RosterIndex {
+    private static final Logger log = LoggerFactory.getLogger(RosterIndex.class);
+    // compare-and-set on the status the sweep saw, so a row cancelled or completed since is left alone
+    private static final String MARK_MISSED_SQL = "UPDATE dbo.employee_shifts SET status = 'MISSED', updated_at = ? "
+            + "WHERE employee_shift_id = ? AND actual_check_in IS NULL AND COALESCE(status, '') = ?";
+    // the same rule as isMissed, for the days before the cached window
+    private static final String MARK_MISSED_BEFORE_SQL = "UPDATE dbo.employee_shifts SET status = 'MISSED', updated_at = ? "
+            + "WHERE shift_date < ? AND actual_check_in IS NULL AND (status IS NULL OR (LOWER(status) NOT LIKE '%miss%' "
+            + "AND LOWER(status) NOT LIKE '%completed%' AND LOWER(status) NOT LIKE '%cancel%'))";
+
+    /** One roster row, detached from JPA so it can be served without a session. */
+    public record Entry(Integer employeeShiftId, Integer shiftId, LocalDate shiftDate, Integer employeeId,
+                        String employeeName, String employeePositionName, String status, Integer workScheduleId,
+                        LocalTime overrideStartTime, LocalTime overrideEndTime, LocalTime shiftEndTime,
+                        LocalDateTime actualCheckIn, LocalDateTime actualCheckOut, Integer overtimeMinutes,
+                        String reason, String notes) {
+
+        Entry withStatus(String newStatus) {
+            return new Entry(employeeShiftId, shiftId, shiftDate, employeeId, employeeName, employeePositionName,
+                    newStatus, workScheduleId, overrideStartTime, overrideEndTime, shiftEndTime, actualCheckIn,
+                    actualCheckOut, overtimeMinutes, reason, notes);
+        }
+
+        /** Scheduled end: the row's override, else the shift template's end time. */
+        public LocalTime endTime() {
+            return overrideEndTime != null ? overrideEndTime : shiftEndTime;
+        }
+    }
+
+    /** The cached date range, published as one value so readers never see half of a change. */
+    private record Window(LocalDate from, LocalDate to) {}
+
+    private static final Comparator<Entry> ORDER = Comparator.comparing(Entry::shiftDate)
+            .thenComparing(Entry::employeeShiftId, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final EmployeeShiftRepository employeeShiftRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate ownTx;
+
+    @Value("${app.roster.window.past-days:35}")
+    private int pastDays = 35;
+
+    @Value("${app.roster.window.future-days:120}")
+    private int futureDays = 120;
+
+    @Value("${app.roster.sweeper.interval-ms:60000}")
+    private long sweepIntervalMs = 60000;
+
+    @Value("${app.roster.sweeper.enabled:true}")
+    private boolean sweeperEnabled = true;
+
+    // date -> (employeeShiftId -> entry); buckets are immutable and replaced whole
+    private final ConcurrentSkipListMap<LocalDate, Map<Integer, Entry>> buckets = new ConcurrentSkipListMap<>();
+    private volatile Window window;
+    // committed writes to days before the window, and the count and window start of the last database sweep
+    private final AtomicLong oldDayWrites = new AtomicLong();
+    private long sweptWrites = -1;
+    private LocalDate sweptBefore;
+    private ScheduledExecutorService sweeper;
+
+    public RosterIndex(EmployeeShiftRepository employeeShiftRepository, JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager) {
+        this.employeeShiftRepository = employeeShiftRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        // Reloads run from afterCommit callbacks, which need a transaction of their own
+        this.ownTx = new TransactionTemplate(transactionManager);
+        this.ownTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.ownTx.setReadOnly(true);
+    }
+
+    @PostConstruct
+    void startSweeper() {
+        if (!sweeperEnabled) return;
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "roster-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            try {
+                sweep();
+            } catch (Exception ex) {
+                log.warn("Roster sweep failed: {}", ex.getMessage());
+            }
+        }, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stopSweeper() {
+        if (sweeper != null) sweeper.shutdownNow();
+    }
+
+    /** Rows for the dates from..to (inclusive), optionally for one shift template, ordered by date. */
+    public List<Entry> range(LocalDate from, LocalDate to, Integer shiftId) {
+        List<Entry> out = new ArrayList<>();
+        if (from.isAfter(to)) return out;
+        Window w = ensureWindow();
+        if (!from.isBefore(w.from()) && !to.isAfter(w.to())) {
+            for (Map<Integer, Entry> bucket : buckets.subMap(from, true, to, true).values()) {
+                out.addAll(bucket.values());
+            }
+        }
+        if (window != w) {
+            // outside the cached window, or the window was dropped while reading: read straight
+            // from the database, still without writes
+            out.clear();
+            out.addAll(load(from, to));
+        }
+        if (shiftId != null) out.removeIf(e -> !shiftId.equals(e.shiftId()));
+        out.sort(ORDER);
+        return out;
+    }
+
+    /** Reload the given date after the current transaction commits (or now, outside one). */
+    public void touch(LocalDate date) {
+        if (date != null) touch(date, date);
+    }
+
+    /** Reload the dates from..to after the current transaction commits (or now, outside one). */
+    public void touch(LocalDate from, LocalDate to) {
+        if (from == null || to == null) return;
+        Runnable committed = () -> {
+            Window w = window;
+            // a write to days before the window is only seen by the database sweep
+            if (w == null || from.isBefore(w.from())) oldDayWrites.incrementAndGet();
+            reload(from, to);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed.run();
+                }
+            });
+        } else {
+            committed.run();
+        }
+    }
+
+    /**
+     * Mark rows that ended without a check-in as MISSED (cancelled and completed rows are left
+     * alone), in the database and in memory. Days before the window are swept in the database
+     * when the window moves or one of them is touched. Returns how many rows changed.
+     */
+    public int sweep() {
+        ensureWindow();
+        LocalDate today = LocalDate.now();
+        LocalTime now = LocalTime.now();
+        int marked = 0;
+        synchronized (this) {
+            Window w = window;
+            long writes = oldDayWrites.get();
+            if (w != null && (!w.from().equals(sweptBefore) || writes != sweptWrites)) {
+                marked += jdbcTemplate.update(MARK_MISSED_BEFORE_SQL, Timestamp.valueOf(LocalDateTime.now()),
+                        java.sql.Date.valueOf(w.from()));
+                sweptBefore = w.from();
+                sweptWrites = writes;
+            }
+            List<LocalDate> stale = new ArrayList<>();
+            for (Map.Entry<LocalDate, Map<Integer, Entry>> b : buckets.headMap(today, true).entrySet()) {
+                List<Entry> missed = new ArrayList<>();
+                for (Entry e : b.getValue().values()) {
+                    if (isMissed(e, today, now)) missed.add(e);
+                }
+                if (missed.isEmpty()) continue;
+                Timestamp at = Timestamp.valueOf(LocalDateTime.now());
+                List<Object[]> args = new ArrayList<>(missed.size());
+                for (Entry e : missed) args.add(new Object[]{at, e.employeeShiftId(), e.status() == null ? "" : e.status()});
+                int[] updated = jdbcTemplate.batchUpdate(MARK_MISSED_SQL, args);
+                Map<Integer, Entry> copy = new HashMap<>(b.getValue());
+                for (int i = 0; i < missed.size(); i++) {
+                    // a check-in or status change that raced the sweep keeps its row; the day is re-read
+                    if (updated[i] != 1) {
+                        if (!stale.contains(b.getKey())) stale.add(b.getKey());
+                        continue;
+                    }
+                    Entry e = missed.get(i);
+                    copy.put(e.employeeShiftId(), e.withStatus("MISSED"));
+                    marked++;
+                }
+                buckets.put(b.getKey(), Collections.unmodifiableMap(copy));
+            }
+            for (LocalDate d : stale) reload(d, d);
+        }
+        if (marked > 0) log.info("Roster sweep marked {} shifts as MISSED", marked);
+        return marked;
+    }
+
+    static boolean isMissed(Entry e, LocalDate today, LocalTime now) {
+        if (e.shiftDate() == null || e.actualCheckIn() != null) return false;
+        String st = e.status() == null ? "" : e.status().toLowerCase();
+        if (st.contains("miss") || st.contains("completed") || st.contains("cancel")) return false;
+        if (e.shiftDate().isBefore(today)) return true;
+        LocalTime end = e.endTime();
+        return e.shiftDate().equals(today) && end != null && now.isAfter(end);
+    }
+
+    // Load (or roll) the window so it covers today - pastDays .. today + futureDays
+    private Window ensureWindow() {
+        LocalDate today = LocalDate.now();
+        Window want = new Window(today.minusDays(pastDays), today.plusDays(futureDays));
+        Window w = window;
+        if (want.equals(w)) return w;
+        synchronized (this) {
+            w = window;
+            if (want.equals(w)) return w;
+            long t0 = System.currentTimeMillis();
+            if (w == null || w.to().isBefore(want.from())) {
+                buckets.clear();
+                fill(want.from(), want.to());
+            } else {
+                buckets.headMap(want.from(), false).clear();
+                if (want.to().isAfter(w.to())) fill(w.to().plusDays(1), want.to());
+            }
+            window = want;
+            log.debug("Roster window {}..{} ready in {} ms", want.from(), want.to(), System.currentTimeMillis() - t0);
+            return want;
+        }
+    }
+
+    private synchronized void reload(LocalDate from, LocalDate to) {
+        Window w = window;
+        if (w == null) return; // nothing cached yet; the first read loads fresh rows
+        LocalDate f = from.isBefore(w.from()) ? w.from() : from;
+        LocalDate t = to.isAfter(w.to()) ? w.to() : to;
+        if (f.isAfter(t)) return;
+        try {
+            fill(f, t);
+        } catch (Exception ex) {
+            // drop the cached window rather than serve stale rows; the next read reloads it
+            log.warn("Roster reload {}..{} failed: {}", f, t, ex.getMessage());
+            window = null;
+            buckets.clear();
+        }
+    }
+
+    // Replace the buckets from..to with fresh rows from one query
+    private void fill(LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<Integer, Entry>> fresh = new HashMap<>();
+        for (Entry e : load(from, to)) {
+            fresh.computeIfAbsent(e.shiftDate(), d -> new HashMap<>()).put(e.employeeShiftId(), e);
+        }
+        for (LocalDate d = from; !d.isAfter(to); d = d.plusDays(1)) {
+            Map<Integer, Entry> bucket = fresh.get(d);
+            buckets.put(d, bucket == null ? Map.of() : Collections.unmodifiableMap(bucket));
+        }
+    }
+
+    private List<Entry> load(LocalDate from, LocalDate to) {
+        List<Entry> out = ownTx.execute(status -> {
+            List<Entry> rows = new ArrayList<>();
+            for (EmployeeShift es : employeeShiftRepository.findRosterBetween(from, to)) {
+                rows.add(toEntry(es));
+            }
+            return rows;
+        });
+        return out != null ? out : List.of();
+    }
+
+    private static Entry toEntry(EmployeeShift es) {
+        var emp = es.getEmployee();
+        return new Entry(
+                es.getEmployeeShiftId(),
+                es.getShift() != null ? es.getShift().getShiftId() : null,
+                es.getShiftDate(),
+                emp != null ? emp.getUserId() : null,
+                emp != null ? (emp.getFullName() != null ? emp.getFullName() : emp.getUsername()) : null,
+                emp != null && emp.getPosition() != null ? emp.getPosition().getPositionName() : null,
+                es.getStatus(),
+                es.getWorkSchedule() != null ? es.getWorkSchedule().getWorkScheduleId() : null,
+                es.getOverrideStartTime(),
+                es.getOverrideEndTime(),
+                es.getShift() != null ? es.getShift().getEndTime() : null,
+                es.getActualCheckIn(),
+                es.getActualCheckOut(),
+                es.getOvertimeMinutes(),
+                es.getReason(),
+                es.getNotes());
+    }
+}
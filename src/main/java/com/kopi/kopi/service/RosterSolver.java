@@ -0,0 +1,293 @@
+package com.kopi.kopi.service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * Fills a date range of shifts from {@code PositionShiftRule} demands, in memory.
+ * Dates, shifts, staff and positions are int-indexed; an employee's shifts on one day are a
+ * {@code long} bitmask (so at most 64 shift templates), which makes "is this employee free for
+ * that shift" a single AND against the shift's overlap mask.
+ * <p>
+ * Slots are filled greedily (least loaded employee of the position first). Slots left empty
+ * are then repaired by moving one of the blocking employee's assignments to someone else.
+ */
+public final class RosterSolver {
+
+    public record ShiftSpec(int shiftId, LocalTime start, LocalTime end) {}
+
+    public record Staff(int userId, int positionId) {}
+
+    /** {@code required} employees of a position on every occurrence of a shift. */
+    public record Demand(int shiftId, int positionId, int required) {}
+
+    /**
+     * A live (not cancelled) assignment already in the roster; {@code userId} null for an open slot.
+     * {@code positionId} is only read when the user is not in the staff list (an admin, a deactivated
+     * employee): the seat still counts as filled but the assignment is never moved.
+     */
+    public record Existing(LocalDate date, int shiftId, Integer userId, Integer positionId) {
+        public Existing(LocalDate date, int shiftId, Integer userId) {
+            this(date, shiftId, userId, null);
+        }
+    }
+
+    public record Problem(List<LocalDate> dates, List<ShiftSpec> shifts, List<Staff> staff, List<Demand> demands,
+                          List<Existing> existing, int maxShiftsPerDay, int maxShiftsPerWeek) {}
+
+    public record Assignment(LocalDate date, int shiftId, int userId, int positionId) {}
+
+    public record Gap(LocalDate date, int shiftId, int positionId, int missing) {}
+
+    public record Solution(List<Assignment> assignments, List<Gap> gaps, int repaired, long elapsedMicros) {}
+
+    private static final int D = 0, S = 1, E = 2, P = 3;
+
+    private final Problem problem;
+    private final int days;
+    private final int[] weekOf;
+    private final long[] overlap;
+    private final int[] employeeUserId;
+    private final int[] employeePosition;
+    private final int[][] members; // position index -> employee indexes
+    private final int[] positionId;
+
+    private final long[][] dayMask;   // [day][employee] shifts held that day
+    private final int[][] weekLoad;   // [week][employee]
+    private final int[] totalLoad;    // [employee]
+    private final List<List<int[]>> byEmployee = new ArrayList<>(); // solver-made assignments per employee
+    private final List<int[]> made = new ArrayList<>();               // {day, shift, employee, position}
+
+    private RosterSolver(Problem problem) {
+        this.problem = problem;
+        List<ShiftSpec> shifts = problem.shifts();
+        if (shifts.size() > 64)
+            throw new IllegalArgumentException("At most 64 active shifts can be auto-assigned");
+        days = problem.dates().size();
+
+        // ISO week index relative to the first date's week
+        weekOf = new int[days];
+        LocalDate firstMonday = days == 0 ? null
+                : problem.dates().get(0).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        int weeks = 0;
+        for (int d = 0; d < days; d++) {
+            LocalDate monday = problem.dates().get(d).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            weekOf[d] = (int) ChronoUnit.WEEKS.between(firstMonday, monday);
+            weeks = Math.max(weeks, weekOf[d] + 1);
+        }
+
+        overlap = new long[shifts.size()];
+        for (int a = 0; a < shifts.size(); a++) {
+            overlap[a] |= 1L << a;
+            for (int b = 0; b < shifts.size(); b++) {
+                if (a != b && overlaps(shifts.get(a), shifts.get(b))) overlap[a] |= 1L << b;
+            }
+        }
+
+        Map<Integer, Integer> posIdx = new LinkedHashMap<>();
+        for (Staff st : problem.staff()) posIdx.putIfAbsent(st.positionId(), posIdx.size());
+        for (Demand dm : problem.demands()) posIdx.putIfAbsent(dm.positionId(), posIdx.size());
+        positionId = new int[posIdx.size()];
+        posIdx.forEach((id, i) -> positionId[i] = id);
+
+        int n = problem.staff().size();
+        employeeUserId = new int[n];
+        employeePosition = new int[n];
+        int[] perPosition = new int[positionId.length];
+        for (int e = 0; e < n; e++) {
+            employeeUserId[e] = problem.staff().get(e).userId();
+            employeePosition[e] = posIdx.get(problem.staff().get(e).positionId());
+            perPosition[employeePosition[e]]++;
+            byEmployee.add(new ArrayList<>());
+        }
+        members = new int[positionId.length][];
+        for (int p = 0; p < positionId.length; p++) members[p] = new int[perPosition[p]];
+        int[] fill = new int[positionId.length];
+        for (int e = 0; e < n; e++) members[employeePosition[e]][fill[employeePosition[e]]++] = e;
+
+        dayMask = new long[days][n];
+        weekLoad = new int[weeks][n];
+        totalLoad = new int[n];
+    }
+
+    public static Solution solve(Problem problem) {
+        long t0 = System.nanoTime();
+        RosterSolver solver = new RosterSolver(problem);
+        return solver.run(t0);
+    }
+
+    private Solution run(long t0) {
+        List<ShiftSpec> shifts = problem.shifts();
+        Map<Integer, Integer> shiftIdx = new HashMap<>();
+        for (int s = 0; s < shifts.size(); s++) shiftIdx.put(shifts.get(s).shiftId(), s);
+        Map<LocalDate, Integer> dateIdx = new HashMap<>();
+        for (int d = 0; d < days; d++) dateIdx.put(problem.dates().get(d), d);
+        Map<Integer, Integer> employeeIdx = new HashMap<>();
+        for (int e = 0; e < employeeUserId.length; e++) employeeIdx.put(employeeUserId[e], e);
+        Map<Integer, Integer> posIdx = new HashMap<>();
+        for (int p = 0; p < positionId.length; p++) posIdx.put(positionId[p], p);
+
+        // seats already taken per [day][shift][position], and existing load on the staff
+        int[][][] filled = new int[days][shifts.size()][positionId.length];
+        List<int[]> unplaced = new ArrayList<>(); // {day, shift} held by someone of no known position
+        for (Existing ex : problem.existing()) {
+            Integer d = dateIdx.get(ex.date());
+            Integer s = shiftIdx.get(ex.shiftId());
+            if (d == null || s == null || ex.userId() == null) continue;
+            Integer e = employeeIdx.get(ex.userId());
+            if (e == null) {
+                // not assignable, but still occupies a seat of the shift
+                Integer p = ex.positionId() == null ? null : posIdx.get(ex.positionId());
+                if (p != null) filled[d][s][p]++;
+                else unplaced.add(new int[]{d, s});
+                continue;
+            }
+            dayMask[d][e] |= 1L << s;
+            weekLoad[weekOf[d]][e]++;
+            totalLoad[e]++;
+            filled[d][s][employeePosition[e]]++;
+        }
+
+        // per shift: demands, scarcest position first
+        List<List<int[]>> demandsByShift = new ArrayList<>();
+        for (int s = 0; s < shifts.size(); s++) demandsByShift.add(new ArrayList<>());
+        for (Demand dm : problem.demands()) {
+            Integer s = shiftIdx.get(dm.shiftId());
+            if (s == null || dm.required() <= 0) continue;
+            demandsByShift.get(s).add(new int[]{posIdx.get(dm.positionId()), dm.required()});
+        }
+        for (List<int[]> list : demandsByShift) list.sort(Comparator.comparingInt(x -> members[x[0]].length));
+        // a seat held without a position goes to the first demand of the shift that still has room
+        for (int[] u : unplaced) {
+            for (int[] dm : demandsByShift.get(u[1])) {
+                if (filled[u[0]][u[1]][dm[0]] < dm[1]) {
+                    filled[u[0]][u[1]][dm[0]]++;
+                    break;
+                }
+            }
+        }
+        Integer[] shiftOrder = new Integer[shifts.size()];
+        for (int s = 0; s < shiftOrder.length; s++) shiftOrder[s] = s;
+        Arrays.sort(shiftOrder, Comparator.comparing((Integer s) -> shifts.get(s).start(),
+                Comparator.nullsLast(Comparator.naturalOrder())));
+
+        List<int[]> open = new ArrayList<>(); // {day, shift, position}
+        for (int d = 0; d < days; d++) {
+            for (int s : shiftOrder) {
+                for (int[] dm : demandsByShift.get(s)) {
+                    int p = dm[0];
+                    for (int k = filled[d][s][p]; k < dm[1]; k++) {
+                        int e = best(d, s, p, -1);
+                        if (e < 0) {
+                            open.add(new int[]{d, s, p});
+                        } else {
+                            assign(new int[]{d, s, e, p});
+                        }
+                    }
+                }
+            }
+        }
+
+        int repaired = 0;
+        List<int[]> stillOpen = new ArrayList<>();
+        for (int[] slot : open) {
+            if (repair(slot[0], slot[1], slot[2])) repaired++;
+            else stillOpen.add(slot);
+        }
+
+        List<Assignment> assignments = new ArrayList<>(made.size());
+        for (int[] a : made) {
+            assignments.add(new Assignment(problem.dates().get(a[D]), shifts.get(a[S]).shiftId(),
+                    employeeUserId[a[E]], positionId[a[P]]));
+        }
+        assignments.sort(Comparator.comparing(Assignment::date).thenComparingInt(Assignment::shiftId)
+                .thenComparingInt(Assignment::positionId).thenComparingInt(Assignment::userId));
+
+        Map<String, int[]> gapCount = new LinkedHashMap<>();
+        for (int[] slot : stillOpen) {
+            gapCount.computeIfAbsent(slot[0] + ":" + slot[1] + ":" + slot[2], k -> new int[]{slot[0], slot[1], slot[2], 0})[3]++;
+        }
+        List<Gap> gaps = new ArrayList<>();
+        for (int[] g : gapCount.values()) {
+            gaps.add(new Gap(problem.dates().get(g[0]), shifts.get(g[1]).shiftId(), positionId[g[2]], g[3]));
+        }
+        return new Solution(assignments, gaps, repaired, (System.nanoTime() - t0) / 1000);
+    }
+
+    // Least loaded employee of position p who can take shift s on day d, or -1
+    private int best(int d, int s, int p, int excluded) {
+        int[] pool = members[p];
+        int bestE = -1;
+        int n = pool.length;
+        for (int i = 0; i < n; i++) {
+            // rotate the starting point by day so ties do not always go to the same person
+            int e = pool[(i + d) % n];
+            if (e == excluded || !feasible(d, s, e)) continue;
+            if (bestE < 0 || weekLoad[weekOf[d]][e] < weekLoad[weekOf[d]][bestE]
+                    || (weekLoad[weekOf[d]][e] == weekLoad[weekOf[d]][bestE] && totalLoad[e] < totalLoad[bestE]))
+                bestE = e;
+        }
+        return bestE;
+    }
+
+    private boolean feasible(int d, int s, int e) {
+        long mask = dayMask[d][e];
+        return (mask & overlap[s]) == 0
+                && Long.bitCount(mask) < problem.maxShiftsPerDay()
+                && weekLoad[weekOf[d]][e] < problem.maxShiftsPerWeek();
+    }
+
+    /**
+     * Give the open seat to an employee of position p who is blocked by one of their own
+     * solver-made assignments, moving that assignment to another employee who is free for it.
+     */
+    private boolean repair(int d, int s, int p) {
+        for (int e : members[p]) {
+            for (int[] a : new ArrayList<>(byEmployee.get(e))) {
+                // only an assignment on the same day or in the same week can be what blocks e
+                if (a[D] != d && weekOf[a[D]] != weekOf[d]) continue;
+                unapply(a);
+                if (feasible(d, s, e)) {
+                    int e2 = best(a[D], a[S], a[P], e);
+                    if (e2 >= 0) {
+                        a[E] = e2;
+                        apply(a);
+                        assign(new int[]{d, s, e, p});
+                        return true;
+                    }
+                }
+                apply(a);
+            }
+        }
+        return false;
+    }
+
+    private void assign(int[] a) {
+        made.add(a);
+        apply(a);
+    }
+
+    private void apply(int[] a) {
+        dayMask[a[D]][a[E]] |= 1L << a[S];
+        weekLoad[weekOf[a[D]]][a[E]]++;
+        totalLoad[a[E]]++;
+        byEmployee.get(a[E]).add(a);
+    }
+
+    private void unapply(int[] a) {
+        dayMask[a[D]][a[E]] &= ~(1L << a[S]);
+        weekLoad[weekOf[a[D]]][a[E]]--;
+        totalLoad[a[E]]--;
+        byEmployee.get(a[E]).remove(a);
+    }
+
+    private static boolean overlaps(ShiftSpec a, ShiftSpec b) {
+        if (a.start() == null || a.end() == null || b.start() == null || b.end() == null) return false;
+        // overlap if start1 < end2 && start2 < end1
+        return a.start().isBefore(b.end()) && b.start().isBefore(a.end());
+    }
+}
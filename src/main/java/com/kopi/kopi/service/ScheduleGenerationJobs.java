@@ -0,0 +1,217 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.WorkScheduleGeneration;
+import com.kopi.kopi.repository.WorkScheduleGenerationRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs schedule generations in the background. Each job is a {@code work_schedule_generations}
+ * row that is polled for progress; dates are written one ISO week per transaction, so a
+ * failure only rolls back the week being written and stops the job there. Jobs live in this
+ * process's executor only, so rows a previous process left queued or running are failed at startup.
+ */
+@Component
+public class ScheduleGenerationJobs {
+    private static final Logger log = LoggerFactory.getLogger(ScheduleGenerationJobs.class);
+    private static final int MAX_CONFLICTS_LENGTH = 4000;
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+
+    /** Accepted job: its generation id and a future completed with the final row. */
+    public record Ticket(Integer generationId, CompletableFuture<WorkScheduleGeneration> done) {}
+
+    private final ShiftGenerationEngine engine;
+    private final WorkScheduleGenerationRepository generationRepository;
+    private final ThreadPoolExecutor executor;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+
+    public ScheduleGenerationJobs(ShiftGenerationEngine engine,
+                                  WorkScheduleGenerationRepository generationRepository,
+                                  @Value("${app.schedule.generation.workers:2}") int workers,
+                                  @Value("${app.schedule.generation.queue-capacity:20}") int queueCapacity) {
+        this.engine = engine;
+        this.generationRepository = generationRepository;
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "schedule-gen-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Fail the jobs a stopped process left queued or running: rows not touched since this process
+     * started cannot be in its executor. Returns how many were failed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public int failOrphans() {
+        try {
+            int n = generationRepository.failUnfinishedBefore(List.of(QUEUED, RUNNING), startedAt, FAILED,
+                    "Interrupted by a server restart", LocalDateTime.now());
+            if (n > 0) log.warn("Marked {} schedule generation(s) left unfinished by a restart as failed", n);
+            return n;
+        } catch (Exception ex) {
+            log.warn("Failing orphaned schedule generations failed: {}", ex.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Record the job and queue it. Throws {@link RejectedExecutionException} when the queue
+     * is full; the row is then left as failed.
+     */
+    public Ticket submit(ShiftGenerationEngine.Spec spec, String type, Integer interval, List<LocalDate> candidates) {
+        LocalDateTime now = LocalDateTime.now();
+        WorkScheduleGeneration job = generationRepository.save(WorkScheduleGeneration.builder()
+                .name(spec.name())
+                .description(spec.description())
+                .anchorDate(spec.anchorDate())
+                .startDate(spec.startDate())
+                .endDate(spec.endDate())
+                .recurrenceId(spec.recurrenceId())
+                .type(type)
+                .intervalDays(interval)
+                .createdByUserId(spec.adminUserId())
+                .createdAt(now)
+                .updatedAt(now)
+                .status(QUEUED)
+                .totalDates(candidates.size())
+                .processedDates(0)
+                .createdCount(0)
+                .updatedCount(0)
+                .skippedCount(0)
+                .build());
+
+        CompletableFuture<WorkScheduleGeneration> done = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    done.complete(run(job, spec, candidates));
+                } catch (Throwable t) {
+                    done.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            job.setStatus(FAILED);
+            job.setErrorMessage("Generation queue is full");
+            job.setFinishedAt(LocalDateTime.now());
+            save(job);
+            throw ex;
+        }
+        return new Ticket(job.getGenerationId(), done);
+    }
+
+    private WorkScheduleGeneration run(WorkScheduleGeneration job, ShiftGenerationEngine.Spec spec,
+                                       List<LocalDate> candidates) {
+        long startedAt = System.currentTimeMillis();
+        job.setStatus(RUNNING);
+        save(job);
+
+        ShiftGenerationEngine.Plan plan;
+        try {
+            plan = engine.prepare(spec, candidates);
+        } catch (Exception ex) {
+            return fail(job, ex);
+        }
+        job.setWorkScheduleId(plan.workScheduleId());
+        job.setConflicts(joinConflicts(plan.conflicts()));
+        job.setSkippedCount(plan.skipped());
+        job.setProcessedDates(plan.skipped());
+        // the span work schedule itself counts as created, as in the synchronous response
+        job.setCreatedCount(plan.changed() ? 1 : 0);
+        save(job);
+
+        for (List<LocalDate> week : byWeek(plan.targets())) {
+            try {
+                ShiftGenerationEngine.ChunkResult r = engine.writeChunk(plan, week, null);
+                job.setCreatedCount(job.getCreatedCount() + r.created());
+                job.setUpdatedCount(job.getUpdatedCount() + r.updated());
+                job.setProcessedDates(job.getProcessedDates() + week.size());
+                save(job);
+            } catch (Exception ex) {
+                // earlier weeks stay committed; drop the span schedule if nothing made it in
+                if (plan.changed()) engine.dropIfEmpty(plan.workScheduleId());
+                return fail(job, ex);
+            }
+        }
+
+        job.setStatus(COMPLETED);
+        job.setFinishedAt(LocalDateTime.now());
+        save(job);
+        log.info("Schedule generation {} completed: {} created, {} updated, {} skipped in {} ms",
+                job.getGenerationId(), job.getCreatedCount(), job.getUpdatedCount(), job.getSkippedCount(),
+                System.currentTimeMillis() - startedAt);
+        return job;
+    }
+
+    private WorkScheduleGeneration fail(WorkScheduleGeneration job, Exception ex) {
+        log.warn("Schedule generation {} failed after {} dates: {}", job.getGenerationId(), job.getProcessedDates(),
+                ex.getMessage());
+        String msg = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        job.setStatus(FAILED);
+        job.setErrorMessage(msg.length() > 500 ? msg.substring(0, 500) : msg);
+        job.setFinishedAt(LocalDateTime.now());
+        save(job);
+        return job;
+    }
+
+    private void save(WorkScheduleGeneration job) {
+        job.setUpdatedAt(LocalDateTime.now());
+        generationRepository.save(job);
+    }
+
+    // Dates grouped by the Monday of their week, in order
+    static List<List<LocalDate>> byWeek(List<LocalDate> dates) {
+        Map<LocalDate, List<LocalDate>> weeks = new LinkedHashMap<>();
+        for (LocalDate d : dates) {
+            weeks.computeIfAbsent(d.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), k -> new ArrayList<>())
+                    .add(d);
+        }
+        return new ArrayList<>(weeks.values());
+    }
+
+    private static String joinConflicts(List<String> conflicts) {
+        if (conflicts == null || conflicts.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < conflicts.size(); i++) {
+            String next = (i == 0 ? "" : ",") + conflicts.get(i);
+            String more = ",...(+" + (conflicts.size() - i) + ")";
+            if (sb.length() + next.length() + more.length() > MAX_CONFLICTS_LENGTH) {
+                sb.append(more);
+                break;
+            }
+            sb.append(next);
+        }
+        return sb.toString();
+    }
+}
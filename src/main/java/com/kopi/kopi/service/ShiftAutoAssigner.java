@@ -0,0 +1,222 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.PositionShiftRule;
+import com.kopi.kopi.entity.Shift;
+import com.kopi.kopi.entity.User;
+import com.kopi.kopi.entity.WorkSchedule;
+import com.kopi.kopi.entity.enums.UserStatus;
+import com.kopi.kopi.repository.PositionShiftRuleRepository;
+import com.kopi.kopi.repository.ShiftRepository;
+import com.kopi.kopi.repository.UserRepository;
+import com.kopi.kopi.repository.WorkScheduleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Auto-assigns staff to the open seats of a date range. Shifts, rules, staff and the current
+ * roster are loaded up front, {@link RosterSolver} decides everything in memory, and the
+ * result is written as two JDBC batches: open slots of the same shift/date are filled first,
+ * the rest are inserted.
+ */
+@Component
+public class ShiftAutoAssigner {
+    private static final Logger log = LoggerFactory.getLogger(ShiftAutoAssigner.class);
+
+    private static final String FILL_OPEN_SQL = "UPDATE dbo.employee_shifts SET employee_id = ?, override_start_time = ?, "
+            + "override_end_time = ?, updated_by_user_id = ?, updated_at = ? "
+            + "WHERE employee_shift_id = ? AND employee_id IS NULL";
+    private static final String INSERT_SQL = "INSERT INTO dbo.employee_shifts (work_schedule_id, employee_id, shift_id, "
+            + "shift_date, status, notes, override_start_time, override_end_time, created_by_user_id, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    public record Result(RosterSolver.Solution solution, int filledOpenSlots, int created, boolean preview) {}
+
+    private final ShiftRepository shiftRepository;
+    private final PositionShiftRuleRepository ruleRepository;
+    private final UserRepository userRepository;
+    private final WorkScheduleRepository workScheduleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RosterIndex rosterIndex;
+
+    @Value("${app.roster.auto-assign.max-shifts-per-day:2}")
+    private int maxShiftsPerDay = 2;
+
+    @Value("${app.roster.auto-assign.max-shifts-per-week:6}")
+    private int maxShiftsPerWeek = 6;
+
+    @Value("${app.roster.auto-assign.max-days:92}")
+    private int maxDays = 92;
+
+    @Value("${app.schedule.generation.batch-size:500}")
+    private int batchSize = 500;
+
+    public ShiftAutoAssigner(ShiftRepository shiftRepository, PositionShiftRuleRepository ruleRepository,
+                             UserRepository userRepository, WorkScheduleRepository workScheduleRepository,
+                             JdbcTemplate jdbcTemplate, RosterIndex rosterIndex) {
+        this.shiftRepository = shiftRepository;
+        this.ruleRepository = ruleRepository;
+        this.userRepository = userRepository;
+        this.workScheduleRepository = workScheduleRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rosterIndex = rosterIndex;
+    }
+
+    /**
+     * Fill every rule's required count for start..end (past dates are skipped). With
+     * {@code preview} the plan is returned without writing anything.
+     */
+    @Transactional
+    public Result autoAssign(LocalDate start, LocalDate end, boolean preview, Integer adminUserId) {
+        if (start == null || end == null || end.isBefore(start))
+            throw new IllegalArgumentException("Invalid date range");
+        LocalDate today = LocalDate.now();
+        if (start.isBefore(today)) start = today;
+        if (ChronoUnit.DAYS.between(start, end) + 1 > maxDays)
+            throw new IllegalArgumentException("Auto-assign covers at most " + maxDays + " days");
+
+        RosterSolver.Problem problem = load(start, end);
+        RosterSolver.Solution solution = RosterSolver.solve(problem);
+        log.info("Auto-assign {}..{}: {} assignments, {} gaps, {} repaired in {} us", start, end,
+                solution.assignments().size(), solution.gaps().size(), solution.repaired(), solution.elapsedMicros());
+        if (preview || solution.assignments().isEmpty())
+            return new Result(solution, 0, 0, preview);
+
+        int[] written = persist(start, end, solution, problem, adminUserId);
+        rosterIndex.touch(start, end);
+        return new Result(solution, written[0], written[1], false);
+    }
+
+    RosterSolver.Problem load(LocalDate start, LocalDate end) {
+        List<LocalDate> dates = new ArrayList<>();
+        for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) dates.add(d);
+
+        List<RosterSolver.ShiftSpec> shifts = new ArrayList<>();
+        for (Shift s : shiftRepository.findByIsActiveTrue()) {
+            shifts.add(new RosterSolver.ShiftSpec(s.getShiftId(), s.getStartTime(), s.getEndTime()));
+        }
+        Set<Integer> activeShiftIds = new HashSet<>();
+        shifts.forEach(s -> activeShiftIds.add(s.shiftId()));
+
+        List<RosterSolver.Demand> demands = new ArrayList<>();
+        for (PositionShiftRule r : ruleRepository.findAll()) {
+            if (!r.isAllowed() || r.getRequiredCount() == null || r.getRequiredCount() <= 0) continue;
+            if (r.getShift() == null || r.getPosition() == null) continue;
+            // reading the ids does not initialize the lazy proxies
+            Integer shiftId = r.getShift().getShiftId();
+            if (!activeShiftIds.contains(shiftId)) continue;
+            demands.add(new RosterSolver.Demand(shiftId, r.getPosition().getPositionId(), r.getRequiredCount()));
+        }
+
+        List<RosterSolver.Staff> staff = new ArrayList<>();
+        for (User u : userRepository.findWithPositionByRoleNamesAndStatus(List.of("STAFF", "EMPLOYEE"),
+                UserStatus.ACTIVE)) {
+            staff.add(new RosterSolver.Staff(u.getUserId(), u.getPosition().getPositionId()));
+        }
+
+        Set<Integer> staffIds = new HashSet<>();
+        staff.forEach(st -> staffIds.add(st.userId()));
+        List<RosterIndex.Entry> live = new ArrayList<>();
+        Set<Integer> outsiders = new HashSet<>();
+        for (RosterIndex.Entry e : rosterIndex.range(start, end, null)) {
+            if (isCancelled(e)) continue;
+            live.add(e);
+            if (e.employeeId() != null && !staffIds.contains(e.employeeId())) outsiders.add(e.employeeId());
+        }
+        // admins or deactivated staff already on the roster still take a seat of their position
+        Map<Integer, Integer> outsiderPosition = new HashMap<>();
+        if (!outsiders.isEmpty()) {
+            for (User u : userRepository.findAllById(outsiders)) {
+                if (u.getPosition() != null) outsiderPosition.put(u.getUserId(), u.getPosition().getPositionId());
+            }
+        }
+        List<RosterSolver.Existing> existing = new ArrayList<>(live.size());
+        for (RosterIndex.Entry e : live) {
+            existing.add(new RosterSolver.Existing(e.shiftDate(), e.shiftId(), e.employeeId(),
+                    outsiderPosition.get(e.employeeId())));
+        }
+        return new RosterSolver.Problem(dates, shifts, staff, demands, existing, maxShiftsPerDay, maxShiftsPerWeek);
+    }
+
+    // Returns {open slots filled, rows inserted}
+    private int[] persist(LocalDate start, LocalDate end, RosterSolver.Solution solution, RosterSolver.Problem problem,
+                          Integer adminUserId) {
+        Map<Integer, RosterSolver.ShiftSpec> shiftById = new HashMap<>();
+        problem.shifts().forEach(s -> shiftById.put(s.shiftId(), s));
+
+        // open rows per "date|shiftId", reused before inserting new ones
+        Map<String, Deque<Integer>> openSlots = new HashMap<>();
+        for (RosterIndex.Entry e : rosterIndex.range(start, end, null)) {
+            if (e.employeeId() != null || isCancelled(e)) continue;
+            openSlots.computeIfAbsent(e.shiftDate() + "|" + e.shiftId(), k -> new ArrayDeque<>()).add(e.employeeShiftId());
+        }
+
+        List<WorkSchedule> schedules =
+                workScheduleRepository.findByStartDateLessThanEqualAndEndDateGreaterThanEqualOrderByWorkScheduleIdAsc(end, start);
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> fills = new ArrayList<>();
+        List<RosterSolver.Assignment> fillFor = new ArrayList<>();
+        List<RosterSolver.Assignment> inserts = new ArrayList<>();
+        for (RosterSolver.Assignment a : solution.assignments()) {
+            RosterSolver.ShiftSpec s = shiftById.get(a.shiftId());
+            Deque<Integer> open = openSlots.get(a.date() + "|" + a.shiftId());
+            if (open != null && !open.isEmpty()) {
+                fills.add(new Object[]{a.userId(), time(s.start()), time(s.end()), adminUserId, now, open.poll()});
+                fillFor.add(a);
+            } else {
+                inserts.add(a);
+            }
+        }
+
+        int filled = 0;
+        for (int from = 0; from < fills.size(); from += batchSize) {
+            int to = Math.min(fills.size(), from + batchSize);
+            int[] counts = jdbcTemplate.batchUpdate(FILL_OPEN_SQL, fills.subList(from, to));
+            for (int i = 0; i < counts.length; i++) {
+                // the slot was taken since the roster was read: insert a row instead
+                if (counts[i] == 0) inserts.add(fillFor.get(from + i));
+                else filled++;
+            }
+        }
+
+        List<Object[]> rows = new ArrayList<>(inserts.size());
+        for (RosterSolver.Assignment a : inserts) {
+            RosterSolver.ShiftSpec s = shiftById.get(a.shiftId());
+            rows.add(new Object[]{covering(schedules, a.date()), a.userId(), a.shiftId(), Date.valueOf(a.date()),
+                    "assigned", null, time(s.start()), time(s.end()), adminUserId, now});
+        }
+        for (int from = 0; from < rows.size(); from += batchSize) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows.subList(from, Math.min(rows.size(), from + batchSize)));
+        }
+        return new int[]{filled, rows.size()};
+    }
+
+    private static Integer covering(List<WorkSchedule> schedules, LocalDate date) {
+        for (WorkSchedule ws : schedules) {
+            if (ws.getStartDate() != null && ws.getEndDate() != null
+                    && !date.isBefore(ws.getStartDate()) && !date.isAfter(ws.getEndDate()))
+                return ws.getWorkScheduleId();
+        }
+        return null;
+    }
+
+    private static boolean isCancelled(RosterIndex.Entry e) {
+        return e.status() != null && e.status().toLowerCase().contains("cancel");
+    }
+
+    private static Time time(java.time.LocalTime t) {
+        return t != null ? Time.valueOf(t) : null;
+    }
+}
@@ -0,0 +1,314 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.EmployeeShift;
+import com.kopi.kopi.entity.WorkSchedule;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import com.kopi.kopi.repository.RecurrencePatternRepository;
+import com.kopi.kopi.repository.UserRepository;
+import com.kopi.kopi.repository.WorkScheduleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Copies the shifts of an anchor date onto generated dates. Existing assignments for the
+ * whole range are read with one query and conflicts are decided in memory; new rows go
+ * out as JDBC batches of {@code app.schedule.generation.batch-size}.
+ */
+@Component
+public class ShiftGenerationEngine {
+    private static final Logger log = LoggerFactory.getLogger(ShiftGenerationEngine.class);
+
+    private static final String INSERT_SQL = "INSERT INTO dbo.employee_shifts (work_schedule_id, employee_id, shift_id, "
+            + "shift_date, status, notes, override_start_time, override_end_time, created_by_user_id, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String EXISTING_SQL =
+            "SELECT employee_shift_id, shift_date, work_schedule_id FROM dbo.employee_shifts WHERE shift_date BETWEEN ? AND ?";
+    private static final String DELETE_SQL = "DELETE FROM dbo.employee_shifts WHERE employee_shift_id = ?";
+    private static final String DROP_EMPTY_SCHEDULE_SQL = "DELETE FROM dbo.work_schedules WHERE work_schedule_id = ? "
+            + "AND NOT EXISTS (SELECT 1 FROM dbo.employee_shifts WHERE work_schedule_id = ?)";
+
+    public record Spec(String name, String description, LocalDate anchorDate, LocalDate startDate, LocalDate endDate,
+                       Integer recurrenceId, boolean overwrite, Integer adminUserId) {}
+
+    /** One anchor assignment reduced to the values copied onto each generated date. */
+    public record Template(Integer employeeId, Integer shiftId, String status, String notes,
+                           LocalTime startTime, LocalTime endTime) {}
+
+    public record Result(boolean changed, Integer workScheduleId, int created, int updated, int skipped,
+                         List<String> conflicts, int anchorShiftCount, long elapsedMs) {}
+
+    /** What {@link #prepare} decided: the dates to write and the span work schedule they go into. */
+    public record Plan(Integer workScheduleId, List<LocalDate> targets, List<Template> templates,
+                       List<String> conflicts, int skipped, boolean overwrite, Integer adminUserId) {
+        public boolean changed() {
+            return workScheduleId != null;
+        }
+    }
+
+    public record ChunkResult(int created, int updated) {}
+
+    @FunctionalInterface
+    public interface Progress {
+        void update(int datesDone, int datesTotal, int rowsWritten);
+    }
+
+    private final EmployeeShiftRepository employeeShiftRepository;
+    private final WorkScheduleRepository workScheduleRepository;
+    private final UserRepository userRepository;
+    private final RecurrencePatternRepository recurrencePatternRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final RosterIndex rosterIndex;
+
+    @Value("${app.schedule.generation.batch-size:500}")
+    private int batchSize = 500;
+
+    public ShiftGenerationEngine(EmployeeShiftRepository employeeShiftRepository,
+                                 WorkScheduleRepository workScheduleRepository,
+                                 UserRepository userRepository,
+                                 RecurrencePatternRepository recurrencePatternRepository,
+                                 JdbcTemplate jdbcTemplate,
+                                 RosterIndex rosterIndex) {
+        this.employeeShiftRepository = employeeShiftRepository;
+        this.workScheduleRepository = workScheduleRepository;
+        this.userRepository = userRepository;
+        this.recurrencePatternRepository = recurrencePatternRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rosterIndex = rosterIndex;
+    }
+
+    /** Dates between start and end matching a DAILY (every N days from start) or WEEKLY pattern. */
+    public static List<LocalDate> candidates(String type, LocalDate anchor, LocalDate start, LocalDate end,
+                                             Integer interval, List<String> daysOfWeek) {
+        List<LocalDate> out = new ArrayList<>();
+        String t = (type == null) ? "" : type.toUpperCase();
+        if ("DAILY".equals(t)) {
+            int iv = (interval == null || interval < 1) ? 1 : interval;
+            // For DAILY patterns the step should be calculated from the provided start date
+            // (start is always selected). So include start and then step by interval days.
+            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(iv)) {
+                out.add(d);
+            }
+            return out;
+        }
+        if ("WEEKLY".equals(t)) {
+            Set<DayOfWeek> set = new HashSet<>();
+            if (daysOfWeek != null) {
+                for (String s : daysOfWeek) {
+                    if (s == null)
+                        continue;
+                    switch (s.trim().toUpperCase()) {
+                        case "MON", "MONDAY" -> set.add(DayOfWeek.MONDAY);
+                        case "TUE", "TUESDAY" -> set.add(DayOfWeek.TUESDAY);
+                        case "WED", "WEDNESDAY" -> set.add(DayOfWeek.WEDNESDAY);
+                        case "THU", "THURSDAY" -> set.add(DayOfWeek.THURSDAY);
+                        case "FRI", "FRIDAY" -> set.add(DayOfWeek.FRIDAY);
+                        case "SAT", "SATURDAY" -> set.add(DayOfWeek.SATURDAY);
+                        case "SUN", "SUNDAY" -> set.add(DayOfWeek.SUNDAY);
+                    }
+                }
+            }
+            int weekIv = (interval == null || interval < 1) ? 1 : interval;
+            for (LocalDate d = start; !d.isAfter(end); d = d.plusDays(1)) {
+                if (!set.contains(d.getDayOfWeek()))
+                    continue;
+                long weeks = ChronoUnit.WEEKS.between(anchor, d);
+                long absWeeks = Math.abs(weeks);
+                if (absWeeks % weekIv == 0)
+                    out.add(d);
+            }
+            return out;
+        }
+        // default: no candidates
+        return out;
+    }
+
+    /** Which of the given dates already have assignments, from a single range query. */
+    @Transactional(readOnly = true)
+    public Set<LocalDate> occupiedDates(Collection<LocalDate> dates) {
+        if (dates == null || dates.isEmpty()) return Set.of();
+        LocalDate min = Collections.min(dates);
+        LocalDate max = Collections.max(dates);
+        return new HashSet<>(employeeShiftRepository.findOccupiedDates(min, max));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Template> templates(LocalDate anchorDate) {
+        List<Template> out = new ArrayList<>();
+        for (EmployeeShift es : employeeShiftRepository.findWithShiftByShiftDate(anchorDate)) {
+            if (es.getShift() == null || es.getShift().getShiftId() == null)
+                continue;
+            // Prefer the anchor's override times; otherwise fall back to the shift template times so
+            // generated rows always have a scheduled start/end to compare actual check-ins against.
+            LocalTime start = es.getOverrideStartTime() != null ? es.getOverrideStartTime() : es.getShift().getStartTime();
+            LocalTime end = es.getOverrideEndTime() != null ? es.getOverrideEndTime() : es.getShift().getEndTime();
+            out.add(new Template(
+                    es.getEmployee() != null ? es.getEmployee().getUserId() : null,
+                    es.getShift().getShiftId(),
+                    es.getStatus() != null ? es.getStatus() : "assigned",
+                    es.getNotes(),
+                    start,
+                    end));
+        }
+        return out;
+    }
+
+    /**
+     * Create one work schedule spanning the requested range and copy the anchor shifts onto
+     * every future candidate date that is free (or onto every one when overwriting).
+     */
+    @Transactional
+    public Result generate(Spec spec, List<LocalDate> candidates, Progress progress) {
+        long startedAt = System.currentTimeMillis();
+        Plan plan = prepare(spec, candidates);
+        if (!plan.changed()) {
+            return new Result(false, null, 0, 0, plan.skipped(), plan.conflicts(), plan.templates().size(),
+                    System.currentTimeMillis() - startedAt);
+        }
+        ChunkResult written = writeChunk(plan, plan.targets(), progress);
+
+        long elapsed = System.currentTimeMillis() - startedAt;
+        log.info("Generated {} shifts on {} dates into work schedule {} in {} ms",
+                written.created(), plan.targets().size(), plan.workScheduleId(), elapsed);
+        // the span work schedule itself counts as created, as it always has
+        return new Result(true, plan.workScheduleId(), written.created() + 1, written.updated(), plan.skipped(),
+                plan.conflicts(), plan.templates().size(), elapsed);
+    }
+
+    /**
+     * Decide which candidates get written and, when any will, create the span work schedule.
+     * Nothing else is written, so the dates can then be filled in separate transactions.
+     */
+    @Transactional
+    public Plan prepare(Spec spec, List<LocalDate> candidates) {
+        List<Template> templates = templates(spec.anchorDate());
+        Set<LocalDate> occupied = occupiedDates(candidates);
+        LocalDate today = LocalDate.now();
+
+        // "past or present" dates are never written
+        List<LocalDate> targets = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        for (LocalDate d : candidates) {
+            if (!d.isAfter(today))
+                continue;
+            boolean busy = occupied.contains(d);
+            if (busy)
+                conflicts.add(d.toString());
+            if (!templates.isEmpty() && (spec.overwrite() || !busy))
+                targets.add(d);
+        }
+        if (targets.isEmpty()) {
+            return new Plan(null, List.of(), templates, conflicts, candidates.size(), spec.overwrite(),
+                    spec.adminUserId());
+        }
+
+        WorkSchedule spanWs = WorkSchedule.builder()
+                .startDate(spec.startDate())
+                .endDate(spec.endDate())
+                .name(spec.name() != null ? spec.name() : ("Generated: " + spec.startDate() + ".." + spec.endDate()))
+                .description(spec.description())
+                .createdAt(LocalDateTime.now())
+                .build();
+        if (spec.adminUserId() != null)
+            spanWs.setCreatedByUser(userRepository.getReferenceById(spec.adminUserId()));
+        if (spec.recurrenceId() != null)
+            recurrencePatternRepository.findById(spec.recurrenceId()).ifPresent(spanWs::setRecurrencePattern);
+        spanWs = workScheduleRepository.save(spanWs);
+        return new Plan(spanWs.getWorkScheduleId(), targets, templates, conflicts, candidates.size() - targets.size(),
+                spec.overwrite(), spec.adminUserId());
+    }
+
+    /** Write the plan's shifts for {@code dates} (a subset of its targets); all or nothing. */
+    @Transactional
+    public ChunkResult writeChunk(Plan plan, List<LocalDate> dates, Progress progress) {
+        if (dates.isEmpty()) return new ChunkResult(0, 0);
+        Set<Integer> touchedOldWs = new HashSet<>();
+        int updated = 0;
+        if (plan.overwrite()) {
+            updated = deleteExisting(dates, touchedOldWs);
+        }
+
+        int written = insertCopies(plan.workScheduleId(), dates, plan.templates(), plan.adminUserId(), progress);
+
+        // Drop the old work schedules that no longer own any shift
+        touchedOldWs.remove(plan.workScheduleId());
+        for (Integer oldId : touchedOldWs) {
+            dropIfEmpty(oldId);
+        }
+        rosterIndex.touch(dates.get(0), dates.get(dates.size() - 1));
+        return new ChunkResult(written, updated);
+    }
+
+    /** Delete the work schedule when no shift references it any more. */
+    @Transactional
+    public void dropIfEmpty(Integer workScheduleId) {
+        try {
+            jdbcTemplate.update(DROP_EMPTY_SCHEDULE_SQL, workScheduleId, workScheduleId);
+        } catch (Exception ex) {
+            log.debug("Could not drop work schedule {}: {}", workScheduleId, ex.getMessage());
+        }
+    }
+
+    private int deleteExisting(List<LocalDate> targets, Set<Integer> touchedOldWs) {
+        Set<LocalDate> targetSet = new HashSet<>(targets);
+        List<Object[]> ids = new ArrayList<>();
+        jdbcTemplate.query(EXISTING_SQL, rs -> {
+            LocalDate d = rs.getDate(2).toLocalDate();
+            if (!targetSet.contains(d))
+                return;
+            ids.add(new Object[]{rs.getInt(1)});
+            int wsId = rs.getInt(3);
+            if (!rs.wasNull())
+                touchedOldWs.add(wsId);
+        }, Date.valueOf(targets.get(0)), Date.valueOf(targets.get(targets.size() - 1)));
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            jdbcTemplate.batchUpdate(DELETE_SQL, ids.subList(from, Math.min(ids.size(), from + batchSize)));
+        }
+        return ids.size();
+    }
+
+    private int insertCopies(Integer workScheduleId, List<LocalDate> targets, List<Template> templates,
+                             Integer adminUserId, Progress progress) {
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        int written = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            Date shiftDate = Date.valueOf(targets.get(i));
+            for (Template t : templates) {
+                batch.add(new Object[]{
+                        workScheduleId, t.employeeId(), t.shiftId(), shiftDate, t.status(), t.notes(),
+                        t.startTime() != null ? Time.valueOf(t.startTime()) : null,
+                        t.endTime() != null ? Time.valueOf(t.endTime()) : null,
+                        adminUserId, createdAt});
+                if (batch.size() >= batchSize) {
+                    written += flush(batch);
+                    if (progress != null) progress.update(i, targets.size(), written);
+                }
+            }
+        }
+        written += flush(batch);
+        if (progress != null) progress.update(targets.size(), targets.size(), written);
+        return written;
+    }
+
+    private int flush(List<Object[]> batch) {
+        if (batch.isEmpty()) return 0;
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch);
+        int n = batch.size();
+        batch.clear();
+        return n;
+    }
+}
@@ -0,0 +1,108 @@
+package com.kopi.kopi.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * One Server-Sent Events client with a bounded outgoing buffer. Frames are written by the
+ * given executor, never by the publishing thread; a client that lets the buffer overflow is
+ * disconnected, so it reconnects and resumes from its {@code Last-Event-ID}.
+ */
+public final class SseConnection {
+    private static final Logger log = LoggerFactory.getLogger(SseConnection.class);
+
+    /** One SSE frame; {@code id} 0 means no id, a null {@code name} is a heartbeat comment. */
+    public record Event(long id, String name, Object data) {}
+
+    public static final Event HEARTBEAT = new Event(0, null, null);
+
+    private final SseEmitter emitter;
+    private final ArrayBlockingQueue<Event> buffer;
+    private final Executor sender;
+    private final Consumer<SseConnection> onClose;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /** {@code onClose} runs once, however the stream ends (completion, timeout, error, overflow). */
+    public SseConnection(long timeoutMs, int bufferSize, Executor sender, Consumer<SseConnection> onClose) {
+        this.emitter = new SseEmitter(timeoutMs);
+        this.buffer = new ArrayBlockingQueue<>(Math.max(1, bufferSize));
+        this.sender = sender;
+        this.onClose = onClose;
+        emitter.onCompletion(this::markClosed);
+        emitter.onTimeout(this::markClosed);
+        emitter.onError(ex -> markClosed());
+    }
+
+    public SseEmitter emitter() {
+        return emitter;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    public void offer(Event e) {
+        if (closed.get()) return;
+        if (!buffer.offer(e)) {
+            if (e == HEARTBEAT) return;
+            log.debug("SSE buffer full, closing stream");
+            close();
+            return;
+        }
+        schedule();
+    }
+
+    public void close() {
+        markClosed();
+        try {
+            emitter.complete();
+        } catch (Exception ignored) {
+        }
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) sender.execute(this::drain);
+    }
+
+    private void drain() {
+        try {
+            Event e;
+            while (!closed.get() && (e = buffer.poll()) != null) emitter.send(frame(e));
+        } catch (Exception ex) {
+            // client went away
+            markClosed();
+        } finally {
+            draining.set(false);
+        }
+        if (!closed.get() && !buffer.isEmpty()) schedule();
+    }
+
+    private void markClosed() {
+        if (closed.compareAndSet(false, true)) onClose.accept(this);
+    }
+
+    private static SseEmitter.SseEventBuilder frame(Event e) {
+        if (e.name() == null) return SseEmitter.event().comment("ping");
+        SseEmitter.SseEventBuilder b = SseEmitter.event().name(e.name()).data(e.data(), MediaType.APPLICATION_JSON);
+        if (e.id() > 0) b.id(Long.toString(e.id()));
+        return b;
+    }
+
+    /** Daemon threads for the sender and heartbeat pools of the stream owners. */
+    public static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
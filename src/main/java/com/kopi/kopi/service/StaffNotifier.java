@@ -0,0 +1,168 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Notification;
+import com.kopi.kopi.repository.NotificationRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fan-out of order notifications to every active ADMIN/STAFF user. Runs off the request thread
+ * once the caller's transaction commits: one INSERT ... SELECT writes a row per staff member,
+ * one query reads them back for the SSE streams, and mails are coalesced into one digest per
+ * recipient per window, with repeated messages sent once.
+ */
+@Component
+public class StaffNotifier {
+    private static final Logger log = LoggerFactory.getLogger(StaffNotifier.class);
+
+    public static final List<String> STAFF_ROLES = List.of("ADMIN", "STAFF");
+    static final String TYPE = "ORDER_STATUS_CHANGE";
+
+    private static final String INSERT_FOR_STAFF =
+            "INSERT INTO dbo.notifications (user_id, order_id, title, message, type, is_read, created_at) "
+                    + "SELECT u.user_id, ?, ?, ?, ?, ?, ? FROM dbo.users u JOIN dbo.roles r ON r.role_id = u.role_id "
+                    + "WHERE r.name IN ('ADMIN', 'STAFF') AND u.status = 'active'";
+
+    private final NotificationRepository notificationRepository;
+    private final NotificationHub notificationHub;
+    private final EmailService emailService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+
+    @Value("${app.notifications.staff.digest-window-ms:60000}")
+    private long digestWindowMs = 60000;
+
+    // recipient email -> pending digest; swapped out whole when sent
+    private final ConcurrentHashMap<String, Digest> digests = new ConcurrentHashMap<>();
+    private ScheduledExecutorService worker;
+
+    public StaffNotifier(NotificationRepository notificationRepository, NotificationHub notificationHub,
+                         EmailService emailService, JdbcTemplate jdbcTemplate,
+                         PlatformTransactionManager transactionManager) {
+        this.notificationRepository = notificationRepository;
+        this.notificationHub = notificationHub;
+        this.emailService = emailService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    void start() {
+        // one thread: fan-outs and digest sends never overlap
+        worker = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("staff-notifier"));
+        worker.scheduleWithFixedDelay(this::sendDigests, digestWindowMs, digestWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (worker == null) return;
+        worker.shutdown();
+        try {
+            worker.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sendDigests();
+    }
+
+    /**
+     * Notify all active staff about an order once the current transaction commits (or now,
+     * outside one). Returns immediately; the message is also the recipient's digest entry.
+     */
+    public void fanOut(Integer orderId, String title, String message) {
+        Runnable task = () -> worker.execute(() -> {
+            try {
+                deliver(orderId, title, message);
+            } catch (Exception ex) {
+                log.warn("Staff notification for order {} failed: {}", orderId, ex.getMessage());
+            }
+        });
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+
+    /** Send the pending digests now and wait for it; queued fan-outs are handled first. */
+    void flush() throws ExecutionException, InterruptedException {
+        worker.submit(this::sendDigests).get();
+    }
+
+    private void deliver(Integer orderId, String title, String message) {
+        // whole milliseconds, so the value read back matches what the column stored
+        LocalDateTime stamp = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+        List<Notification> created = tx.execute(s -> {
+            jdbcTemplate.update(INSERT_FOR_STAFF, orderId, title, message, TYPE, false, Timestamp.valueOf(stamp));
+            List<Notification> rows = notificationRepository.findForFanOut(orderId, TYPE, stamp, STAFF_ROLES);
+            rows.forEach(notificationHub::publish);
+            return rows;
+        });
+        if (created == null) return;
+        for (Notification n : created) {
+            String email = n.getUser().getEmail();
+            if (email == null || email.isBlank()) continue;
+            digests.computeIfAbsent(email, k -> new Digest(title)).add(message);
+        }
+    }
+
+    private void sendDigests() {
+        for (String email : List.copyOf(digests.keySet())) {
+            Digest d = digests.remove(email);
+            if (d == null) continue;
+            try {
+                emailService.send(email, d.subject(), d.text());
+            } catch (Exception ex) {
+                log.warn("Failed to send staff digest to {}: {}", email, ex.getMessage());
+            }
+        }
+    }
+
+    // Entries for one recipient in one window, in arrival order, without repeats
+    private static final class Digest {
+        private final String title;
+        private final Set<String> entries = new LinkedHashSet<>();
+
+        Digest(String title) {
+            this.title = title;
+        }
+
+        synchronized void add(String entry) {
+            entries.add(entry);
+        }
+
+        synchronized String subject() {
+            return entries.size() == 1 ? title : title + " (" + entries.size() + ")";
+        }
+
+        synchronized String text() {
+            StringBuilder sb = new StringBuilder();
+            for (String e : entries) {
+                if (!sb.isEmpty()) sb.append("\n");
+                if (entries.size() > 1) sb.append("- ");
+                sb.append(e);
+            }
+            return sb.append("\n\nPlease check the system for more details.").toString();
+        }
+    }
+}
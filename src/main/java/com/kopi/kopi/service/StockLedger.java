@@ -0,0 +1,63 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.OrderDetail;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Applies stock deductions with conditional updates ({@code stock_qty >= qty}) so two
+ * concurrent completions can never both read the same stock and lose an update.
+ * All lines of an order go out as one JDBC batch, in product id order to keep lock
+ * acquisition consistent between transactions.
+ */
+@Component
+public class StockLedger {
+    private static final String DEDUCT_SQL =
+            "UPDATE dbo.products SET stock_qty = stock_qty - ? WHERE product_id = ? AND stock_qty >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public StockLedger(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Quantities per product for an order's lines, ordered by product id. */
+    public static Map<Integer, Integer> quantitiesOf(List<OrderDetail> details) {
+        Map<Integer, Integer> qtyByProduct = new TreeMap<>();
+        if (details == null) return qtyByProduct;
+        for (OrderDetail d : details) {
+            if (d.getProduct() == null || d.getProduct().getProductId() == null || d.getQuantity() == null) continue;
+            qtyByProduct.merge(d.getProduct().getProductId(), d.getQuantity(), Integer::sum);
+        }
+        return qtyByProduct;
+    }
+
+    /**
+     * Deduct every quantity or none. Must run inside the caller's transaction: when a
+     * product lacks stock, the caller rolls back and earlier rows in the batch are undone.
+     *
+     * @return the first product id that did not have enough stock, or null when all deductions applied
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public Integer deduct(Map<Integer, Integer> qtyByProduct) {
+        if (qtyByProduct == null || qtyByProduct.isEmpty()) return null;
+        List<Object[]> args = new ArrayList<>(qtyByProduct.size());
+        List<Integer> productIds = new ArrayList<>(qtyByProduct.size());
+        for (Map.Entry<Integer, Integer> e : new TreeMap<>(qtyByProduct).entrySet()) {
+            args.add(new Object[]{e.getValue(), e.getKey(), e.getValue()});
+            productIds.add(e.getKey());
+        }
+        int[] updated = jdbcTemplate.batchUpdate(DEDUCT_SQL, args);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) return productIds.get(i);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,409 @@
+package com.kopi.kopi.service;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.kopi.kopi.dto.ai.AiSuggestionRequest;
+import com.kopi.kopi.dto.ai.DishGroup;
+import com.kopi.kopi.dto.ai.DishTrendChange;
+import com.kopi.kopi.dto.ai.DishTrendsResponse;
+import com.kopi.kopi.dto.ai.TrendDiff;
+import com.kopi.kopi.entity.TrendSnapshot;
+import com.kopi.kopi.repository.TrendSnapshotRepository;
+import com.kopi.kopi.service.impl.AiSuggestServiceImpl;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Daily dish trend snapshots (dbo.trend_snapshots). Building a ranking costs a Gemini call and a
+ * YouTube search per dish, so every configured preset ({@code days:maxResults}) is rebuilt once a
+ * day at {@code refresh-hour} and requests for a preset are answered with its latest completed
+ * snapshot. Each build is its own row, queued / running / completed / failed, so refreshes can be
+ * polled and earlier weeks stay around for {@link #diff}. A failed build leaves the previous
+ * snapshot in service. Builds run one at a time on a single worker thread; requesting a preset
+ * that is already queued returns the queued row. The latest snapshot of each preset is held in
+ * memory and checked every {@code recheck-ms} for builds made by other instances.
+ */
+@Component
+public class TrendSnapshots {
+    private static final Logger log = LoggerFactory.getLogger(TrendSnapshots.class);
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String COMPLETED = "completed";
+    public static final String FAILED = "failed";
+
+    /** Accepted refresh: its snapshot id and a future completed with the final row. */
+    public record Ticket(Integer snapshotId, CompletableFuture<TrendSnapshot> done) {}
+
+    /** Latest completed snapshot of a preset, kept as the JSON it is served as. */
+    public record Latest(Integer snapshotId, LocalDateTime createdAt, String payload) {}
+
+    private record Preset(int days, int max) {
+        String key() {
+            return "d" + days + "-m" + max;
+        }
+    }
+
+    private final AiSuggestServiceImpl trends;
+    private final TrendSnapshotRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper om = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    // days:maxResults pairs, comma-separated; the first matches TrendsController's defaults
+    @Value("${ai.trends.snapshot.presets:30:100}")
+    private String presetSpec = "30:100";
+
+    // local hour of the daily rebuild, outside opening hours
+    @Value("${ai.trends.snapshot.refresh-hour:3}")
+    private int refreshHour = 3;
+
+    // completed snapshots kept per preset; at least 8 so last week's is still there to diff against
+    @Value("${ai.trends.snapshot.keep:60}")
+    private int keep = 60;
+
+    // how often a cached snapshot is checked against builds made by other instances
+    @Value("${ai.trends.snapshot.recheck-ms:60000}")
+    private long recheckMs = 60000;
+
+    private final Map<String, Latest> latest = new ConcurrentHashMap<>();
+    private final Map<String, Long> checkedAt = new ConcurrentHashMap<>();
+    private final Map<String, Ticket> pending = new ConcurrentHashMap<>();
+    private ScheduledExecutorService worker;
+
+    public TrendSnapshots(AiSuggestServiceImpl trends, TrendSnapshotRepository repository, JdbcTemplate jdbcTemplate) {
+        this.trends = trends;
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    void start() {
+        worker = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("trend-snapshots"));
+        long untilFirst = Duration.between(LocalDateTime.now(), nextRun(LocalDateTime.now())).toMillis();
+        worker.scheduleAtFixedRate(this::refreshAllScheduled, untilFirst, TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (worker != null) worker.shutdownNow();
+    }
+
+    // First start, or a day was missed while down: build the presets that have nothing recent
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildMissing() {
+        LocalDateTime dayAgo = LocalDateTime.now().minusDays(1);
+        for (Preset p : presets()) {
+            Latest l = latest(p.key());
+            if (l == null || l.createdAt().isBefore(dayAgo)) refresh(p.days(), p.max(), "startup");
+        }
+    }
+
+    /** Parameters as {@link AiSuggestServiceImpl#groupedByDish} applies its defaults. */
+    public static String presetKey(Integer days, Integer maxResults) {
+        return preset(days, maxResults).key();
+    }
+
+    public boolean isPreset(Integer days, Integer maxResults) {
+        return presets().contains(preset(days, maxResults));
+    }
+
+    /** Latest completed snapshot of a preset, or null before its first build. */
+    public Latest latest(String presetKey) {
+        Latest cached = latest.get(presetKey);
+        long now = System.currentTimeMillis();
+        if (cached != null && now - checkedAt.getOrDefault(presetKey, 0L) < recheckMs) return cached;
+        checkedAt.put(presetKey, now);
+        if (cached != null) {
+            Integer newest = jdbcTemplate.queryForObject("SELECT MAX(snapshot_id) FROM dbo.trend_snapshots "
+                    + "WHERE preset_key = ? AND status = ?", Integer.class, presetKey, COMPLETED);
+            if (newest == null || newest <= cached.snapshotId()) return cached;
+        }
+        return repository.findFirstByPresetKeyAndStatusOrderBySnapshotIdDesc(presetKey, COMPLETED)
+                .map(s -> latest.merge(presetKey, new Latest(s.getSnapshotId(), s.getCreatedAt(), s.getPayload()),
+                        TrendSnapshots::newer))
+                .orElse(cached);
+    }
+
+    /**
+     * Ranking for a request: the latest snapshot when the parameters are a preset, building it first
+     * if there is none yet; other parameters are computed live.
+     */
+    public DishTrendsResponse trends(AiSuggestionRequest req) {
+        Preset p = preset(req.getDays(), req.getMaxResults());
+        if (!presets().contains(p)) return trends.groupedByDish(req);
+        Latest l = latestOrBuild(p);
+        return decode(l.payload());
+    }
+
+    /** JSON of the latest snapshot of a preset, building it first if there is none yet. */
+    public String payload(Integer days, Integer maxResults) {
+        return latestOrBuild(preset(days, maxResults)).payload();
+    }
+
+    private Latest latestOrBuild(Preset p) {
+        Latest l = latest(p.key());
+        if (l != null) return l;
+        // a failed build rethrows its cause, e.g. YouTubeQuotaExceededException
+        join(refresh(p.days(), p.max(), "on-demand"));
+        return latest.get(p.key());
+    }
+
+    /** Queue a rebuild of a preset, or return the one already queued or running. */
+    public Ticket refresh(Integer days, Integer maxResults, String trigger) {
+        Preset p = preset(days, maxResults);
+        synchronized (pending) {
+            Ticket running = pending.get(p.key());
+            if (running != null) return running;
+            TrendSnapshot job = repository.save(TrendSnapshot.builder()
+                    .presetKey(p.key())
+                    .days(p.days())
+                    .maxResults(p.max())
+                    .status(QUEUED)
+                    .triggerSource(trigger)
+                    .createdAt(LocalDateTime.now())
+                    .build());
+            CompletableFuture<TrendSnapshot> done = new CompletableFuture<>();
+            Ticket ticket = new Ticket(job.getSnapshotId(), done);
+            pending.put(p.key(), ticket);
+            try {
+                worker.execute(() -> {
+                    // leave pending before completing, so a refresh made by whoever waited on done starts a new build
+                    TrendSnapshot built = null;
+                    Throwable error = null;
+                    try {
+                        built = run(job);
+                    } catch (Throwable t) {
+                        error = t;
+                    }
+                    pending.remove(p.key(), ticket);
+                    if (error != null) done.completeExceptionally(error);
+                    else done.complete(built);
+                });
+            } catch (RejectedExecutionException ex) {
+                pending.remove(p.key(), ticket);
+                fail(job, ex);
+                throw ex;
+            }
+            return ticket;
+        }
+    }
+
+    public Optional<TrendSnapshot> find(Integer snapshotId) {
+        return repository.findById(snapshotId);
+    }
+
+    /**
+     * Latest snapshot of a preset against the latest one built at least a week before it. Dishes are
+     * matched on their key; ranks are 1-based.
+     */
+    public TrendDiff diff(Integer days, Integer maxResults) {
+        String key = presetKey(days, maxResults);
+        TrendSnapshot current = repository.findFirstByPresetKeyAndStatusOrderBySnapshotIdDesc(key, COMPLETED).orElse(null);
+        if (current == null) return null;
+        TrendSnapshot previous = repository.findFirstByPresetKeyAndStatusAndCreatedAtLessThanEqualOrderBySnapshotIdDesc(
+                key, COMPLETED, current.getCreatedAt().minusWeeks(1)).orElse(null);
+
+        List<DishGroup> now = decode(current.getPayload()).getData();
+        List<DishGroup> before = previous == null ? List.of() : decode(previous.getPayload()).getData();
+        Map<String, Integer> beforeRank = new HashMap<>();
+        for (int i = 0; i < before.size(); i++) beforeRank.putIfAbsent(before.get(i).getKey(), i);
+
+        List<DishTrendChange> changes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < now.size(); i++) {
+            DishGroup g = now.get(i);
+            if (!seen.add(g.getKey())) continue;
+            Integer was = beforeRank.get(g.getKey());
+            DishGroup old = was == null ? null : before.get(was);
+            String status = was == null ? "new" : was > i ? "up" : was < i ? "down" : "same";
+            changes.add(change(g, old, status, i + 1, was == null ? null : was + 1));
+        }
+        for (Map.Entry<String, Integer> e : beforeRank.entrySet()) {
+            if (seen.contains(e.getKey())) continue;
+            DishGroup old = before.get(e.getValue());
+            changes.add(change(null, old, "dropped", null, e.getValue() + 1));
+        }
+        // dropped dishes last, by their old rank
+        changes.sort(Comparator.comparing((DishTrendChange c) -> c.getRank() == null)
+                .thenComparing(c -> c.getRank() != null ? c.getRank() : c.getPreviousRank()));
+
+        return TrendDiff.builder()
+                .presetKey(key)
+                .currentSnapshotId(current.getSnapshotId())
+                .currentAt(current.getCreatedAt())
+                .previousSnapshotId(previous == null ? null : previous.getSnapshotId())
+                .previousAt(previous == null ? null : previous.getCreatedAt())
+                .dishes(changes)
+                .build();
+    }
+
+    /** Wait until the builds queued so far are done. */
+    void flush() throws ExecutionException, InterruptedException {
+        worker.submit(() -> {}).get();
+    }
+
+    private void refreshAllScheduled() {
+        for (Preset p : presets()) {
+            try {
+                refresh(p.days(), p.max(), "scheduled");
+            } catch (Exception ex) {
+                log.warn("Trend snapshot {} could not be queued: {}", p.key(), ex.getMessage());
+            }
+        }
+    }
+
+    private TrendSnapshot run(TrendSnapshot job) {
+        long t0 = System.currentTimeMillis();
+        job.setStatus(RUNNING);
+        repository.save(job);
+        try {
+            AiSuggestionRequest req = new AiSuggestionRequest();
+            req.setDays(job.getDays());
+            req.setMaxResults(job.getMaxResults());
+            DishTrendsResponse res = trends.groupedByDish(req);
+
+            Map<String, Object> meta = new LinkedHashMap<>(res.getMeta() == null ? Map.of() : res.getMeta());
+            meta.put("snapshotId", job.getSnapshotId());
+            meta.put("preset", job.getPresetKey());
+            meta.put("generatedAt", job.getCreatedAt().toString());
+            res.setMeta(meta);
+
+            job.setPayload(om.writeValueAsString(res));
+            job.setDishCount(res.getData().size());
+            job.setTotalVideos(res.getData().stream().mapToInt(DishGroup::getTotalVideos).sum());
+            job.setTookMs(System.currentTimeMillis() - t0);
+            job.setStatus(COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            repository.save(job);
+        } catch (RuntimeException ex) {
+            fail(job, ex);
+            throw ex;
+        } catch (Exception ex) {
+            fail(job, ex);
+            throw new IllegalStateException(ex.getMessage(), ex);
+        }
+        latest.merge(job.getPresetKey(), new Latest(job.getSnapshotId(), job.getCreatedAt(), job.getPayload()),
+                TrendSnapshots::newer);
+        prune(job.getPresetKey());
+        log.info("Trend snapshot {} ({}) built: {} dishes, {} videos in {} ms", job.getSnapshotId(),
+                job.getPresetKey(), job.getDishCount(), job.getTotalVideos(), job.getTookMs());
+        return job;
+    }
+
+    private TrendSnapshot fail(TrendSnapshot job, Exception ex) {
+        log.warn("Trend snapshot {} ({}) failed: {}", job.getSnapshotId(), job.getPresetKey(), ex.getMessage());
+        String msg = ex.getMessage() != null ? ex.getMessage() : ex.getClass().getSimpleName();
+        job.setStatus(FAILED);
+        job.setErrorMessage(msg.length() > 500 ? msg.substring(0, 500) : msg);
+        job.setFinishedAt(LocalDateTime.now());
+        try {
+            repository.save(job);
+        } catch (Exception saveEx) {
+            log.warn("Trend snapshot {} status not saved: {}", job.getSnapshotId(), saveEx.getMessage());
+        }
+        return job;
+    }
+
+    // Keep the newest completed snapshots of a preset; older and failed rows go
+    private void prune(String presetKey) {
+        try {
+            List<Integer> cutoff = jdbcTemplate.queryForList("SELECT snapshot_id FROM dbo.trend_snapshots "
+                            + "WHERE preset_key = ? AND status = ? ORDER BY snapshot_id DESC OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY",
+                    Integer.class, presetKey, COMPLETED, Math.max(keep, 8) - 1);
+            if (!cutoff.isEmpty()) {
+                jdbcTemplate.update("DELETE FROM dbo.trend_snapshots WHERE preset_key = ? AND snapshot_id < ?",
+                        presetKey, cutoff.get(0));
+            }
+            jdbcTemplate.update("DELETE FROM dbo.trend_snapshots WHERE preset_key = ? AND status = ? AND created_at < ?",
+                    presetKey, FAILED, Timestamp.valueOf(LocalDateTime.now().minusWeeks(2)));
+        } catch (Exception ex) {
+            log.warn("Trend snapshot prune of {} failed: {}", presetKey, ex.getMessage());
+        }
+    }
+
+    private DishTrendsResponse decode(String payload) {
+        try {
+            return om.readValue(payload, DishTrendsResponse.class);
+        } catch (Exception e) {
+            throw new IllegalStateException("Unreadable trend snapshot: " + e.getMessage(), e);
+        }
+    }
+
+    private List<Preset> presets() {
+        List<Preset> out = new ArrayList<>();
+        for (String part : presetSpec.split(",")) {
+            String[] dm = part.trim().split(":");
+            if (dm.length != 2) continue;
+            try {
+                out.add(preset(Integer.parseInt(dm[0].trim()), Integer.parseInt(dm[1].trim())));
+            } catch (NumberFormatException ex) {
+                log.warn("Ignoring trend snapshot preset '{}'", part);
+            }
+        }
+        return out;
+    }
+
+    private LocalDateTime nextRun(LocalDateTime now) {
+        LocalDateTime run = now.toLocalDate().atTime(LocalTime.of(Math.floorMod(refreshHour, 24), 0));
+        return run.isAfter(now) ? run : run.plusDays(1);
+    }
+
+    private static Preset preset(Integer days, Integer maxResults) {
+        int d = Optional.ofNullable(days).orElse(30);
+        int m = Math.min(Optional.ofNullable(maxResults).orElse(100), 200);
+        return new Preset(d, m);
+    }
+
+    private static DishTrendChange change(DishGroup now, DishGroup before, String status, Integer rank, Integer previousRank) {
+        DishGroup any = now != null ? now : before;
+        return DishTrendChange.builder()
+                .key(any.getKey())
+                .name(any.getName())
+                .status(status)
+                .rank(rank)
+                .previousRank(previousRank)
+                .rankChange(rank == null || previousRank == null ? null : previousRank - rank)
+                .rating(now == null ? null : now.getRating())
+                .previousRating(before == null ? null : before.getRating())
+                .totalVideos(now == null ? null : now.getTotalVideos())
+                .previousTotalVideos(before == null ? null : before.getTotalVideos())
+                .build();
+    }
+
+    private static Latest newer(Latest a, Latest b) {
+        return a.snapshotId() >= b.snapshotId() ? a : b;
+    }
+
+    private static TrendSnapshot join(Ticket ticket) {
+        try {
+            return ticket.done().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building trend snapshot", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException("Trend snapshot build failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
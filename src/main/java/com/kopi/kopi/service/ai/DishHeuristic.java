@@ -12,6 +12,18 @@ public final class DishHeuristic {
     );
     private static final Pattern SEP = Pattern.compile("[\\p{Punct}\\s]+");
 
+    // Tên món cụ thể nhận ra được từ tiêu đề/mô tả mà không cần Gemini; cụm dài đứng trước cụm ngắn
+    // nằm trong nó. So khớp trên slug nên "cà phê muối" và "ca phe muoi" đều khớp.
+    private static final List<String> SPECIFIC_DISHES = List.of(
+            "Trà sữa trân châu đường đen", "Trà sữa kem trứng nướng", "Trà sữa kem cheese", "Trà sữa Shan Tuyết",
+            "Trà sữa Oolong", "Trà đào cam sả", "Trà mãng cầu", "Trà chanh giã tay",
+            "Cà phê muối", "Cà phê trứng", "Cà phê cốt dừa", "Cà phê sữa đá", "Bạc xỉu",
+            "Salted Caramel Latte", "Strawberry Latte", "Caramel Latte", "Oat Milk Latte",
+            "Dirty Matcha", "Coco Matcha", "Matcha Latte", "Matcha kem muối",
+            "Cold Brew", "Coconut Coffee", "Kombucha", "Sinh tố bơ", "Sữa chua dâu"
+    );
+    private static final List<String> SPECIFIC_SLUGS = SPECIFIC_DISHES.stream().map(SlugUtil::slug).toList();
+
     private DishHeuristic(){}
 
     public static String guessDishName(String title, String description) {
@@ -50,6 +62,22 @@ public final class DishHeuristic {
         return null;
     }
 
+    /**
+     * Tên món cụ thể (không phải tên chung như "Coffee", "Matcha") khi tiêu đề hoặc mô tả nêu rõ,
+     * ngược lại null. Dùng để lọc trước: video nhận ra được ở đây không cần gửi cho Gemini.
+     */
+    public static String specificDishName(String title, String description) {
+        String t = "-" + Objects.toString(SlugUtil.slug(title), "") + "-";
+        String d = "-" + Objects.toString(SlugUtil.slug(description), "") + "-";
+        // tiêu đề được ưu tiên hơn mô tả (mô tả hay liệt kê nhiều món)
+        for (String text : List.of(t, d)) {
+            for (int i = 0; i < SPECIFIC_SLUGS.size(); i++) {
+                if (text.contains("-" + SPECIFIC_SLUGS.get(i) + "-")) return SPECIFIC_DISHES.get(i);
+            }
+        }
+        return null;
+    }
+
     public static String keyOf(String dishName) {
         return SlugUtil.slug(dishName);
     }
@@ -5,9 +5,13 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kopi.kopi.dto.ai.SuggestedDrink;
 import com.kopi.kopi.dto.ai.DishExtraction;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.service.OutboundHttp;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
@@ -15,31 +19,80 @@ import org.springframework.web.client.RestTemplate;
 
 @Component
 public class GeminiClient {
-    private final RestTemplate http = new RestTemplate();
+    private static final Logger log = LoggerFactory.getLogger(GeminiClient.class);
+
+    private final RestTemplate http;
     private final ObjectMapper om = new ObjectMapper();
 
     @Value("${ai.gemini.key:${GEMINI_API_KEY:}}")
     private String apiKey;
 
+    @Value("${ai.gemini.base-url:https://generativelanguage.googleapis.com}")
+    private String baseUrl = "https://generativelanguage.googleapis.com";
+
     @Value("${ai.gemini.model:gemini-1.5-flash}")
     private String model;
 
-    /** NEW: Trích tên món cho từng video (batch). */
-    public List<DishExtraction> extractDishNames(List<VideoItem> videos, String language) {
-        if (videos == null || videos.isEmpty()) return List.of();
+    @Value("${ai.gemini.requests-per-minute:15}")
+    private int requestsPerMinute = 15;
 
-        String dataJson;
-        try {
-            dataJson = om.writeValueAsString(videos.stream().map(v -> Map.of(
-                    "id",    v.getVideoId(),
-                    "title", v.getTitle(),
-                    "desc",  v.getDescription()
-            )).collect(Collectors.toList()));
-        } catch (Exception e) {
-            dataJson = "[]";
-        }
+    @Value("${ai.gemini.burst:3}")
+    private int burst = 3;
+
+    // Ngân sách cho một prompt trích tên món (hướng dẫn + danh sách video)
+    @Value("${ai.gemini.extract.max-prompt-tokens:8000}")
+    private int extractMaxPromptTokens = 8000;
+
+    @Value("${ai.gemini.extract.max-videos-per-call:50}")
+    private int extractMaxVideosPerCall = 50;
+
+    @Value("${ai.gemini.extract.description-chars:300}")
+    private int extractDescriptionChars = 300;
+
+    @Value("${ai.gemini.extract.max-concurrent:3}")
+    private int extractMaxConcurrent = 3;
+
+    @Value("${ai.gemini.extract.timeout-ms:60000}")
+    private long extractTimeoutMs = 60000;
+
+    @Value("${ai.gemini.extract.cache-ttl-ms:604800000}")
+    private long extractCacheTtlMs = 604800000L;
+
+    @Value("${ai.gemini.extract.cache-max-entries:20000}")
+    private int extractCacheMaxEntries = 20000;
+
+    // Tên món nhận ra từ tiêu đề có độ tin cậy như video "review" rõ tên món
+    private static final double HEURISTIC_CONFIDENCE = 0.6;
+
+    private static final String RANK_PROMPT = """
+            Role: You are a senior barista-menu consultant for a Vietnamese coffee shop (Kopi).
+            Task: From the given YouTube video list (JSON), select ONLY videos clearly related to drinks/beverages, such as:
+            - How-to/recipe/tips for making drinks (e.g., pha chế, recipe, how to make, hướng dẫn)
+            - Hot-trend beverages, seasonal/menu ideas for cafes in Vietnam
+            - Coffee, tea, matcha, fruit tea, soda, signature drinks; exclude food/non-drink topics
+
+            Strict filters BEFORE proposing items:
+            - Exclude videos unrelated to beverages (gaming, vlog đời sống không pha chế, review không rõ đồ uống, thiết bị không liên quan)
+            - Exclude non-feasible items for typical cafe operations (quá phức tạp, khó nguồn nguyên liệu)
+            - Prefer videos with clearer recipe/process signals in title/description (recipe, công thức, cách làm, hướng dẫn, mix, barista)
+
+            Output: Identify distinct drink concepts that Kopi có thể bán. Consider popularity (views/likes), feasibility, cost, and Vietnamese taste.
+            Return STRICT JSON ONLY, no extra text, with schema:
+            { "items": [ {
+                "name": string,
+                "reason": string,
+                "score": number,
+                "tags": [string],
+                "basicRecipe": string,
+                "fromVideos": [ { "id": string } ]
+            } ] }
+
+            Language: %s.
+            Videos JSON:
+            %s
+        """;
 
-        String instr = """
+    private static final String EXTRACT_PROMPT = """
             Role: Expert Vietnamese Coffee Shop Menu Consultant
             
             Task: Analyze EACH YouTube video INDEPENDENTLY and extract:
@@ -104,114 +157,282 @@ public class GeminiClient {
             Language: %s
             Videos:
             %s
-        """.formatted(language == null ? "vi" : language, dataJson);
+        """;
 
-        try {
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/"
-                    + model + ":generateContent?key=" + apiKey;
+    private record CachedExtraction(DishExtraction extraction, long expiresAtMs) {}
 
-            Map<String,Object> body = Map.of(
-                    "contents", List.of(Map.of("parts", List.of(Map.of("text", instr)))),
-                    "generationConfig", Map.of("responseMimeType", "application/json")
-            );
+    // videoId (+ ngôn ngữ) → kết quả Gemini đã trích, LRU
+    private final LinkedHashMap<String, CachedExtraction> extractions = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedExtraction> eldest) {
+            return size() > extractCacheMaxEntries;
+        }
+    };
 
-            HttpHeaders h = new HttpHeaders();
-            h.setContentType(MediaType.APPLICATION_JSON);
+    private final Object slotLock = new Object();
+    private long nextSlotNanos = Long.MIN_VALUE / 2;
 
-            ResponseEntity<String> r = http.postForEntity(url, new HttpEntity<>(body, h), String.class);
-            JsonNode root = om.readTree(r.getBody());
-            String text = root.path("candidates").path(0).path("content").path(0).path("parts")
-                    .path(0).path("text").asText("{}");
+    public GeminiClient(OutboundHttp outboundHttp) {
+        this.http = outboundHttp.client("gemini");
+    }
 
-            JsonNode parsed = om.readTree(text);
-            List<DishExtraction> out = new ArrayList<>();
-            for (JsonNode it : parsed.path("items")) {
-                String id = it.path("id").asText(null);
-                String dish = it.hasNonNull("dishName") ? it.path("dishName").asText() : null;
-                String recipe = it.path("basicRecipe").asText("");
-                double conf = it.path("confidence").asDouble(0.0);
-                if (id != null) out.add(new DishExtraction(id, dish, recipe, conf));
+    /**
+     * Trích tên món cho từng video, theo lô. Video đã trích trước đó (cache theo videoId) và video mà
+     * {@link DishHeuristic#specificDishName} nhận ra được thì không gửi cho Gemini; phần còn lại được
+     * gom thành các prompt không quá ai.gemini.extract.max-prompt-tokens, gọi song song (tối đa
+     * ai.gemini.extract.max-concurrent lô) trong giới hạn ai.gemini.requests-per-minute. Lô nào lỗi
+     * thì các video của lô đó dùng heuristic và không được cache. Kết quả theo đúng thứ tự đầu vào.
+     */
+    public List<DishExtraction> extractDishNames(List<VideoItem> videos, String language) {
+        if (videos == null || videos.isEmpty()) return List.of();
+        String lang = language == null ? "vi" : language;
+
+        Map<String, DishExtraction> found = new HashMap<>();
+        List<VideoItem> toModel = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int cached = 0, local = 0;
+        for (VideoItem v : videos) {
+            String id = v.getVideoId();
+            if (id == null || !seen.add(id)) continue;
+            DishExtraction hit = cachedExtraction(id, lang);
+            if (hit != null) {
+                found.put(id, hit);
+                cached++;
+                continue;
             }
-            return out;
-        } catch (Exception e) {
-            // Fallback: rất đơn giản (heuristic) nếu API lỗi
-            List<DishExtraction> out = new ArrayList<>();
-            for (VideoItem v : videos) {
-                String dish = guessDishName(v.getTitle(), v.getDescription());
-                out.add(new DishExtraction(
-                        v.getVideoId(),
-                        dish,
-                        "",  // không có công thức trong fallback
-                        dish == null ? 0.0 : 0.55
-                ));
+            String dish = DishHeuristic.specificDishName(v.getTitle(), v.getDescription());
+            if (dish != null) {
+                found.put(id, new DishExtraction(id, dish, "", HEURISTIC_CONFIDENCE));
+                local++;
+                continue;
             }
-            return out;
+            toModel.add(v);
+        }
+
+        List<List<VideoItem>> chunks = apiKey == null || apiKey.isBlank() ? List.of() : chunk(toModel);
+        if (chunks.isEmpty()) {
+            toModel.forEach(v -> found.put(v.getVideoId(), guess(v)));
+        } else {
+            found.putAll(extractChunks(chunks, lang));
         }
+        log.debug("extractDishNames: {} videos, {} cached, {} by heuristic, {} sent in {} call(s)",
+                videos.size(), cached, local, toModel.size(), chunks.size());
+
+        List<DishExtraction> out = new ArrayList<>();
+        for (VideoItem v : videos) {
+            DishExtraction e = v.getVideoId() == null ? null : found.get(v.getVideoId());
+            if (e != null) out.add(e);
+        }
+        return out;
     }
 
-    // === HÀM CŨ CỦA BẠN: GIỮ NGUYÊN ===
-    public List<SuggestedDrink> rankSuggestions(List<VideoItem> videos, String language) {
-        if (videos == null || videos.isEmpty()) return List.of();
+    // Xếp video vào các lô theo thứ tự, mỗi lô vừa ngân sách token và số video tối đa
+    List<List<VideoItem>> chunk(List<VideoItem> videos) {
+        int base = estimateTokens(EXTRACT_PROMPT) + 16;
+        List<List<VideoItem>> chunks = new ArrayList<>();
+        List<VideoItem> current = new ArrayList<>();
+        int tokens = base;
+        for (VideoItem v : videos) {
+            int cost = estimateTokens(extractItemJson(v)) + 1;
+            if (!current.isEmpty() && (tokens + cost > extractMaxPromptTokens || current.size() >= extractMaxVideosPerCall)) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                tokens = base;
+            }
+            current.add(v);
+            tokens += cost;
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    private Map<String, DishExtraction> extractChunks(List<List<VideoItem>> chunks, String lang) {
+        Map<String, DishExtraction> out = new HashMap<>();
+        Semaphore slots = new Semaphore(Math.max(1, extractMaxConcurrent));
+        long deadline = System.currentTimeMillis() + extractTimeoutMs;
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Map<String, DishExtraction>>> futures = new ArrayList<>();
+            for (List<VideoItem> c : chunks) {
+                futures.add(pool.submit(() -> {
+                    slots.acquire();
+                    try {
+                        return extractChunk(c, lang);
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                Map<String, DishExtraction> result = null;
+                try {
+                    result = futures.get(i).get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    System.err.println("[Gemini] Extraction chunk " + (i + 1) + "/" + chunks.size() + " failed: " + e.getMessage());
+                    futures.get(i).cancel(true);
+                }
+                // lô lỗi/quá hạn: dùng heuristic, không cache để lần sau thử lại
+                for (VideoItem v : chunks.get(i)) {
+                    DishExtraction e = result == null ? null : result.get(v.getVideoId());
+                    out.put(v.getVideoId(), e != null ? e : guess(v));
+                }
+            }
+            pool.shutdownNow();
+        }
+        return out;
+    }
+
+    private Map<String, DishExtraction> extractChunk(List<VideoItem> chunk, String lang) throws Exception {
+        StringJoiner items = new StringJoiner(",", "[", "]");
+        chunk.forEach(v -> items.add(extractItemJson(v)));
+        JsonNode parsed = om.readTree(generate(EXTRACT_PROMPT.formatted(lang, items.toString())));
+
+        Map<String, DishExtraction> out = new HashMap<>();
+        for (JsonNode it : parsed.path("items")) {
+            String id = it.path("id").asText(null);
+            if (id == null) continue;
+            String dish = it.hasNonNull("dishName") ? it.path("dishName").asText() : null;
+            DishExtraction e = new DishExtraction(id, dish, it.path("basicRecipe").asText(""),
+                    it.path("confidence").asDouble(0.0));
+            out.put(id, e);
+            remember(id, lang, e);
+        }
+        return out;
+    }
 
-        String dataJson;
+    private String extractItemJson(VideoItem v) {
+        Map<String, String> item = new LinkedHashMap<>();
+        item.put("id", v.getVideoId());
+        item.put("title", Objects.toString(v.getTitle(), ""));
+        String desc = Objects.toString(v.getDescription(), "");
+        item.put("desc", desc.length() > extractDescriptionChars ? desc.substring(0, extractDescriptionChars) : desc);
         try {
-            dataJson = om.writeValueAsString(videos.stream().map(v -> Map.of(
-                    "id", v.getVideoId(),
-                    "title", v.getTitle(),
-                    "desc", v.getDescription(),
-                    "views", v.getViewCount(),
-                    "likes", v.getLikeCount(),
-                    "url", v.getVideoUrl()
-            )).collect(Collectors.toList()));
+            return om.writeValueAsString(item);
         } catch (Exception e) {
-            dataJson = "[]";
+            return "{}";
         }
+    }
 
-        String instr = """
-            Role: You are a senior barista-menu consultant for a Vietnamese coffee shop (Kopi).
-            Task: From the given YouTube video list (JSON), select ONLY videos clearly related to drinks/beverages, such as:
-            - How-to/recipe/tips for making drinks (e.g., pha chế, recipe, how to make, hướng dẫn)
-            - Hot-trend beverages, seasonal/menu ideas for cafes in Vietnam
-            - Coffee, tea, matcha, fruit tea, soda, signature drinks; exclude food/non-drink topics
+    // Ước lượng thô số token: ~3 ký tự/token (tiếng Việt có dấu tốn token hơn tiếng Anh)
+    static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 2) / 3;
+    }
 
-            Strict filters BEFORE proposing items:
-            - Exclude videos unrelated to beverages (gaming, vlog đời sống không pha chế, review không rõ đồ uống, thiết bị không liên quan)
-            - Exclude non-feasible items for typical cafe operations (quá phức tạp, khó nguồn nguyên liệu)
-            - Prefer videos with clearer recipe/process signals in title/description (recipe, công thức, cách làm, hướng dẫn, mix, barista)
+    private static DishExtraction guess(VideoItem v) {
+        String dish = DishHeuristic.guessDishName(v.getTitle(), v.getDescription());
+        return new DishExtraction(v.getVideoId(), dish, "", dish == null ? 0.0 : 0.55);
+    }
 
-            Output: Identify distinct drink concepts that Kopi có thể bán. Consider popularity (views/likes), feasibility, cost, and Vietnamese taste.
-            Return STRICT JSON ONLY, no extra text, with schema:
-            { "items": [ {
-                "name": string,
-                "reason": string,
-                "score": number,
-                "tags": [string],
-                "basicRecipe": string,
-                "fromVideos": [ { "id": string } ]
-            } ] }
+    private DishExtraction cachedExtraction(String videoId, String lang) {
+        synchronized (extractions) {
+            CachedExtraction c = extractions.get(lang + "|" + videoId);
+            if (c == null) return null;
+            if (System.currentTimeMillis() > c.expiresAtMs()) {
+                extractions.remove(lang + "|" + videoId);
+                return null;
+            }
+            DishExtraction e = c.extraction();
+            return new DishExtraction(e.getId(), e.getDishName(), e.getBasicRecipe(), e.getConfidence());
+        }
+    }
 
-            Language: %s.
-            Videos JSON:
-            %s
-        """.formatted(language == null ? "vi" : language, dataJson);
+    private void remember(String videoId, String lang, DishExtraction e) {
+        synchronized (extractions) {
+            extractions.put(lang + "|" + videoId, new CachedExtraction(
+                    new DishExtraction(e.getId(), e.getDishName(), e.getBasicRecipe(), e.getConfidence()),
+                    System.currentTimeMillis() + extractCacheTtlMs));
+        }
+    }
 
-        try {
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/"
-                    + model + ":generateContent?key=" + apiKey;
+    // Gọi generateContent (JSON mode) sau khi chờ tới lượt; trả về phần text của câu trả lời
+    private String generate(String prompt) throws Exception {
+        awaitSlot();
+        String url = baseUrl + "/v1beta/models/"
+                + model + ":generateContent?key=" + apiKey;
 
-            Map<String,Object> body = Map.of(
-                    "contents", List.of(Map.of("parts", List.of(Map.of("text", instr)))),
-                    "generationConfig", Map.of("responseMimeType", "application/json")
-            );
+        Map<String,Object> body = Map.of(
+                "contents", List.of(Map.of("parts", List.of(Map.of("text", prompt)))),
+                "generationConfig", Map.of("responseMimeType", "application/json")
+        );
 
-            HttpHeaders h = new HttpHeaders();
-            h.setContentType(MediaType.APPLICATION_JSON);
-            ResponseEntity<String> r = http.postForEntity(url, new HttpEntity<>(body, h), String.class);
+        HttpHeaders h = new HttpHeaders();
+        h.setContentType(MediaType.APPLICATION_JSON);
 
-            JsonNode root = om.readTree(r.getBody());
-            String text = root.path("candidates").path(0).path("content").path(0).path("parts").path(0).path("text").asText("{}");
+        ResponseEntity<String> r = http.postForEntity(url, new HttpEntity<>(body, h), String.class);
+        JsonNode root = om.readTree(r.getBody());
+        StringBuilder text = new StringBuilder();
+        for (JsonNode part : root.path("candidates").path(0).path("content").path("parts")) {
+            text.append(part.path("text").asText(""));
+        }
+        return stripCodeFence(text.toString());
+    }
 
-            JsonNode parsed = om.readTree(text);
+    private static String stripCodeFence(String text) {
+        text = text.trim();
+        if (text.startsWith("```json")) {
+            text = text.substring(7);
+        } else if (text.startsWith("```")) {
+            text = text.substring(3);
+        }
+        if (text.endsWith("```")) {
+            text = text.substring(0, text.length() - 3);
+        }
+        text = text.trim();
+        return text.isEmpty() ? "{}" : text;
+    }
+
+    /**
+     * Gemini giới hạn số request/phút theo API key: các lượt gọi được giãn đều theo
+     * ai.gemini.requests-per-minute, cho phép dồn tối đa ai.gemini.burst lượt sau một lúc rảnh.
+     */
+    private void awaitSlot() throws InterruptedException {
+        long wait;
+        synchronized (slotLock) {
+            long now = System.nanoTime();
+            long interval = TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+            long slot = Math.max(now - (Math.max(1, burst) - 1) * interval, nextSlotNanos);
+            nextSlotNanos = slot + interval;
+            wait = slot - now;
+        }
+        if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+    }
+
+    // === HÀM CŨ CỦA BẠN: GIỮ NGUYÊN ===
+    // (cần nhìn cả danh sách nên chỉ một lượt gọi: video nhiều view nhất được đưa vào trước, tới khi hết ngân sách token)
+    public List<SuggestedDrink> rankSuggestions(List<VideoItem> videos, String language) {
+        if (videos == null || videos.isEmpty()) return List.of();
+
+        List<VideoItem> byViews = new ArrayList<>(videos);
+        byViews.sort(Comparator.comparing((VideoItem v) -> Optional.ofNullable(v.getViewCount()).orElse(0L)).reversed());
+        StringJoiner items = new StringJoiner(",", "[", "]");
+        int tokens = estimateTokens(RANK_PROMPT) + 16;
+        for (VideoItem v : byViews) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", v.getVideoId());
+            item.put("title", Objects.toString(v.getTitle(), ""));
+            String desc = Objects.toString(v.getDescription(), "");
+            item.put("desc", desc.length() > extractDescriptionChars ? desc.substring(0, extractDescriptionChars) : desc);
+            item.put("views", v.getViewCount());
+            item.put("likes", v.getLikeCount());
+            item.put("url", v.getVideoUrl());
+            String json;
+            try {
+                json = om.writeValueAsString(item);
+            } catch (Exception e) {
+                continue;
+            }
+            int cost = estimateTokens(json) + 1;
+            if (tokens + cost > extractMaxPromptTokens && items.length() > 2) break;
+            items.add(json);
+            tokens += cost;
+        }
+        String dataJson = items.toString();
+
+        String instr = RANK_PROMPT.formatted(language == null ? "vi" : language, dataJson);
+
+        try {
+            JsonNode parsed = om.readTree(generate(instr));
             List<SuggestedDrink> out = new ArrayList<>();
             for (JsonNode it : parsed.path("items")) {
                 List<VideoItem> src = new ArrayList<>();
@@ -308,7 +529,7 @@ public class GeminiClient {
         """.formatted(currentDate, maxResults, maxResults);
 
         try {
-            String url = "https://generativelanguage.googleapis.com/v1beta/models/"
+            String url = baseUrl + "/v1beta/models/"
                     + model + ":generateContent?key=" + apiKey;
             
             System.out.println("[Gemini] Calling URL: " + url.replace(apiKey, "***"));
@@ -328,6 +549,7 @@ public class GeminiClient {
             HttpHeaders h = new HttpHeaders();
             h.setContentType(MediaType.APPLICATION_JSON);
 
+            awaitSlot();
             ResponseEntity<String> r = http.postForEntity(url, new HttpEntity<>(body, h), String.class);
             System.out.println("[Gemini] Response status: " + r.getStatusCode());
             System.out.println("[Gemini] Response body (first 500 chars): " + 
@@ -411,24 +633,6 @@ public class GeminiClient {
         return fallback.stream().limit(maxResults).collect(Collectors.toList());
     }
 
-    // Heuristic cực nhẹ để dự phòng khi không gọi được API
-    private String guessDishName(String title, String desc) {
-        String t = (title == null ? "" : title).toLowerCase();
-        String d = (desc == null ? "" : desc).toLowerCase();
-        String text = t + " " + d;
-
-        if (text.contains("salted") && text.contains("caramel") && text.contains("latte")) return "Salted Caramel Latte";
-        if (text.contains("dirty")  && text.contains("matcha")) return "Dirty Matcha";
-        if (text.contains("coconut")&& text.contains("coffee")) return "Coconut Coffee";
-        if (text.contains("strawberry") && text.contains("latte")) return "Strawberry Latte";
-        if (text.contains("matcha") && text.contains("latte")) return "Matcha Latte";
-        if (text.contains("caramel") && text.contains("latte")) return "Caramel Latte";
-        if (text.contains("latte")) return "Latte";
-        if (text.contains("coffee")) return "Coffee";
-        if (text.contains("matcha")) return "Matcha";
-        return null;
-    }
-
     /**
      * DTO cho thông tin món hot trend từ Gemini
      */
@@ -0,0 +1,150 @@
+package com.kopi.kopi.service.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caches Gemini intent classifications by normalized message + role (TTL and LRU bounded),
+ * and lets concurrent identical lookups share one in-flight call. A null result (quota,
+ * HTTP or parse failure) is never cached, so the caller's fallback runs and the next
+ * message tries Gemini again. Misses turned away by the caller's gate (Gemini cooling down)
+ * count as {@code skipped} rather than as calls or failures.
+ */
+@Component
+public class IntentCache {
+    private static final Logger log = LoggerFactory.getLogger(IntentCache.class);
+
+    public record Stats(long hits, long misses, long joined, long calls, long failures, long skipped, long avgCallMs, int size) {}
+
+    private record Cached(String intent, long expiresAtMs) {}
+
+    @Value("${ai.intent-cache.ttl-ms:21600000}")
+    private long ttlMs = 21600000;
+
+    @Value("${ai.intent-cache.max-entries:5000}")
+    private int maxEntries = 5000;
+
+    private final LinkedHashMap<String, Cached> entries = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong callNanos = new AtomicLong();
+
+    /** "{ROLE}|{message}" with case and whitespace folded; diacritics are kept since they change meaning. */
+    public static String keyFor(String message, String role) {
+        String msg = message == null ? "" : message.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        String r = role == null ? "" : role.toUpperCase(Locale.ROOT);
+        return r + "|" + msg;
+    }
+
+    /** Cached intent, or the result of {@code classifier} (run at most once per key at a time). */
+    public String classify(String message, String role, Supplier<String> classifier) {
+        return classify(message, role, () -> true, classifier);
+    }
+
+    /**
+     * As {@link #classify(String, String, Supplier)}, but a miss returns null without running
+     * {@code classifier} while {@code allowed} is false; cached and in-flight results are still shared.
+     */
+    public String classify(String message, String role, BooleanSupplier allowed, Supplier<String> classifier) {
+        String key = keyFor(message, role);
+        String cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        if (!allowed.getAsBoolean()) {
+            CompletableFuture<String> running = inFlight.get(key);
+            if (running != null) {
+                joined.incrementAndGet();
+                return running.join();
+            }
+            skipped.incrementAndGet();
+            return null;
+        }
+
+        CompletableFuture<String> mine = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            joined.incrementAndGet();
+            return running.join();
+        }
+
+        // Another caller may have finished between the lookup and claiming the key
+        String settled = lookup(key);
+        if (settled != null) {
+            inFlight.remove(key, mine);
+            mine.complete(settled);
+            hits.incrementAndGet();
+            return settled;
+        }
+
+        misses.incrementAndGet();
+        String intent = null;
+        long start = System.nanoTime();
+        try {
+            intent = classifier.get();
+        } catch (RuntimeException ex) {
+            log.debug("Intent classifier failed: {}", ex.getMessage());
+        } finally {
+            callNanos.addAndGet(System.nanoTime() - start);
+            calls.incrementAndGet();
+            if (intent == null) failures.incrementAndGet();
+            else store(key, intent);
+            inFlight.remove(key, mine);
+            mine.complete(intent);
+        }
+        if (calls.get() % 100 == 0) log.info("Intent cache: {}", stats());
+        return intent;
+    }
+
+    public Stats stats() {
+        long n = calls.get();
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), misses.get(), joined.get(), n, failures.get(), skipped.get(),
+                n == 0 ? 0 : callNanos.get() / n / 1_000_000, size);
+    }
+
+    private String lookup(String key) {
+        synchronized (entries) {
+            Cached c = entries.get(key);
+            if (c == null) return null;
+            if (System.currentTimeMillis() > c.expiresAtMs()) {
+                entries.remove(key);
+                return null;
+            }
+            return c.intent();
+        }
+    }
+
+    private void store(String key, String intent) {
+        synchronized (entries) {
+            entries.put(key, new Cached(intent, System.currentTimeMillis() + ttlMs));
+        }
+    }
+}
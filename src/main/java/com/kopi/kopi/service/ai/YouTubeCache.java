@@ -0,0 +1,279 @@
+package com.kopi.kopi.service.ai;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.entity.YouTubeCacheEntry;
+import com.kopi.kopi.exception.YouTubeQuotaExceededException;
+import com.kopi.kopi.repository.YouTubeCacheEntryRepository;
+import com.kopi.kopi.service.SseConnection;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Cache for YouTube searches: an in-memory LRU in front of {@code dbo.youtube_cache}, so results
+ * survive restarts and are shared between admins. A result is fresh for {@code ttl-ms}; after that it
+ * is still served for {@code stale-ms} while one background refresh replaces it. When the daily quota
+ * is nearly spent ({@link YouTubeQuota}) cached results are served however old they are and nothing is
+ * refreshed; a quotaExceeded answer falls back to the cached result when there is one. Results are
+ * kept as JSON, so every caller gets its own copies of the videos. The table holds at most
+ * {@code max-entries} rows.
+ */
+@Component
+public class YouTubeCache {
+    private static final Logger log = LoggerFactory.getLogger(YouTubeCache.class);
+    private static final int MAX_KEY_LENGTH = 400;
+    private static final TypeReference<List<VideoItem>> VIDEOS = new TypeReference<>() {};
+
+    private record Slot(String payload, long freshUntilMs, long staleUntilMs) {}
+
+    private final YouTubeCacheEntryRepository repository;
+    private final YouTubeQuota quota;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate ownTx;
+    private final ObjectMapper om = JsonMapper.builder()
+            .addModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .build();
+
+    @Value("${ai.youtube.cache.ttl-ms:21600000}")
+    private long ttlMs = 21600000L;
+
+    // searches that found nothing are retried sooner
+    @Value("${ai.youtube.cache.empty-ttl-ms:1800000}")
+    private long emptyTtlMs = 1800000L;
+
+    @Value("${ai.youtube.cache.stale-ms:604800000}")
+    private long staleMs = 604800000L;
+
+    @Value("${ai.youtube.cache.max-entries:5000}")
+    private int maxEntries = 5000;
+
+    @Value("${ai.youtube.cache.memory-entries:500}")
+    private int memoryEntries = 500;
+
+    private final LinkedHashMap<String, Slot> memory = new LinkedHashMap<>(128, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+            return size() > memoryEntries;
+        }
+    };
+    private final ConcurrentHashMap<String, CompletableFuture<Slot>> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService refresher;
+
+    public YouTubeCache(YouTubeCacheEntryRepository repository, YouTubeQuota quota, JdbcTemplate jdbcTemplate,
+                        PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.quota = quota;
+        this.jdbcTemplate = jdbcTemplate;
+        this.ownTx = new TransactionTemplate(transactionManager);
+        this.ownTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @PostConstruct
+    void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("youtube-cache"));
+        refresher.scheduleWithFixedDelay(this::purge, 1, 60, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void stop() {
+        if (refresher != null) refresher.shutdownNow();
+    }
+
+    /** Key of one search: the normalized query plus every option that changes the answer. */
+    public static String searchKey(String query, int days, int maxResults, String regionCode, String language,
+                                   boolean shortsOnly, String videoCategoryId, String safeSearch,
+                                   boolean embeddableOnly, String order) {
+        String q = query == null ? "" : query.toLowerCase(Locale.ROOT).replaceAll("\\s+", " ").trim();
+        String key = String.join("|", "yt", q, String.valueOf(days), String.valueOf(maxResults),
+                norm(regionCode), norm(language), shortsOnly ? "short" : "", norm(videoCategoryId),
+                norm(safeSearch), embeddableOnly ? "embed" : "", norm(order));
+        return boundedKey(key);
+    }
+
+    public List<VideoItem> get(String key, Callable<List<VideoItem>> loader) {
+        long now = System.currentTimeMillis();
+        Slot slot;
+        synchronized (memory) {
+            slot = memory.get(key);
+        }
+        if (slot == null) {
+            slot = loadStored(key);
+            if (slot != null) remember(key, slot);
+        }
+        if (slot != null) {
+            if (slot.freshUntilMs() > now) return decode(slot);
+            boolean saving = quota.nearLimit();
+            if (saving || slot.staleUntilMs() > now) {
+                if (!saving) refreshInBackground(key, loader);
+                return decode(slot);
+            }
+        }
+        try {
+            return decode(load(key, loader));
+        } catch (RuntimeException e) {
+            // out of quota or YouTube unreachable: an expired result beats none
+            if (slot != null) return decode(slot);
+            throw e;
+        }
+    }
+
+    /** Wait until queued background refreshes are done. */
+    void flush() throws ExecutionException, InterruptedException {
+        refresher.submit(() -> {}).get();
+    }
+
+    private void refreshInBackground(String key, Callable<List<VideoItem>> loader) {
+        if (!refreshing.add(key)) return;
+        try {
+            refresher.execute(() -> {
+                try {
+                    load(key, loader);
+                } catch (Exception ex) {
+                    log.warn("YouTube cache refresh of {} failed: {}", key, ex.getMessage());
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(key);
+        }
+    }
+
+    // Concurrent misses for the same key share one loader call
+    private Slot load(String key, Callable<List<VideoItem>> loader) {
+        CompletableFuture<Slot> mine = new CompletableFuture<>();
+        CompletableFuture<Slot> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw e;
+            }
+        }
+        try {
+            List<VideoItem> videos = loader.call();
+            long now = System.currentTimeMillis();
+            long freshUntil = now + (videos == null || videos.isEmpty() ? emptyTtlMs : ttlMs);
+            Slot fresh = new Slot(om.writeValueAsString(videos == null ? List.of() : videos), freshUntil, freshUntil + staleMs);
+            remember(key, fresh);
+            persist(key, fresh, videos == null ? 0 : videos.size());
+            mine.complete(fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            if (e instanceof YouTubeQuotaExceededException) quota.markExhausted();
+            mine.completeExceptionally(e);
+            throw e;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw new IllegalStateException(e.getMessage(), e);
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    private List<VideoItem> decode(Slot slot) {
+        try {
+            return om.readValue(slot.payload(), VIDEOS);
+        } catch (Exception e) {
+            log.warn("Unreadable cached YouTube result: {}", e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private void remember(String key, Slot slot) {
+        synchronized (memory) {
+            memory.put(key, slot);
+        }
+    }
+
+    private Slot loadStored(String key) {
+        try {
+            YouTubeCacheEntry e = ownTx.execute(status -> repository.findById(key).orElse(null));
+            if (e == null) return null;
+            return new Slot(e.getPayload(), toMs(e.getFreshUntil()), toMs(e.getStaleUntil()));
+        } catch (Exception ex) {
+            log.warn("youtube_cache read failed for {}: {}", key, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void persist(String key, Slot slot, int count) {
+        try {
+            YouTubeCacheEntry e = YouTubeCacheEntry.builder()
+                    .cacheKey(key)
+                    .payload(slot.payload())
+                    .resultCount(count)
+                    .freshUntil(toTime(slot.freshUntilMs()))
+                    .staleUntil(toTime(slot.staleUntilMs()))
+                    .updatedAt(LocalDateTime.now())
+                    .build();
+            ownTx.executeWithoutResult(status -> repository.save(e));
+        } catch (Exception ex) {
+            // Another node may have written the same key; the memory tier still has the answer
+            log.warn("youtube_cache write failed for {}: {}", key, ex.getMessage());
+        }
+    }
+
+    // Drop rows past their stale window, then the least recently refreshed ones above max-entries
+    void purge() {
+        try {
+            Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+            int expired = jdbcTemplate.update("DELETE FROM dbo.youtube_cache WHERE stale_until < ?", now);
+            List<Timestamp> cutoff = jdbcTemplate.queryForList("SELECT stale_until FROM dbo.youtube_cache "
+                    + "ORDER BY stale_until DESC OFFSET ? ROWS FETCH NEXT 1 ROWS ONLY", Timestamp.class, maxEntries);
+            int trimmed = cutoff.isEmpty() ? 0
+                    : jdbcTemplate.update("DELETE FROM dbo.youtube_cache WHERE stale_until <= ?", cutoff.get(0));
+            if (expired + trimmed > 0) log.info("youtube_cache purged {} expired and {} surplus rows", expired, trimmed);
+        } catch (Exception ex) {
+            log.warn("youtube_cache purge failed: {}", ex.getMessage());
+        }
+    }
+
+    private static long toMs(LocalDateTime t) {
+        return t == null ? 0 : t.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toTime(long ms) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(ms), ZoneId.systemDefault());
+    }
+
+    private static String norm(String v) {
+        return v == null ? "" : v.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String boundedKey(String key) {
+        if (key.length() <= MAX_KEY_LENGTH) return key;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return "yt#" + HexFormat.of().formatHex(digest);
+        } catch (Exception e) {
+            return key.substring(0, MAX_KEY_LENGTH);
+        }
+    }
+}
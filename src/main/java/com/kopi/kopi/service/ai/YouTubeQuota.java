@@ -0,0 +1,112 @@
+package com.kopi.kopi.service.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Tracks YouTube Data API units spent today in {@code dbo.youtube_quota_usage}, shared by every
+ * instance. Google resets the quota at midnight Pacific time, so that is when a day starts here.
+ * Once fewer than {@code reserve-units} remain, or YouTube has answered quotaExceeded, the budget
+ * counts as nearly spent and cached results are served however old they are.
+ */
+@Component
+public class YouTubeQuota {
+    private static final Logger log = LoggerFactory.getLogger(YouTubeQuota.class);
+    static final ZoneId QUOTA_ZONE = ZoneId.of("America/Los_Angeles");
+
+    public static final int SEARCH_UNITS = 100;
+    public static final int VIDEOS_UNITS = 1;
+
+    private static final String ADD = "UPDATE dbo.youtube_quota_usage SET units = units + ?, updated_at = ? WHERE usage_date = ?";
+    private static final String INSERT = "INSERT INTO dbo.youtube_quota_usage (usage_date, units, updated_at) VALUES (?, ?, ?)";
+    private static final String SELECT = "SELECT units FROM dbo.youtube_quota_usage WHERE usage_date = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${ai.youtube.quota.daily-units:10000}")
+    private int dailyUnits = 10000;
+
+    @Value("${ai.youtube.quota.reserve-units:1000}")
+    private int reserveUnits = 1000;
+
+    // guarded by this
+    private LocalDate day;
+    private int used;
+    private LocalDate exhaustedOn;
+
+    public YouTubeQuota(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /** Record units about to be spent on an API call. */
+    public void spend(int units) {
+        LocalDate today = LocalDate.now(QUOTA_ZONE);
+        Date date = Date.valueOf(today);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        try {
+            if (jdbcTemplate.update(ADD, units, now, date) == 0) {
+                try {
+                    jdbcTemplate.update(INSERT, date, units, now);
+                } catch (DuplicateKeyException raced) {
+                    jdbcTemplate.update(ADD, units, now, date);
+                }
+            }
+            int total = read(today);
+            synchronized (this) {
+                day = today;
+                used = total;
+            }
+        } catch (DataAccessException ex) {
+            log.warn("youtube_quota_usage update failed: {}", ex.getMessage());
+            synchronized (this) {
+                usedOn(today);
+                used += units;
+            }
+        }
+    }
+
+    /** YouTube refused a call for quota: nothing more can be spent until the reset. */
+    public synchronized void markExhausted() {
+        exhaustedOn = LocalDate.now(QUOTA_ZONE);
+    }
+
+    public synchronized boolean nearLimit() {
+        LocalDate today = LocalDate.now(QUOTA_ZONE);
+        if (today.equals(exhaustedOn)) return true;
+        return usedOn(today) + reserveUnits >= dailyUnits;
+    }
+
+    public synchronized int usedToday() {
+        return usedOn(LocalDate.now(QUOTA_ZONE));
+    }
+
+    // caller holds this; the first look at a new day reads what other instances spent
+    private int usedOn(LocalDate today) {
+        if (!today.equals(day)) {
+            day = today;
+            try {
+                used = read(today);
+            } catch (DataAccessException ex) {
+                used = 0;
+            }
+        }
+        return used;
+    }
+
+    private int read(LocalDate today) {
+        List<Integer> units = jdbcTemplate.queryForList(SELECT, Integer.class, Date.valueOf(today));
+        return units.isEmpty() || units.get(0) == null ? 0 : units.get(0);
+    }
+}
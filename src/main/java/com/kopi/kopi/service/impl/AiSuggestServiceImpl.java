@@ -6,12 +6,18 @@ import com.kopi.kopi.dto.ai.DishExtraction;
 import com.kopi.kopi.dto.ai.DishGroup;
 import com.kopi.kopi.dto.ai.DishTrendsResponse;
 import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.exception.YouTubeQuotaExceededException;
 import com.kopi.kopi.service.IAiSuggestService;
+import com.kopi.kopi.service.SseConnection;
 import com.kopi.kopi.service.ai.GeminiClient;
 import com.kopi.kopi.service.ai.YouTubeClient;
 import java.time.Duration;
 import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
@@ -23,16 +29,41 @@ public class AiSuggestServiceImpl implements IAiSuggestService {
     @Value("${ai.youtube.regionCode:VN}")
     private String defaultRegion;
 
+    // Số món tìm video cùng lúc; giữ thấp để không đốt quota YouTube (10.000 đơn vị/ngày) theo từng đợt
+    @Value("${ai.youtube.max-concurrent-searches:4}")
+    private int maxConcurrentSearches = 4;
+
+    @Value("${ai.youtube.dish-timeout-ms:8000}")
+    private long dishTimeoutMs = 8000;
+
+    @Value("${ai.youtube.fan-out-deadline-ms:30000}")
+    private long fanOutDeadlineMs = 30000;
+
+    private ScheduledExecutorService deadlines;
+
     public AiSuggestServiceImpl(YouTubeClient yt, GeminiClient gemini) {
         this.yt = yt;
         this.gemini = gemini;
     }
 
+    @PostConstruct
+    void start() {
+        deadlines = Executors.newSingleThreadScheduledExecutor(SseConnection.daemonThreads("yt-search-deadline"));
+    }
+
+    @PreDestroy
+    void stop() {
+        if (deadlines != null) deadlines.shutdownNow();
+    }
+
     @Override
     public AiSuggestResponse search(AiSuggestionRequest req) {
         // Đơn giản: mặc định tìm hot trend drink Việt Nam
-        DishTrendsResponse trends = groupedByDish(req);
-        
+        return toSuggestions(groupedByDish(req));
+    }
+
+    @Override
+    public AiSuggestResponse toSuggestions(DishTrendsResponse trends) {
         // Chuyển DishGroup sang SuggestedDrink để tương thích response cũ
         List<com.kopi.kopi.dto.ai.SuggestedDrink> items = new ArrayList<>();
         for (DishGroup g : trends.getData()) {
@@ -49,8 +80,9 @@ public class AiSuggestServiceImpl implements IAiSuggestService {
         return AiSuggestResponse.builder()
                 .items(items)
                 .model("trend-aggregation")
-                .tookMs((Long)trends.getMeta().getOrDefault("tookMs", 0L))
-                .videoFetched((Integer)trends.getMeta().getOrDefault("totalVideos", 0))
+                // meta đọc lại từ snapshot JSON có thể là Integer hoặc Long
+                .tookMs(((Number) trends.getMeta().getOrDefault("tookMs", 0L)).longValue())
+                .videoFetched(((Number) trends.getMeta().getOrDefault("totalVideos", 0)).intValue())
                 .build();
     }
 
@@ -88,93 +120,19 @@ public class AiSuggestServiceImpl implements IAiSuggestService {
                     .build();
         }
 
-        // BƯỚC 2: Với mỗi món, tìm video GẦN ĐÂY trên YouTube
+        // BƯỚC 2: Với mỗi món, tìm video GẦN ĐÂY trên YouTube (song song, xem searchAll)
         System.out.println("[AiSuggest] Step 2: Searching RECENT YouTube videos for each dish...");
-        Map<String, List<VideoItem>> dishToVideos = new LinkedHashMap<>();
         int videosPerDish = Math.max(3, max / trendingDishes.size()); // Ít nhất 3 video/món
         
         // Giảm xuống 60 ngày để có nhiều video hơn (90 ngày quá khắt)
         int recentDays = Math.max(days, 60);
         System.out.println("[AiSuggest] Will search for videos published within last " + recentDays + " days");
 
-        for (GeminiClient.TrendingDishInfo dishInfo : trendingDishes) {
-            String dishName = dishInfo.getName();
-            System.out.println("[AiSuggest] Searching videos for: " + dishName);
-            
-            // Tạo query tìm kiếm đơn giản (chỉ tên món)
-            String query = dishName;
-            
-            try {
-                // Thử tìm với region=VN và THỜI GIAN GẦN ĐÂY trước
-                List<VideoItem> videos = yt.searchRecentVideos(
-                        query, recentDays, videosPerDish, "VN", "vi", shortsOnly, null, "moderate", false
-                );
-                
-                System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (VN, last " + recentDays + " days) for " + dishName);
-                
-                // Nếu không có kết quả, thử bỏ region nhưng VẪN GIỮ time filter
-                if (videos.isEmpty()) {
-                    System.out.println("[AiSuggest]   -> Retry without region but keep time filter...");
-                    videos = yt.searchRecentVideos(
-                            query, recentDays, videosPerDish, "", "", shortsOnly, null, "moderate", false
-                    );
-                    System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (global, last " + recentDays + " days) for " + dishName);
-                }
-                
-                // Nếu vẫn rỗng, thử với relevance order (nhưng vẫn giữ time)
-                if (videos.isEmpty()) {
-                    System.out.println("[AiSuggest]   -> Retry with relevance order...");
-                    videos = yt.searchVideos(
-                            query, recentDays, videosPerDish, "", "", shortsOnly, null, "moderate", false, "relevance"
-                    );
-                    System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (relevance, last " + recentDays + " days) for " + dishName);
-                }
-                
-                // CUỐI CÙNG: Nếu vẫn rỗng, thử nới lỏng time filter (120 ngày)
-                if (videos.isEmpty()) {
-                    System.out.println("[AiSuggest]   -> Last retry with extended time (120 days)...");
-                    videos = yt.searchVideos(
-                            query, 120, videosPerDish, "", "", false, null, "moderate", false, "relevance"
-                    );
-                    System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (120 days, no shorts filter) for " + dishName);
-                }
-                
-                // Lọc video không liên quan
-                videos = filterRelevantVideos(videos, dishName);
-                System.out.println("[AiSuggest]   -> After filter: " + videos.size() + " videos");
-                
-                // Tính viral score cho từng video
-                OffsetDateTime now = OffsetDateTime.now();
-                for (VideoItem v : videos) {
-                    double view = Math.max(1, Optional.ofNullable(v.getViewCount()).orElse(0L));
-                    double like = Math.max(1, Optional.ofNullable(v.getLikeCount()).orElse(0L));
-                    double base = Math.log(view) + 2.0 * Math.log(like);
-                    long hours = Math.max(1, Duration.between(
-                            Optional.ofNullable(v.getPublishedAt()).orElse(now.minusDays(days)), now
-                    ).toHours());
-                    double recency = 48.0 / hours;
-                    v.setViralScore(base + recency);
-                    
-                // Gán tên món và công thức cho video
-                v.setDishName(dishName);
-                v.setDishKey(keyOf(dishName));
-                v.setBasicRecipe(dishInfo.getBasicRecipe());
-            }
-            
-            // LUÔN thêm món, kể cả khi không có video (theo yêu cầu user)
-            dishToVideos.put(dishName, videos);
-            if (videos.isEmpty()) {
-                System.out.println("[AiSuggest]   ⚠️  Added dish '" + dishName + "' with NO videos (will show as 'Không có video cụ thể')");
-            } else {
-                System.out.println("[AiSuggest]   ✅ Added dish '" + dishName + "' with " + videos.size() + " videos");
-            }
-                
-            } catch (Exception e) {
-                System.err.println("[AiSuggest] Failed to search videos for " + dishName + ": " + e.getMessage());
-            }
-        }
+        FanOut fanOut = searchAll(trendingDishes, recentDays, videosPerDish, shortsOnly, days);
+        Map<String, List<VideoItem>> dishToVideos = fanOut.videos();
         
-        System.out.println("[AiSuggest] Total dishes with videos: " + dishToVideos.size() + "/" + trendingDishes.size());
+        System.out.println("[AiSuggest] Total dishes with videos: " + dishToVideos.size() + "/" + trendingDishes.size()
+                + " (" + fanOut.incomplete() + " incomplete)");
 
         // BƯỚC 3: Gom nhóm và sắp xếp
         System.out.println("[AiSuggest] Step 3: Grouping and ranking dishes...");
@@ -242,6 +200,9 @@ public class AiSuggestServiceImpl implements IAiSuggestService {
         int totalVideos = groups.stream().mapToInt(DishGroup::getTotalVideos).sum();
         
         System.out.println("[AiSuggest] Finished: " + groups.size() + " dish groups, " + totalVideos + " total videos, took " + tookMs + "ms");
+
+        // Hết quota ngay từ đầu: báo lỗi quota thay vì trả về danh sách không có video nào
+        if (fanOut.quotaError() != null && totalVideos == 0) throw fanOut.quotaError();
         
         return DishTrendsResponse.builder()
                 .data(groups)
@@ -250,11 +211,172 @@ public class AiSuggestServiceImpl implements IAiSuggestService {
                         "max", max,
                         "totalVideos", totalVideos,
                         "grouped", groups.size(),
+                        "incomplete", fanOut.incomplete(),
+                        "quotaExceeded", fanOut.quotaError() != null,
                         "tookMs", tookMs
                 ))
                 .build();
     }
 
+    // Kết quả tìm video cho các món, theo đúng thứ tự Gemini trả về; incomplete = số món không tìm xong
+    // (quá hạn chót, lỗi, hoặc bị bỏ qua vì hết quota) và được giữ lại với danh sách video rỗng
+    private record FanOut(Map<String, List<VideoItem>> videos, int incomplete, YouTubeQuotaExceededException quotaError) {}
+
+    /**
+     * Tìm video cho tất cả các món trên virtual thread, tối đa maxConcurrentSearches món cùng lúc
+     * (mỗi lượt search.list tốn 100 đơn vị quota YouTube). Mỗi món có dishTimeoutMs kể từ khi bắt đầu,
+     * cả lượt có fanOutDeadlineMs: quá hạn thì hủy các lượt còn lại và trả về phần đã có. Hết quota thì
+     * không gọi thêm món nào. Kết quả được gom theo thứ tự đầu vào, không phụ thuộc thứ tự hoàn thành.
+     */
+    private FanOut searchAll(List<GeminiClient.TrendingDishInfo> dishes, int recentDays, int videosPerDish,
+                             boolean shortsOnly, int days) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(fanOutDeadlineMs);
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrentSearches));
+        AtomicReference<YouTubeQuotaExceededException> quotaError = new AtomicReference<>();
+        ExecutorService pool = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("yt-search-", 0).factory());
+        try {
+            List<Future<List<VideoItem>>> futures = new ArrayList<>(dishes.size());
+            for (GeminiClient.TrendingDishInfo dish : dishes) {
+                futures.add(pool.submit(() -> {
+                    permits.acquire();
+                    try {
+                        if (quotaError.get() != null || System.nanoTime() - deadline >= 0) return null;
+                        // hạn chót của món: ngắt luồng, lượt gọi HTTP đang chờ sẽ bị hủy
+                        Thread self = Thread.currentThread();
+                        ScheduledFuture<?> guard = deadlines.schedule(self::interrupt, dishTimeoutMs, TimeUnit.MILLISECONDS);
+                        try {
+                            return searchDish(dish, recentDays, videosPerDish, shortsOnly, days);
+                        } finally {
+                            guard.cancel(false);
+                        }
+                    } catch (YouTubeQuotaExceededException e) {
+                        quotaError.compareAndSet(null, e);
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            Map<String, List<VideoItem>> dishToVideos = new LinkedHashMap<>();
+            int incomplete = 0;
+            for (int i = 0; i < dishes.size(); i++) {
+                List<VideoItem> videos = awaitUntil(futures.get(i), deadline);
+                if (videos == null) {
+                    incomplete++;
+                    videos = new ArrayList<>();
+                }
+                dishToVideos.put(dishes.get(i).getName(), videos);
+            }
+            return new FanOut(dishToVideos, incomplete, quotaError.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // null nếu món chưa xong trước hạn chót (lượt tìm bị hủy) hoặc lỗi
+    private static List<VideoItem> awaitUntil(Future<List<VideoItem>> f, long deadline) {
+        try {
+            return f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            f.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            return null;
+        }
+    }
+
+    // Tìm video cho một món với các bước nới lỏng dần; null nếu bị ngắt (quá hạn chót) hoặc lỗi
+    private List<VideoItem> searchDish(GeminiClient.TrendingDishInfo dishInfo, int recentDays, int videosPerDish,
+                                       boolean shortsOnly, int days) {
+        String dishName = dishInfo.getName();
+        System.out.println("[AiSuggest] Searching videos for: " + dishName);
+        
+        // Tạo query tìm kiếm đơn giản (chỉ tên món)
+        String query = dishName;
+        
+        try {
+            // Thử tìm với region=VN và THỜI GIAN GẦN ĐÂY trước
+            List<VideoItem> videos = yt.searchRecentVideos(
+                    query, recentDays, videosPerDish, "VN", "vi", shortsOnly, null, "moderate", false
+            );
+            
+            System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (VN, last " + recentDays + " days) for " + dishName);
+            
+            // Nếu không có kết quả, thử bỏ region nhưng VẪN GIỮ time filter
+            if (videos.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                System.out.println("[AiSuggest]   -> Retry without region but keep time filter...");
+                videos = yt.searchRecentVideos(
+                        query, recentDays, videosPerDish, "", "", shortsOnly, null, "moderate", false
+                );
+                System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (global, last " + recentDays + " days) for " + dishName);
+            }
+            
+            // Nếu vẫn rỗng, thử với relevance order (nhưng vẫn giữ time)
+            if (videos.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                System.out.println("[AiSuggest]   -> Retry with relevance order...");
+                videos = yt.searchVideos(
+                        query, recentDays, videosPerDish, "", "", shortsOnly, null, "moderate", false, "relevance"
+                );
+                System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (relevance, last " + recentDays + " days) for " + dishName);
+            }
+            
+            // CUỐI CÙNG: Nếu vẫn rỗng, thử nới lỏng time filter (120 ngày)
+            if (videos.isEmpty() && !Thread.currentThread().isInterrupted()) {
+                System.out.println("[AiSuggest]   -> Last retry with extended time (120 days)...");
+                videos = yt.searchVideos(
+                        query, 120, videosPerDish, "", "", false, null, "moderate", false, "relevance"
+                );
+                System.out.println("[AiSuggest]   -> Found " + videos.size() + " videos (120 days, no shorts filter) for " + dishName);
+            }
+
+            // YouTubeClient trả về rỗng khi lượt gọi bị ngắt: không coi là "không có video"
+            if (Thread.currentThread().isInterrupted()) {
+                System.err.println("[AiSuggest]   -> Search for " + dishName + " ran past its deadline");
+                return null;
+            }
+            
+            // Lọc video không liên quan
+            videos = new ArrayList<>(filterRelevantVideos(videos, dishName));
+            System.out.println("[AiSuggest]   -> After filter: " + videos.size() + " videos");
+            
+            // Tính viral score cho từng video
+            OffsetDateTime now = OffsetDateTime.now();
+            for (VideoItem v : videos) {
+                double view = Math.max(1, Optional.ofNullable(v.getViewCount()).orElse(0L));
+                double like = Math.max(1, Optional.ofNullable(v.getLikeCount()).orElse(0L));
+                double base = Math.log(view) + 2.0 * Math.log(like);
+                long hours = Math.max(1, Duration.between(
+                        Optional.ofNullable(v.getPublishedAt()).orElse(now.minusDays(days)), now
+                ).toHours());
+                double recency = 48.0 / hours;
+                v.setViralScore(base + recency);
+                
+                // Gán tên món và công thức cho video
+                v.setDishName(dishName);
+                v.setDishKey(keyOf(dishName));
+                v.setBasicRecipe(dishInfo.getBasicRecipe());
+            }
+            
+            // LUÔN thêm món, kể cả khi không có video (theo yêu cầu user)
+            if (videos.isEmpty()) {
+                System.out.println("[AiSuggest]   ⚠️  Added dish '" + dishName + "' with NO videos (will show as 'Không có video cụ thể')");
+            } else {
+                System.out.println("[AiSuggest]   ✅ Added dish '" + dishName + "' with " + videos.size() + " videos");
+            }
+            return videos;
+        } catch (YouTubeQuotaExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            System.err.println("[AiSuggest] Failed to search videos for " + dishName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Lọc video liên quan đến món cụ thể (công thức/giới thiệu)
      */
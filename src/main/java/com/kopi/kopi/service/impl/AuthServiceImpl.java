@@ -141,7 +141,7 @@ public class AuthServiceImpl implements IAuthService {
 
         try {
             // 🟨 FIX THỨ TỰ THAM SỐ: to, subject, body
-            emailService.send(user.getEmail(), subject, content);
+            emailService.sendUrgent(user.getEmail(), subject, content);
         } catch (Exception ex) {
             // Không để lỗi gửi mail làm vỡ flow đăng ký; log cảnh báo để dev kiểm tra
             org.slf4j.LoggerFactory.getLogger(getClass())
@@ -5,17 +5,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kopi.kopi.dto.chat.ChatMessage;
 import com.kopi.kopi.dto.chat.ChatRequest;
 import com.kopi.kopi.dto.chat.ChatResponse;
+import com.kopi.kopi.service.ChatSessionStore;
 import com.kopi.kopi.service.IChatService;
 import com.kopi.kopi.service.OrderService;
+import com.kopi.kopi.service.OutboundHttp;
+import com.kopi.kopi.service.ProductNameIndex;
 import com.kopi.kopi.service.ProductService;
 import com.kopi.kopi.service.ReportService;
 import com.kopi.kopi.service.ai.GeminiClient;
+import com.kopi.kopi.service.ai.IntentCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
 
 import java.time.LocalDate;
@@ -30,9 +33,12 @@ public class ChatServiceImpl implements IChatService {
 
     private final GeminiClient geminiClient;
     private final ProductService productService;
+    private final ProductNameIndex productNameIndex;
+    private final ChatSessionStore chatSessionStore;
+    private final IntentCache intentCache;
     private final ReportService reportService;
     private final OrderService orderService;
-    private final RestTemplate restTemplate = new RestTemplate();
+    private final OutboundHttp outboundHttp;
     private final ObjectMapper objectMapper = new ObjectMapper();
     private volatile long geminiCooldownUntil = 0L;
 
@@ -44,6 +50,39 @@ public class ChatServiceImpl implements IChatService {
 
     @Override
     public ChatResponse processMessage(ChatRequest request, Integer userId, String userRole) {
+        String guestSessionId = request.getSessionId();
+        if (userId == null && (guestSessionId == null || guestSessionId.isBlank())) {
+            guestSessionId = UUID.randomUUID().toString();
+        }
+        String sessionKey = ChatSessionStore.keyFor(userId, guestSessionId);
+
+        // Client cũ vẫn gửi orderState/orderContext + history: giữ nguyên cách xử lý đó.
+        // Ngược lại tiếp tục từ trạng thái đã lưu, không cần duyệt lại history.
+        boolean clientSentState = request.getOrderState() != null
+                || (request.getOrderContext() != null && !request.getOrderContext().isEmpty());
+        ChatRequest effective = request;
+        if (!clientSentState) {
+            ChatSessionStore.Session session = chatSessionStore.get(sessionKey);
+            if (session != null) {
+                effective = ChatRequest.builder()
+                        .message(request.getMessage())
+                        .history(null)
+                        .orderState(session.orderState())
+                        .orderContext(new HashMap<>(session.orderContext()))
+                        .sessionId(guestSessionId)
+                        .build();
+            }
+        }
+
+        ChatResponse response = handleMessage(effective, userId, userRole);
+        if (response != null) {
+            chatSessionStore.update(sessionKey, response.getOrderState(), response.getOrderContext());
+            if (userId == null) response.setSessionId(guestSessionId);
+        }
+        return response;
+    }
+
+    private ChatResponse handleMessage(ChatRequest request, Integer userId, String userRole) {
         String userMessage = request.getMessage();
         if (userMessage == null || userMessage.trim().isEmpty()) {
             return ChatResponse.builder()
@@ -111,7 +150,7 @@ public class ChatServiceImpl implements IChatService {
             // Fallback: thử phân tích lại bằng rule-based
             String intent = analyzeIntentSmart(userMessage, userRole);
             if (!"general".equals(intent)) {
-                return processMessage(request, userId, userRole);
+                return handleMessage(request, userId, userRole);
             }
             return ChatResponse.builder()
                     .message("Xin lỗi, có lỗi xảy ra. Vui lòng thử lại sau hoặc mô tả rõ hơn yêu cầu của bạn.")
@@ -159,9 +198,8 @@ public class ChatServiceImpl implements IChatService {
             }
         }
 
-        // Nếu không match rule-based, thử dùng Gemini AI (nếu có API key)
-        long now = System.currentTimeMillis();
-        if (apiKey != null && !apiKey.trim().isEmpty() && now >= geminiCooldownUntil) {
+        // Nếu không match rule-based, thử dùng Gemini AI (nếu có API key); kết quả đã cache vẫn dùng được khi đang cooldown
+        if (apiKey != null && !apiKey.trim().isEmpty()) {
             try {
                 return analyzeIntent(message, userRole);
             } catch (Exception e) {
@@ -174,6 +212,14 @@ public class ChatServiceImpl implements IChatService {
     }
 
     private String analyzeIntent(String message, String userRole) {
+        // Cache + gộp các lời gọi trùng; null = Gemini lỗi/hết quota/đang cooldown -> dùng rule-based
+        String intent = intentCache.classify(message, userRole,
+                () -> System.currentTimeMillis() >= geminiCooldownUntil, () -> callGeminiIntent(message, userRole));
+        return intent != null ? intent : fallbackIntent(message);
+    }
+
+    /** Gemini intent for the message, or null when the call fails or the answer is unusable. */
+    private String callGeminiIntent(String message, String userRole) {
         try {
             String prompt = String.format("""
                 Phân tích câu hỏi của người dùng và trả về intent phù hợp. Chỉ trả về JSON với format:
@@ -204,25 +250,25 @@ public class ChatServiceImpl implements IChatService {
 
             ResponseEntity<String> response;
             try {
-                response = restTemplate.postForEntity(
+                response = outboundHttp.client("chat").postForEntity(
                         url, new HttpEntity<>(body, headers), String.class);
             } catch (HttpClientErrorException e) {
                 // Xử lý lỗi 429 (Quota Exceeded)
                 if (e.getStatusCode().value() == 429) {
                     System.err.println("⚠️ Gemini API Quota Exceeded (429). Using fallback intent analysis.");
                     System.err.println("Error details: " + e.getResponseBodyAsString());
-                    return fallbackIntent(message);
+                    return null;
                 }
                 // Các lỗi HTTP khác
                 System.err.println("Gemini API HTTP Error: " + e.getStatusCode() + " - " + e.getMessage());
-                return fallbackIntent(message);
+                return null;
             } catch (Exception e) {
                 System.err.println("Gemini API Exception: " + e.getClass().getSimpleName() + " - " + e.getMessage());
-                return fallbackIntent(message);
+                return null;
             }
 
             if (response.getStatusCode().isError() || response.getBody() == null) {
-                return fallbackIntent(message);
+                return null;
             }
 
             JsonNode root = objectMapper.readTree(response.getBody());
@@ -239,7 +285,7 @@ public class ChatServiceImpl implements IChatService {
                 } else {
                     System.err.println("Gemini API Error: " + errorNode.toString());
                 }
-                return fallbackIntent(message);
+                return null;
             }
 
             String text = root.path("candidates").path(0).path("content").path(0).path("parts")
@@ -251,18 +297,18 @@ public class ChatServiceImpl implements IChatService {
             // Nếu intent không hợp lệ, dùng fallback
             if (!intent.equals("order") && !intent.equals("revenue") &&
                 !intent.equals("inventory") && !intent.equals("general")) {
-                return fallbackIntent(message);
+                return null;
             }
 
             return intent;
         } catch (HttpClientErrorException.TooManyRequests e) {
             geminiCooldownUntil = System.currentTimeMillis() + 60_000;
-            return fallbackIntent(message);
+            return null;
         } catch (HttpClientErrorException e) {
             geminiCooldownUntil = System.currentTimeMillis() + 15_000;
-            return fallbackIntent(message);
+            return null;
         } catch (Exception e) {
-            return fallbackIntent(message);
+            return null;
         }
     }
 
@@ -322,9 +368,7 @@ public class ChatServiceImpl implements IChatService {
             if (parseResult.productId == null) {
                 // Tìm sản phẩm theo từ khóa
                 String searchTerm = extractProductNameFromMessage(message);
-                Map<String, Object> products = productService.list(null, null, null, searchTerm, 10, 1);
-                @SuppressWarnings("unchecked")
-                List<Map<String, Object>> productList = (List<Map<String, Object>>) products.get("data");
+                List<Map<String, Object>> productList = productNameIndex.containing(searchTerm, 10);
 
                 if (productList != null && !productList.isEmpty()) {
                     if (productList.size() == 1) {
@@ -749,10 +793,8 @@ public class ChatServiceImpl implements IChatService {
 
     private Map<String, Object> findProductByName(String productName) {
         try {
-            // 1) Thử tìm kiếm trực tiếp bằng search term của API trước (nhanh)
-            Map<String, Object> productsDirect = productService.list(null, null, null, productName, 1, 1);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> directList = (List<Map<String, Object>>) productsDirect.get("data");
+            // 1) Thử khớp tên chứa search term trước (nhanh)
+            List<Map<String, Object>> directList = productNameIndex.containing(productName, 1);
             if (directList != null && !directList.isEmpty()) {
                 return directList.get(0);
             }
@@ -808,10 +850,8 @@ public class ChatServiceImpl implements IChatService {
 
     private ChatResponse showMenuPreview(int limit, String header) {
         try {
-            Map<String, Object> products = productService.list(null, null, null, null, Math.max(limit, 3), 1);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> productList = (List<Map<String, Object>>) products.get("data");
-            if (productList == null || productList.isEmpty()) {
+            List<Map<String, Object>> productList = productNameIndex.catalog(Math.max(limit, 3));
+            if (productList.isEmpty()) {
                 return ChatResponse.builder()
                         .message("Hiện chưa có sản phẩm để gợi ý. Bạn thử lại sau nhé!")
                         .intent("product_info")
@@ -847,91 +887,14 @@ public class ChatServiceImpl implements IChatService {
     // ==========================
     private Map<String, Object> findProductByNameFuzzy(String rawInput) {
         try {
-            String input = normalizeVietnamese(rawInput);
-            if (input.isBlank()) return null;
-
-            Map<String, Object> all = productService.list(null, null, null, null, 100, 1);
-            @SuppressWarnings("unchecked")
-            List<Map<String, Object>> list = (List<Map<String, Object>>) all.get("data");
-            if (list == null || list.isEmpty()) return null;
-
-            double bestScore = 0.0;
-            Map<String, Object> best = null;
-
-            for (Map<String, Object> p : list) {
-                String name = String.valueOf(p.get("name"));
-                String norm = normalizeVietnamese(name);
-                double score = similarityScore(input, norm);
-                if (score > bestScore) {
-                    bestScore = score;
-                    best = p;
-                }
-            }
-
-            // Ngưỡng tối thiểu để coi là match
-            return bestScore >= 0.35 ? best : null;
+            return productNameIndex.bestMatch(rawInput);
         } catch (Exception e) {
             return null;
         }
     }
 
-    private String normalizeVietnamese(String s) {
-        if (s == null) return "";
-        String lower = s.toLowerCase(Locale.ROOT).trim();
-        String decomposed = java.text.Normalizer.normalize(lower, java.text.Normalizer.Form.NFD);
-        String noDiacritics = decomposed.replaceAll("\\p{M}+", "");
-        // Chuẩn hóa khoảng trắng và bỏ ký tự không chữ/số cơ bản (giữ khoảng trắng)
-        String cleaned = noDiacritics.replaceAll("[^a-z0-9\\s]", " ").replaceAll("\\s+", " ").trim();
-        return cleaned;
-    }
-
-    private double similarityScore(String a, String b) {
-        if (a.equals(b)) return 1.0;
-        // Ưu tiên chứa trọn từ
-        if (b.contains(a)) return Math.min(1.0, 0.9 * a.length() / Math.max(1, b.length()));
-        if (a.contains(b)) return Math.min(1.0, 0.9 * b.length() / Math.max(1, a.length()));
-
-        // Token overlap
-        Set<String> at = new HashSet<>(Arrays.asList(a.split("\\s+")));
-        Set<String> bt = new HashSet<>(Arrays.asList(b.split("\\s+")));
-        at.removeIf(String::isBlank);
-        bt.removeIf(String::isBlank);
-        if (!at.isEmpty() && !bt.isEmpty()) {
-            int intersect = 0;
-            for (String t : at) if (bt.contains(t)) intersect++;
-            double overlap = (double) intersect / Math.max(at.size(), bt.size());
-            // Kết hợp với Levenshtein
-            double lev = 1.0 - ((double) levenshtein(a, b) / Math.max(a.length(), b.length()));
-            return Math.max(overlap, lev * 0.8 + overlap * 0.2);
-        }
-
-        // Levenshtein fallback
-        return 1.0 - ((double) levenshtein(a, b) / Math.max(Math.max(a.length(), b.length()), 1));
-    }
-
-    private int levenshtein(String s1, String s2) {
-        int len1 = s1.length();
-        int len2 = s2.length();
-        int[] prev = new int[len2 + 1];
-        int[] curr = new int[len2 + 1];
-        for (int j = 0; j <= len2; j++) prev[j] = j;
-        for (int i = 1; i <= len1; i++) {
-            curr[0] = i;
-            char c1 = s1.charAt(i - 1);
-            for (int j = 1; j <= len2; j++) {
-                int cost = (c1 == s2.charAt(j - 1)) ? 0 : 1;
-                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
-            }
-            int[] tmp = prev; prev = curr; curr = tmp;
-        }
-        return prev[len2];
-    }
-
     private ChatResponse showMenu() {
-        Map<String, Object> products = productService.list(null, null, null, null, 50, 1);
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> productList = (List<Map<String, Object>>) products.get("data");
-        return showProductList(productList, "Menu sản phẩm:\n\n");
+        return showProductList(productNameIndex.catalog(50), "Menu sản phẩm:\n\n");
     }
 
     private ChatResponse showProductList(List<Map<String, Object>> productList, String header) {
@@ -1380,6 +1343,7 @@ public class ChatServiceImpl implements IChatService {
                                       lower.contains("low stock") || lower.contains("ít");
 
             // Lấy tất cả sản phẩm (không filter theo search term để hiển thị đầy đủ)
+            // Đọc trực tiếp DB thay vì ProductNameIndex để số tồn kho luôn mới nhất
             Map<String, Object> products = productService.list(null, null, null, null, 100, 1);
             @SuppressWarnings("unchecked")
             List<Map<String, Object>> productList = (List<Map<String, Object>>) products.get("data");
@@ -1527,7 +1491,7 @@ public class ChatServiceImpl implements IChatService {
 
                 ResponseEntity<String> response = null;
                 try {
-                    response = restTemplate.postForEntity(
+                    response = outboundHttp.client("chat").postForEntity(
                             url, new HttpEntity<>(body, headers), String.class);
                 } catch (HttpClientErrorException e) {
                     // Xử lý lỗi 429 (Quota Exceeded)
@@ -5,6 +5,7 @@ import com.kopi.kopi.entity.Shift;
 import com.kopi.kopi.entity.WorkSchedule;
 import com.kopi.kopi.repository.*;
 import com.kopi.kopi.service.EmployeeShiftService;
+import com.kopi.kopi.service.RosterIndex;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -19,17 +20,20 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
     private final ShiftRepository shiftRepository;
     private final PositionShiftRuleRepository ruleRepository;
     private final UserRepository userRepository;
+    private final RosterIndex rosterIndex;
 
     public EmployeeShiftServiceImpl(WorkScheduleRepository workScheduleRepository,
                                     EmployeeShiftRepository employeeShiftRepository,
                                     ShiftRepository shiftRepository,
                                     PositionShiftRuleRepository ruleRepository,
-                                    UserRepository userRepository) {
+                                    UserRepository userRepository,
+                                    RosterIndex rosterIndex) {
         this.workScheduleRepository = workScheduleRepository;
         this.employeeShiftRepository = employeeShiftRepository;
         this.shiftRepository = shiftRepository;
         this.ruleRepository = ruleRepository;
         this.userRepository = userRepository;
+        this.rosterIndex = rosterIndex;
     }
 
     @Override
@@ -125,6 +129,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (adminUserId != null)
             userRepository.findById(adminUserId).ifPresent(es::setCreatedByUser);
         EmployeeShift saved = employeeShiftRepository.save(es);
+        rosterIndex.touch(date);
 
         out.put("created", true);
         out.put("employeeShiftId", saved.getEmployeeShiftId());
@@ -172,6 +177,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
                         userRepository.findById(adminUserId).ifPresent(es::setUpdatedByUser);
                     employeeShiftRepository.save(es);
                 });
+                rosterIndex.touch(date);
                 out.put("removed", false);
                 out.put("canceled", true);
                 out.put("affected", existing.size());
@@ -204,6 +210,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
             }
         }
 
+        rosterIndex.touch(date);
         out.put("removed", true);
         out.put("removedCount", removed);
         return out;
@@ -223,17 +230,16 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         int deleted = 0;
         int kept = 0;
 
-        List<EmployeeShift> existing = employeeShiftRepository.findAll().stream()
-                .filter(es -> es.getShift() != null && es.getShift().getShiftId().equals(shiftId))
-                .toList();
+        // past occurrences are kept as history; only today onwards is loaded
+        kept = (int) employeeShiftRepository.countByShiftShiftIdAndShiftDateBefore(shiftId, today);
+        List<EmployeeShift> existing = employeeShiftRepository.findByShiftShiftIdAndShiftDateGreaterThanEqual(shiftId,
+                today);
+        LocalDate lastDate = today;
 
         for (EmployeeShift es : existing) {
             LocalDate d = es.getShiftDate();
-            if (d.isBefore(today)) {
-                // keep past occurrences
-                kept++;
-                continue;
-            }
+            if (d.isAfter(lastDate))
+                lastDate = d;
             if (d.equals(today)) {
                 // if within active window -> cancel, else treat as future (delete) or cancel
                 // depending on time
@@ -267,6 +273,9 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
             }
         }
 
+        if (!existing.isEmpty())
+            rosterIndex.touch(today, lastDate);
+
         out.put("keptPast", kept);
         out.put("canceledToday", canceled);
         out.put("deletedFuture", deleted);
@@ -380,6 +389,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
                 if (adminUserId != null)
                     userRepository.findById(adminUserId).ifPresent(open::setUpdatedByUser);
                 EmployeeShift saved = employeeShiftRepository.save(open);
+                rosterIndex.touch(date);
                 out.put("created", true);
                 out.put("employeeShiftId", saved.getEmployeeShiftId());
                 // include employee info for frontend convenience
@@ -409,6 +419,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (adminUserId != null)
             userRepository.findById(adminUserId).ifPresent(es::setCreatedByUser);
         EmployeeShift saved = employeeShiftRepository.save(es);
+        rosterIndex.touch(date);
 
         out.put("created", true);
         out.put("employeeShiftId", saved.getEmployeeShiftId());
@@ -452,6 +463,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
             if (adminUserId != null)
                 userRepository.findById(adminUserId).ifPresent(es::setUpdatedByUser);
             employeeShiftRepository.save(es);
+            rosterIndex.touch(date);
             out.put("removed", true);
             out.put("employeeShiftId", employeeShiftId);
             return out;
@@ -460,6 +472,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         // Otherwise delete the assignment row
         Integer wsId = es.getWorkSchedule() != null ? es.getWorkSchedule().getWorkScheduleId() : null;
         employeeShiftRepository.delete(es);
+        rosterIndex.touch(date);
 
         // if the work schedule was auto-created and now has no remaining occurrences,
         // delete it
@@ -525,6 +538,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (actingUserId != null)
             userRepository.findById(actingUserId).ifPresent(es::setUpdatedByUser);
         employeeShiftRepository.save(es);
+        rosterIndex.touch(es.getShiftDate());
 
         out.put("canceled", true);
         out.put("employeeShiftId", employeeShiftId);
@@ -571,6 +585,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (actingUserId != null)
             userRepository.findById(actingUserId).ifPresent(es::setUpdatedByUser);
         employeeShiftRepository.save(es);
+        rosterIndex.touch(es.getShiftDate());
 
         out.put("checkedIn", true);
         out.put("employeeShiftId", employeeShiftId);
@@ -627,6 +642,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (actingUserId != null)
             userRepository.findById(actingUserId).ifPresent(es::setUpdatedByUser);
         employeeShiftRepository.save(es);
+        rosterIndex.touch(es.getShiftDate());
 
         out.put("checkedOut", true);
         out.put("employeeShiftId", employeeShiftId);
@@ -663,6 +679,7 @@ public class EmployeeShiftServiceImpl implements EmployeeShiftService {
         if (actingUserId != null)
             userRepository.findById(actingUserId).ifPresent(es::setUpdatedByUser);
         employeeShiftRepository.save(es);
+        rosterIndex.touch(es.getShiftDate());
 
         out.put("restored", true);
         out.put("employeeShiftId", employeeShiftId);
@@ -2,6 +2,8 @@ package com.kopi.kopi.service.impl;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kopi.kopi.service.GeoCache;
+import com.kopi.kopi.service.OutboundHttp;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -12,8 +14,12 @@ import java.nio.charset.StandardCharsets;
 
 @Service
 public class MapboxService {
-    private final RestTemplate http = new RestTemplate();
+    private final RestTemplate http;
     private final ObjectMapper om = new ObjectMapper();
+    private final GeoCache geoCache;
+
+    @Value("${app.mapbox.base-url:https://api.mapbox.com}")
+    private String baseUrl = "https://api.mapbox.com";
 
     @Value("${app.mapbox.token:${MAPBOX_TOKEN:}}")
     private String mapboxToken;
@@ -26,37 +32,76 @@ public class MapboxService {
 
     public record GeoResult(Double lat, Double lng, String city) {}
 
+    public MapboxService(GeoCache geoCache, OutboundHttp outboundHttp) {
+        this.geoCache = geoCache;
+        this.http = outboundHttp.client("mapbox");
+    }
+
+    // Cached (memory + geo_cache table); -1 when Mapbox has no route or could not be asked (not cached)
     public double getDrivingDistanceMeters(double fromLat, double fromLng, double toLat, double toLng) {
+        try {
+            GeoCache.Hit hit = geoCache.get(GeoCache.routeKey(fromLat, fromLng, toLat, toLng), () -> {
+                double meters = fetchDrivingDistanceMeters(fromLat, fromLng, toLat, toLng);
+                return meters < 0 ? null : new GeoCache.Hit(null, null, null, meters);
+            });
+            return hit != null && hit.distanceMeters() != null ? hit.distanceMeters() : -1;
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    // Cached (memory + geo_cache table) by normalized address line; null when not found or Mapbox failed (not cached)
+    public GeoResult geocodeAddress(String address) {
+        try {
+            GeoCache.Hit hit = geoCache.get(GeoCache.geocodeKey(address), () -> {
+                GeoResult r = fetchGeocode(address);
+                return r == null ? null : new GeoCache.Hit(r.lat(), r.lng(), r.city(), null);
+            });
+            return hit == null ? null : new GeoResult(hit.lat(), hit.lng(), hit.city());
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private double fetchDrivingDistanceMeters(double fromLat, double fromLng, double toLat, double toLng) {
         try {
             if (mapboxToken == null || mapboxToken.isBlank()) {
                 throw new IllegalStateException("Missing Mapbox token. Set app.mapbox.token or MAPBOX_TOKEN");
             }
-            String coords = "%f,%f;%f,%f".formatted(fromLng, fromLat, toLng, toLat);
-            String url = "https://api.mapbox.com/directions/v5/mapbox/driving/" + coords
+            String coords = String.format(java.util.Locale.ROOT, "%f,%f;%f,%f", fromLng, fromLat, toLng, toLat);
+            String url = baseUrl + "/directions/v5/mapbox/driving/" + coords
                     + "?alternatives=false&geometries=geojson&overview=false&access_token=" + mapboxToken;
             ResponseEntity<String> r = http.getForEntity(url, String.class);
-            if (!r.getStatusCode().is2xxSuccessful()) return -1;
+            if (!r.getStatusCode().is2xxSuccessful()) {
+                throw new IllegalStateException("Mapbox directions answered " + r.getStatusCode());
+            }
             JsonNode root = om.readTree(r.getBody());
             JsonNode routes = root.path("routes");
+            // an answer without routes is authoritative: there is no driving route
             if (!routes.isArray() || routes.isEmpty()) return -1;
             return routes.get(0).path("distance").asDouble(-1);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            return -1;
+            throw new IllegalStateException("Mapbox directions failed: " + e.getMessage(), e);
         }
     }
 
-    public GeoResult geocodeAddress(String address) {
+    private GeoResult fetchGeocode(String address) {
         try {
             if (mapboxToken == null || mapboxToken.isBlank()) {
                 throw new IllegalStateException("Missing Mapbox token. Set app.mapbox.token or MAPBOX_TOKEN");
             }
             String q = URLEncoder.encode(address == null ? "" : address, StandardCharsets.UTF_8);
-            String url = "https://api.mapbox.com/geocoding/v5/mapbox.places/" + q + ".json"
+            String url = baseUrl + "/geocoding/v5/mapbox.places/" + q + ".json"
                     + "?limit=1&autocomplete=true&country=VN&access_token=" + mapboxToken;
             ResponseEntity<String> r = http.getForEntity(url, String.class);
-            if (!r.getStatusCode().is2xxSuccessful()) return null;
+            if (!r.getStatusCode().is2xxSuccessful()) {
+                throw new IllegalStateException("Mapbox geocoding answered " + r.getStatusCode());
+            }
             JsonNode root = om.readTree(r.getBody());
             JsonNode features = root.path("features");
+            // an answer without features is authoritative: the address is unknown
             if (!features.isArray() || features.isEmpty()) return null;
             JsonNode f = features.get(0);
             JsonNode center = f.path("center");
@@ -78,8 +123,10 @@ public class MapboxService {
                 if (tokens.length >= 2) city = tokens[Math.max(0, tokens.length - 2)].trim();
             }
             return new GeoResult(lat, lng, city);
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            return null;
+            throw new IllegalStateException("Mapbox geocoding failed: " + e.getMessage(), e);
         }
     }
 
@@ -1,19 +1,17 @@
 package com.kopi.kopi.service.impl;
 
 import com.kopi.kopi.entity.*;
-import com.kopi.kopi.entity.enums.UserStatus;
 import com.kopi.kopi.repository.NotificationRepository;
-import com.kopi.kopi.repository.UserRepository;
 import com.kopi.kopi.service.EmailService;
+import com.kopi.kopi.service.NotificationHub;
 import com.kopi.kopi.service.NotificationService;
+import com.kopi.kopi.service.StaffNotifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
 
 @Service
 public class NotificationServiceImpl implements NotificationService {
@@ -21,25 +19,19 @@ public class NotificationServiceImpl implements NotificationService {
     private static final Logger logger = LoggerFactory.getLogger(NotificationServiceImpl.class);
     
     private final NotificationRepository notificationRepository;
-    private final UserRepository userRepository;
     private final EmailService emailService;
-    private NotificationServiceImpl self; // Self-injection để @Async hoạt động
+    private final NotificationHub notificationHub;
+    private final StaffNotifier staffNotifier;
     
     public NotificationServiceImpl(
             NotificationRepository notificationRepository,
-            UserRepository userRepository,
-            EmailService emailService) {
+            EmailService emailService,
+            NotificationHub notificationHub,
+            StaffNotifier staffNotifier) {
         this.notificationRepository = notificationRepository;
-        this.userRepository = userRepository;
         this.emailService = emailService;
-    }
-    
-    // Self-injection để @Async method có thể được gọi từ trong class
-    // Dùng @Lazy để tránh circular dependency
-    @org.springframework.beans.factory.annotation.Autowired
-    @org.springframework.context.annotation.Lazy
-    public void setSelf(NotificationServiceImpl self) {
-        this.self = self;
+        this.notificationHub = notificationHub;
+        this.staffNotifier = staffNotifier;
     }
     
     @Override
@@ -72,6 +64,8 @@ public class NotificationServiceImpl implements NotificationService {
                 .createdAt(LocalDateTime.now())
                 .build();
         notificationRepository.save(notification);
+        // Đẩy realtime qua SSE sau khi commit
+        notificationHub.publish(notification);
         
         // Gửi email thông báo bất đồng bộ (không chặn response)
         sendEmailSafely(
@@ -84,15 +78,6 @@ public class NotificationServiceImpl implements NotificationService {
     @Override
     @Transactional
     public void notifyOrderStatusChangeToStaff(OrderEntity order, String previousStatus, String newStatus) {
-        // Lấy tất cả staff (ADMIN và STAFF roles)
-        // findByRoleNameIn sẽ tự động tìm users có role.name trong danh sách
-        List<User> staffUsers = userRepository.findByRoleNameIn(List.of("ADMIN", "STAFF"));
-        
-        if (staffUsers.isEmpty()) {
-            logger.warn("No staff users found to notify");
-            return;
-        }
-        
         String customerName = order.getCustomer() != null 
             ? order.getCustomer().getFullName() 
             : "Customer";
@@ -111,32 +96,9 @@ public class NotificationServiceImpl implements NotificationService {
             getStatusDisplayName(newStatus)
         );
         
-        // Gửi thông báo cho từng staff
-        for (User staff : staffUsers) {
-            // Chỉ gửi cho staff đang active
-            if (staff.getStatus() != UserStatus.ACTIVE) {
-                continue;
-            }
-            
-            // Lưu thông báo vào database (đồng bộ - trong transaction)
-            Notification notification = Notification.builder()
-                    .user(staff)
-                    .order(order)
-                    .title(title)
-                    .message(message)
-                    .type("ORDER_STATUS_CHANGE")
-                    .isRead(false)
-                    .createdAt(LocalDateTime.now())
-                    .build();
-            notificationRepository.save(notification);
-            
-            // Gửi email thông báo bất đồng bộ (không chặn response)
-            sendEmailSafely(
-                staff.getEmail(),
-                title,
-                message + "\n\nPlease check the system for more details."
-            );
-        }
+        // Lưu và đẩy thông báo cho toàn bộ staff sau khi commit, ngoài request thread;
+        // email được gộp theo từng người nhận
+        staffNotifier.fanOut(order.getOrderId(), title, message);
     }
     
     @Override
@@ -152,6 +114,7 @@ public class NotificationServiceImpl implements NotificationService {
                 .createdAt(LocalDateTime.now())
                 .build();
         notificationRepository.save(notification);
+        notificationHub.publish(notification);
         
         // Gửi email nếu có email (bất đồng bộ)
         if (user.getEmail() != null && !user.getEmail().isBlank()) {
@@ -160,36 +123,17 @@ public class NotificationServiceImpl implements NotificationService {
     }
     
     /**
-     * Gửi email bất đồng bộ để không chặn response
+     * Đưa email vào outbox (cùng transaction với thông báo); MailDispatcher gửi sau, không chặn response
      */
-    @Async
-    public void sendEmailAsync(String to, String subject, String content) {
+    private void sendEmailSafely(String to, String subject, String content) {
         try {
             emailService.send(to, subject, content);
         } catch (Exception ex) {
-            logger.warn("Failed to send email notification to {}: {}", 
+            logger.warn("Failed to queue email notification to {}: {}", 
                 to, ex.getMessage());
         }
     }
     
-    /**
-     * Helper method để gọi sendEmailAsync an toàn (fallback nếu self chưa inject)
-     */
-    private void sendEmailSafely(String to, String subject, String content) {
-        if (self != null) {
-            self.sendEmailAsync(to, subject, content);
-        } else {
-            // Fallback: gọi trực tiếp nếu self chưa inject (không async nhưng không crash)
-            logger.debug("Self not injected yet, sending email synchronously");
-            try {
-                emailService.send(to, subject, content);
-            } catch (Exception ex) {
-                logger.warn("Failed to send email notification to {}: {}", 
-                    to, ex.getMessage());
-            }
-        }
-    }
-    
     private String getStatusDisplayName(String status) {
         if (status == null) return "Unknown";
         return switch (status.toUpperCase()) {
@@ -5,8 +5,12 @@ import com.kopi.kopi.entity.*;
 import com.kopi.kopi.entity.enums.PaymentMethod;
 import com.kopi.kopi.entity.enums.PaymentStatus;
 import com.kopi.kopi.repository.*;
+import com.kopi.kopi.service.CartResolver;
 import com.kopi.kopi.service.NotificationService;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.RevenueRollup;
 import com.kopi.kopi.service.OrderService;
+import com.kopi.kopi.service.StockLedger;
 import com.kopi.kopi.service.TableService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -14,6 +18,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.data.domain.Sort;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.EntityManager;
@@ -30,20 +35,20 @@ public class OrderServiceImpl implements OrderService {
     private final UserRepository userRepository;
     private final TableService tableService;
     private final DiningTableRepository diningTableRepository;
-    private final ProductSizeRepository productSizeRepository;
-    private final ProductAddOnRepository productAddOnRepository;
-    private final SizeRepository sizeRepository;
+    private final CartResolver cartResolver;
+    private final StockLedger stockLedger;
     private final OrderDetailAddOnRepository orderDetailAddOnRepository;
     private final DiscountCodeRepository discountCodeRepository;
     private final DiscountCodeRedemptionRepository discountCodeRedemptionRepository;
-    private final DiscountEventRepository discountEventRepository;
     @PersistenceContext
     private EntityManager entityManager;
     private final MapboxService mapboxService;
     private final NotificationService notificationService;
+    private final OrderBoard orderBoard;
+    private final RevenueRollup revenueRollup;
 
 
-    public OrderServiceImpl(OrderRepository orderRepository, ProductRepository productRepository, AddressRepository addressRepository, UserRepository userRepository, TableService tableService, DiningTableRepository diningTableRepository, UserAddressRepository userAddressRepository, MapboxService mapboxService, NotificationService notificationService, ProductSizeRepository productSizeRepository, ProductAddOnRepository productAddOnRepository, SizeRepository sizeRepository, OrderDetailAddOnRepository orderDetailAddOnRepository, DiscountCodeRepository discountCodeRepository, DiscountCodeRedemptionRepository discountCodeRedemptionRepository, DiscountEventRepository discountEventRepository) {
+    public OrderServiceImpl(OrderRepository orderRepository, ProductRepository productRepository, AddressRepository addressRepository, UserRepository userRepository, TableService tableService, DiningTableRepository diningTableRepository, UserAddressRepository userAddressRepository, MapboxService mapboxService, NotificationService notificationService, CartResolver cartResolver, StockLedger stockLedger, OrderDetailAddOnRepository orderDetailAddOnRepository, DiscountCodeRepository discountCodeRepository, DiscountCodeRedemptionRepository discountCodeRedemptionRepository, OrderBoard orderBoard, RevenueRollup revenueRollup) {
         this.orderRepository = orderRepository;
         this.productRepository = productRepository;
         this.addressRepository = addressRepository;
@@ -52,42 +57,14 @@ public class OrderServiceImpl implements OrderService {
         this.diningTableRepository = diningTableRepository;
         this.userAddressRepository = userAddressRepository;
         this.mapboxService = mapboxService;
-        this.productSizeRepository = productSizeRepository;
-        this.productAddOnRepository = productAddOnRepository;
-        this.sizeRepository = sizeRepository;
+        this.cartResolver = cartResolver;
+        this.stockLedger = stockLedger;
         this.orderDetailAddOnRepository = orderDetailAddOnRepository;
         this.discountCodeRepository = discountCodeRepository;
         this.discountCodeRedemptionRepository = discountCodeRedemptionRepository;
         this.notificationService = notificationService;
-        this.discountEventRepository = discountEventRepository;
-    }
-
-    private BigDecimal getDiscountedBasePrice(Product prod) {
-        if (prod == null) return BigDecimal.ZERO;
-        BigDecimal base = prod.getPrice() != null ? prod.getPrice() : BigDecimal.ZERO;
-        try {
-            var evOpt = discountEventRepository.findActiveEventByProductId(prod.getProductId(), java.time.LocalDateTime.now());
-            if (evOpt.isEmpty()) return base;
-            var ev = evOpt.get();
-            if (ev.getDiscountType() == null || ev.getDiscountValue() == null) return base;
-            switch (ev.getDiscountType()) {
-                case PERCENT -> {
-                    BigDecimal pct = ev.getDiscountValue();
-                    if (pct.compareTo(BigDecimal.ZERO) < 0) pct = BigDecimal.ZERO;
-                    if (pct.compareTo(new BigDecimal("100")) > 0) pct = new BigDecimal("100");
-                    BigDecimal multiplier = BigDecimal.ONE.subtract(pct.divide(new BigDecimal("100")));
-                    BigDecimal result = base.multiply(multiplier);
-                    return result.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : result;
-                }
-                case AMOUNT -> {
-                    BigDecimal result = base.subtract(ev.getDiscountValue());
-                    return result.compareTo(BigDecimal.ZERO) < 0 ? BigDecimal.ZERO : result;
-                }
-                default -> { return base; }
-            }
-        } catch (Exception ignored) {
-            return base;
-        }
+        this.orderBoard = orderBoard;
+        this.revenueRollup = revenueRollup;
     }
 
     @Override
@@ -95,6 +72,7 @@ public class OrderServiceImpl implements OrderService {
     public Map<String, Object> getUserTransactions(Integer userId, Integer page, Integer limit) {
         Pageable pageable = PageRequest.of(Math.max(page - 1, 0), Math.max(limit, 1), Sort.by("createdAt").descending());
         Page<OrderEntity> pageData = orderRepository.findByCustomer_UserId(userId, pageable);
+        Map<Integer, List<OrderDetailAddOn>> addOnsByDetail = loadOrderGraph(pageData.getContent());
 
         List<Map<String, Object>> items = new ArrayList<>();
         for (OrderEntity o : pageData.getContent()) {
@@ -129,14 +107,7 @@ public class OrderServiceImpl implements OrderService {
                     pd.put("subtotal", defaultBigDecimal(d.getLineTotal()));
                     pd.put("size", d.getSize() != null ? d.getSize().getName() : null);
                     // add-ons
-                    List<Map<String, Object>> addOns = new ArrayList<>();
-                    for (OrderDetailAddOn oda : orderDetailAddOnRepository.findByOrderDetail_OrderDetailId(d.getOrderDetailId())) {
-                        Map<String, Object> ao = new HashMap<>();
-                        ao.put("name", oda.getAddOn() != null ? oda.getAddOn().getName() : null);
-                        ao.put("price", defaultBigDecimal(oda.getUnitPriceSnapshot()));
-                        addOns.add(ao);
-                    }
-                    pd.put("add_ons", addOns);
+                    pd.put("add_ons", toAddOnMaps(addOnsByDetail.get(d.getOrderDetailId())));
                     products.add(pd);
                 }
             }
@@ -167,6 +138,7 @@ public class OrderServiceImpl implements OrderService {
         if (!isOwner && !isStaff) {
             return ResponseEntity.status(403).body(Map.of("message", "Forbidden"));
         }
+        Map<Integer, List<OrderDetailAddOn>> addOnsByDetail = loadOrderGraph(List.of(o));
 
         Map<String, Object> detail = new HashMap<>();
         detail.put("id", o.getOrderId());
@@ -208,14 +180,7 @@ public class OrderServiceImpl implements OrderService {
                 pd.put("qty", d.getQuantity());
                 pd.put("size", d.getSize() != null ? d.getSize().getName() : null);
                 pd.put("subtotal", defaultBigDecimal(d.getLineTotal()));
-                List<Map<String, Object>> addOns = new ArrayList<>();
-                for (OrderDetailAddOn oda : orderDetailAddOnRepository.findByOrderDetail_OrderDetailId(d.getOrderDetailId())) {
-                    Map<String, Object> ao = new HashMap<>();
-                    ao.put("name", oda.getAddOn() != null ? oda.getAddOn().getName() : null);
-                    ao.put("price", defaultBigDecimal(oda.getUnitPriceSnapshot()));
-                    addOns.add(ao);
-                }
-                pd.put("add_ons", addOns);
+                pd.put("add_ons", toAddOnMaps(addOnsByDetail.get(d.getOrderDetailId())));
                 products.add(pd);
             }
         }
@@ -227,64 +192,26 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional(readOnly = true)
     public Map<String, Object> listPending(String status, String type, Integer page, Integer limit) {
-        Pageable pageable = PageRequest.of(Math.max(page - 1, 0), Math.max(limit, 1));
-        Page<OrderEntity> pageData;
-        if ("TABLE".equalsIgnoreCase(type)) {
-            // Show dine-in/table orders with NO delivery address and status NOT IN (CANCELLED, REJECTED, COMPLETED)
-            pageData = orderRepository.findByStatusNotInAndAddressIsNull(List.of("CANCELLED", "REJECTED", "COMPLETED"), pageable);
-        } else if ("SHIPPING".equalsIgnoreCase(type)) {
-            // Show orders with address and status NOT IN (CANCELLED, REJECTED, COMPLETED)
-            pageData = orderRepository.findByStatusNotInAndAddressIsNotNull(List.of("CANCELLED", "REJECTED", "COMPLETED"), pageable);
-        } else {
-            pageData = orderRepository.findByStatus(status, pageable);
-        }
+        int pageNum = Math.max(page - 1, 0);
+        int size = Math.max(limit, 1);
+        if ("TABLE".equalsIgnoreCase(type) || "SHIPPING".equalsIgnoreCase(type)) {
+            // Open TABLE (no address) / SHIPPING orders are served from the in-memory board, without queries
+            List<Map<String, Object>> open = orderBoard.snapshot(type);
+            int totalPages = (open.size() + size - 1) / size;
+            int from = Math.min(pageNum * size, open.size());
+            Map<String, Object> meta = new HashMap<>();
+            meta.put("currentPage", pageNum + 1);
+            meta.put("totalPage", totalPages);
+            meta.put("prev", pageNum > 0);
+            meta.put("next", pageNum + 1 < totalPages);
+            return Map.of("data", new ArrayList<>(open.subList(from, Math.min(open.size(), from + size))), "meta", meta);
+        }
+        Page<OrderEntity> pageData = orderRepository.findByStatus(status, PageRequest.of(pageNum, size));
+        Map<Integer, List<OrderDetailAddOn>> addOnsByDetail = loadOrderGraph(pageData.getContent());
 
         List<Map<String, Object>> items = new ArrayList<>();
         for (OrderEntity o : pageData.getContent()) {
-            Map<String, Object> m = new HashMap<>();
-            m.put("id", o.getOrderId());
-            m.put("status", o.getStatus());
-            m.put("address", o.getAddress() != null ? o.getAddress().getAddressLine() : null);
-			// Include payment method and status for UI decisions (e.g., shipper button label)
-			if (o.getPayments() != null && !o.getPayments().isEmpty()) {
-				Payment p = o.getPayments().get(0);
-				m.put("payment_method", p.getMethod() != null ? p.getMethod().name() : null);
-				m.put("payment_status", p.getStatus() != null ? p.getStatus().name() : null);
-			} else {
-				m.put("payment_method", null);
-				m.put("payment_status", null);
-			}
-            m.put("created_at", o.getCreatedAt());
-            m.put("table_number", o.getTable() != null ? o.getTable().getNumber() : null);
-            m.put("total", defaultBigDecimal(o.getTotalAmount()));
-            m.put("subtotal", defaultBigDecimal(o.getSubtotalAmount()));
-            m.put("shipping_fee", defaultBigDecimal(o.getShippingAmount()));
-            m.put("discount", defaultBigDecimal(o.getDiscountAmount()));
-            m.put("shipper_id", o.getShipper() != null ? o.getShipper().getUserId() : null);
-
-            List<Map<String, Object>> products = new ArrayList<>();
-            if (o.getOrderDetails() != null) {
-                for (OrderDetail d : o.getOrderDetails()) {
-                    Product prod = d.getProduct();
-                    Map<String, Object> pd = new HashMap<>();
-                    pd.put("product_name", d.getProductNameSnapshot());
-                    pd.put("product_img", prod != null ? prod.getImgUrl() : null);
-                    pd.put("qty", d.getQuantity());
-                    pd.put("subtotal", defaultBigDecimal(d.getLineTotal()));
-                    pd.put("size", d.getSize() != null ? d.getSize().getName() : null);
-                    List<Map<String, Object>> addOns = new ArrayList<>();
-                    for (OrderDetailAddOn oda : orderDetailAddOnRepository.findByOrderDetail_OrderDetailId(d.getOrderDetailId())) {
-                        Map<String, Object> ao = new HashMap<>();
-                        ao.put("name", oda.getAddOn() != null ? oda.getAddOn().getName() : null);
-                        ao.put("price", defaultBigDecimal(oda.getUnitPriceSnapshot()));
-                        addOns.add(ao);
-                    }
-                    pd.put("add_ons", addOns);
-                    products.add(pd);
-                }
-            }
-            m.put("products", products);
-            items.add(m);
+            items.add(OrderBoard.toCard(o, addOnsByDetail));
         }
 
         Map<String, Object> meta = new HashMap<>();
@@ -309,32 +236,26 @@ public class OrderServiceImpl implements OrderService {
                 !Objects.equals(status, "PAID")) {
             return ResponseEntity.badRequest().body(Map.of("message", "Invalid status"));
         }
-        OrderEntity order = orderRepository.findById(id).orElseThrow();
+        // Completing deducts stock, so lock the order row to stop two staff completing it twice
+        OrderEntity order = Objects.equals(status, "COMPLETED")
+                ? orderRepository.findForUpdateByOrderId(id).orElseThrow()
+                : orderRepository.findById(id).orElseThrow();
         String previousStatus = order.getStatus();
-        // If moving to COMPLETED from a non-COMPLETED status: validate stock and deduct now
+        // If moving to COMPLETED from a non-COMPLETED status: deduct stock atomically (conditional, all-or-nothing)
         if (Objects.equals(status, "COMPLETED") && !Objects.equals(previousStatus, "COMPLETED")) {
-            if (order.getOrderDetails() != null) {
-                // Validate
-                for (OrderDetail d : order.getOrderDetails()) {
-                    Product prod = d.getProduct();
-                    Integer qty = d.getQuantity();
-                    if (prod != null && prod.getStockQty() != null) {
-                        if (prod.getStockQty() < qty) {
-                            return ResponseEntity.badRequest().body(Map.of(
-                                    "message", "Sản phẩm " + (prod.getName() == null ? "" : prod.getName()) + " không đủ số lượng trong kho!"
-                            ));
-                        }
-                    }
-                }
-                // Deduct
-                for (OrderDetail d : order.getOrderDetails()) {
-                    Product prod = d.getProduct();
-                    Integer qty = d.getQuantity();
-                    if (prod != null && prod.getStockQty() != null) {
-                        prod.setStockQty(prod.getStockQty() - qty);
-                        productRepository.save(prod);
-                    }
-                }
+            Integer shortProductId = stockLedger.deduct(StockLedger.quantitiesOf(order.getOrderDetails()));
+            if (shortProductId != null) {
+                // Undo deductions already applied by earlier rows of the batch
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                String name = order.getOrderDetails().stream()
+                        .map(OrderDetail::getProduct)
+                        .filter(p -> p != null && Objects.equals(p.getProductId(), shortProductId))
+                        .map(Product::getName)
+                        .filter(Objects::nonNull)
+                        .findFirst().orElse("");
+                return ResponseEntity.badRequest().body(Map.of(
+                        "message", "Sản phẩm " + name + " không đủ số lượng trong kho!"
+                ));
             }
         }
         order.setStatus(status);
@@ -353,8 +274,11 @@ public class OrderServiceImpl implements OrderService {
                 payment.setStatus(PaymentStatus.PAID);
                 if (payment.getPaidAt() == null) payment.setPaidAt(LocalDateTime.now());
             }
+            // the day's revenue changes whether the payment became paid or stopped being paid
+            revenueRollup.touch(payment.getPaidAt());
         }
         orderRepository.save(order);
+        orderBoard.touch(order.getOrderId());
         if (order.getTable() != null) {
             tableService.setAvailableIfNoPendingOrders(order.getTable().getTableId());
         }
@@ -399,56 +323,25 @@ public class OrderServiceImpl implements OrderService {
             try { customerIdFromBody = Integer.valueOf(String.valueOf(body.get("customer_id"))); } catch (Exception ignored) {}
         }
 
-        BigDecimal subtotal = BigDecimal.ZERO;
-        List<OrderDetail> details = new ArrayList<>();
+        // Load and price the whole cart (products, sizes, add-ons) in a fixed number of queries
+        CartResolver.PricedCart cart = cartResolver.resolve(parseCartLines(products));
         // 1. Kiểm tra tồn kho cho từng sản phẩm
-        for (Map<String, Object> p : products) {
-            Integer productId = Integer.valueOf(String.valueOf(p.get("product_id")));
-            Integer qty = Integer.valueOf(String.valueOf(p.getOrDefault("qty", 1)));
-            Product prod = productRepository.findById(productId).orElseThrow();
-            if (prod.getStockQty() < qty) {
-                return ResponseEntity.badRequest().body(Map.of("message",
-                    "Sản phẩm " + prod.getName() + " không đủ số lượng trong kho!"));
-            }
+        CartResolver.PricedLine outOfStock = cart.firstOutOfStock();
+        if (outOfStock != null) {
+            return ResponseEntity.badRequest().body(Map.of("message",
+                "Sản phẩm " + outOfStock.product().getName() + " không đủ số lượng trong kho!"));
         }
         // 2. Tạo chi tiết order (KHÔNG trừ tồn kho ở bước confirm)
-        for (Map<String, Object> p : products) {
-            Integer productId = Integer.valueOf(String.valueOf(p.get("product_id")));
-            Integer qty = Integer.valueOf(String.valueOf(p.getOrDefault("qty", 1)));
-            Product prod = productRepository.findById(productId).orElseThrow();
-
-            // Parse size_id (optional)
-            Integer sizeId = null;
-            if (p.containsKey("size_id") && p.get("size_id") != null) {
-                try { sizeId = Integer.valueOf(String.valueOf(p.get("size_id"))); } catch (Exception ignored) {}
-            }
-            // Parse add_on_ids (array) or add_ons (array of ids or objects)
-            List<Integer> addOnIds = parseAddOnIds(p.get("add_on_ids"), p.get("add_ons"));
-
-            BigDecimal base = getDiscountedBasePrice(prod);
-            BigDecimal sizeDelta = BigDecimal.ZERO;
-            Size sizeEntity = null;
-            if (sizeId != null) {
-                sizeEntity = sizeRepository.findById(sizeId).orElse(null);
-                var psOpt = productSizeRepository.findByProduct_ProductIdAndSize_SizeId(productId, sizeId);
-                if (psOpt.isPresent() && psOpt.get().getPrice() != null) sizeDelta = psOpt.get().getPrice();
-            }
-            BigDecimal addOnSum = BigDecimal.ZERO;
-            for (Integer aId : addOnIds) {
-                var paOpt = productAddOnRepository.findByProduct_ProductIdAndAddOn_AddOnId(productId, aId);
-                if (paOpt.isPresent() && paOpt.get().getPrice() != null) addOnSum = addOnSum.add(paOpt.get().getPrice());
-            }
-            BigDecimal unit = base.add(sizeDelta).add(addOnSum);
-
-            subtotal = subtotal.add(unit.multiply(BigDecimal.valueOf(qty)));
-            OrderDetail d = OrderDetail.builder()
-                .product(prod)
-                .productNameSnapshot(prod.getName())
-                .unitPrice(unit)
-                .quantity(qty)
-                .size(sizeEntity)
-                .build();
-            details.add(d);
+        BigDecimal subtotal = cart.subtotal();
+        List<OrderDetail> details = new ArrayList<>();
+        for (CartResolver.PricedLine pl : cart.lines()) {
+            details.add(OrderDetail.builder()
+                .product(pl.product())
+                .productNameSnapshot(pl.product().getName())
+                .unitPrice(pl.unitPrice())
+                .quantity(pl.line().qty())
+                .size(pl.size())
+                .build());
         }
 
         Address addr = null;
@@ -593,6 +486,7 @@ public class OrderServiceImpl implements OrderService {
                     .build();
             if (paid) {
                 payment.setPaidAt(LocalDateTime.now());
+                revenueRollup.touch(payment.getPaidAt());
             }
             order.getPayments().add(payment);
         }
@@ -600,8 +494,8 @@ public class OrderServiceImpl implements OrderService {
         OrderEntity saved = orderRepository.save(order);
         // Ensure detail IDs are generated before inserting add-ons
         try { entityManager.flush(); } catch (Exception ignored) {}
-        // New: persist add-ons by matching request products to saved details
-        persistAddOnsForOrder(saved, products);
+        // Persist add-ons: details were built in cart order, so line i owns detail i
+        persistAddOnsForOrder(details, cart.lines());
         // Record discount redemption if applied
         if (appliedCode != null) {
             DiscountCodeRedemption redemption = DiscountCodeRedemption.builder()
@@ -616,6 +510,7 @@ public class OrderServiceImpl implements OrderService {
             appliedCode.setUsageCount(usage + 1);
             discountCodeRepository.save(appliedCode);
         }
+        orderBoard.touch(saved.getOrderId());
         return ResponseEntity.ok(Map.of("message", "OK", "data", Map.of("id", saved.getOrderId())));
     }
 
@@ -666,6 +561,16 @@ public class OrderServiceImpl implements OrderService {
         if (code == null || code.isBlank()) {
             return ResponseEntity.badRequest().body(Map.of("message", "Vui lòng nhập mã giảm giá"));
         }
+        // When the cart is sent along, price it server-side in one pass instead of trusting the client subtotal
+        if (body.get("products") instanceof List<?> rawProducts && !rawProducts.isEmpty()) {
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> cartProducts = (List<Map<String, Object>>) rawProducts;
+            try {
+                subtotal = cartResolver.resolve(parseCartLines(cartProducts)).subtotal();
+            } catch (RuntimeException ex) {
+                return ResponseEntity.badRequest().body(Map.of("message", "Sản phẩm không hợp lệ"));
+            }
+        }
         var dcOpt = discountCodeRepository.findByCodeIgnoreCase(code);
         if (dcOpt.isEmpty()) {
             return ResponseEntity.badRequest().body(Map.of("message", "Mã giảm giá không tồn tại"));
@@ -710,64 +615,30 @@ public class OrderServiceImpl implements OrderService {
         return ids;
     }
 
-    // Persist order_detail_add_ons by matching each request product to a saved detail
-    private void persistAddOnsForOrder(OrderEntity order, List<Map<String, Object>> requestProducts) {
-        if (order == null || requestProducts == null || requestProducts.isEmpty()) return;
-        List<OrderDetail> details = order.getOrderDetails() == null ? List.of() : new ArrayList<>(order.getOrderDetails());
-        boolean[] used = new boolean[details.size()];
-        List<OrderDetailAddOn> toSave = new ArrayList<>();
-        for (Map<String, Object> p : requestProducts) {
-            Integer productId;
-            Integer qty;
-            try { productId = Integer.valueOf(String.valueOf(p.get("product_id"))); } catch (Exception e) { continue; }
-            try { qty = Integer.valueOf(String.valueOf(p.getOrDefault("qty", 1))); } catch (Exception e) { qty = 1; }
+    private List<CartResolver.CartLine> parseCartLines(List<Map<String, Object>> products) {
+        List<CartResolver.CartLine> lines = new ArrayList<>(products.size());
+        for (Map<String, Object> p : products) {
+            Integer productId = Integer.valueOf(String.valueOf(p.get("product_id")));
+            Integer qty = Integer.valueOf(String.valueOf(p.getOrDefault("qty", 1)));
+            // Parse size_id (optional)
             Integer sizeId = null;
             if (p.containsKey("size_id") && p.get("size_id") != null) {
                 try { sizeId = Integer.valueOf(String.valueOf(p.get("size_id"))); } catch (Exception ignored) {}
             }
+            // Parse add_on_ids (array) or add_ons (array of ids or objects)
             List<Integer> addOnIds = parseAddOnIds(p.get("add_on_ids"), p.get("add_ons"));
-            if (addOnIds.isEmpty()) continue;
-
-            // Compute expected unit price again to match detail when duplicates exist
-            Product prod = productRepository.findById(productId).orElse(null);
-            if (prod == null) continue;
-            BigDecimal base = getDiscountedBasePrice(prod);
-            BigDecimal sizeDelta = BigDecimal.ZERO;
-            if (sizeId != null) {
-                var ps = productSizeRepository.findByProduct_ProductIdAndSize_SizeId(productId, sizeId).orElse(null);
-                if (ps != null && ps.getPrice() != null) sizeDelta = ps.getPrice();
-            }
-            BigDecimal addOnSum = BigDecimal.ZERO;
-            for (Integer aId : addOnIds) {
-                var pa = productAddOnRepository.findByProduct_ProductIdAndAddOn_AddOnId(productId, aId).orElse(null);
-                if (pa != null && pa.getPrice() != null) addOnSum = addOnSum.add(pa.getPrice());
-            }
-            BigDecimal expectedUnit = base.add(sizeDelta).add(addOnSum);
-
-            // Find first unmatched detail that matches all fields
-            int matchIdx = -1;
-            for (int i = 0; i < details.size(); i++) {
-                if (used[i]) continue;
-                OrderDetail d = details.get(i);
-                if (d.getProduct() == null || d.getProduct().getProductId() == null) continue;
-                if (!Objects.equals(d.getProduct().getProductId(), productId)) continue;
-                if (!Objects.equals(d.getQuantity(), qty)) continue;
-                Integer dSizeId = d.getSize() != null ? d.getSize().getSizeId() : null;
-                if (!Objects.equals(dSizeId, sizeId)) continue;
-                BigDecimal dUnit = d.getUnitPrice() != null ? d.getUnitPrice() : BigDecimal.ZERO;
-                if (dUnit.compareTo(expectedUnit) != 0) continue;
-                matchIdx = i;
-                break;
-            }
-            if (matchIdx == -1) continue;
-            used[matchIdx] = true;
-            OrderDetail matched = details.get(matchIdx);
-            for (Integer aId : addOnIds) {
-                var paOpt = productAddOnRepository.findByProduct_ProductIdAndAddOn_AddOnId(productId, aId);
-                if (paOpt.isEmpty()) continue;
-                ProductAddOn pa = paOpt.get();
+            lines.add(new CartResolver.CartLine(productId, qty, sizeId, addOnIds));
+        }
+        return lines;
+    }
+
+    // Persist order_detail_add_ons for saved details; details.get(i) was built from lines.get(i)
+    private void persistAddOnsForOrder(List<OrderDetail> details, List<CartResolver.PricedLine> lines) {
+        List<OrderDetailAddOn> toSave = new ArrayList<>();
+        for (int i = 0; i < lines.size() && i < details.size(); i++) {
+            for (ProductAddOn pa : lines.get(i).addOns()) {
                 toSave.add(OrderDetailAddOn.builder()
-                        .orderDetail(matched)
+                        .orderDetail(details.get(i))
                         .addOn(pa.getAddOn())
                         .unitPriceSnapshot(pa.getPrice() != null ? pa.getPrice() : BigDecimal.ZERO)
                         .build());
@@ -804,30 +675,26 @@ public class OrderServiceImpl implements OrderService {
         List<GuestOrderController.GuestOrderItem> items = Optional.ofNullable(req.products()).orElse(List.of());
         if (items.isEmpty()) return ResponseEntity.badRequest().body(Map.of("message", "No products"));
 
-        BigDecimal subtotal = BigDecimal.ZERO;
-        List<OrderDetail> details = new ArrayList<>();
-        // 1. Kiểm tra tồn kho cho từng sản phẩm guest
+        List<CartResolver.CartLine> lines = new ArrayList<>(items.size());
         for (GuestOrderController.GuestOrderItem gi : items) {
-            Integer productId = gi.product_id();
-            Integer qty = gi.qty() == null ? 1 : gi.qty();
-            Product prod = productRepository.findById(productId).orElseThrow();
-            if (prod.getStockQty() < qty) {
-                return ResponseEntity.badRequest().body(Map.of("message",
-                    "Sản phẩm " + prod.getName() + " không đủ số lượng trong kho!"));
-            }
+            lines.add(new CartResolver.CartLine(gi.product_id(), gi.qty() == null ? 1 : gi.qty(), null, List.of()));
+        }
+        CartResolver.PricedCart cart = cartResolver.resolve(lines);
+        // 1. Kiểm tra tồn kho cho từng sản phẩm guest
+        CartResolver.PricedLine outOfStock = cart.firstOutOfStock();
+        if (outOfStock != null) {
+            return ResponseEntity.badRequest().body(Map.of("message",
+                "Sản phẩm " + outOfStock.product().getName() + " không đủ số lượng trong kho!"));
         }
         // 2. Tạo chi tiết order (KHÔNG trừ tồn kho ở bước confirm)
-        for (GuestOrderController.GuestOrderItem gi : items) {
-            Integer productId = gi.product_id();
-            Integer qty = gi.qty() == null ? 1 : gi.qty();
-            Product prod = productRepository.findById(productId).orElseThrow();
-            BigDecimal unit = getDiscountedBasePrice(prod);
-            subtotal = subtotal.add(unit.multiply(BigDecimal.valueOf(qty)));
+        BigDecimal subtotal = cart.subtotal();
+        List<OrderDetail> details = new ArrayList<>();
+        for (CartResolver.PricedLine pl : cart.lines()) {
             details.add(OrderDetail.builder()
-                .product(prod)
-                .productNameSnapshot(prod.getName())
-                .unitPrice(unit)
-                .quantity(qty)
+                .product(pl.product())
+                .productNameSnapshot(pl.product().getName())
+                .unitPrice(pl.unitPrice())
+                .quantity(pl.line().qty())
                 .build());
         }
 
@@ -857,10 +724,12 @@ public class OrderServiceImpl implements OrderService {
                 .build();
         if (Boolean.TRUE.equals(req.paid())) {
             payment.setPaidAt(LocalDateTime.now());
+            revenueRollup.touch(payment.getPaidAt());
         }
         order.getPayments().add(payment);
 
         OrderEntity saved = orderRepository.save(order);
+        orderBoard.touch(saved.getOrderId());
         tableService.setOccupiedIfHasPendingOrders(table.getTableId());
         return ResponseEntity.ok(Map.of("message", "OK", "data", Map.of(
                 "id", saved.getOrderId(),
@@ -869,6 +738,46 @@ public class OrderServiceImpl implements OrderService {
         )));
     }
 
+    // Load details (+product, size), payments, delivery info and add-ons for a page of orders
+    // in a fixed number of queries instead of one per order line. Returns add-ons keyed by order detail id.
+    private Map<Integer, List<OrderDetailAddOn>> loadOrderGraph(List<OrderEntity> orders) {
+        if (orders == null || orders.isEmpty()) return Map.of();
+        List<Integer> orderIds = new ArrayList<>(orders.size());
+        for (OrderEntity o : orders) {
+            if (o.getOrderId() != null) orderIds.add(o.getOrderId());
+        }
+        if (orderIds.isEmpty()) return Map.of();
+        // Both queries resolve into the already-managed page entities, initializing their lazy associations
+        List<OrderEntity> loaded = orderRepository.findWithDetailsByOrderIdIn(orderIds);
+        orderRepository.findWithPaymentsByOrderIdIn(orderIds);
+
+        List<Integer> detailIds = new ArrayList<>();
+        for (OrderEntity o : loaded) {
+            if (o.getOrderDetails() == null) continue;
+            for (OrderDetail d : o.getOrderDetails()) {
+                if (d.getOrderDetailId() != null) detailIds.add(d.getOrderDetailId());
+            }
+        }
+        if (detailIds.isEmpty()) return Map.of();
+        Map<Integer, List<OrderDetailAddOn>> byDetail = new HashMap<>();
+        for (OrderDetailAddOn oda : orderDetailAddOnRepository.findWithAddOnByOrderDetailIdIn(detailIds)) {
+            byDetail.computeIfAbsent(oda.getOrderDetail().getOrderDetailId(), k -> new ArrayList<>()).add(oda);
+        }
+        return byDetail;
+    }
+
+    private List<Map<String, Object>> toAddOnMaps(List<OrderDetailAddOn> addOns) {
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (addOns == null) return result;
+        for (OrderDetailAddOn oda : addOns) {
+            Map<String, Object> ao = new HashMap<>();
+            ao.put("name", oda.getAddOn() != null ? oda.getAddOn().getName() : null);
+            ao.put("price", defaultBigDecimal(oda.getUnitPriceSnapshot()));
+            result.add(ao);
+        }
+        return result;
+    }
+
     private BigDecimal defaultBigDecimal(BigDecimal v) {
         return v != null ? v : BigDecimal.ZERO;
     }
@@ -881,11 +790,13 @@ public class OrderServiceImpl implements OrderService {
             return ResponseEntity.badRequest().body(Map.of("message", "No products"));
         }
 
+        List<CartResolver.CartLine> lines = parseCartLines(products);
+        Map<Integer, Product> byId = cartResolver.loadProducts(lines.stream().map(CartResolver.CartLine::productId).toList());
         List<Map<String, Object>> insufficient = new ArrayList<>();
-        for (Map<String, Object> p : products) {
-            Integer productId = Integer.valueOf(String.valueOf(p.get("product_id")));
-            Integer qty = Integer.valueOf(String.valueOf(p.getOrDefault("qty", 1)));
-            Product prod = productRepository.findById(productId).orElse(null);
+        for (CartResolver.CartLine line : lines) {
+            Integer productId = line.productId();
+            Integer qty = line.qty();
+            Product prod = byId.get(productId);
             if (prod == null) {
                 insufficient.add(Map.of("product_id", productId, "reason", "not_found"));
                 continue;
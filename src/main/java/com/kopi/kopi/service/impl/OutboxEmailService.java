@@ -0,0 +1,71 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.OutboundEmail;
+import com.kopi.kopi.repository.OutboundEmailRepository;
+import com.kopi.kopi.service.EmailService;
+import com.kopi.kopi.service.MailDispatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+
+/**
+ * Queues mail in dbo.email_outbox, inside the caller's transaction when there is one, so a mail
+ * exists exactly when the change that caused it was committed. MailDispatcher sends it.
+ */
+@Service
+@Primary
+public class OutboxEmailService implements EmailService {
+    private static final Logger log = LoggerFactory.getLogger(OutboxEmailService.class);
+
+    private final OutboundEmailRepository outboundEmailRepository;
+    private final MailDispatcher mailDispatcher;
+
+    public OutboxEmailService(OutboundEmailRepository outboundEmailRepository, MailDispatcher mailDispatcher) {
+        this.outboundEmailRepository = outboundEmailRepository;
+        this.mailDispatcher = mailDispatcher;
+    }
+
+    @Override
+    public void send(String to, String subject, String text) {
+        enqueue(to, subject, text, OutboundEmail.PRIORITY_NORMAL);
+    }
+
+    @Override
+    public void sendUrgent(String to, String subject, String text) {
+        enqueue(to, subject, text, OutboundEmail.PRIORITY_URGENT);
+    }
+
+    private void enqueue(String to, String subject, String text, int priority) {
+        if (to == null || to.isBlank()) {
+            // a failed insert would roll back the caller's transaction
+            log.warn("Mail '{}' has no recipient, not queued", subject);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        outboundEmailRepository.save(OutboundEmail.builder()
+                .recipient(to.trim())
+                .subject(subject == null ? "" : subject)
+                .body(text == null ? "" : text)
+                .priority(priority)
+                .status("PENDING")
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    mailDispatcher.wake();
+                }
+            });
+        } else {
+            mailDispatcher.wake();
+        }
+    }
+}
@@ -9,6 +9,7 @@ import com.kopi.kopi.dto.PayOSPaymentResponse;
 import com.kopi.kopi.util.PayOSUtil;
 import com.kopi.kopi.repository.OrderRepository;
 import com.kopi.kopi.repository.PaymentRepository;
+import com.kopi.kopi.service.OutboundHttp;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -24,14 +25,16 @@ public class PayOSService {
     private final PaymentRepository paymentRepo;
     private final ObjectMapper mapper = new ObjectMapper()
             .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
-    private final RestTemplate rest = new RestTemplate();
+    private final RestTemplate rest;
 
     public PayOSService(PayOSConfig config,
                         OrderRepository orderRepo,
-                        PaymentRepository paymentRepo) {
+                        PaymentRepository paymentRepo,
+                        OutboundHttp outboundHttp) {
         this.config = config;
         this.orderRepo = orderRepo;
         this.paymentRepo = paymentRepo;
+        this.rest = outboundHttp.client("payos");
     }
 
     @Transactional
@@ -187,6 +190,7 @@ public class PayOSService {
 
             // Lưu txnRef theo format ORD-{orderCode}-{orderId}
             payment.setTxnRef("ORD-" + orderCode + "-" + orderId);
+            payment.setPayosOrderCode((long) orderCode);
             paymentRepo.save(payment);
 
             return PayOSPaymentResponse.builder()
@@ -0,0 +1,143 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.entity.Payment;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.repository.OrderRepository;
+import com.kopi.kopi.repository.PaymentRepository;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.RevenueRollup;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Applies PayOS webhook deliveries to payments. PayOS retries a delivery until it gets a
+ * 2xx, so the same (orderCode, code) can arrive several times: repeats are answered from a
+ * small in-memory map of recently applied deliveries, and anything that slips past it is
+ * still a no-op because the payment row is locked and its current status checked first.
+ */
+@Service
+public class PayOSWebhookProcessor {
+	private static final int RECENT_DELIVERIES = 2048;
+
+	public enum Outcome { PAID, CANCELLED, DUPLICATE }
+
+	private final PaymentRepository paymentRepository;
+	private final OrderRepository orderRepository;
+	private final OrderBoard orderBoard;
+	private final RevenueRollup revenueRollup;
+
+	// orderCode -> webhook code already applied (access-ordered, oldest evicted)
+	private final Map<Long, Integer> recent = new LinkedHashMap<>(256, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+			return size() > RECENT_DELIVERIES;
+		}
+	};
+
+	public PayOSWebhookProcessor(PaymentRepository paymentRepository, OrderRepository orderRepository, OrderBoard orderBoard,
+								 RevenueRollup revenueRollup) {
+		this.paymentRepository = paymentRepository;
+		this.orderRepository = orderRepository;
+		this.orderBoard = orderBoard;
+		this.revenueRollup = revenueRollup;
+	}
+
+	/** Payment for a PayOS orderCode, via the indexed order code column or the txnRef prefix for older rows. */
+	@Transactional(readOnly = true)
+	public Optional<Payment> findByOrderCode(long orderCode) {
+		Optional<Payment> byCode = paymentRepository.findFirstByPayosOrderCode(orderCode);
+		if (byCode.isPresent()) return byCode;
+		return paymentRepository.findFirstByTxnRefStartingWith(txnRefPrefix(orderCode));
+	}
+
+	@Transactional
+	public Outcome process(long orderCode, Integer code) {
+		int result = code == null ? -1 : code;
+		if (isRecent(orderCode, result)) return Outcome.DUPLICATE;
+
+		Payment payment = lockByOrderCode(orderCode)
+				.orElseThrow(() -> new IllegalArgumentException("Payment not found for orderCode: " + orderCode));
+
+		Outcome outcome;
+		if (result == 0) {
+			if (payment.getStatus() == PaymentStatus.PAID) {
+				outcome = Outcome.DUPLICATE;
+			} else {
+				payment.setStatus(PaymentStatus.PAID);
+				payment.setPaidAt(LocalDateTime.now());
+				paymentRepository.save(payment);
+				revenueRollup.touch(payment.getPaidAt());
+				outcome = Outcome.PAID;
+			}
+		} else if (payment.getStatus() == PaymentStatus.PAID || payment.getStatus() == PaymentStatus.CANCELLED) {
+			// Không hạ trạng thái payment đã PAID; CANCELLED đã được xử lý trước đó
+			outcome = Outcome.DUPLICATE;
+		} else {
+			payment.setStatus(PaymentStatus.CANCELLED);
+			paymentRepository.save(payment);
+			// Delete pre-created order if no successful payment exists
+			try {
+				OrderEntity orderToDelete = payment.getOrder();
+				if (orderToDelete != null) {
+					boolean hasPaid = orderToDelete.getPayments() != null
+							&& orderToDelete.getPayments().stream().anyMatch(p -> p.getStatus() == PaymentStatus.PAID);
+					if (!hasPaid) {
+						orderRepository.delete(orderToDelete);
+					}
+				}
+			} catch (Exception ignored) {}
+			outcome = Outcome.CANCELLED;
+		}
+		if (outcome != Outcome.DUPLICATE && payment.getOrder() != null) {
+			orderBoard.touch(payment.getOrder().getOrderId());
+		}
+		rememberAfterCommit(orderCode, result);
+		return outcome;
+	}
+
+	private Optional<Payment> lockByOrderCode(long orderCode) {
+		List<Payment> byCode = paymentRepository.findForUpdateByPayosOrderCode(orderCode);
+		if (!byCode.isEmpty()) return Optional.of(byCode.get(0));
+		List<Payment> byRef = paymentRepository.findForUpdateByTxnRefStartingWith(txnRefPrefix(orderCode));
+		return byRef.isEmpty() ? Optional.empty() : Optional.of(byRef.get(0));
+	}
+
+	private static String txnRefPrefix(long orderCode) {
+		return "ORD-" + orderCode + "-";
+	}
+
+	private boolean isRecent(long orderCode, int code) {
+		synchronized (recent) {
+			Integer applied = recent.get(orderCode);
+			return applied != null && applied == code;
+		}
+	}
+
+	// Only remember deliveries whose changes actually committed, so a rolled back one can be retried
+	private void rememberAfterCommit(long orderCode, int code) {
+		Runnable remember = () -> {
+			synchronized (recent) {
+				recent.put(orderCode, code);
+			}
+		};
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					remember.run();
+				}
+			});
+		} else {
+			remember.run();
+		}
+	}
+}
@@ -4,12 +4,12 @@ import com.kopi.kopi.entity.Category;
 import com.kopi.kopi.entity.Product;
 import com.kopi.kopi.entity.ProductAddOn;
 import com.kopi.kopi.entity.ProductSize;
-import com.kopi.kopi.entity.DiscountEvent;
 import com.kopi.kopi.repository.CategoryRepository;
 import com.kopi.kopi.repository.ProductAddOnRepository;
 import com.kopi.kopi.repository.ProductRepository;
 import com.kopi.kopi.repository.ProductSizeRepository;
-import com.kopi.kopi.repository.DiscountEventRepository;
+import com.kopi.kopi.service.PricingEngine;
+import com.kopi.kopi.service.ProductNameIndex;
 import com.kopi.kopi.service.ProductService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -34,37 +34,21 @@ public class ProductServiceImpl implements ProductService {
     private final CategoryRepository categoryRepository;
     private final ProductSizeRepository productSizeRepository;
     private final ProductAddOnRepository productAddOnRepository;
-    private final DiscountEventRepository discountEventRepository;
+    private final PricingEngine pricingEngine;
+    private final ProductNameIndex productNameIndex;
 
-    public ProductServiceImpl(ProductRepository productRepository, CategoryRepository categoryRepository, ProductSizeRepository productSizeRepository, ProductAddOnRepository productAddOnRepository, DiscountEventRepository discountEventRepository) {
+    public ProductServiceImpl(ProductRepository productRepository, CategoryRepository categoryRepository, ProductSizeRepository productSizeRepository, ProductAddOnRepository productAddOnRepository, PricingEngine pricingEngine, ProductNameIndex productNameIndex) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.productSizeRepository = productSizeRepository;
         this.productAddOnRepository = productAddOnRepository;
-        this.discountEventRepository = discountEventRepository;
+        this.pricingEngine = pricingEngine;
+        this.productNameIndex = productNameIndex;
     }
 
-    private BigDecimal computeDiscountedPrice(BigDecimal price, DiscountEvent ev) {
-        if (price == null) return null;
-        if (ev == null) return null;
-        BigDecimal value = ev.getDiscountValue() != null ? ev.getDiscountValue() : BigDecimal.ZERO;
-        if (ev.getDiscountType() == null) return null;
-        switch (ev.getDiscountType()) {
-            case PERCENT -> {
-                // clamp percent between 0 and 100
-                BigDecimal pct = value.max(BigDecimal.ZERO).min(new BigDecimal("100"));
-                BigDecimal multiplier = BigDecimal.ONE.subtract(pct.divide(new BigDecimal("100")));
-                BigDecimal result = price.multiply(multiplier);
-                return result.max(BigDecimal.ZERO);
-            }
-            case AMOUNT -> {
-                BigDecimal result = price.subtract(value);
-                return result.max(BigDecimal.ZERO);
-            }
-            default -> {
-                return null;
-            }
-        }
+    private BigDecimal computeDiscountedPrice(BigDecimal price, PricingEngine.ActiveDiscount ev) {
+        if (price == null || ev == null || ev.type() == null) return null;
+        return PricingEngine.applyDiscount(price, ev.type(), ev.value() != null ? ev.value() : BigDecimal.ZERO);
     }
 
     private String generateSku(Category category, String productName) {
@@ -120,14 +104,14 @@ public class ProductServiceImpl implements ProductService {
             m.put("price", p.getPrice() != null ? p.getPrice() : BigDecimal.ZERO);
             m.put("originalPrice", p.getPrice() != null ? p.getPrice() : BigDecimal.ZERO);
             try {
-                var activeEv = discountEventRepository.findActiveEventByProductId(p.getProductId(), LocalDateTime.now()).orElse(null);
+                var activeEv = pricingEngine.findActive(p.getProductId());
                 BigDecimal discounted = computeDiscountedPrice(p.getPrice(), activeEv);
                 if (discounted != null && p.getPrice() != null && discounted.compareTo(p.getPrice()) != 0) {
                     m.put("discountedPrice", discounted);
                     if (activeEv != null) {
-                        m.put("discountEventId", activeEv.getDiscountEventId());
-                        m.put("discountType", activeEv.getDiscountType() != null ? activeEv.getDiscountType().name() : null);
-                        m.put("discountValue", activeEv.getDiscountValue());
+                        m.put("discountEventId", activeEv.eventId());
+                        m.put("discountType", activeEv.type() != null ? activeEv.type().name() : null);
+                        m.put("discountValue", activeEv.value());
                     }
                 }
             } catch (Exception ignored) {}
@@ -160,14 +144,14 @@ public class ProductServiceImpl implements ProductService {
         item.put("price", p.getPrice() != null ? p.getPrice() : BigDecimal.ZERO);
         item.put("originalPrice", p.getPrice() != null ? p.getPrice() : BigDecimal.ZERO);
         try {
-            var activeEv = discountEventRepository.findActiveEventByProductId(p.getProductId(), LocalDateTime.now()).orElse(null);
+            var activeEv = pricingEngine.findActive(p.getProductId());
             BigDecimal discounted = computeDiscountedPrice(p.getPrice(), activeEv);
             if (discounted != null && p.getPrice() != null && discounted.compareTo(p.getPrice()) != 0) {
                 item.put("discountedPrice", discounted);
                 if (activeEv != null) {
-                    item.put("discountEventId", activeEv.getDiscountEventId());
-                    item.put("discountType", activeEv.getDiscountType() != null ? activeEv.getDiscountType().name() : null);
-                    item.put("discountValue", activeEv.getDiscountValue());
+                    item.put("discountEventId", activeEv.eventId());
+                    item.put("discountType", activeEv.type() != null ? activeEv.type().name() : null);
+                    item.put("discountValue", activeEv.value());
                 }
             }
         } catch (Exception ignored) {}
@@ -239,6 +223,7 @@ public class ProductServiceImpl implements ProductService {
         if (p.getCreatedAt() == null) p.setCreatedAt(LocalDateTime.now());
         if (p.getUpdatedAt() == null) p.setUpdatedAt(LocalDateTime.now());
         productRepository.save(p);
+        productNameIndex.invalidate();
 
         Map<String, Object> item = new HashMap<>();
         item.put("id", p.getProductId());
@@ -273,6 +258,7 @@ public class ProductServiceImpl implements ProductService {
         }
         p.setDescription(desc);
         productRepository.save(p);
+        productNameIndex.invalidate();
 
         Map<String, Object> item = new HashMap<>();
         item.put("id", p.getProductId());
@@ -296,6 +282,7 @@ public class ProductServiceImpl implements ProductService {
         p.setAvailable(false);
         // Optional: also zero out stock or keep it; we keep stock as-is for audit
         productRepository.save(p);
+        productNameIndex.invalidate();
         return ResponseEntity.ok(Map.of("message", "soft_deleted"));
     }
 }
@@ -9,6 +9,7 @@ import com.kopi.kopi.repository.DiscountCodeRepository;
 import com.kopi.kopi.repository.DiscountEventRepository;
 import com.kopi.kopi.repository.ProductRepository;
 import com.kopi.kopi.service.IPromoService;
+import com.kopi.kopi.service.PricingEngine;
 import com.kopi.kopi.exception.ValidationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,11 +34,13 @@ public class PromoServiceImpl implements IPromoService {
     private final DiscountCodeRepository discountCodeRepository;
     private final DiscountEventRepository discountEventRepository;
     private final ProductRepository productRepository;
+    private final PricingEngine pricingEngine;
 
-    public PromoServiceImpl(DiscountCodeRepository discountCodeRepository, DiscountEventRepository discountEventRepository, ProductRepository productRepository) {
+    public PromoServiceImpl(DiscountCodeRepository discountCodeRepository, DiscountEventRepository discountEventRepository, ProductRepository productRepository, PricingEngine pricingEngine) {
         this.discountCodeRepository = discountCodeRepository;
         this.discountEventRepository = discountEventRepository;
         this.productRepository = productRepository;
+        this.pricingEngine = pricingEngine;
     }
 
     @Override
@@ -45,99 +48,51 @@ public class PromoServiceImpl implements IPromoService {
     public Map<String, Object> list(Integer page, Integer limit, String available, String status, String searchByName) {
         LocalDateTime now = LocalDateTime.now();
         boolean hasStatus = status != null && !status.isBlank();
-        boolean includeInactiveForAll = hasStatus && status.equalsIgnoreCase("all");
         boolean availableFlag = !hasStatus && "true".equalsIgnoreCase(available);
 
-        List<Map<String, Object>> items = new ArrayList<>();
-
-        for (DiscountCode dc : discountCodeRepository.findAll()) {
-            boolean nameMatch = searchByName == null || searchByName.isBlank()
-                    || dc.getCode().toLowerCase().contains(searchByName.toLowerCase())
-                    || (dc.getDescription() != null && dc.getDescription().toLowerCase().contains(searchByName.toLowerCase()));
-            if (!nameMatch) continue;
-
-            boolean isCurrent = Boolean.TRUE.equals(dc.getActive()) && dc.getStartsAt() != null && dc.getEndsAt() != null
-                    && (dc.getStartsAt().isBefore(now) || dc.getStartsAt().isEqual(now))
-                    && (dc.getEndsAt().isAfter(now) || dc.getEndsAt().isEqual(now));
-            boolean isUpcoming = Boolean.TRUE.equals(dc.getActive()) && dc.getStartsAt() != null && dc.getStartsAt().isAfter(now);
-            boolean isAvailable = Boolean.TRUE.equals(dc.getActive()) && dc.getEndsAt() != null && (dc.getEndsAt().isAfter(now) || dc.getEndsAt().isEqual(now));
-
-            boolean matched = true;
-            if (includeInactiveForAll) {
-                matched = true;
-            } else if (hasStatus) {
-                if (status.equalsIgnoreCase("current")) matched = isCurrent;
-                else if (status.equalsIgnoreCase("upcoming")) matched = isUpcoming;
-                else if (status.equalsIgnoreCase("available") || status.equalsIgnoreCase("current_or_upcoming")) matched = isAvailable;
-                else if (status.equalsIgnoreCase("all")) matched = true;
-            } else if (availableFlag) {
-                matched = isAvailable;
-            }
-            if (!matched) continue;
-
-            items.add(Map.of(
-                    "id", dc.getDiscountCodeId(),
-                    "kind", "CODE",
-                    "title", dc.getCode(),
-                    "description", dc.getDescription(),
-                    "discountType", dc.getDiscountType() != null ? dc.getDiscountType().name() : null,
-                    "discountValue", dc.getDiscountValue(),
-                    "startsAt", dc.getStartsAt(),
-                    "endsAt", dc.getEndsAt(),
-                    "active", dc.getActive(),
-                    "createdAt", dc.getCreatedAt()
-            ));
+        // Lọc theo trạng thái: '' = không lọc (kể cả inactive), còn lại chỉ lấy promo đang active
+        String mode = "";
+        if (hasStatus) {
+            if (status.equalsIgnoreCase("current")) mode = "current";
+            else if (status.equalsIgnoreCase("upcoming")) mode = "upcoming";
+            else if (status.equalsIgnoreCase("available") || status.equalsIgnoreCase("current_or_upcoming")) mode = "available";
+        } else if (availableFlag) {
+            mode = "available";
         }
+        // contains-match as before: the search text is matched literally, not as a LIKE pattern
+        String term = searchByName == null || searchByName.isBlank() ? "" : "%" + escapeLike(searchByName.toLowerCase()) + "%";
 
-        for (DiscountEvent ev : discountEventRepository.findAll()) {
-            boolean nameMatch = searchByName == null || searchByName.isBlank()
-                    || ev.getName().toLowerCase().contains(searchByName.toLowerCase())
-                    || (ev.getDescription() != null && ev.getDescription().toLowerCase().contains(searchByName.toLowerCase()));
-            if (!nameMatch) continue;
+        int safeLimit = Math.max(1, limit == null ? 8 : limit);
+        int safePage = Math.max(1, page == null ? 1 : page);
+        long total = discountCodeRepository.countPromos(term, mode, true, now);
 
-            boolean isCurrent = Boolean.TRUE.equals(ev.getActive()) && ev.getStartsAt() != null && ev.getEndsAt() != null
-                    && (ev.getStartsAt().isBefore(now) || ev.getStartsAt().isEqual(now))
-                    && (ev.getEndsAt().isAfter(now) || ev.getEndsAt().isEqual(now));
-            boolean isUpcoming = Boolean.TRUE.equals(ev.getActive()) && ev.getStartsAt() != null && ev.getStartsAt().isAfter(now);
-            boolean isAvailable = Boolean.TRUE.equals(ev.getActive()) && ev.getEndsAt() != null && (ev.getEndsAt().isAfter(now) || ev.getEndsAt().isEqual(now));
+        List<Object[]> keys = total == 0 ? List.of()
+                : discountCodeRepository.searchPromoPage(term, mode, true, now, (safePage - 1) * safeLimit, safeLimit);
+        List<Integer> codeIds = new ArrayList<>();
+        List<Integer> eventIds = new ArrayList<>();
+        for (Object[] k : keys) {
+            Integer id = ((Number) k[1]).intValue();
+            if ("CODE".equals(String.valueOf(k[0]).trim())) codeIds.add(id);
+            else eventIds.add(id);
+        }
+        Map<Integer, DiscountCode> codes = new HashMap<>();
+        if (!codeIds.isEmpty()) discountCodeRepository.findAllById(codeIds).forEach(dc -> codes.put(dc.getDiscountCodeId(), dc));
+        Map<Integer, DiscountEvent> events = new HashMap<>();
+        if (!eventIds.isEmpty()) discountEventRepository.findAllById(eventIds).forEach(ev -> events.put(ev.getDiscountEventId(), ev));
 
-            boolean matchedEv = true;
-            if (includeInactiveForAll) {
-                matchedEv = true;
-            } else if (hasStatus) {
-                if (status.equalsIgnoreCase("current")) matchedEv = isCurrent;
-                else if (status.equalsIgnoreCase("upcoming")) matchedEv = isUpcoming;
-                else if (status.equalsIgnoreCase("available") || status.equalsIgnoreCase("current_or_upcoming")) matchedEv = isAvailable;
-                else if (status.equalsIgnoreCase("all")) matchedEv = true;
-            } else if (availableFlag) {
-                matchedEv = isAvailable;
+        List<Map<String, Object>> pageItems = new ArrayList<>(keys.size());
+        for (Object[] k : keys) {
+            Integer id = ((Number) k[1]).intValue();
+            if ("CODE".equals(String.valueOf(k[0]).trim())) {
+                DiscountCode dc = codes.get(id);
+                if (dc != null) pageItems.add(toListItem(dc));
+            } else {
+                DiscountEvent ev = events.get(id);
+                if (ev != null) pageItems.add(toListItem(ev));
             }
-            if (!matchedEv) continue;
-
-            items.add(Map.of(
-                    "id", ev.getDiscountEventId(),
-                    "kind", "EVENT",
-                    "title", ev.getName(),
-                    "description", ev.getDescription(),
-                    "discountType", ev.getDiscountType() != null ? ev.getDiscountType().name() : null,
-                    "discountValue", ev.getDiscountValue(),
-                    "startsAt", ev.getStartsAt(),
-                    "endsAt", ev.getEndsAt(),
-                    "active", ev.getActive(),
-                    "createdAt", ev.getCreatedAt()
-            ));
         }
 
-        items.sort(Comparator.comparing((Map<String, Object> m) -> (LocalDateTime) (m.get("startsAt") != null ? m.get("startsAt") : m.get("createdAt")))
-                .reversed());
-
-        int safeLimit = Math.max(1, limit == null ? 8 : limit);
-        int safePage = Math.max(1, page == null ? 1 : page);
-        int from = Math.min((safePage - 1) * safeLimit, Math.max(items.size() - 1, 0));
-        int to = Math.min(from + safeLimit, items.size());
-        List<Map<String, Object>> pageItems = from >= to ? List.of() : items.subList(from, to);
-
-        int totalPages = (int) Math.ceil(items.size() / (double) safeLimit);
+        int totalPages = (int) Math.ceil(total / (double) safeLimit);
         Map<String, Object> meta = Map.of(
                 "currentPage", safePage,
                 "totalPage", totalPages,
@@ -151,6 +106,36 @@ public class PromoServiceImpl implements IPromoService {
         );
     }
 
+    private static Map<String, Object> toListItem(DiscountCode dc) {
+        return Map.of(
+                "id", dc.getDiscountCodeId(),
+                "kind", "CODE",
+                "title", dc.getCode(),
+                "description", dc.getDescription(),
+                "discountType", dc.getDiscountType() != null ? dc.getDiscountType().name() : null,
+                "discountValue", dc.getDiscountValue(),
+                "startsAt", dc.getStartsAt(),
+                "endsAt", dc.getEndsAt(),
+                "active", dc.getActive(),
+                "createdAt", dc.getCreatedAt()
+        );
+    }
+
+    private static Map<String, Object> toListItem(DiscountEvent ev) {
+        return Map.of(
+                "id", ev.getDiscountEventId(),
+                "kind", "EVENT",
+                "title", ev.getName(),
+                "description", ev.getDescription(),
+                "discountType", ev.getDiscountType() != null ? ev.getDiscountType().name() : null,
+                "discountValue", ev.getDiscountValue(),
+                "startsAt", ev.getStartsAt(),
+                "endsAt", ev.getEndsAt(),
+                "active", ev.getActive(),
+                "createdAt", ev.getCreatedAt()
+        );
+    }
+
     @Override
     @Transactional
     public DiscountCode create(CreateCodeDTO body) {
@@ -234,6 +219,7 @@ public class PromoServiceImpl implements IPromoService {
             ev.getProducts().add(dep);
         }
         discountEventRepository.save(ev);
+        pricingEngine.invalidate();
         return ev;
     }
 
@@ -346,6 +332,7 @@ public class PromoServiceImpl implements IPromoService {
             }
         }
         discountEventRepository.save(ev);
+        pricingEngine.invalidate();
     }
     @Override
     @Transactional
@@ -372,6 +359,7 @@ public class PromoServiceImpl implements IPromoService {
             }
             ev.setActive(false);
             discountEventRepository.save(ev);
+            pricingEngine.invalidate();
             return;
         }
         throw new NoSuchElementException("Promo not found");
@@ -410,6 +398,14 @@ public class PromoServiceImpl implements IPromoService {
         } catch (Exception ignored) {}
         return null;
     }
-}
-
 
+    // \ % _ and [ (a range in SQL Server) are pattern characters; the repository queries use ESCAPE '\'
+    static String escapeLike(String text) {
+        StringBuilder sb = new StringBuilder(text.length() + 8);
+        for (char c : text.toCharArray()) {
+            if (c == '\\' || c == '%' || c == '_' || c == '[') sb.append('\\');
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+}
@@ -2,16 +2,27 @@ package com.kopi.kopi.service.impl;
 
 import com.kopi.kopi.dto.DashboardSummary;
 import com.kopi.kopi.dto.RevenuePoint;
-import com.kopi.kopi.repository.PaymentRepository;
 import com.kopi.kopi.service.ReportService;
+import com.kopi.kopi.service.RevenueRollup;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import lombok.RequiredArgsConstructor;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
 import java.time.*;
 import java.time.format.TextStyle;
 import java.time.temporal.WeekFields;
@@ -23,7 +34,36 @@ import java.time.temporal.TemporalAdjusters;
 @RequiredArgsConstructor
 public class ReportServiceImpl implements ReportService {
 
-    private final PaymentRepository paymentRepository;
+    private static final int EXPORT_ROW_WINDOW = 200;
+    private static final int EXPORT_FETCH_SIZE = 500;
+
+    private static final String EXPORT_ORDERS_SQL = """
+        SELECT o.order_id, o.order_code, o.created_at, o.status, u.full_name AS customer_name, t.name AS table_name,
+               o.subtotal_amount, o.discount_amount, o.shipping_amount,
+               p.method, p.status AS payment_status, p.paid_at
+        FROM dbo.orders o
+        LEFT JOIN dbo.users u ON u.user_id = o.customer_id
+        LEFT JOIN dbo.tables t ON t.table_id = o.table_id
+        LEFT JOIN dbo.payments p ON p.payment_id =
+              (SELECT MIN(p2.payment_id) FROM dbo.payments p2 WHERE p2.order_id = o.order_id)
+        WHERE o.created_at >= ? AND o.created_at < ?
+        ORDER BY o.created_at, o.order_id
+    """;
+
+    private static final String EXPORT_ITEMS_SQL = """
+        SELECT o.order_id, o.order_code, o.created_at, o.status,
+               d.product_name_snapshot, s.name AS size_name, d.quantity, d.unit_price, d.note,
+               (SELECT SUM(a.unit_price_snapshot) FROM dbo.order_detail_add_ons a
+                 WHERE a.order_detail_id = d.order_detail_id) AS add_on_total
+        FROM dbo.order_details d
+        JOIN dbo.orders o ON o.order_id = d.order_id
+        LEFT JOIN dbo.sizes s ON s.size_id = d.size_id
+        WHERE o.created_at >= ? AND o.created_at < ?
+        ORDER BY o.created_at, o.order_id, d.order_detail_id
+    """;
+
+    private final RevenueRollup revenueRollup;
+    private final JdbcTemplate jdbcTemplate;
 
     @PersistenceContext
     private EntityManager em;
@@ -34,6 +74,7 @@ public class ReportServiceImpl implements ReportService {
         if (to == null) to = LocalDate.now(ZoneId.of("Asia/Ho_Chi_Minh"));
         if (from == null) {
             switch (g) {
+                case hourly    -> from = to;
                 case daily     -> from = to.minusDays(6);
                 case weekly    -> from = to.minusWeeks(6);
                 case monthly   -> from = to.minusMonths(6);
@@ -41,44 +82,30 @@ public class ReportServiceImpl implements ReportService {
                 case yearly    -> from = to.minusYears(6);
             }
         }
-        var fromDt = from.atStartOfDay();
-        var toDt   = to.plusDays(1).atStartOfDay().minusNanos(1);
-
-        List<Object[]> raw = switch (g) {
-            case daily     -> paymentRepository.sumPaidByDay(fromDt, toDt);
-            case weekly    -> paymentRepository.sumPaidByWeek(fromDt, toDt);
-            case monthly   -> paymentRepository.sumPaidByMonth(fromDt, toDt);
-            case quarterly -> paymentRepository.sumPaidByQuarter(fromDt, toDt);
-            case yearly    -> paymentRepository.sumPaidByYear(fromDt, toDt);
+
+        // Đọc từ bảng rollup, không quét payments; tuần gộp từ các ngày, quý/năm gộp từ các tháng
+        // (tháng đầu/cuối không trọn vẹn được cộng từ các ngày trong khoảng)
+        List<RevenueRollup.Bucket> raw = switch (g) {
+            case hourly -> revenueRollup.hourly(from.atStartOfDay(), to.plusDays(1).atStartOfDay());
+            case daily, weekly -> group(g, revenueRollup.daily(from, to));
+            case monthly, quarterly, yearly -> group(g, revenueRollup.months(from, to));
         };
 
         List<RevenuePoint> list = new ArrayList<>();
-        for (Object[] row : raw) {
-            // ---- bucketStart: an toàn cho mọi kiểu date/datetime
-            Object dtObj = row[0];
-            LocalDate bucketStart;
-            if (dtObj instanceof java.sql.Date d)       bucketStart = d.toLocalDate();
-            else if (dtObj instanceof java.sql.Timestamp ts) bucketStart = ts.toLocalDateTime().toLocalDate();
-            else if (dtObj instanceof LocalDate ld)     bucketStart = ld;
-            else if (dtObj instanceof LocalDateTime ldt)bucketStart = ldt.toLocalDate();
-            else {
-                String s = String.valueOf(dtObj);
-                bucketStart = LocalDate.parse(s.substring(0, 10));
-            }
-
-            BigDecimal total = toBigDecimal(row[1]);
-            int orderCount = 0;
-            if (row.length >= 3 && row[2] != null) orderCount = ((Number) row[2]).intValue();
+        for (RevenueRollup.Bucket row : raw) {
+            LocalDate bucketStart = row.start().toLocalDate();
+            BigDecimal total = row.total() != null ? row.total() : BigDecimal.ZERO;
+            int orderCount = row.orders();
 
             BigDecimal avg = BigDecimal.ZERO;
-            if (orderCount > 0 && total != null)
+            if (orderCount > 0)
                 avg = total.divide(BigDecimal.valueOf(orderCount), 2, RoundingMode.HALF_UP);
 
             // tính date range theo granularity
             LocalDate start = bucketStart;
             LocalDate end;
             switch (g) {
-                case daily     -> end = start;
+                case hourly, daily -> end = start;
                 case weekly    -> end = start.plusDays(6);
                 case monthly   -> end = start.with(TemporalAdjusters.lastDayOfMonth());
                 case quarterly -> end = start.plusMonths(3).minusDays(1);
@@ -95,6 +122,10 @@ public class ReportServiceImpl implements ReportService {
 
             // label + meta
             switch (g) {
+                case hourly -> {
+                    b.label(String.format("%02d:00", row.start().getHour()))
+                            .year(start.getYear()).month(start.getMonthValue());
+                }
                 case daily -> {
                     b.label(start.getDayOfMonth() + "/" + start.getMonthValue())
                             .year(start.getYear()).month(start.getMonthValue());
@@ -126,19 +157,35 @@ public class ReportServiceImpl implements ReportService {
         return list;
     }
 
-    private BigDecimal toBigDecimal(Object v) {
-        if (v == null) return BigDecimal.ZERO;
-        if (v instanceof BigDecimal bd) return bd;
-        if (v instanceof Number n) return BigDecimal.valueOf(n.doubleValue());
-        return new BigDecimal(v.toString());
+    // Gộp các ngày vào tuần ISO (thứ Hai), tháng, quý hoặc năm chứa chúng
+    private List<RevenueRollup.Bucket> group(Granularity g, List<RevenueRollup.Bucket> buckets) {
+        if (g == Granularity.daily || g == Granularity.monthly) return buckets;
+        Map<LocalDate, RevenueRollup.Bucket> grouped = new TreeMap<>();
+        for (RevenueRollup.Bucket d : buckets) {
+            LocalDate day = d.start().toLocalDate();
+            LocalDate key = switch (g) {
+                case weekly    -> day.with(DayOfWeek.MONDAY);
+                case monthly   -> day.withDayOfMonth(1);
+                case quarterly -> LocalDate.of(day.getYear(), ((day.getMonthValue() - 1) / 3) * 3 + 1, 1);
+                case yearly    -> day.withDayOfYear(1);
+                default        -> day;
+            };
+            grouped.merge(key, new RevenueRollup.Bucket(key.atStartOfDay(), d.total(), d.orders(), d.payments()),
+                    (a, b) -> new RevenueRollup.Bucket(a.start(), a.total().add(b.total()),
+                            a.orders() + b.orders(), a.payments() + b.payments()));
+        }
+        return new ArrayList<>(grouped.values());
     }
 
     @Override
     @Transactional(readOnly = true)
-    public byte[] exportRevenueToExcel(Granularity g, LocalDate from, LocalDate to, int buckets) {
+    public void exportRevenueToExcel(Granularity g, LocalDate from, LocalDate to, int buckets, OutputStream out) throws IOException {
         var points = revenue(g, from, to, buckets);
-        try (XSSFWorkbook wb = new XSSFWorkbook()) {
+        SXSSFWorkbook wb = streamingWorkbook();
+        try {
+            var st = new ExportStyles(wb);
             var sheet = wb.createSheet("Revenue");
+            setWidths(sheet, 16, 8, 8, 8, 8, 16);
             int r = 0;
             var metaH = sheet.createRow(r++);
             metaH.createCell(0).setCellValue("Granularity");
@@ -155,13 +202,7 @@ public class ReportServiceImpl implements ReportService {
             metaV.createCell(4).setCellValue(OffsetDateTime.now(ZoneId.of("Asia/Ho_Chi_Minh")).toString());
 
             r++;
-            var h = sheet.createRow(r++);
-            h.createCell(0).setCellValue("Period");
-            h.createCell(1).setCellValue("Year");
-            h.createCell(2).setCellValue("Month");
-            h.createCell(3).setCellValue("Week");
-            h.createCell(4).setCellValue("Quarter");
-            h.createCell(5).setCellValue("Total");
+            header(sheet.createRow(r++), st, "Period", "Year", "Month", "Week", "Quarter", "Total");
 
             for (var p : points) {
                 var row = sheet.createRow(r++);
@@ -170,45 +211,171 @@ public class ReportServiceImpl implements ReportService {
                 if (p.getMonth()   != null) row.createCell(2).setCellValue(p.getMonth());
                 if (p.getWeek()    != null) row.createCell(3).setCellValue(p.getWeek());
                 if (p.getQuarter() != null) row.createCell(4).setCellValue(p.getQuarter());
-                row.createCell(5).setCellValue(p.getTotal_sum() != null ? p.getTotal_sum().doubleValue() : 0d);
+                money(row, 5, p.getTotal_sum(), st);
             }
-            for (int c = 0; c <= 5; c++) sheet.autoSizeColumn(c);
-            var bos = new java.io.ByteArrayOutputStream();
-            wb.write(bos);
-            return bos.toByteArray();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to export Excel", e);
+            wb.write(out);
+        } finally {
+            wb.dispose();
+            wb.close();
         }
     }
 
     @Override
     @Transactional(readOnly = true)
-    public DashboardSummary summary() {
-        var zone = java.time.ZoneId.of("Asia/Ho_Chi_Minh");
-        var today = java.time.LocalDate.now(zone);
+    public void exportOrdersToExcel(LocalDate from, LocalDate to, boolean lineItems, OutputStream out) throws IOException {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneId.of("Asia/Ho_Chi_Minh"));
+        LocalDate start = from != null ? from : end.minusMonths(1);
+        SXSSFWorkbook wb = streamingWorkbook();
+        try {
+            var st = new ExportStyles(wb);
+
+            var orders = wb.createSheet("Orders");
+            setWidths(orders, 10, 18, 18, 12, 24, 14, 14, 14, 14, 14, 10, 12, 18);
+            header(orders.createRow(0), st, "Order ID", "Code", "Created at", "Status", "Customer", "Table",
+                    "Subtotal", "Discount", "Shipping", "Total", "Method", "Payment", "Paid at");
+            int[] r = {1};
+            streamRange(EXPORT_ORDERS_SQL, start, end, rs -> {
+                var row = orders.createRow(r[0]++);
+                BigDecimal subtotal = nz(rs.getBigDecimal("subtotal_amount"));
+                BigDecimal discount = nz(rs.getBigDecimal("discount_amount"));
+                BigDecimal shipping = nz(rs.getBigDecimal("shipping_amount"));
+                row.createCell(0).setCellValue(rs.getInt("order_id"));
+                text(row, 1, rs.getString("order_code"));
+                time(row, 2, rs.getTimestamp("created_at"), st);
+                text(row, 3, rs.getString("status"));
+                text(row, 4, rs.getString("customer_name"));
+                text(row, 5, rs.getString("table_name"));
+                money(row, 6, subtotal, st);
+                money(row, 7, discount, st);
+                money(row, 8, shipping, st);
+                money(row, 9, subtotal.subtract(discount).add(shipping), st);
+                text(row, 10, rs.getString("method"));
+                text(row, 11, rs.getString("payment_status"));
+                time(row, 12, rs.getTimestamp("paid_at"), st);
+            });
+
+            if (lineItems) {
+                var items = wb.createSheet("Order items");
+                setWidths(items, 10, 18, 18, 12, 30, 10, 8, 14, 14, 14, 30);
+                header(items.createRow(0), st, "Order ID", "Code", "Created at", "Status", "Product", "Size",
+                        "Quantity", "Unit price", "Add-ons", "Line total", "Note");
+                r[0] = 1;
+                streamRange(EXPORT_ITEMS_SQL, start, end, rs -> {
+                    var row = items.createRow(r[0]++);
+                    BigDecimal unitPrice = nz(rs.getBigDecimal("unit_price"));
+                    int quantity = rs.getInt("quantity");
+                    row.createCell(0).setCellValue(rs.getInt("order_id"));
+                    text(row, 1, rs.getString("order_code"));
+                    time(row, 2, rs.getTimestamp("created_at"), st);
+                    text(row, 3, rs.getString("status"));
+                    text(row, 4, rs.getString("product_name_snapshot"));
+                    text(row, 5, rs.getString("size_name"));
+                    row.createCell(6).setCellValue(quantity);
+                    money(row, 7, unitPrice, st);
+                    money(row, 8, rs.getBigDecimal("add_on_total"), st);
+                    money(row, 9, unitPrice.multiply(BigDecimal.valueOf(quantity)), st);
+                    text(row, 10, rs.getString("note"));
+                });
+            }
+            wb.write(out);
+        } finally {
+            wb.dispose();
+            wb.close();
+        }
+    }
 
-        var startToday = today.atStartOfDay();
-        var endToday   = today.plusDays(1).atStartOfDay().minusNanos(1);
+    // ---- Excel streaming: SXSSF giữ tối đa EXPORT_ROW_WINDOW dòng trong heap, phần còn lại ghi ra file tạm;
+    // độ rộng cột cố định (autoSizeColumn cần toàn bộ dữ liệu trong bộ nhớ)
 
-        var wf = WeekFields.ISO;
-        var weekStart = today.with(wf.dayOfWeek(), 1).atStartOfDay();
-        var weekEnd   = today.plusDays(1).atStartOfDay().minusNanos(1); // tới cuối hôm nay
+    private static SXSSFWorkbook streamingWorkbook() {
+        SXSSFWorkbook wb = new SXSSFWorkbook(EXPORT_ROW_WINDOW);
+        wb.setCompressTempFiles(true);
+        return wb;
+    }
 
-        var monthStart = today.withDayOfMonth(1).atStartOfDay();
-        var yearStart  = today.withDayOfYear(1).atStartOfDay();
-        var endNow     = endToday;
+    // Đọc theo con trỏ forward-only, từng lô EXPORT_FETCH_SIZE dòng, trong khoảng created_at [from, to]
+    private void streamRange(String sql, LocalDate from, LocalDate to, RowCallbackHandler handler) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(EXPORT_FETCH_SIZE);
+            ps.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+            ps.setTimestamp(2, Timestamp.valueOf(to.plusDays(1).atStartOfDay()));
+            return ps;
+        }, handler);
+    }
 
-        BigDecimal todayRev  = nz(paymentRepository.sumPaidBetween(startToday, endToday));
-        int        todayCnt  = paymentRepository.countPaidBetween(startToday, endToday);
+    private static void setWidths(Sheet sheet, int... chars) {
+        for (int c = 0; c < chars.length; c++) sheet.setColumnWidth(c, chars[c] * 256);
+    }
 
-        BigDecimal weekRev   = nz(paymentRepository.sumPaidBetween(weekStart, endNow));
-        int        weekCnt   = paymentRepository.countPaidBetween(weekStart, endNow);
+    private static void header(Row row, ExportStyles st, String... titles) {
+        for (int c = 0; c < titles.length; c++) {
+            var cell = row.createCell(c);
+            cell.setCellValue(titles[c]);
+            cell.setCellStyle(st.header);
+        }
+    }
+
+    private static void text(Row row, int c, String v) {
+        if (v != null) row.createCell(c).setCellValue(v);
+    }
+
+    private static void money(Row row, int c, BigDecimal v, ExportStyles st) {
+        var cell = row.createCell(c);
+        cell.setCellValue(v != null ? v.doubleValue() : 0d);
+        cell.setCellStyle(st.money);
+    }
 
-        BigDecimal monthRev  = nz(paymentRepository.sumPaidBetween(monthStart, endNow));
-        int        monthCnt  = paymentRepository.countPaidBetween(monthStart, endNow);
+    private static void time(Row row, int c, Timestamp v, ExportStyles st) {
+        if (v == null) return;
+        var cell = row.createCell(c);
+        cell.setCellValue(v.toLocalDateTime());
+        cell.setCellStyle(st.time);
+    }
+
+    // Style dùng chung cho cả workbook (mỗi style tạo riêng cho từng ô sẽ vượt giới hạn của Excel)
+    private static final class ExportStyles {
+        final CellStyle header;
+        final CellStyle money;
+        final CellStyle time;
+
+        ExportStyles(Workbook wb) {
+            var bold = wb.createFont();
+            bold.setBold(true);
+            header = wb.createCellStyle();
+            header.setFont(bold);
+            money = wb.createCellStyle();
+            money.setDataFormat(wb.createDataFormat().getFormat("#,##0"));
+            time = wb.createCellStyle();
+            time.setDataFormat(wb.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
+        }
+    }
 
-        BigDecimal yearRev   = nz(paymentRepository.sumPaidBetween(yearStart, endNow));
-        int        yearCnt   = paymentRepository.countPaidBetween(yearStart, endNow);
+    @Override
+    @Transactional(readOnly = true)
+    public DashboardSummary summary() {
+        var zone = java.time.ZoneId.of("Asia/Ho_Chi_Minh");
+        var today = java.time.LocalDate.now(zone);
+
+        var weekStart  = today.with(WeekFields.ISO.dayOfWeek(), 1);
+        var monthStart = today.withDayOfMonth(1);
+        var yearStart  = today.withDayOfYear(1);
+
+        // Năm/tháng đọc tối đa 12 dòng tháng, tuần/hôm nay đọc tối đa 7 dòng ngày trong bảng rollup
+        BigDecimal todayRev = BigDecimal.ZERO, weekRev = BigDecimal.ZERO, monthRev = BigDecimal.ZERO, yearRev = BigDecimal.ZERO;
+        int todayCnt = 0, weekCnt = 0, monthCnt = 0, yearCnt = 0;
+        for (RevenueRollup.Bucket m : revenueRollup.monthly(yearStart, monthStart)) {
+            BigDecimal amount = nz(m.total());
+            yearRev = yearRev.add(amount);
+            yearCnt += m.payments();
+            if (m.start().toLocalDate().equals(monthStart)) { monthRev = monthRev.add(amount); monthCnt += m.payments(); }
+        }
+        for (RevenueRollup.Bucket d : revenueRollup.daily(weekStart, today)) {
+            BigDecimal amount = nz(d.total());
+            weekRev = weekRev.add(amount);
+            weekCnt += d.payments();
+            if (d.start().toLocalDate().equals(today)) { todayRev = todayRev.add(amount); todayCnt += d.payments(); }
+        }
 
         int totalProducts = safeCount("""
             SELECT COUNT(1) FROM dbo.products
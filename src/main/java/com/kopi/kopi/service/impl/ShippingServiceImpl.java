@@ -5,6 +5,7 @@ import com.kopi.kopi.entity.OrderEntity;
 import com.kopi.kopi.entity.User;
 import com.kopi.kopi.repository.OrderRepository;
 import com.kopi.kopi.repository.UserRepository;
+import com.kopi.kopi.service.OrderBoard;
 import com.kopi.kopi.service.ShippingLocationStore;
 import com.kopi.kopi.service.ShippingService;
 import com.kopi.kopi.repository.AddressRepository;
@@ -22,15 +23,17 @@ public class ShippingServiceImpl implements ShippingService {
     private final UserRepository userRepository;
     private final AddressRepository addressRepository;
     private final MapboxService mapbox;
+    private final OrderBoard orderBoard;
 
     public ShippingServiceImpl(ShippingLocationStore store, OrderRepository orderRepository, UserRepository userRepository,
                                AddressRepository addressRepository,
-                               MapboxService mapbox) {
+                               MapboxService mapbox, OrderBoard orderBoard) {
         this.store = store;
         this.orderRepository = orderRepository;
         this.userRepository = userRepository;
         this.addressRepository = addressRepository;
         this.mapbox = mapbox;
+        this.orderBoard = orderBoard;
     }
 
     @Override
@@ -118,6 +121,7 @@ public class ShippingServiceImpl implements ShippingService {
         
         o.setShipper(user);
         orderRepository.save(o);
+        orderBoard.touch(o.getOrderId());
         return ResponseEntity.ok(Map.of("message", "OK"));
     }
 
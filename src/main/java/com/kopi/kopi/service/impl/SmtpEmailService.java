@@ -35,13 +35,12 @@ package com.kopi.kopi.service.impl;
 
 import com.kopi.kopi.service.EmailService;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Primary;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+// Gửi trực tiếp qua SMTP, không qua outbox; bean mặc định là OutboxEmailService
 @Service
-@Primary // 🟨 THÊM DÒNG NÀY: đặt làm bean mặc định cho EmailService
 public class SmtpEmailService implements EmailService {
 
     private final JavaMailSender mailSender;
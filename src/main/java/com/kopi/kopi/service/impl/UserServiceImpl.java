@@ -51,7 +51,7 @@ public class UserServiceImpl implements IUserService {
     public UserServiceImpl(
             UserRepository userRepository,
             PasswordEncoder passwordEncoder,
-            @Qualifier("smtpEmailService") EmailService emailService, // match bean theo name
+            @Qualifier("outboxEmailService") EmailService emailService, // match bean theo name
             ForceChangeStore forceChangeStore,
             UserAddressRepository userAddressRepository,
             RoleRepository roleRepository,
@@ -70,7 +70,7 @@ public class UserServiceImpl implements IUserService {
     public UserServiceImpl(
             UserRepository userRepository,
             PasswordEncoder passwordEncoder,
-            @Qualifier("smtpEmailService") EmailService emailService, // match bean theo name
+            @Qualifier("outboxEmailService") EmailService emailService, // match bean theo name
             ForceChangeStore forceChangeStore) {
         this(userRepository, passwordEncoder, emailService, forceChangeStore, null, null, null);
     }
@@ -92,7 +92,7 @@ public class UserServiceImpl implements IUserService {
         forceChangeStore.set(user.getEmail(), true);
 
         try {
-            emailService.send(
+            emailService.sendUrgent(
                     user.getEmail(),
                     "[Kopi] Your temporary password",
                     "Hi " + user.getFullName() + ",\n\nYour temporary password is: " + tmp +
@@ -0,0 +1,51 @@
+-- Migration: PayOS lookups on payments
+-- Adds payos_order_code, backfills it from txn_ref ("ORD-{orderCode}-{orderId}")
+-- and indexes both columns used by the PayOS webhook / return handlers
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF NOT EXISTS (
+    SELECT 1
+    FROM INFORMATION_SCHEMA.COLUMNS
+    WHERE TABLE_SCHEMA = 'dbo'
+      AND TABLE_NAME = 'payments'
+      AND COLUMN_NAME = 'payos_order_code'
+)
+BEGIN
+    PRINT 'Adding payos_order_code column to payments table...';
+    ALTER TABLE dbo.payments
+    ADD payos_order_code BIGINT NULL;
+END
+GO
+
+-- Backfill from txn_ref for PayOS payments created before the column existed
+UPDATE dbo.payments
+SET payos_order_code = TRY_CAST(SUBSTRING(txn_ref, 5, CHARINDEX('-', txn_ref, 5) - 5) AS BIGINT)
+WHERE payos_order_code IS NULL
+  AND txn_ref LIKE 'ORD-%-%';
+GO
+
+IF NOT EXISTS (
+    SELECT 1 FROM sys.indexes
+    WHERE object_id = OBJECT_ID('dbo.payments') AND name = 'ix_payments_txn_ref'
+)
+BEGIN
+    CREATE INDEX ix_payments_txn_ref ON dbo.payments (txn_ref);
+    PRINT 'Index ix_payments_txn_ref created.';
+END
+GO
+
+IF NOT EXISTS (
+    SELECT 1 FROM sys.indexes
+    WHERE object_id = OBJECT_ID('dbo.payments') AND name = 'ix_payments_payos_order_code'
+)
+BEGIN
+    CREATE INDEX ix_payments_payos_order_code ON dbo.payments (payos_order_code);
+    PRINT 'Index ix_payments_payos_order_code created.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
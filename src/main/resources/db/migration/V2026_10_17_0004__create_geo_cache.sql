@@ -0,0 +1,29 @@
+-- Migration: geo_cache table for Mapbox geocoding / driving distance lookups
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.geo_cache', 'U') IS NULL
+BEGIN
+    PRINT 'Creating geo_cache table...';
+    CREATE TABLE dbo.geo_cache (
+        cache_key       NVARCHAR(400) NOT NULL PRIMARY KEY,
+        latitude        FLOAT NULL,
+        longitude       FLOAT NULL,
+        city            NVARCHAR(100) NULL,
+        distance_meters FLOAT NULL,
+        failed          BIT NOT NULL DEFAULT 0,
+        expires_at      DATETIME2 NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table geo_cache created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table geo_cache already exists.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
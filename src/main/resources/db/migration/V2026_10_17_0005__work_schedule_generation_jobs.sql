@@ -0,0 +1,58 @@
+-- Migration: work_schedule_generations as the progress record of background generation jobs
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.work_schedule_generations', 'U') IS NULL
+BEGIN
+    PRINT 'Creating work_schedule_generations table...';
+    CREATE TABLE dbo.work_schedule_generations (
+        generation_id      INT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        name               NVARCHAR(255) NULL,
+        description        NVARCHAR(255) NULL,
+        anchor_date        DATE NULL,
+        start_date         DATE NULL,
+        end_date           DATE NULL,
+        recurrence_id      INT NULL,
+        type               NVARCHAR(255) NULL,
+        interval_days      INT NULL,
+        created_by_user_id INT NULL,
+        created_at         DATETIME2 NULL,
+        created_count      INT NULL,
+        updated_count      INT NULL,
+        skipped_count      INT NULL,
+        conflicts          NVARCHAR(4000) NULL
+    );
+    PRINT 'Table work_schedule_generations created.';
+END
+GO
+
+IF COL_LENGTH('dbo.work_schedule_generations', 'conflicts') < 8000
+BEGIN
+    PRINT 'Widening work_schedule_generations.conflicts...';
+    ALTER TABLE dbo.work_schedule_generations ALTER COLUMN conflicts NVARCHAR(4000) NULL;
+END
+GO
+
+IF COL_LENGTH('dbo.work_schedule_generations', 'status') IS NULL
+BEGIN
+    PRINT 'Adding job columns to work_schedule_generations...';
+    ALTER TABLE dbo.work_schedule_generations ADD
+        status            NVARCHAR(20) NULL,
+        total_dates       INT NULL,
+        processed_dates   INT NULL,
+        work_schedule_id  INT NULL,
+        error_message     NVARCHAR(500) NULL,
+        updated_at        DATETIME2 NULL,
+        finished_at       DATETIME2 NULL;
+    PRINT 'Job columns added.';
+END
+ELSE
+BEGIN
+    PRINT 'Job columns already exist in work_schedule_generations.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
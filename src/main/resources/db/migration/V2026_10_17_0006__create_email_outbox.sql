@@ -0,0 +1,39 @@
+-- Migration: email_outbox table drained by MailDispatcher
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.email_outbox', 'U') IS NULL
+BEGIN
+    PRINT 'Creating email_outbox table...';
+    CREATE TABLE dbo.email_outbox (
+        email_id        BIGINT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        recipient       NVARCHAR(320) NOT NULL,
+        subject         NVARCHAR(255) NOT NULL,
+        body            NVARCHAR(MAX) NOT NULL,
+        priority        INT NOT NULL DEFAULT 5,
+        status          VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+        attempts        INT NOT NULL DEFAULT 0,
+        next_attempt_at DATETIME2 NOT NULL,
+        last_error      NVARCHAR(500) NULL,
+        created_at      DATETIME2 NOT NULL,
+        sent_at         DATETIME2 NULL
+    );
+    PRINT 'Table email_outbox created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table email_outbox already exists.';
+END
+GO
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_email_outbox_due' AND object_id = OBJECT_ID('dbo.email_outbox'))
+BEGIN
+    PRINT 'Creating ix_email_outbox_due...';
+    CREATE INDEX ix_email_outbox_due ON dbo.email_outbox (status, priority, next_attempt_at);
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
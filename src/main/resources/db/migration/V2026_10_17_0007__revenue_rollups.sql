@@ -0,0 +1,53 @@
+-- Migration: hourly/daily revenue rollups maintained by RevenueRollup
+-- The tables are filled from payments on the first application start (or POST /apiv1/adminPanel/reports/rollups/rebuild)
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.revenue_hourly', 'U') IS NULL
+BEGIN
+    PRINT 'Creating revenue_hourly table...';
+    CREATE TABLE dbo.revenue_hourly (
+        bucket_start    DATETIME2 NOT NULL PRIMARY KEY,
+        total_amount    DECIMAL(18,2) NOT NULL,
+        order_count     INT NOT NULL,
+        payment_count   INT NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table revenue_hourly created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table revenue_hourly already exists.';
+END
+GO
+
+IF OBJECT_ID('dbo.revenue_daily', 'U') IS NULL
+BEGIN
+    PRINT 'Creating revenue_daily table...';
+    CREATE TABLE dbo.revenue_daily (
+        bucket_date     DATE NOT NULL PRIMARY KEY,
+        total_amount    DECIMAL(18,2) NOT NULL,
+        order_count     INT NOT NULL,
+        payment_count   INT NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table revenue_daily created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table revenue_daily already exists.';
+END
+GO
+
+-- Recomputing a day reads only its paid payments
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_payments_status_paid_at' AND object_id = OBJECT_ID('dbo.payments'))
+BEGIN
+    PRINT 'Creating ix_payments_status_paid_at...';
+    CREATE INDEX ix_payments_status_paid_at ON dbo.payments (status, paid_at) INCLUDE (order_id, amount);
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
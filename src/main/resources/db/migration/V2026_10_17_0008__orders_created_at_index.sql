@@ -0,0 +1,15 @@
+-- Migration: index for the order / order-item Excel exports, which read orders by created_at range
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_orders_created_at' AND object_id = OBJECT_ID('dbo.orders'))
+BEGIN
+    PRINT 'Creating ix_orders_created_at...';
+    CREATE INDEX ix_orders_created_at ON dbo.orders (created_at);
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
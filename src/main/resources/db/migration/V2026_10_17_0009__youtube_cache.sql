@@ -0,0 +1,52 @@
+-- Migration: persistent YouTube search cache and daily quota usage (YouTubeCache / YouTubeQuota)
+-- Rows past stale_until, and the oldest ones above ai.youtube.cache.max-entries, are purged hourly
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.youtube_cache', 'U') IS NULL
+BEGIN
+    PRINT 'Creating youtube_cache table...';
+    CREATE TABLE dbo.youtube_cache (
+        cache_key       NVARCHAR(400) NOT NULL PRIMARY KEY,
+        payload         NVARCHAR(MAX) NOT NULL,
+        result_count    INT NOT NULL,
+        fresh_until     DATETIME2 NOT NULL,
+        stale_until     DATETIME2 NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table youtube_cache created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table youtube_cache already exists.';
+END
+GO
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_youtube_cache_stale_until' AND object_id = OBJECT_ID('dbo.youtube_cache'))
+BEGIN
+    PRINT 'Creating ix_youtube_cache_stale_until...';
+    CREATE INDEX ix_youtube_cache_stale_until ON dbo.youtube_cache (stale_until);
+END
+GO
+
+-- Units spent per quota day (midnight Pacific time), shared by every instance
+IF OBJECT_ID('dbo.youtube_quota_usage', 'U') IS NULL
+BEGIN
+    PRINT 'Creating youtube_quota_usage table...';
+    CREATE TABLE dbo.youtube_quota_usage (
+        usage_date      DATE NOT NULL PRIMARY KEY,
+        units           INT NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table youtube_quota_usage created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table youtube_quota_usage already exists.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
@@ -0,0 +1,43 @@
+-- Migration: daily dish trend snapshots built by TrendSnapshots and served by /apiv1/trends/dishes
+-- Each row is one build (queued / running / completed / failed) of one days:maxResults preset
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.trend_snapshots', 'U') IS NULL
+BEGIN
+    PRINT 'Creating trend_snapshots table...';
+    CREATE TABLE dbo.trend_snapshots (
+        snapshot_id     INT IDENTITY(1,1) NOT NULL PRIMARY KEY,
+        preset_key      NVARCHAR(40) NOT NULL,
+        days            INT NOT NULL,
+        max_results     INT NOT NULL,
+        status          NVARCHAR(20) NOT NULL,
+        trigger_source  NVARCHAR(20) NULL,
+        payload         NVARCHAR(MAX) NULL,
+        dish_count      INT NULL,
+        total_videos    INT NULL,
+        took_ms         BIGINT NULL,
+        error_message   NVARCHAR(500) NULL,
+        created_at      DATETIME2 NOT NULL,
+        finished_at     DATETIME2 NULL
+    );
+    PRINT 'Table trend_snapshots created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table trend_snapshots already exists.';
+END
+GO
+
+-- Latest completed snapshot of a preset
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_trend_snapshots_preset_status' AND object_id = OBJECT_ID('dbo.trend_snapshots'))
+BEGIN
+    PRINT 'Creating ix_trend_snapshots_preset_status...';
+    CREATE INDEX ix_trend_snapshots_preset_status ON dbo.trend_snapshots (preset_key, status, snapshot_id);
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
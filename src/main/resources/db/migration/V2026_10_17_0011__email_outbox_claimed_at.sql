@@ -0,0 +1,19 @@
+-- Migration: email_outbox.claimed_at, the lease MailDispatcher takes when it claims a mail
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF COL_LENGTH('dbo.email_outbox', 'claimed_at') IS NULL
+BEGIN
+    PRINT 'Adding email_outbox.claimed_at...';
+    ALTER TABLE dbo.email_outbox ADD claimed_at DATETIME2 NULL;
+END
+ELSE
+BEGIN
+    PRINT 'Column email_outbox.claimed_at already exists.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
@@ -0,0 +1,27 @@
+-- Migration: monthly revenue rollup maintained by RevenueRollup next to revenue_daily
+-- Filled on the next application start when it is empty (or POST /apiv1/adminPanel/reports/rollups/rebuild)
+
+SET NOCOUNT ON;
+USE [Kopi];
+GO
+
+IF OBJECT_ID('dbo.revenue_monthly', 'U') IS NULL
+BEGIN
+    PRINT 'Creating revenue_monthly table...';
+    CREATE TABLE dbo.revenue_monthly (
+        bucket_month    DATE NOT NULL PRIMARY KEY,
+        total_amount    DECIMAL(18,2) NOT NULL,
+        order_count     INT NOT NULL,
+        payment_count   INT NOT NULL,
+        updated_at      DATETIME2 NOT NULL
+    );
+    PRINT 'Table revenue_monthly created.';
+END
+ELSE
+BEGIN
+    PRINT 'Table revenue_monthly already exists.';
+END
+GO
+
+PRINT 'Migration completed successfully.';
+GO
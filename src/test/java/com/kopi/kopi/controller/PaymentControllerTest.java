@@ -0,0 +1,93 @@
+package com.kopi.kopi.controller;
+
+import com.kopi.kopi.config.PayOSConfig;
+import com.kopi.kopi.config.VNPAYConfig;
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.entity.Payment;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.repository.OrderRepository;
+import com.kopi.kopi.repository.PaymentRepository;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.RevenueRollup;
+import com.kopi.kopi.service.impl.PayOSService;
+import com.kopi.kopi.service.impl.PayOSWebhookProcessor;
+import com.kopi.kopi.service.impl.PaymentService;
+import com.kopi.kopi.util.VNPayUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+@DisplayName("PaymentController VNPay callback Tests")
+class PaymentControllerTest {
+
+    private static final String SECRET = "test-secret";
+
+    private OrderRepository orderRepository;
+    private PaymentRepository paymentRepository;
+    private OrderBoard orderBoard;
+    private PaymentController controller;
+
+    @BeforeEach
+    void setUp() {
+        orderRepository = mock(OrderRepository.class);
+        paymentRepository = mock(PaymentRepository.class);
+        orderBoard = mock(OrderBoard.class);
+        VNPAYConfig vnpayConfig = mock(VNPAYConfig.class);
+        when(vnpayConfig.getSecretKey()).thenReturn(SECRET);
+        controller = new PaymentController(mock(PaymentService.class), orderRepository, paymentRepository,
+                mock(PayOSService.class), mock(PayOSWebhookProcessor.class), mock(PayOSConfig.class), vnpayConfig,
+                mock(RevenueRollup.class), orderBoard);
+    }
+
+    private static Map<String, String> signedCallback(int orderId, String responseCode) {
+        Map<String, String> params = new HashMap<>();
+        params.put("vnp_ResponseCode", responseCode);
+        params.put("vnp_TransactionStatus", responseCode);
+        params.put("vnp_OrderInfo", "ORDER:" + orderId);
+        params.put("vnp_TxnRef", "TXN" + orderId);
+        params.put("vnp_SecureHash", VNPayUtil.hmacSHA512(SECRET, VNPayUtil.getPaymentURL(params, false)));
+        return params;
+    }
+
+    private static OrderEntity order(int orderId) {
+        Payment payment = Payment.builder().status(PaymentStatus.PENDING).build();
+        return OrderEntity.builder().orderId(orderId).status("PENDING").payments(new ArrayList<>(List.of(payment))).build();
+    }
+
+    @Test
+    @DisplayName("should Refresh Board Card When VNPay Reports Payment Success")
+    void should_RefreshBoardCard_When_VNPayReportsPaymentSuccess() {
+        OrderEntity order = order(42);
+        when(orderRepository.findById(42)).thenReturn(Optional.of(order));
+
+        ResponseEntity<?> res = controller.vnPayCallback(signedCallback(42, "00"));
+
+        assertThat(res.getStatusCode().value()).isEqualTo(302);
+        assertThat(order.getPayments().get(0).getStatus()).isEqualTo(PaymentStatus.PAID);
+        verify(paymentRepository).save(order.getPayments().get(0));
+        verify(orderBoard).touch(42);
+    }
+
+    @Test
+    @DisplayName("should Drop Board Card When Failed Payment Deletes The Order")
+    void should_DropBoardCard_When_FailedPaymentDeletesTheOrder() {
+        OrderEntity order = order(43);
+        when(orderRepository.findById(43)).thenReturn(Optional.of(order));
+
+        controller.vnPayCallback(signedCallback(43, "24"));
+
+        var inOrder = inOrder(orderRepository, orderBoard);
+        inOrder.verify(orderRepository).delete(order);
+        inOrder.verify(orderBoard).touch(43);
+    }
+}
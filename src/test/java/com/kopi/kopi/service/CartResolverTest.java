@@ -0,0 +1,115 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.*;
+import com.kopi.kopi.repository.*;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("CartResolver Tests")
+class CartResolverTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private ProductSizeRepository productSizeRepository;
+    @Autowired private ProductAddOnRepository productAddOnRepository;
+    @Autowired private SizeRepository sizeRepository;
+    @Autowired private DiscountEventRepository discountEventRepository;
+
+    private CartResolver cartResolver;
+    private Statistics statistics;
+    private final List<Integer> productIds = new ArrayList<>();
+    private final List<Integer> addOnIds = new ArrayList<>();
+    private Integer sizeId;
+
+    @BeforeEach
+    void setUp() {
+        cartResolver = new CartResolver(productRepository, productSizeRepository, productAddOnRepository, sizeRepository,
+                new PricingEngine(discountEventRepository));
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        LocalDateTime now = LocalDateTime.now();
+        Category category = new Category("Coffee", true, 1);
+        em.persist(category);
+        Size size = Size.builder().name("L").displayOrder(1).createdAt(now).updatedAt(now).build();
+        em.persist(size);
+        sizeId = size.getSizeId();
+        List<AddOn> addOns = new ArrayList<>();
+        for (int a = 0; a < 3; a++) {
+            AddOn addOn = AddOn.builder().name("Topping " + a).displayOrder(a).createdAt(now).updatedAt(now).build();
+            em.persist(addOn);
+            addOns.add(addOn);
+            addOnIds.add(addOn.getAddOnId());
+        }
+        for (int i = 0; i < 25; i++) {
+            Product product = new Product(category, "Product " + i, "SKU-" + i, new BigDecimal("20000"), null);
+            em.persist(product);
+            productIds.add(product.getProductId());
+            em.persist(ProductSize.builder().product(product).size(size).price(new BigDecimal("5000")).available(true).build());
+            for (AddOn addOn : addOns) {
+                em.persist(ProductAddOn.builder().product(product).addOn(addOn).price(new BigDecimal("3000")).available(true).build());
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    private List<CartResolver.CartLine> cart(int lines) {
+        List<CartResolver.CartLine> result = new ArrayList<>();
+        for (int i = 0; i < lines; i++) {
+            result.add(new CartResolver.CartLine(productIds.get(i), 2, sizeId, addOnIds));
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("should Price Size And Add-ons When Resolving A Cart")
+    void should_PriceSizeAndAddOns_When_ResolvingCart() {
+        CartResolver.PricedCart priced = cartResolver.resolve(cart(2));
+
+        // 20000 base + 5000 size + 3 x 3000 add-ons
+        assertThat(priced.lines()).hasSize(2);
+        assertThat(priced.lines().get(0).unitPrice()).isEqualByComparingTo("34000");
+        assertThat(priced.lines().get(0).addOns()).hasSize(3);
+        assertThat(priced.lines().get(0).size().getName()).isEqualTo("L");
+        assertThat(priced.subtotal()).isEqualByComparingTo("136000");
+        assertThat(priced.firstOutOfStock()).isNull();
+    }
+
+    @Test
+    @DisplayName("should Keep Statement Count Flat When Cart Grows")
+    void should_KeepStatementCountFlat_When_CartGrows() {
+        cartResolver.resolve(cart(1)); // warm the pricing index
+        em.clear();
+
+        statistics.clear();
+        cartResolver.resolve(cart(2));
+        long small = statistics.getPrepareStatementCount();
+        em.clear();
+
+        statistics.clear();
+        cartResolver.resolve(cart(20));
+        long large = statistics.getPrepareStatementCount();
+
+        assertThat(large).isEqualTo(small).isLessThanOrEqualTo(4);
+    }
+}
@@ -0,0 +1,80 @@
+package com.kopi.kopi.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("ChatSessionStore Tests")
+class ChatSessionStoreTest {
+
+    private static final long TTL = 1000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private ChatSessionStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new ChatSessionStore();
+        store.clock = now::get;
+        ReflectionTestUtils.setField(store, "ttlMs", TTL);
+    }
+
+    private void update(String key) {
+        store.update(key, "ORDERING", Map.of("step", key));
+    }
+
+    @Test
+    @DisplayName("should Expire Session When Idle Longer Than TTL")
+    void should_ExpireSession_When_IdleLongerThanTtl() {
+        update("user:1");
+        now.addAndGet(TTL);
+        assertThat(store.get("user:1")).isNotNull();
+
+        now.addAndGet(TTL + 1);
+        assertThat(store.get("user:1")).isNull();
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("should Purge Expired Sessions Behind A Recently Read One When Updating")
+    void should_PurgeExpiredSessionsBehindARecentlyReadOne_When_Updating() {
+        update("guest:a");
+        now.addAndGet(600);
+        update("guest:b");
+        // reading a moves it behind b and counts as activity
+        assertThat(store.get("guest:a").touchedAtMs()).isEqualTo(now.get());
+
+        now.addAndGet(600);
+        update("guest:c");
+        assertThat(store.size()).isEqualTo(3);
+
+        // a and b are idle past the TTL, c is not
+        now.addAndGet(900);
+        update("guest:d");
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get("guest:c")).isNotNull();
+        assertThat(store.get("guest:a")).isNull();
+    }
+
+    @Test
+    @DisplayName("should Drop Least Recently Used Session When Over The Size Cap")
+    void should_DropLeastRecentlyUsedSession_When_OverTheSizeCap() {
+        ReflectionTestUtils.setField(store, "maxSessions", 2);
+        update("user:1");
+        update("user:2");
+        store.get("user:1");
+
+        update("user:3");
+
+        assertThat(store.size()).isEqualTo(2);
+        assertThat(store.get("user:2")).isNull();
+        assertThat(store.get("user:1")).isNotNull();
+        assertThat(store.get("user:3").orderContext()).containsEntry("step", "user:3");
+    }
+}
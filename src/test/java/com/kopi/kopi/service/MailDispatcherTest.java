@@ -0,0 +1,172 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.OutboundEmail;
+import com.kopi.kopi.repository.OutboundEmailRepository;
+import com.kopi.kopi.service.impl.OutboxEmailService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rows are committed so the dispatcher's claims and status updates run as in production
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("MailDispatcher Tests")
+class MailDispatcherTest {
+
+    @Autowired private DataSource dataSource;
+    @Autowired private OutboundEmailRepository outboundEmailRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private SmtpStub smtp;
+    private MailDispatcher dispatcher;
+    private EmailService outbox;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        smtp = new SmtpStub();
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(smtp.port());
+        // the worker thread is not started; tests drain by hand
+        dispatcher = new MailDispatcher(jdbcTemplate, sender);
+        ReflectionTestUtils.setField(dispatcher, "from", "shop@kopi.test");
+        outbox = new OutboxEmailService(outboundEmailRepository, dispatcher);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dispatcher.stop();
+        smtp.close();
+        jdbcTemplate.update("DELETE FROM dbo.email_outbox");
+    }
+
+    private List<OutboundEmail> withStatus(String status) {
+        return outboundEmailRepository.findByStatusOrderByEmailIdAsc(status);
+    }
+
+    @Test
+    @DisplayName("should Send Urgent Mail First Over One Connection When Draining A Batch")
+    void should_SendUrgentMailFirstOverOneConnection_When_DrainingABatch() {
+        for (int i = 0; i < 5; i++) outbox.send("staff" + i + "@kopi.test", "Order update " + i, "Body " + i);
+        outbox.sendUrgent("new@kopi.test", "OTP", "Mã OTP của bạn: 123456");
+
+        assertThat(dispatcher.drainOnce()).isEqualTo(6);
+        assertThat(dispatcher.drainOnce()).isZero();
+
+        assertThat(smtp.received()).hasSize(6);
+        assertThat(smtp.received().get(0).recipient()).isEqualTo("new@kopi.test");
+        assertThat(smtp.connections()).isEqualTo(1);
+        assertThat(withStatus(MailDispatcher.SENT)).hasSize(6)
+                .allSatisfy(m -> assertThat(m.getSentAt()).isNotNull());
+
+        // the next batch reuses the open connection
+        outbox.send("staff0@kopi.test", "Order update", "Again");
+        dispatcher.drainOnce();
+        assertThat(smtp.received()).hasSize(7);
+        assertThat(smtp.connections()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Drop The Body Of Urgent Mail When It Is Sent")
+    void should_DropTheBodyOfUrgentMail_When_ItIsSent() {
+        outbox.sendUrgent("new@kopi.test", "[Kopi] Your temporary password", "Mật khẩu tạm thời: Xy7!kq2P");
+        outbox.sendUrgent("bounce@kopi.test", "OTP", "Mã OTP của bạn: 654321");
+        outbox.send("staff@kopi.test", "Order update", "Order #7 is ready");
+
+        dispatcher.drainOnce();
+
+        assertThat(smtp.received()).extracting(SmtpStub.Received::recipient)
+                .containsExactly("new@kopi.test", "staff@kopi.test");
+        assertThat(jdbcTemplate.queryForList("SELECT body FROM dbo.email_outbox ORDER BY email_id", String.class))
+                .containsExactly("", "", "Order #7 is ready");
+        assertThat(withStatus(MailDispatcher.SENT)).hasSize(2);
+        assertThat(withStatus(MailDispatcher.DEAD)).singleElement()
+                .satisfies(m -> assertThat(m.getRecipient()).isEqualTo("bounce@kopi.test"));
+    }
+
+    @Test
+    @DisplayName("should Back Off Then Dead Letter When Sending Fails")
+    void should_BackOffThenDeadLetter_When_SendingFails() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 2);
+        // a rejected address is permanent
+        outbox.send("bounce@kopi.test", "Hello", "Nobody home");
+        dispatcher.drainOnce();
+        OutboundEmail bounced = withStatus(MailDispatcher.DEAD).get(0);
+        assertThat(bounced.getRecipient()).isEqualTo("bounce@kopi.test");
+        assertThat(bounced.getAttempts()).isEqualTo(1);
+
+        // an unreachable server is not (stop also drops the open connection)
+        dispatcher.stop();
+        smtp.close();
+        outbox.send("staff@kopi.test", "Hello", "Server down");
+        dispatcher.drainOnce();
+        OutboundEmail retry = withStatus(MailDispatcher.PENDING).get(0);
+        assertThat(retry.getAttempts()).isEqualTo(1);
+        assertThat(retry.getLastError()).isNotBlank();
+        assertThat(retry.getNextAttemptAt()).isAfter(LocalDateTime.now().plusSeconds(20));
+
+        // not due yet
+        assertThat(dispatcher.drainOnce()).isZero();
+
+        jdbcTemplate.update("UPDATE dbo.email_outbox SET next_attempt_at = ? WHERE email_id = ?",
+                LocalDateTime.now().minusSeconds(1), retry.getEmailId());
+        dispatcher.drainOnce();
+        assertThat(withStatus(MailDispatcher.DEAD)).hasSize(2);
+        assertThat(withStatus(MailDispatcher.PENDING)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should Defer Without Using An Attempt When Recipient Is Over Its Rate")
+    void should_DeferWithoutUsingAnAttempt_When_RecipientIsOverItsRate() {
+        ReflectionTestUtils.setField(dispatcher, "perRecipientPerMinute", 2);
+        for (int i = 0; i < 3; i++) outbox.send("Busy@kopi.test", "Update " + i, "Body " + i);
+        outbox.send("calm@kopi.test", "Update", "Body");
+
+        dispatcher.drainOnce();
+
+        assertThat(smtp.received()).extracting(SmtpStub.Received::recipient)
+                .containsExactly("Busy@kopi.test", "Busy@kopi.test", "calm@kopi.test");
+        OutboundEmail deferred = withStatus(MailDispatcher.PENDING).get(0);
+        assertThat(deferred.getSubject()).isEqualTo("Update 2");
+        assertThat(deferred.getAttempts()).isZero();
+        assertThat(deferred.getNextAttemptAt()).isAfter(LocalDateTime.now().plusSeconds(50));
+    }
+
+    @Test
+    @DisplayName("should Requeue Only Expired Claims When Another Instance May Still Be Sending")
+    void should_RequeueOnlyExpiredClaims_When_AnotherInstanceMayStillBeSending() {
+        outbox.send("crashed@kopi.test", "Order update", "Claimed before a crash");
+        outbox.send("busy@kopi.test", "Order update", "Being sent right now");
+        jdbcTemplate.update("UPDATE dbo.email_outbox SET status = 'SENDING', claimed_at = ? WHERE recipient = ?",
+                LocalDateTime.now().minusMinutes(30), "crashed@kopi.test");
+        jdbcTemplate.update("UPDATE dbo.email_outbox SET status = 'SENDING', claimed_at = ? WHERE recipient = ?",
+                LocalDateTime.now().minusSeconds(5), "busy@kopi.test");
+
+        assertThat(dispatcher.requeueExpired()).isEqualTo(1);
+
+        assertThat(withStatus(MailDispatcher.PENDING)).extracting(OutboundEmail::getRecipient)
+                .containsExactly("crashed@kopi.test");
+        assertThat(withStatus(MailDispatcher.SENDING)).singleElement()
+                .satisfies(m -> assertThat(m.getClaimedAt()).isNotNull());
+        dispatcher.drainOnce();
+        assertThat(smtp.received()).extracting(SmtpStub.Received::recipient).containsExactly("crashed@kopi.test");
+    }
+}
@@ -0,0 +1,188 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.controller.NotificationController;
+import com.kopi.kopi.entity.Notification;
+import com.kopi.kopi.entity.Role;
+import com.kopi.kopi.entity.User;
+import com.kopi.kopi.entity.enums.UserStatus;
+import com.kopi.kopi.repository.NotificationRepository;
+import com.kopi.kopi.security.UserPrincipal;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+// Rows are committed so the hub's own read transactions and afterCommit delivery run as in production
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("NotificationHub Tests")
+class NotificationHubTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private NotificationRepository notificationRepository;
+
+    private TransactionTemplate tx;
+    private NotificationHub hub;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        hub = newHub();
+        user = tx.execute(s -> {
+            Role role = Role.builder().name("CUSTOMER").build();
+            em.persist(role);
+            User u = User.builder().username("alice").email("alice@kopi.test").passwordHash("x").fullName("Alice")
+                    .role(role).status(UserStatus.ACTIVE).createdAt(LocalDateTime.now()).updatedAt(LocalDateTime.now())
+                    .build();
+            em.persist(u);
+            return u;
+        });
+        SecurityContextHolder.getContext().setAuthentication(
+                new UsernamePasswordAuthenticationToken(new UserPrincipal(user), null, List.of()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        hub.stop();
+        SecurityContextHolder.clearContext();
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("DELETE FROM dbo.notifications");
+        jdbc.update("DELETE FROM dbo.users");
+        jdbc.update("DELETE FROM dbo.roles");
+    }
+
+    private NotificationHub newHub() {
+        NotificationHub h = new NotificationHub(notificationRepository, transactionManager);
+        h.start();
+        return h;
+    }
+
+    private MockHttpServletResponse open(String lastEventId) throws Exception {
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new NotificationController(notificationRepository, hub)).build();
+        var req = get("/apiv1/notifications/stream");
+        if (lastEventId != null) req.header("Last-Event-ID", lastEventId);
+        return mvc.perform(req).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    // Saves and publishes in one transaction, like NotificationServiceImpl
+    private Notification notify(String title) {
+        return tx.execute(s -> {
+            Notification n = Notification.builder().user(em.merge(user)).title(title).message(title + "!")
+                    .type("SYSTEM").isRead(false).createdAt(LocalDateTime.now()).build();
+            notificationRepository.save(n);
+            hub.publish(n);
+            return n;
+        });
+    }
+
+    private static String await(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!response.getContentAsString().contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return response.getContentAsString();
+    }
+
+    @Test
+    @DisplayName("should Push Notification And Unread Count After Commit When Connected")
+    void should_PushNotificationAndUnreadCountAfterCommit_When_Connected() throws Exception {
+        MockHttpServletResponse response = open(null);
+        assertThat(await(response, "\"unreadCount\":0")).contains("event:unread-count");
+        assertThat(hub.connectionCount(user.getUserId())).isEqualTo(1);
+
+        Notification n = notify("Order ready");
+
+        String body = await(response, "\"unreadCount\":1");
+        assertThat(body).contains("id:" + n.getNotificationId(), "event:notification", "\"title\":\"Order ready\"",
+                "\"unreadCount\":1");
+    }
+
+    @Test
+    @DisplayName("should Replay Only Missed Events When Resuming From Last Event Id")
+    void should_ReplayOnlyMissedEvents_When_ResumingFromLastEventId() throws Exception {
+        Notification first = notify("one");
+        Notification second = notify("two");
+        Notification third = notify("three");
+
+        // from the in-memory ring
+        String body = await(open(String.valueOf(first.getNotificationId())), "event:unread-count");
+        assertThat(body).contains("id:" + second.getNotificationId(), "id:" + third.getNotificationId(),
+                "\"unreadCount\":3");
+        assertThat(body).doesNotContain("id:" + first.getNotificationId() + "\n");
+
+        // after a restart the ring is empty and the database fills the gap
+        hub.stop();
+        hub = newHub();
+        body = await(open(String.valueOf(second.getNotificationId())), "event:unread-count");
+        assertThat(body).contains("id:" + third.getNotificationId(), "\"title\":\"three\"");
+        assertThat(body).doesNotContain("id:" + second.getNotificationId() + "\n");
+    }
+
+    @Test
+    @DisplayName("should Replay An Earlier Id That Committed Later When Resuming From The Ring")
+    void should_ReplayAnEarlierIdThatCommittedLater_When_ResumingFromTheRing() throws Exception {
+        notify("zero");
+        CountDownLatch saved = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // takes the lower id but commits after the next notification
+            Future<Notification> slow = pool.submit(() -> tx.execute(s -> {
+                Notification n = Notification.builder().user(em.getReference(User.class, user.getUserId())).title("slow").message("slow!")
+                        .type("SYSTEM").isRead(false).createdAt(LocalDateTime.now()).build();
+                notificationRepository.saveAndFlush(n);
+                hub.publish(n);
+                saved.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return n;
+            }));
+            assertThat(saved.await(5, TimeUnit.SECONDS)).isTrue();
+            Notification fast = notify("fast");
+            release.countDown();
+            Notification late = slow.get(5, TimeUnit.SECONDS);
+            assertThat(late.getNotificationId()).isLessThan(fast.getNotificationId());
+
+            String body = await(open(String.valueOf(fast.getNotificationId())), "event:unread-count");
+            assertThat(body).contains("id:" + late.getNotificationId(), "\"title\":\"slow\"");
+            assertThat(body).doesNotContain("\"title\":\"zero\"");
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.controller.TransactionController;
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.repository.OrderDetailAddOnRepository;
+import com.kopi.kopi.repository.OrderRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+// Rows are committed so the board's afterCommit refreshes and own read transactions see them
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("OrderBoard Tests")
+class OrderBoardTest {
+
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private OrderDetailAddOnRepository orderDetailAddOnRepository;
+
+    private TransactionTemplate tx;
+    private OrderBoard board;
+    private MockMvc mvc;
+    private Integer orderId;
+
+    @BeforeEach
+    void setUp() {
+        tx = new TransactionTemplate(transactionManager);
+        orderId = tx.execute(s -> {
+            LocalDateTime now = LocalDateTime.now();
+            return orderRepository.save(OrderEntity.builder().orderCode("ORD-BOARD").status("PENDING")
+                    .subtotalAmount(BigDecimal.TEN).shippingAmount(BigDecimal.ZERO).discountAmount(BigDecimal.ZERO)
+                    .createdAt(now).updatedAt(now).build()).getOrderId();
+        });
+        board = new OrderBoard(orderRepository, orderDetailAddOnRepository, transactionManager);
+        board.start();
+        board.warmUp();
+        mvc = MockMvcBuilders.standaloneSetup(new TransactionController(mock(OrderService.class), board)).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        board.stop();
+        new JdbcTemplate(dataSource).update("DELETE FROM dbo.orders");
+    }
+
+    private MockHttpServletResponse open(String lastEventId) throws Exception {
+        var req = get("/apiv1/transactions/board/stream");
+        if (lastEventId != null) req.header("Last-Event-ID", lastEventId);
+        return mvc.perform(req).andExpect(request().asyncStarted()).andReturn().getResponse();
+    }
+
+    // Changes the status and touches the board in one transaction, like OrderServiceImpl.changeStatus
+    private void changeStatus(String status) {
+        tx.executeWithoutResult(s -> {
+            OrderEntity o = orderRepository.findById(orderId).orElseThrow();
+            o.setStatus(status);
+            orderRepository.save(o);
+            board.touch(orderId);
+        });
+    }
+
+    // Waits for a frame with the expected text to be written completely (frames end with a blank line)
+    private static String await(MockHttpServletResponse response, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String body = response.getContentAsString();
+        while (!(body.contains(expected) && body.endsWith("\n\n")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            body = response.getContentAsString();
+        }
+        return body;
+    }
+
+    private static String lastId(String body) {
+        Matcher m = Pattern.compile("id:(\\d+)").matcher(body);
+        String last = null;
+        while (m.find()) last = m.group(1);
+        return last;
+    }
+
+    @Test
+    @DisplayName("should Stream Status Change And Removal After Commit When Subscribed")
+    void should_StreamStatusChangeAndRemovalAfterCommit_When_Subscribed() throws Exception {
+        assertThat(board.snapshot("TABLE")).singleElement()
+                .satisfies(card -> assertThat(card.get("status")).isEqualTo("PENDING"));
+        assertThat(board.snapshot("SHIPPING")).isEmpty();
+
+        MockHttpServletResponse response = open(null);
+        assertThat(await(response, "event:snapshot")).contains("\"id\":" + orderId, "\"status\":\"PENDING\"");
+
+        changeStatus("PROCESSING");
+        assertThat(await(response, "event:status-changed")).contains("\"status\":\"PROCESSING\"");
+        assertThat(board.snapshot("ALL")).singleElement()
+                .satisfies(card -> assertThat(card.get("status")).isEqualTo("PROCESSING"));
+
+        changeStatus("COMPLETED");
+        assertThat(await(response, "event:order-removed")).contains("\"id\":" + orderId);
+        assertThat(board.snapshot("ALL")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should Replay Only Missed Deltas When Resuming From Last Event Id")
+    void should_ReplayOnlyMissedDeltas_When_ResumingFromLastEventId() throws Exception {
+        changeStatus("PROCESSING");
+        String seen = lastId(await(open(null), "event:snapshot"));
+
+        changeStatus("READY");
+        String body = await(open(seen), "event:status-changed");
+        assertThat(body).contains("\"status\":\"READY\"").doesNotContain("event:snapshot");
+
+        // an id from another board lifetime gets a fresh snapshot
+        body = await(open("1"), "event:snapshot");
+        assertThat(body).contains("\"status\":\"READY\"");
+    }
+}
@@ -0,0 +1,171 @@
+package com.kopi.kopi.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DisplayName("OutboundHttp Tests")
+class OutboundHttpTest {
+
+    private HttpServer stub;
+    private String baseUrl;
+    private final AtomicInteger flakyCalls = new AtomicInteger();
+    private final AtomicInteger fastCalls = new AtomicInteger();
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newFixedThreadPool(4));
+        // 503 twice, then OK
+        stub.createContext("/flaky", ex -> {
+            if (flakyCalls.incrementAndGet() <= 2) {
+                ex.sendResponseHeaders(503, -1);
+                ex.close();
+            } else {
+                respond(ex, "{\"ok\":true}");
+            }
+        });
+        stub.createContext("/slow", ex -> {
+            slowStarted.countDown();
+            sleep(2000);
+            respond(ex, "{\"ok\":true}");
+        });
+        stub.createContext("/fast", ex -> {
+            fastCalls.incrementAndGet();
+            respond(ex, "{\"ok\":true}");
+        });
+        stub.start();
+        baseUrl = "http://127.0.0.1:" + stub.getAddress().getPort();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    private static OutboundHttp outboundHttp(String... properties) {
+        MockEnvironment env = new MockEnvironment();
+        for (int i = 0; i < properties.length; i += 2) {
+            env.setProperty("app.http.test." + properties[i], properties[i + 1]);
+        }
+        return new OutboundHttp(env);
+    }
+
+    private static void respond(HttpExchange ex, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("should Retry GET On 503 And Record Per Host Stats")
+    void should_RetryGetOn503AndRecordPerHostStats() {
+        OutboundHttp http = outboundHttp("max-retries", "2", "retry-backoff-ms", "1");
+
+        String body = http.client("test").getForObject(baseUrl + "/flaky", String.class);
+
+        assertThat(body).contains("ok");
+        assertThat(flakyCalls.get()).isEqualTo(3);
+        assertThat(http.stats()).singleElement().satisfies(s -> {
+            assertThat(s.host()).isEqualTo("127.0.0.1");
+            assertThat(s.requests()).isEqualTo(3);
+            assertThat(s.errors()).isEqualTo(2);
+            assertThat(s.retries()).isEqualTo(2);
+            assertThat(s.circuit()).isEqualTo("closed");
+        });
+    }
+
+    @Test
+    @DisplayName("should Not Retry YouTube Calls When Server Fails")
+    void should_NotRetryYouTubeCalls_When_ServerFails() {
+        OutboundHttp http = new OutboundHttp(new MockEnvironment());
+
+        // each search.list send is charged once against the daily quota
+        assertThatThrownBy(() -> http.client("youtube").getForObject(baseUrl + "/flaky", String.class))
+                .isInstanceOf(HttpServerErrorException.class);
+        assertThat(flakyCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Not Retry POST When Server Fails")
+    void should_NotRetryPost_When_ServerFails() {
+        OutboundHttp http = outboundHttp("max-retries", "2", "retry-backoff-ms", "1");
+
+        assertThatThrownBy(() -> http.client("test").postForObject(baseUrl + "/flaky", "{}", String.class))
+                .isInstanceOf(HttpServerErrorException.class);
+        assertThat(flakyCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Open Circuit After Timeouts And Close It After A Successful Trial")
+    void should_OpenCircuitAfterTimeoutsAndCloseItAfterASuccessfulTrial() {
+        OutboundHttp http = outboundHttp("read-timeout-ms", "500", "failure-threshold", "2", "open-ms", "300");
+        RestTemplate rest = http.client("test");
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> rest.getForObject(baseUrl + "/slow", String.class))
+                    .isInstanceOf(ResourceAccessException.class);
+        }
+        // refused without being sent
+        assertThatThrownBy(() -> rest.getForObject(baseUrl + "/fast", String.class))
+                .hasCauseInstanceOf(OutboundHttp.Rejected.class);
+        assertThat(fastCalls.get()).isZero();
+        assertThat(http.stats()).singleElement().satisfies(s -> {
+            assertThat(s.timeouts()).isEqualTo(2);
+            assertThat(s.rejected()).isEqualTo(1);
+            assertThat(s.circuit()).isEqualTo("open");
+        });
+
+        sleep(350);
+        assertThat(rest.getForObject(baseUrl + "/fast", String.class)).contains("ok");
+        assertThat(fastCalls.get()).isEqualTo(1);
+        assertThat(http.stats().get(0).circuit()).isEqualTo("closed");
+    }
+
+    @Test
+    @DisplayName("should Reject Calls Beyond The Bulkhead When Slots Stay Busy")
+    void should_RejectCallsBeyondTheBulkhead_When_SlotsStayBusy() throws Exception {
+        OutboundHttp http = outboundHttp("max-concurrent", "1", "acquire-timeout-ms", "50");
+        RestTemplate rest = http.client("test");
+
+        CompletableFuture<String> busy = CompletableFuture.supplyAsync(() -> rest.getForObject(baseUrl + "/slow", String.class));
+        assertThat(slowStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> rest.getForObject(baseUrl + "/fast", String.class))
+                .hasCauseInstanceOf(OutboundHttp.Rejected.class);
+        assertThat(busy.get(5, TimeUnit.SECONDS)).contains("ok");
+        assertThat(rest.getForObject(baseUrl + "/fast", String.class)).contains("ok");
+    }
+}
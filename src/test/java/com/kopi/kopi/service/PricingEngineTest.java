@@ -0,0 +1,93 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Product;
+import com.kopi.kopi.entity.enums.DiscountType;
+import com.kopi.kopi.repository.DiscountEventRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PricingEngine Tests")
+class PricingEngineTest {
+
+    @Mock
+    private DiscountEventRepository discountEventRepository;
+
+    @Test
+    @DisplayName("should Clamp Percent And Floor At Zero When Applying Discounts")
+    void should_ClampPercentAndFloorAtZero_When_ApplyingDiscounts() {
+        BigDecimal price = new BigDecimal("45000.00");
+        assertThat(PricingEngine.applyDiscount(price, DiscountType.PERCENT, new BigDecimal("20")))
+                .isEqualByComparingTo("36000");
+        assertThat(PricingEngine.applyDiscount(price, DiscountType.PERCENT, new BigDecimal("150")))
+                .isEqualByComparingTo("0");
+        assertThat(PricingEngine.applyDiscount(price, DiscountType.PERCENT, new BigDecimal("-5")))
+                .isEqualByComparingTo("45000");
+        assertThat(PricingEngine.applyDiscount(price, DiscountType.AMOUNT, new BigDecimal("50000")))
+                .isEqualByComparingTo("0");
+        assertThat(PricingEngine.applyDiscount(price, null, BigDecimal.TEN)).isSameAs(price);
+    }
+
+    @Test
+    @DisplayName("should Serve Prices From The Index Until Invalidated")
+    void should_ServePricesFromIndex_Until_Invalidated() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = List.<Object[]>of(
+                new Object[]{1, 10, DiscountType.PERCENT, new BigDecimal("10"), now.minusHours(1), now.plusHours(1)},
+                new Object[]{2, 11, DiscountType.AMOUNT, new BigDecimal("5000"), now.plusDays(1), now.plusDays(2)}
+        );
+        when(discountEventRepository.findActiveOrUpcomingProductWindows(any())).thenReturn(rows);
+        PricingEngine engine = new PricingEngine(discountEventRepository);
+
+        Product discounted = Product.builder().productId(1).price(new BigDecimal("30000")).build();
+        Product upcoming = Product.builder().productId(2).price(new BigDecimal("30000")).build();
+        Product plain = Product.builder().productId(3).price(new BigDecimal("30000")).build();
+
+        assertThat(engine.discountedBasePrice(discounted)).isEqualByComparingTo("27000");
+        assertThat(engine.discountedBasePrice(upcoming)).isEqualByComparingTo("30000");
+        assertThat(engine.discountedBasePrice(plain)).isEqualByComparingTo("30000");
+        assertThat(engine.findActive(1).eventId()).isEqualTo(10);
+        verify(discountEventRepository, times(1)).findActiveOrUpcomingProductWindows(any());
+
+        engine.invalidate();
+        engine.findActive(1);
+        verify(discountEventRepository, times(2)).findActiveOrUpcomingProductWindows(any());
+    }
+
+    @Test
+    @DisplayName("should Keep The Last Good Index And Back Off When A Reload Fails")
+    void should_KeepTheLastGoodIndexAndBackOff_When_AReloadFails() {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> rows = List.<Object[]>of(
+                new Object[]{1, 10, DiscountType.PERCENT, new BigDecimal("10"), now.minusHours(1), now.plusHours(1)});
+        when(discountEventRepository.findActiveOrUpcomingProductWindows(any()))
+                .thenReturn(rows)
+                .thenThrow(new IllegalStateException("database down"));
+        PricingEngine engine = new PricingEngine(discountEventRepository);
+        assertThat(engine.findActive(1).eventId()).isEqualTo(10);
+
+        // every lookup now wants a reload, but only the first one asks the database
+        ReflectionTestUtils.setField(engine, "maxAgeMs", -1L);
+        for (int i = 0; i < 5; i++) assertThat(engine.findActive(1).eventId()).isEqualTo(10);
+        verify(discountEventRepository, times(2)).findActiveOrUpcomingProductWindows(any());
+
+        // once the interval has passed the next lookup tries again
+        ReflectionTestUtils.setField(engine, "retryAtMs", 0L);
+        assertThat(engine.findActive(1).eventId()).isEqualTo(10);
+        verify(discountEventRepository, times(3)).findActiveOrUpcomingProductWindows(any());
+    }
+}
@@ -0,0 +1,78 @@
+package com.kopi.kopi.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ProductNameIndex Tests")
+class ProductNameIndexTest {
+
+    @Mock
+    private ProductService productService;
+
+    private ProductNameIndex index;
+
+    private void stubCatalog() {
+        List<Map<String, Object>> catalog = List.of(
+                Map.of("id", 1, "name", "Cà phê sữa đá"),
+                Map.of("id", 2, "name", "Cà phê Tiramisu"),
+                Map.of("id", 3, "name", "Trà đào cam sả"),
+                Map.of("id", 4, "name", "Bạc xỉu")
+        );
+        when(productService.list(isNull(), isNull(), isNull(), isNull(), anyInt(), any()))
+                .thenReturn(Map.of("data", catalog, "meta", Map.of()));
+        index = new ProductNameIndex(productService);
+    }
+
+    private static Object idOf(Map<String, Object> item) {
+        return item == null ? null : item.get("id");
+    }
+
+    @Test
+    @DisplayName("should Match Names Ignoring Accents And Typos")
+    void should_MatchNamesIgnoringAccentsAndTypos() {
+        stubCatalog();
+        assertThat(idOf(index.bestMatch("cho 1 ly ca phe sua da"))).isEqualTo(1);
+        assertThat(idOf(index.bestMatch("tiramisu"))).isEqualTo(2);
+        assertThat(idOf(index.bestMatch("tra dao"))).isEqualTo(3);
+        assertThat(idOf(index.bestMatch("bac xiuu"))).isEqualTo(4);
+        assertThat(index.bestMatch("pizza hải sản")).isNull();
+        assertThat(index.containing("CÀ PHÊ", 10)).extracting(m -> m.get("id")).containsExactly(1, 2);
+    }
+
+    @Test
+    @DisplayName("should Load Catalog Once Until Invalidated")
+    void should_LoadCatalogOnce_Until_Invalidated() {
+        stubCatalog();
+        index.bestMatch("bac xiu");
+        index.catalog(50);
+        index.containing("trà", 1);
+        verify(productService, times(1)).list(isNull(), isNull(), isNull(), isNull(), anyInt(), any());
+
+        index.invalidate();
+        index.bestMatch("bac xiu");
+        verify(productService, times(2)).list(isNull(), isNull(), isNull(), isNull(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should Stop Early When Distance Exceeds Bound")
+    void should_StopEarly_When_DistanceExceedsBound() {
+        assertThat(ProductNameIndex.levenshtein("kitten", "sitting", 10)).isEqualTo(3);
+        assertThat(ProductNameIndex.levenshtein("kitten", "sitting", 1)).isEqualTo(2);
+        assertThat(ProductNameIndex.levenshtein("a", "abcdef", 2)).isEqualTo(3);
+    }
+}
@@ -0,0 +1,200 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.dto.RevenuePoint;
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.entity.Payment;
+import com.kopi.kopi.entity.enums.PaymentMethod;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.service.impl.ReportServiceImpl;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rows are committed so recomputes run after commit on the rollup's own thread, as in production
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("RevenueRollup Tests")
+class RevenueRollupTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2026, 3, 2);
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate tx;
+    private RevenueRollup rollup;
+    private Integer cancelledLater;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        tx = new TransactionTemplate(transactionManager);
+        rollup = new RevenueRollup(jdbcTemplate, transactionManager);
+        rollup.start();
+        cancelledLater = tx.execute(s -> {
+            OrderEntity a = persistOrder("ORD-A");
+            OrderEntity b = persistOrder("ORD-B");
+            // two payments of one order in the same hour
+            persistPayment(a, "100", PaymentStatus.PAID, MONDAY.atTime(9, 15));
+            persistPayment(a, "50", PaymentStatus.PAID, MONDAY.atTime(9, 40));
+            Payment late = persistPayment(b, "30", PaymentStatus.PAID, MONDAY.atTime(14, 5));
+            persistPayment(b, "999", PaymentStatus.PENDING, null);
+            persistPayment(b, "70", PaymentStatus.CANCELLED, MONDAY.atTime(10, 0));
+            // Sunday closes the ISO week of MONDAY; the next Monday opens another
+            persistPayment(b, "20", PaymentStatus.PAID, MONDAY.plusDays(6).atTime(20, 0));
+            persistPayment(a, "40", PaymentStatus.PAID, MONDAY.plusDays(7).atTime(8, 30));
+            return late.getPaymentId();
+        });
+    }
+
+    private OrderEntity persistOrder(String code) {
+        LocalDateTime created = MONDAY.atTime(8, 0);
+        OrderEntity order = OrderEntity.builder().orderCode(code).status("COMPLETED")
+                .subtotalAmount(BigDecimal.TEN).shippingAmount(BigDecimal.ZERO).discountAmount(BigDecimal.ZERO)
+                .createdAt(created).updatedAt(created).build();
+        em.persist(order);
+        return order;
+    }
+
+    private Payment persistPayment(OrderEntity order, String amount, PaymentStatus status, LocalDateTime paidAt) {
+        Payment p = Payment.builder().order(order).amount(new BigDecimal(amount)).method(PaymentMethod.CASH)
+                .status(status).paidAt(paidAt).createdAt(MONDAY.atTime(8, 0)).build();
+        em.persist(p);
+        return p;
+    }
+
+    @AfterEach
+    void tearDown() {
+        rollup.stop();
+        jdbcTemplate.update("DELETE FROM dbo.revenue_hourly");
+        jdbcTemplate.update("DELETE FROM dbo.revenue_daily");
+        jdbcTemplate.update("DELETE FROM dbo.revenue_monthly");
+        jdbcTemplate.update("DELETE FROM dbo.payments");
+        jdbcTemplate.update("DELETE FROM dbo.orders");
+    }
+
+    @Test
+    @DisplayName("should Aggregate Only Paid Payments Into Hour And Day Buckets When Rebuilding")
+    void should_AggregateOnlyPaidPaymentsIntoHourAndDayBuckets_When_Rebuilding() {
+        assertThat(rollup.rebuild(MONDAY.minusDays(1), MONDAY.plusDays(8))).isEqualTo(3);
+
+        List<RevenueRollup.Bucket> days = rollup.daily(MONDAY.minusDays(1), MONDAY.plusDays(8));
+        assertThat(days).extracting(d -> d.start().toLocalDate())
+                .containsExactly(MONDAY, MONDAY.plusDays(6), MONDAY.plusDays(7));
+        assertThat(days.get(0).total()).isEqualByComparingTo("180");
+        assertThat(days.get(0).orders()).isEqualTo(2);
+        assertThat(days.get(0).payments()).isEqualTo(3);
+
+        List<RevenueRollup.Bucket> hours = rollup.hourly(MONDAY.atStartOfDay(), MONDAY.plusDays(1).atStartOfDay());
+        assertThat(hours).extracting(h -> h.start().getHour()).containsExactly(9, 14);
+        assertThat(hours.get(0).total()).isEqualByComparingTo("150");
+        assertThat(hours.get(0).orders()).isEqualTo(1);
+        assertThat(hours.get(0).payments()).isEqualTo(2);
+
+        // reports group the days into ISO weeks and months
+        ReportService reports = new ReportServiceImpl(rollup, jdbcTemplate);
+        List<RevenuePoint> weeks = reports.revenue(ReportService.Granularity.weekly, MONDAY.minusDays(1), MONDAY.plusDays(8), 10);
+        assertThat(weeks).extracting(RevenuePoint::getStartDate)
+                .containsExactly(MONDAY.toString(), MONDAY.plusDays(7).toString());
+        assertThat(weeks.get(0).getTotal_sum()).isEqualByComparingTo("200");
+        List<RevenuePoint> months = reports.revenue(ReportService.Granularity.monthly, MONDAY.minusDays(1), MONDAY.plusDays(8), 10);
+        assertThat(months).hasSize(1);
+        assertThat(months.get(0).getTotal_sum()).isEqualByComparingTo("240");
+    }
+
+    @Test
+    @DisplayName("should Serve Months Quarters And Years From Month Rows When Days Are Removed")
+    void should_ServeMonthsQuartersAndYearsFromMonthRows_When_DaysAreRemoved() {
+        rollup.rebuild(MONDAY, MONDAY.plusDays(7));
+
+        RevenueRollup.Bucket month = rollup.monthly(MONDAY, MONDAY).get(0);
+        assertThat(month.start().toLocalDate()).isEqualTo(MONDAY.withDayOfMonth(1));
+        assertThat(month.total()).isEqualByComparingTo("240");
+        // sum of each day's distinct orders, as for weeks
+        assertThat(month.orders()).isEqualTo(4);
+        assertThat(month.payments()).isEqualTo(5);
+
+        // month, quarter and year reports no longer read the daily rows
+        jdbcTemplate.update("DELETE FROM dbo.revenue_daily");
+        ReportService reports = new ReportServiceImpl(rollup, jdbcTemplate);
+        for (ReportService.Granularity g : List.of(ReportService.Granularity.monthly,
+                ReportService.Granularity.quarterly, ReportService.Granularity.yearly)) {
+            assertThat(reports.revenue(g, MONDAY.withDayOfYear(1), MONDAY.plusMonths(1), 10))
+                    .singleElement().satisfies(p -> assertThat(p.getTotal_sum()).isEqualByComparingTo("240"));
+        }
+    }
+
+    @Test
+    @DisplayName("should Sum Only The Requested Days Of Edge Months When The Range Starts And Ends Mid Month")
+    void should_SumOnlyTheRequestedDaysOfEdgeMonths_When_TheRangeStartsAndEndsMidMonth() {
+        tx.executeWithoutResult(s -> {
+            OrderEntity c = persistOrder("ORD-C");
+            persistPayment(c, "70", PaymentStatus.PAID, MONDAY.plusMonths(1).withDayOfMonth(20).atTime(10, 0));
+            persistPayment(c, "15", PaymentStatus.PAID, MONDAY.plusMonths(2).withDayOfMonth(5).atTime(10, 0));
+            persistPayment(c, "5", PaymentStatus.PAID, MONDAY.plusMonths(2).withDayOfMonth(20).atTime(10, 0));
+        });
+        rollup.rebuild(MONDAY.withDayOfMonth(1), MONDAY.plusMonths(2).withDayOfMonth(31));
+        ReportService reports = new ReportServiceImpl(rollup, jdbcTemplate);
+        // March 3 .. May 10: March without the 2nd, all of April, May up to the 10th
+        LocalDate from = MONDAY.plusDays(1);
+        LocalDate to = MONDAY.plusMonths(2).withDayOfMonth(10);
+
+        List<RevenuePoint> months = reports.revenue(ReportService.Granularity.monthly, from, to, 10);
+        assertThat(months).extracting(RevenuePoint::getTotal_sum)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("60"), new BigDecimal("70"), new BigDecimal("15"));
+        assertThat(months).extracting(RevenuePoint::getStartDate)
+                .containsExactly("2026-03-01", "2026-04-01", "2026-05-01");
+
+        List<RevenuePoint> quarters = reports.revenue(ReportService.Granularity.quarterly, from, to, 10);
+        assertThat(quarters).extracting(RevenuePoint::getTotal_sum)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("60"), new BigDecimal("85"));
+        assertThat(rollup.months(from, MONDAY.plusDays(6))).singleElement()
+                .satisfies(m -> assertThat(m.total()).isEqualByComparingTo("20"));
+    }
+
+    @Test
+    @DisplayName("should Drop Revenue Only After Commit When A Paid Payment Stops Being Paid")
+    void should_DropRevenueOnlyAfterCommit_When_APaidPaymentStopsBeingPaid() {
+        rollup.rebuild(MONDAY, MONDAY);
+
+        tx.executeWithoutResult(s -> {
+            jdbcTemplate.update("UPDATE dbo.payments SET status = 'cancelled' WHERE payment_id = ?", cancelledLater);
+            rollup.touch(MONDAY.atTime(14, 5));
+            rollup.flush();
+            // the caller's transaction has not committed yet
+            assertThat(rollup.daily(MONDAY, MONDAY).get(0).total()).isEqualByComparingTo("180");
+        });
+        rollup.flush();
+
+        RevenueRollup.Bucket day = rollup.daily(MONDAY, MONDAY).get(0);
+        assertThat(day.total()).isEqualByComparingTo("150");
+        assertThat(day.orders()).isEqualTo(1);
+        assertThat(rollup.hourly(MONDAY.atStartOfDay(), MONDAY.plusDays(1).atStartOfDay()))
+                .extracting(h -> h.start().getHour()).containsExactly(9);
+        assertThat(rollup.monthly(MONDAY, MONDAY).get(0).total()).isEqualByComparingTo("150");
+    }
+}
@@ -0,0 +1,150 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.EmployeeShift;
+import com.kopi.kopi.entity.Shift;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rows are committed so the index's own read transactions can see them
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("RosterIndex Tests")
+class RosterIndexTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private EmployeeShiftRepository employeeShiftRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate tx;
+    private RosterIndex roster;
+    private Shift shift;
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        tx = new TransactionTemplate(transactionManager);
+        roster = new RosterIndex(employeeShiftRepository, jdbcTemplate, transactionManager);
+        shift = tx.execute(status -> {
+            Shift s = Shift.builder().shiftName("Day").startTime(LocalTime.of(8, 0)).endTime(LocalTime.of(12, 0))
+                    .isActive(true).createdAt(LocalDateTime.now()).build();
+            em.persist(s);
+            return s;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM dbo.employee_shifts");
+        jdbcTemplate.update("DELETE FROM dbo.shift");
+    }
+
+    private Integer seed(LocalDate date, String status, LocalDateTime checkIn) {
+        return tx.execute(s -> {
+            EmployeeShift es = EmployeeShift.builder().shift(em.merge(shift)).shiftDate(date).status(status)
+                    .actualCheckIn(checkIn).createdAt(LocalDateTime.now()).build();
+            em.persist(es);
+            return es.getEmployeeShiftId();
+        });
+    }
+
+    private String statusInDb(Integer id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM dbo.employee_shifts WHERE employee_shift_id = ?",
+                String.class, id);
+    }
+
+    @Test
+    @DisplayName("should Serve Roster From Memory Without Writes When Reading")
+    void should_ServeRosterFromMemoryWithoutWrites_When_Reading() {
+        Integer past = seed(today.minusDays(2), "assigned", null);
+        seed(today.plusDays(3), "assigned", null);
+
+        assertThat(roster.range(today.minusDays(7), today.plusDays(7), null)).hasSize(2);
+        // reading never marks MISSED
+        assertThat(statusInDb(past)).isEqualTo("assigned");
+
+        // a write that did not go through touch() is invisible: the read is served from memory
+        seed(today.plusDays(3), "assigned", null);
+        assertThat(roster.range(today.plusDays(3), today.plusDays(3), null)).hasSize(1);
+
+        roster.touch(today.plusDays(3));
+        assertThat(roster.range(today.plusDays(3), today.plusDays(3), shift.getShiftId())).hasSize(2);
+        assertThat(roster.range(today.plusDays(3), today.plusDays(3), shift.getShiftId() + 1)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should Mark Only Ended Unattended Shifts As Missed When Sweeping")
+    void should_MarkOnlyEndedUnattendedShiftsAsMissed_When_Sweeping() {
+        Integer missed = seed(today.minusDays(1), "assigned", null);
+        Integer cancelled = seed(today.minusDays(1), "CANCELLED", null);
+        Integer attended = seed(today.minusDays(1), "assigned", LocalDateTime.now().minusDays(1));
+        Integer upcoming = seed(today.plusDays(1), "assigned", null);
+
+        assertThat(roster.sweep()).isEqualTo(1);
+        assertThat(roster.sweep()).isZero();
+
+        assertThat(statusInDb(missed)).isEqualTo("MISSED");
+        assertThat(statusInDb(cancelled)).isEqualTo("CANCELLED");
+        assertThat(statusInDb(attended)).isEqualTo("assigned");
+        assertThat(statusInDb(upcoming)).isEqualTo("assigned");
+        assertThat(roster.range(today.minusDays(1), today.minusDays(1), null))
+                .filteredOn(e -> e.employeeShiftId().equals(missed))
+                .singleElement().extracting(RosterIndex.Entry::status).isEqualTo("MISSED");
+    }
+
+    @Test
+    @DisplayName("should Sweep Days Before The Window In The Database When Sweeping")
+    void should_SweepDaysBeforeTheWindowInTheDatabase_When_Sweeping() {
+        Integer old = seed(today.minusDays(60), "assigned", null);
+        Integer oldCompleted = seed(today.minusDays(60), "COMPLETED", null);
+
+        assertThat(roster.sweep()).isEqualTo(1);
+        assertThat(statusInDb(old)).isEqualTo("MISSED");
+        assertThat(statusInDb(oldCompleted)).isEqualTo("COMPLETED");
+
+        // a later write to an old day is swept on the next run
+        Integer late = seed(today.minusDays(50), "assigned", null);
+        assertThat(roster.sweep()).isZero();
+        roster.touch(today.minusDays(50));
+        assertThat(roster.sweep()).isEqualTo(1);
+        assertThat(statusInDb(late)).isEqualTo("MISSED");
+    }
+
+    @Test
+    @DisplayName("should Leave A Row Alone When Its Status Changed After The Snapshot")
+    void should_LeaveARowAlone_When_ItsStatusChangedAfterTheSnapshot() {
+        Integer id = seed(today.minusDays(1), "assigned", null);
+        assertThat(roster.range(today.minusDays(1), today.minusDays(1), null)).hasSize(1);
+
+        // cancelled without touch(): the cached entry still says assigned
+        jdbcTemplate.update("UPDATE dbo.employee_shifts SET status = 'CANCELLED' WHERE employee_shift_id = ?", id);
+
+        assertThat(roster.sweep()).isZero();
+        assertThat(statusInDb(id)).isEqualTo("CANCELLED");
+        assertThat(roster.range(today.minusDays(1), today.minusDays(1), null))
+                .singleElement().extracting(RosterIndex.Entry::status).isEqualTo("CANCELLED");
+    }
+}
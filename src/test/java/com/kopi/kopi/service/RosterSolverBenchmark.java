@@ -0,0 +1,39 @@
+package com.kopi.kopi.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solve time for the month in {@link RosterSolverTest#month}: 30 days, 4 shifts, 50 staff.
+ * Run {@link #main} from the IDE or with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.kopi.kopi.service.RosterSolverBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RosterSolverBenchmark {
+
+    private RosterSolver.Problem month;
+
+    @Setup
+    public void setUp() {
+        month = RosterSolverTest.month(LocalDate.of(2026, 11, 2));
+    }
+
+    @Benchmark
+    public RosterSolver.Solution solveMonthFor50Staff() {
+        return RosterSolver.solve(month);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RosterSolverBenchmark.class.getSimpleName()).build()).run();
+    }
+}
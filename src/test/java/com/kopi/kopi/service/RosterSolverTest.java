@@ -0,0 +1,129 @@
+package com.kopi.kopi.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("RosterSolver Tests")
+class RosterSolverTest {
+
+    private final LocalDate monday = LocalDate.of(2026, 11, 2);
+
+    static List<LocalDate> days(LocalDate from, int n) {
+        List<LocalDate> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) out.add(from.plusDays(i));
+        return out;
+    }
+
+    /** A cafe month: 4 shifts (two overlapping), 50 staff over 3 positions. */
+    static RosterSolver.Problem month(LocalDate from) {
+        List<RosterSolver.ShiftSpec> shifts = List.of(
+                new RosterSolver.ShiftSpec(1, LocalTime.of(6, 0), LocalTime.of(11, 0)),
+                new RosterSolver.ShiftSpec(2, LocalTime.of(10, 0), LocalTime.of(15, 0)),
+                new RosterSolver.ShiftSpec(3, LocalTime.of(15, 0), LocalTime.of(19, 0)),
+                new RosterSolver.ShiftSpec(4, LocalTime.of(19, 0), LocalTime.of(23, 0)));
+        List<RosterSolver.Staff> staff = new ArrayList<>();
+        for (int i = 0; i < 50; i++) staff.add(new RosterSolver.Staff(100 + i, i < 25 ? 1 : i < 40 ? 2 : 3));
+        List<RosterSolver.Demand> demands = new ArrayList<>();
+        for (int s = 1; s <= 4; s++) {
+            demands.add(new RosterSolver.Demand(s, 1, 3));
+            demands.add(new RosterSolver.Demand(s, 2, 2));
+            demands.add(new RosterSolver.Demand(s, 3, 1));
+        }
+        return new RosterSolver.Problem(days(from, 30), shifts, staff, demands, List.of(), 2, 6);
+    }
+
+    @Test
+    @DisplayName("should Fill A Month For 50 Staff Within Caps When Solving")
+    void should_FillAMonthFor50StaffWithinCaps_When_Solving() {
+        RosterSolver.solve(month(monday)); // warm up
+        long t0 = System.nanoTime();
+        RosterSolver.Solution solution = RosterSolver.solve(month(monday));
+        long elapsedMs = (System.nanoTime() - t0) / 1_000_000;
+
+        assertThat(solution.gaps()).isEmpty();
+        assertThat(solution.assignments()).hasSize(30 * 4 * 6);
+        assertThat(elapsedMs).isLessThan(1000);
+
+        Map<String, List<Integer>> perDay = new HashMap<>();
+        Map<String, Integer> perWeek = new HashMap<>();
+        for (RosterSolver.Assignment a : solution.assignments()) {
+            perDay.computeIfAbsent(a.userId() + "@" + a.date(), k -> new ArrayList<>()).add(a.shiftId());
+            perWeek.merge(a.userId() + "#" + a.date().get(java.time.temporal.IsoFields.WEEK_OF_WEEK_BASED_YEAR), 1, Integer::sum);
+            assertThat(a.positionId()).isEqualTo(a.userId() < 125 ? 1 : a.userId() < 140 ? 2 : 3);
+        }
+        assertThat(perDay.values()).allSatisfy(shifts -> {
+            assertThat(shifts).hasSizeLessThanOrEqualTo(2);
+            // shifts 1 and 2 overlap
+            assertThat(shifts.contains(1) && shifts.contains(2)).isFalse();
+        });
+        assertThat(perWeek.values()).allSatisfy(n -> assertThat(n).isLessThanOrEqualTo(6));
+    }
+
+    @Test
+    @DisplayName("should Count Existing Assignments And Report Gaps When Staff Is Short")
+    void should_CountExistingAssignmentsAndReportGaps_When_StaffIsShort() {
+        List<RosterSolver.ShiftSpec> shifts = List.of(new RosterSolver.ShiftSpec(1, LocalTime.of(8, 0), LocalTime.of(12, 0)));
+        List<RosterSolver.Staff> staff = List.of(new RosterSolver.Staff(1, 10), new RosterSolver.Staff(2, 10));
+        List<RosterSolver.Demand> demands = List.of(new RosterSolver.Demand(1, 10, 3));
+        List<RosterSolver.Existing> existing = List.of(
+                new RosterSolver.Existing(monday, 1, 1),
+                new RosterSolver.Existing(monday, 1, null));
+
+        RosterSolver.Solution solution = RosterSolver.solve(
+                new RosterSolver.Problem(days(monday, 2), shifts, staff, demands, existing, 1, 6));
+
+        // day 1: user 1 already works it, only user 2 is added; day 2: both
+        assertThat(solution.assignments()).extracting(RosterSolver.Assignment::userId).containsExactly(2, 1, 2);
+        assertThat(solution.gaps()).containsExactly(
+                new RosterSolver.Gap(monday, 1, 10, 1),
+                new RosterSolver.Gap(monday.plusDays(1), 1, 10, 1));
+    }
+
+    @Test
+    @DisplayName("should Count Seats Held By Users Outside The Staff List When Filling")
+    void should_CountSeatsHeldByUsersOutsideTheStaffList_When_Filling() {
+        List<RosterSolver.ShiftSpec> shifts = List.of(new RosterSolver.ShiftSpec(1, LocalTime.of(8, 0), LocalTime.of(12, 0)));
+        List<RosterSolver.Staff> staff = List.of(new RosterSolver.Staff(1, 10), new RosterSolver.Staff(2, 10),
+                new RosterSolver.Staff(3, 20));
+        List<RosterSolver.Demand> demands = List.of(new RosterSolver.Demand(1, 10, 2), new RosterSolver.Demand(1, 20, 1));
+        // 90 is a deactivated barista, 99 an admin with no position
+        List<RosterSolver.Existing> existing = List.of(
+                new RosterSolver.Existing(monday, 1, 90, 10),
+                new RosterSolver.Existing(monday, 1, 99, null));
+
+        RosterSolver.Solution solution = RosterSolver.solve(
+                new RosterSolver.Problem(days(monday, 1), shifts, staff, demands, existing, 1, 6));
+
+        // the admin takes the scarcer position's seat, the barista one of the two baristas' seats
+        assertThat(solution.gaps()).isEmpty();
+        assertThat(solution.assignments()).extracting(RosterSolver.Assignment::positionId).containsExactly(10);
+    }
+
+    @Test
+    @DisplayName("should Move An Assignment To Free A Blocked Employee When Repairing")
+    void should_MoveAnAssignmentToFreeABlockedEmployee_When_Repairing() {
+        // X and Y overlap; user 2 already works Q, which overlaps Y only.
+        // Greedy gives X to the less loaded user 1, leaving nobody for Y until X is moved to user 2.
+        List<RosterSolver.ShiftSpec> shifts = List.of(
+                new RosterSolver.ShiftSpec(1, LocalTime.of(8, 0), LocalTime.of(12, 0)),
+                new RosterSolver.ShiftSpec(2, LocalTime.of(11, 0), LocalTime.of(15, 0)),
+                new RosterSolver.ShiftSpec(3, LocalTime.of(14, 0), LocalTime.of(16, 0)));
+        List<RosterSolver.Staff> staff = List.of(new RosterSolver.Staff(1, 10), new RosterSolver.Staff(2, 10));
+        List<RosterSolver.Demand> demands = List.of(new RosterSolver.Demand(1, 10, 1), new RosterSolver.Demand(2, 10, 1));
+        List<RosterSolver.Existing> existing = List.of(new RosterSolver.Existing(monday, 3, 2));
+
+        RosterSolver.Solution solution = RosterSolver.solve(
+                new RosterSolver.Problem(days(monday, 1), shifts, staff, demands, existing, 2, 6));
+
+        assertThat(solution.gaps()).isEmpty();
+        assertThat(solution.repaired()).isEqualTo(1);
+        assertThat(solution.assignments()).extracting(RosterSolver.Assignment::shiftId, RosterSolver.Assignment::userId)
+                .containsExactly(org.assertj.core.groups.Tuple.tuple(1, 2), org.assertj.core.groups.Tuple.tuple(2, 1));
+    }
+}
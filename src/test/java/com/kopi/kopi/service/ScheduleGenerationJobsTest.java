@@ -0,0 +1,153 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.EmployeeShift;
+import com.kopi.kopi.entity.Shift;
+import com.kopi.kopi.entity.WorkSchedule;
+import com.kopi.kopi.entity.WorkScheduleGeneration;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import com.kopi.kopi.repository.WorkScheduleGenerationRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Each week commits on the job's own thread, so the test runs without the test-managed transaction
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false",
+        "app.roster.sweeper.enabled=false"
+})
+@Import({ShiftGenerationEngine.class, ScheduleGenerationJobs.class, RosterIndex.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("ScheduleGenerationJobs Tests")
+class ScheduleGenerationJobsTest {
+
+    @Autowired private ScheduleGenerationJobs jobs;
+    @Autowired private EntityManager em;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private EmployeeShiftRepository employeeShiftRepository;
+    @Autowired private WorkScheduleGenerationRepository generationRepository;
+
+    // a Monday, so weeks line up with the chunks
+    private final LocalDate anchor = LocalDate.now().plusWeeks(1).with(java.time.DayOfWeek.MONDAY);
+
+    @BeforeEach
+    void setUp() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            Shift shift = Shift.builder().shiftName("Evening").startTime(LocalTime.of(17, 0))
+                    .endTime(LocalTime.of(22, 0)).isActive(true).createdAt(LocalDateTime.now()).build();
+            em.persist(shift);
+            WorkSchedule ws = WorkSchedule.builder().name("Anchor").startDate(anchor).endDate(anchor)
+                    .createdAt(LocalDateTime.now()).build();
+            em.persist(ws);
+            for (int i = 0; i < 3; i++) {
+                em.persist(EmployeeShift.builder().workSchedule(ws).shift(shift).shiftDate(anchor)
+                        .status("assigned").createdAt(LocalDateTime.now()).build());
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("ALTER TABLE dbo.employee_shifts DROP CONSTRAINT IF EXISTS ck_test_blocked_date");
+        jdbcTemplate.update("DELETE FROM dbo.employee_shifts");
+        jdbcTemplate.update("DELETE FROM dbo.work_schedules");
+        jdbcTemplate.update("DELETE FROM dbo.shift");
+        jdbcTemplate.update("DELETE FROM dbo.work_schedule_generations");
+    }
+
+    private ScheduleGenerationJobs.Ticket submit(LocalDate start, LocalDate end) {
+        ShiftGenerationEngine.Spec spec = new ShiftGenerationEngine.Spec("Quarter", null, anchor, start, end, null,
+                false, null);
+        List<LocalDate> candidates = ShiftGenerationEngine.candidates("DAILY", anchor, start, end, 1, null);
+        return jobs.submit(spec, "DAILY", 1, candidates);
+    }
+
+    @Test
+    @DisplayName("should Return Job Id And Persist Progress When Generation Runs In Background")
+    void should_ReturnJobIdAndPersistProgress_When_GenerationRunsInBackground() throws Exception {
+        LocalDate start = anchor.plusDays(1);
+        LocalDate end = anchor.plusWeeks(13).minusDays(1);
+
+        ScheduleGenerationJobs.Ticket ticket = submit(start, end);
+        assertThat(ticket.generationId()).isNotNull();
+        WorkScheduleGeneration finished = ticket.done().get(30, TimeUnit.SECONDS);
+
+        WorkScheduleGeneration row = generationRepository.findById(ticket.generationId()).orElseThrow();
+        assertThat(row.getStatus()).isEqualTo(ScheduleGenerationJobs.COMPLETED);
+        assertThat(row.getTotalDates()).isEqualTo(90);
+        assertThat(row.getProcessedDates()).isEqualTo(90);
+        assertThat(row.getCreatedCount()).isEqualTo(90 * 3 + 1);
+        assertThat(row.getWorkScheduleId()).isEqualTo(finished.getWorkScheduleId()).isNotNull();
+        assertThat(row.getFinishedAt()).isNotNull();
+        assertThat(employeeShiftRepository.findByShiftDateBetween(start, end)).hasSize(90 * 3);
+    }
+
+    @Test
+    @DisplayName("should Keep Earlier Weeks And Roll Back Failing Week When Chunk Fails")
+    void should_KeepEarlierWeeksAndRollBackFailingWeek_When_ChunkFails() throws Exception {
+        LocalDate start = anchor.plusWeeks(1);
+        LocalDate end = anchor.plusWeeks(4).minusDays(1);
+        LocalDate blocked = anchor.plusWeeks(2).plusDays(3);
+        jdbcTemplate.execute("ALTER TABLE dbo.employee_shifts ADD CONSTRAINT ck_test_blocked_date CHECK (shift_date <> DATE '"
+                + blocked + "')");
+
+        ScheduleGenerationJobs.Ticket ticket = submit(start, end);
+        ticket.done().get(30, TimeUnit.SECONDS);
+
+        WorkScheduleGeneration row = generationRepository.findById(ticket.generationId()).orElseThrow();
+        assertThat(row.getStatus()).isEqualTo(ScheduleGenerationJobs.FAILED);
+        assertThat(row.getErrorMessage()).isNotBlank();
+        assertThat(row.getProcessedDates()).isEqualTo(7);
+        // week 1 committed, the blocked week rolled back entirely, week 3 never ran
+        assertThat(employeeShiftRepository.findByShiftDateBetween(start, start.plusDays(6))).hasSize(7 * 3);
+        assertThat(employeeShiftRepository.findByShiftDateBetween(start.plusDays(7), end)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should Fail Jobs Left Unfinished By A Previous Process When Application Starts")
+    void should_FailJobsLeftUnfinishedByAPreviousProcess_When_ApplicationStarts() {
+        LocalDateTime beforeRestart = LocalDateTime.now().minusHours(1);
+        Integer running = saveJob(ScheduleGenerationJobs.RUNNING, beforeRestart);
+        Integer queued = saveJob(ScheduleGenerationJobs.QUEUED, beforeRestart);
+        Integer done = saveJob(ScheduleGenerationJobs.COMPLETED, beforeRestart);
+        // accepted by this process after it started
+        Integer current = saveJob(ScheduleGenerationJobs.QUEUED, LocalDateTime.now().plusSeconds(1));
+
+        assertThat(jobs.failOrphans()).isEqualTo(2);
+
+        for (Integer id : List.of(running, queued)) {
+            WorkScheduleGeneration row = generationRepository.findById(id).orElseThrow();
+            assertThat(row.getStatus()).isEqualTo(ScheduleGenerationJobs.FAILED);
+            assertThat(row.getErrorMessage()).contains("restart");
+            assertThat(row.getFinishedAt()).isNotNull();
+        }
+        assertThat(generationRepository.findById(done).orElseThrow().getStatus()).isEqualTo(ScheduleGenerationJobs.COMPLETED);
+        assertThat(generationRepository.findById(current).orElseThrow().getStatus()).isEqualTo(ScheduleGenerationJobs.QUEUED);
+    }
+
+    private Integer saveJob(String status, LocalDateTime updatedAt) {
+        return generationRepository.save(WorkScheduleGeneration.builder().name("Quarter").anchorDate(anchor)
+                .startDate(anchor).endDate(anchor).type("DAILY").intervalDays(1).status(status)
+                .totalDates(1).processedDates(0).createdCount(0).updatedCount(0).skippedCount(0)
+                .createdAt(updatedAt).updatedAt(updatedAt).build()).getGenerationId();
+    }
+}
@@ -0,0 +1,133 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.*;
+import com.kopi.kopi.entity.enums.UserStatus;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import com.kopi.kopi.repository.PositionShiftRuleRepository;
+import com.kopi.kopi.repository.ShiftRepository;
+import com.kopi.kopi.repository.UserRepository;
+import com.kopi.kopi.repository.WorkScheduleRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Rows are committed so the roster index's own read transactions can see them
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("ShiftAutoAssigner Tests")
+class ShiftAutoAssignerTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private EmployeeShiftRepository employeeShiftRepository;
+    @Autowired private ShiftRepository shiftRepository;
+    @Autowired private PositionShiftRuleRepository ruleRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private WorkScheduleRepository workScheduleRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private ShiftAutoAssigner assigner;
+    private Integer workScheduleId;
+    private final LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        RosterIndex roster = new RosterIndex(employeeShiftRepository, jdbcTemplate, transactionManager);
+        assigner = new ShiftAutoAssigner(shiftRepository, ruleRepository, userRepository, workScheduleRepository,
+                jdbcTemplate, roster);
+        workScheduleId = tx.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            Role staffRole = Role.builder().name("STAFF").build();
+            em.persist(staffRole);
+            Position barista = Position.builder().positionName("Barista").isActive(true).createdAt(now).build();
+            em.persist(barista);
+            Shift day = Shift.builder().shiftName("Day").startTime(LocalTime.of(8, 0)).endTime(LocalTime.of(12, 0))
+                    .isActive(true).createdAt(now).build();
+            em.persist(day);
+            em.persist(PositionShiftRule.builder().position(barista).shift(day).isAllowed(true).requiredCount(2).build());
+            for (int i = 0; i < 4; i++) {
+                em.persist(User.builder().username("staff" + i).email("staff" + i + "@kopi.test").passwordHash("x")
+                        .fullName("Staff " + i).role(staffRole).position(barista)
+                        .status(i == 3 ? UserStatus.BANNED : UserStatus.ACTIVE)
+                        .createdAt(now).updatedAt(now).build());
+            }
+            WorkSchedule ws = WorkSchedule.builder().name("Week").startDate(tomorrow).endDate(tomorrow.plusDays(6))
+                    .createdAt(now).build();
+            em.persist(ws);
+            // one open seat created by the admin beforehand
+            em.persist(EmployeeShift.builder().workSchedule(ws).shift(day).shiftDate(tomorrow).status("assigned")
+                    .createdAt(now).build());
+            return ws.getWorkScheduleId();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM dbo.employee_shifts");
+        jdbcTemplate.update("DELETE FROM dbo.position_shift_rules");
+        jdbcTemplate.update("DELETE FROM dbo.users");
+        jdbcTemplate.update("DELETE FROM dbo.roles");
+        jdbcTemplate.update("DELETE FROM dbo.positions");
+        jdbcTemplate.update("DELETE FROM dbo.shift");
+        jdbcTemplate.update("DELETE FROM dbo.work_schedules");
+    }
+
+    @Test
+    @DisplayName("should Fill Open Slot Then Insert When Assigning")
+    void should_FillOpenSlotThenInsert_When_Assigning() {
+        ShiftAutoAssigner.Result result = assigner.autoAssign(tomorrow, tomorrow.plusDays(1), false, null);
+
+        // two seats per day; the banned user is never picked
+        assertThat(result.solution().gaps()).isEmpty();
+        assertThat(result.filledOpenSlots()).isEqualTo(1);
+        assertThat(result.created()).isEqualTo(3);
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT e.employee_id, e.work_schedule_id, e.override_start_time, u.status FROM dbo.employee_shifts e "
+                        + "JOIN dbo.users u ON u.user_id = e.employee_id ORDER BY e.shift_date");
+        assertThat(rows).hasSize(4).allSatisfy(r -> {
+            assertThat(((Number) r.get("WORK_SCHEDULE_ID")).intValue()).isEqualTo(workScheduleId);
+            assertThat(r.get("OVERRIDE_START_TIME").toString()).startsWith("08:00");
+            assertThat(r.get("STATUS")).isNotEqualTo("BANNED");
+        });
+
+        // running again finds every seat taken
+        ShiftAutoAssigner.Result again = assigner.autoAssign(tomorrow, tomorrow.plusDays(1), false, null);
+        assertThat(again.solution().assignments()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should Write Nothing When Previewing")
+    void should_WriteNothing_When_Previewing() {
+        ShiftAutoAssigner.Result result = assigner.autoAssign(tomorrow, tomorrow, true, null);
+
+        assertThat(result.preview()).isTrue();
+        assertThat(result.solution().assignments()).hasSize(2);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM dbo.employee_shifts WHERE employee_id IS NOT NULL", Integer.class)).isZero();
+    }
+}
@@ -0,0 +1,137 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.EmployeeShift;
+import com.kopi.kopi.entity.Shift;
+import com.kopi.kopi.entity.WorkSchedule;
+import com.kopi.kopi.repository.EmployeeShiftRepository;
+import com.kopi.kopi.repository.RecurrencePatternRepository;
+import com.kopi.kopi.repository.UserRepository;
+import com.kopi.kopi.repository.WorkScheduleRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("ShiftGenerationEngine Tests")
+class ShiftGenerationEngineTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private EmployeeShiftRepository employeeShiftRepository;
+    @Autowired private WorkScheduleRepository workScheduleRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private RecurrencePatternRepository recurrencePatternRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private ShiftGenerationEngine engine;
+    private Shift morning;
+    private final LocalDate anchor = LocalDate.now().plusDays(1);
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        engine = new ShiftGenerationEngine(employeeShiftRepository, workScheduleRepository, userRepository,
+                recurrencePatternRepository, jdbcTemplate,
+                new RosterIndex(employeeShiftRepository, jdbcTemplate, transactionManager));
+        ReflectionTestUtils.setField(engine, "batchSize", 500);
+        morning = Shift.builder().shiftName("Morning").startTime(LocalTime.of(7, 0)).endTime(LocalTime.of(11, 0))
+                .isActive(true).createdAt(LocalDateTime.now()).build();
+        em.persist(morning);
+    }
+
+    private WorkSchedule seedSchedule(LocalDate date, int shifts) {
+        WorkSchedule ws = WorkSchedule.builder().name("Seed " + date).startDate(date).endDate(date)
+                .createdAt(LocalDateTime.now()).build();
+        em.persist(ws);
+        for (int i = 0; i < shifts; i++) {
+            em.persist(EmployeeShift.builder().workSchedule(ws).shift(morning).shiftDate(date).status("assigned")
+                    .notes("slot " + i).createdAt(LocalDateTime.now()).build());
+        }
+        em.flush();
+        return ws;
+    }
+
+    private ShiftGenerationEngine.Spec spec(LocalDate start, LocalDate end, boolean overwrite) {
+        return new ShiftGenerationEngine.Spec("Year", null, anchor, start, end, null, overwrite, null);
+    }
+
+    @Test
+    @DisplayName("should Generate A Year Of Shifts In Batches When Range Is Free")
+    void should_GenerateAYearOfShiftsInBatches_When_RangeIsFree() {
+        seedSchedule(anchor, 30);
+        LocalDate start = anchor.plusDays(1);
+        LocalDate end = start.plusDays(364);
+        List<LocalDate> candidates = ShiftGenerationEngine.candidates("DAILY", anchor, start, end, 1, null);
+        List<Integer> progress = new ArrayList<>();
+
+        long t0 = System.currentTimeMillis();
+        ShiftGenerationEngine.Result result = engine.generate(spec(start, end, false), candidates,
+                (done, total, rows) -> progress.add(rows));
+        long elapsed = System.currentTimeMillis() - t0;
+
+        assertThat(result.changed()).isTrue();
+        assertThat(result.created()).isEqualTo(365 * 30 + 1);
+        assertThat(result.conflicts()).isEmpty();
+        assertThat(employeeShiftRepository.findByShiftDateBetween(start, end)).hasSize(365 * 30);
+        assertThat(employeeShiftRepository.findByShiftDate(end)).allSatisfy(es -> {
+            assertThat(es.getOverrideStartTime()).isEqualTo(LocalTime.of(7, 0));
+            assertThat(es.getWorkSchedule().getWorkScheduleId()).isEqualTo(result.workScheduleId());
+        });
+        assertThat(progress).hasSizeGreaterThan(20).last().isEqualTo(365 * 30);
+        assertThat(elapsed).isLessThan(10_000);
+    }
+
+    @Test
+    @DisplayName("should Skip And Report Busy Dates When Not Overwriting")
+    void should_SkipAndReportBusyDates_When_NotOverwriting() {
+        seedSchedule(anchor, 2);
+        LocalDate busy = anchor.plusDays(3);
+        seedSchedule(busy, 1);
+        List<LocalDate> candidates = ShiftGenerationEngine.candidates("DAILY", anchor, anchor.plusDays(1),
+                anchor.plusDays(5), 1, null);
+
+        ShiftGenerationEngine.Result result = engine.generate(spec(anchor.plusDays(1), anchor.plusDays(5), false),
+                candidates, null);
+
+        assertThat(result.conflicts()).containsExactly(busy.toString());
+        assertThat(result.skipped()).isEqualTo(1);
+        assertThat(result.created()).isEqualTo(4 * 2 + 1);
+        assertThat(employeeShiftRepository.findByShiftDate(busy)).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("should Replace Busy Dates And Drop Emptied Schedule When Overwriting")
+    void should_ReplaceBusyDatesAndDropEmptiedSchedule_When_Overwriting() {
+        seedSchedule(anchor, 2);
+        LocalDate busy = anchor.plusDays(2);
+        WorkSchedule old = seedSchedule(busy, 3);
+        List<LocalDate> candidates = List.of(busy);
+
+        ShiftGenerationEngine.Result result = engine.generate(spec(busy, busy, true), candidates, null);
+        em.clear();
+
+        assertThat(result.updated()).isEqualTo(3);
+        assertThat(result.conflicts()).containsExactly(busy.toString());
+        assertThat(employeeShiftRepository.findByShiftDate(busy)).hasSize(2)
+                .allSatisfy(es -> assertThat(es.getWorkSchedule().getWorkScheduleId()).isEqualTo(result.workScheduleId()));
+        assertThat(workScheduleRepository.findById(old.getWorkScheduleId())).isEmpty();
+    }
+}
@@ -0,0 +1,135 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.entity.Role;
+import com.kopi.kopi.entity.User;
+import com.kopi.kopi.entity.enums.UserStatus;
+import com.kopi.kopi.repository.NotificationRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Rows are committed so the fan-out runs after commit on its own thread, as in production
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("StaffNotifier Tests")
+class StaffNotifierTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private NotificationRepository notificationRepository;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate tx;
+    private NotificationHub hub;
+    private EmailService emailService;
+    private StaffNotifier notifier;
+    private Integer orderId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        tx = new TransactionTemplate(transactionManager);
+        hub = new NotificationHub(notificationRepository, transactionManager);
+        hub.start();
+        emailService = mock(EmailService.class);
+        notifier = new StaffNotifier(notificationRepository, hub, emailService, jdbcTemplate, transactionManager);
+        notifier.start();
+        orderId = tx.execute(s -> {
+            LocalDateTime now = LocalDateTime.now();
+            Role admin = Role.builder().name("ADMIN").build();
+            Role staff = Role.builder().name("STAFF").build();
+            Role customer = Role.builder().name("CUSTOMER").build();
+            em.persist(admin);
+            em.persist(staff);
+            em.persist(customer);
+            persistUser("admin", admin, UserStatus.ACTIVE, now);
+            persistUser("barista", staff, UserStatus.ACTIVE, now);
+            persistUser("former", staff, UserStatus.BANNED, now);
+            persistUser("guest", customer, UserStatus.ACTIVE, now);
+            OrderEntity order = OrderEntity.builder().orderCode("ORD-FAN").status("PENDING")
+                    .subtotalAmount(BigDecimal.TEN).shippingAmount(BigDecimal.ZERO).discountAmount(BigDecimal.ZERO)
+                    .createdAt(now).updatedAt(now).build();
+            em.persist(order);
+            return order.getOrderId();
+        });
+    }
+
+    private void persistUser(String name, Role role, UserStatus status, LocalDateTime now) {
+        em.persist(User.builder().username(name).email(name + "@kopi.test").passwordHash("x").fullName(name)
+                .role(role).status(status).createdAt(now).updatedAt(now).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        notifier.stop();
+        hub.stop();
+        jdbcTemplate.update("DELETE FROM dbo.notifications");
+        jdbcTemplate.update("DELETE FROM dbo.orders");
+        jdbcTemplate.update("DELETE FROM dbo.users");
+        jdbcTemplate.update("DELETE FROM dbo.roles");
+    }
+
+    @Test
+    @DisplayName("should Write One Row Per Active Staff Only After Commit When Fanning Out")
+    void should_WriteOneRowPerActiveStaffOnlyAfterCommit_When_FanningOut() throws Exception {
+        tx.executeWithoutResult(s -> {
+            notifier.fanOut(orderId, "Order Status Update", "ORD-FAN is ready");
+            // nothing is written on the caller's transaction
+            assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dbo.notifications", Integer.class)).isZero();
+        });
+        notifier.flush();
+
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT u.username, n.order_id, n.is_read FROM dbo.notifications n "
+                        + "JOIN dbo.users u ON u.user_id = n.user_id ORDER BY u.username");
+        assertThat(rows).extracting(r -> r.get("USERNAME")).containsExactly("admin", "barista");
+        assertThat(rows).allSatisfy(r -> {
+            assertThat(((Number) r.get("ORDER_ID")).intValue()).isEqualTo(orderId);
+            assertThat(r.get("IS_READ")).isEqualTo(false);
+        });
+    }
+
+    @Test
+    @DisplayName("should Send One Deduplicated Digest Per Recipient When Several Changes Fall In A Window")
+    void should_SendOneDeduplicatedDigestPerRecipient_When_SeveralChangesFallInAWindow() throws Exception {
+        notifier.fanOut(orderId, "Order Status Update", "ORD-FAN accepted");
+        notifier.fanOut(orderId, "Order Status Update", "ORD-FAN accepted");
+        notifier.fanOut(orderId, "Order Status Update", "ORD-FAN ready");
+        notifier.flush();
+
+        ArgumentCaptor<String> text = ArgumentCaptor.forClass(String.class);
+        verify(emailService).send(eq("admin@kopi.test"), eq("Order Status Update (2)"), text.capture());
+        verify(emailService).send(eq("barista@kopi.test"), anyString(), anyString());
+        verifyNoMoreInteractions(emailService);
+        assertThat(text.getValue()).startsWith("- ORD-FAN accepted\n- ORD-FAN ready");
+
+        // rows and streams still get every change
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dbo.notifications", Integer.class)).isEqualTo(6);
+    }
+}
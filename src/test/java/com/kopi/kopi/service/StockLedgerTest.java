@@ -0,0 +1,117 @@
+package com.kopi.kopi.service;
+
+import com.kopi.kopi.entity.Category;
+import com.kopi.kopi.entity.Product;
+import com.kopi.kopi.repository.ProductRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs outside the test-managed transaction so each worker commits for real
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("StockLedger concurrency")
+class StockLedgerTest {
+
+    private static final int WORKERS = 16;
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private ProductRepository productRepository;
+
+    private StockLedger stockLedger;
+    private TransactionTemplate tx;
+
+    @BeforeEach
+    void setUp() {
+        stockLedger = new StockLedger(new JdbcTemplate(dataSource));
+        tx = new TransactionTemplate(transactionManager);
+    }
+
+    private Integer seedProduct(String name, int stock) {
+        return tx.execute(status -> {
+            Category category = new Category("Stock " + name, true, 1);
+            em.persist(category);
+            Product product = new Product(category, name, name, BigDecimal.TEN, null);
+            product.setStockQty(stock);
+            em.persist(product);
+            return product.getProductId();
+        });
+    }
+
+    private int stockOf(Integer productId) {
+        return productRepository.findById(productId).orElseThrow().getStockQty();
+    }
+
+    // Completes `orders` orders in parallel; each deducts `lines` atomically or rolls back. Returns completed count.
+    private int completeInParallel(int orders, Map<Integer, Integer> lines) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WORKERS);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < orders; i++) {
+                results.add(pool.submit(() -> tx.execute(status -> {
+                    Integer shortProduct = stockLedger.deduct(lines);
+                    if (shortProduct != null) status.setRollbackOnly();
+                    return shortProduct == null;
+                })));
+            }
+            int completed = 0;
+            for (Future<Boolean> f : results) {
+                if (Boolean.TRUE.equals(f.get())) completed++;
+            }
+            return completed;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("should Keep Exact Stock When Hundreds Of Orders Complete In Parallel")
+    void should_KeepExactStock_When_HundredsOfOrdersCompleteInParallel() throws Exception {
+        Integer latte = seedProduct("Latte", 1000);
+        Integer bacXiu = seedProduct("Bac Xiu", 1000);
+
+        int completed = completeInParallel(300, Map.of(latte, 2, bacXiu, 1));
+
+        assertThat(completed).isEqualTo(300);
+        assertThat(stockOf(latte)).isEqualTo(400);
+        assertThat(stockOf(bacXiu)).isEqualTo(700);
+    }
+
+    @Test
+    @DisplayName("should Never Oversell Or Partially Deduct When Stock Runs Out")
+    void should_NeverOversellOrPartiallyDeduct_When_StockRunsOut() throws Exception {
+        Integer scarce = seedProduct("Scarce", 50);
+        Integer plenty = seedProduct("Plenty", 1000);
+
+        int completed = completeInParallel(200, Map.of(scarce, 1, plenty, 1));
+
+        assertThat(completed).isEqualTo(50);
+        assertThat(stockOf(scarce)).isZero();
+        // Orders rejected on the scarce line must not keep their deduction of the other line
+        assertThat(stockOf(plenty)).isEqualTo(950);
+    }
+}
@@ -0,0 +1,146 @@
+package com.kopi.kopi.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kopi.kopi.dto.ai.AiSuggestionRequest;
+import com.kopi.kopi.dto.ai.DishGroup;
+import com.kopi.kopi.dto.ai.DishTrendChange;
+import com.kopi.kopi.dto.ai.DishTrendsResponse;
+import com.kopi.kopi.dto.ai.TrendDiff;
+import com.kopi.kopi.entity.TrendSnapshot;
+import com.kopi.kopi.exception.YouTubeQuotaExceededException;
+import com.kopi.kopi.repository.TrendSnapshotRepository;
+import com.kopi.kopi.service.impl.AiSuggestServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+// Builds are saved from the snapshot worker thread, so the test must not hold a transaction open
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("TrendSnapshots Tests")
+class TrendSnapshotsTest {
+
+    @Autowired private TrendSnapshotRepository repository;
+    @Autowired private DataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+    private AiSuggestServiceImpl live;
+    private TrendSnapshots snapshots;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        live = mock(AiSuggestServiceImpl.class);
+        snapshots = new TrendSnapshots(live, repository, jdbcTemplate);
+        ReflectionTestUtils.setField(snapshots, "presetSpec", "30:100, 7:20");
+        snapshots.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshots.stop();
+        jdbcTemplate.update("DELETE FROM dbo.trend_snapshots");
+    }
+
+    private static DishTrendsResponse ranking(String... dishes) {
+        List<DishGroup> groups = new ArrayList<>();
+        for (String d : dishes) {
+            groups.add(DishGroup.builder().key(d.toLowerCase()).name(d).totalVideos(3).rating(4.5).videos(List.of()).build());
+        }
+        return DishTrendsResponse.builder().data(groups).meta(Map.of("days", 30, "tookMs", 1200L)).build();
+    }
+
+    private static AiSuggestionRequest request(Integer days, Integer max) {
+        AiSuggestionRequest req = new AiSuggestionRequest();
+        req.setDays(days);
+        req.setMaxResults(max);
+        return req;
+    }
+
+    @Test
+    @DisplayName("should Serve Presets From The Latest Snapshot And Compute Other Parameters Live")
+    void should_ServePresetsFromTheLatestSnapshotAndComputeOtherParametersLive() throws Exception {
+        when(live.groupedByDish(any())).thenReturn(ranking("Cà phê muối", "Trà sữa"));
+
+        // no snapshot yet: built on demand, then reused
+        DishTrendsResponse first = snapshots.trends(request(null, null));
+        DishTrendsResponse again = snapshots.trends(request(30, 100));
+        String json = snapshots.payload(30, 100);
+
+        verify(live, times(1)).groupedByDish(any());
+        assertThat(again.getData()).extracting(DishGroup::getName).containsExactly("Cà phê muối", "Trà sữa");
+        assertThat(again.getMeta()).containsEntry("preset", "d30-m100").containsKey("snapshotId");
+        assertThat(first.getMeta().get("snapshotId")).isEqualTo(again.getMeta().get("snapshotId"));
+        assertThat(new ObjectMapper().readTree(json).path("data").size()).isEqualTo(2);
+        assertThat(snapshots.isPreset(7, 20)).isTrue();
+
+        snapshots.trends(request(14, 100));
+        verify(live, times(2)).groupedByDish(any());
+    }
+
+    @Test
+    @DisplayName("should Keep Serving The Previous Snapshot When A Refresh Fails")
+    void should_KeepServingThePreviousSnapshot_When_ARefreshFails() throws Exception {
+        when(live.groupedByDish(any())).thenReturn(ranking("Bạc xỉu"));
+        Integer good = snapshots.refresh(30, 100, "manual").done().get().getSnapshotId();
+
+        when(live.groupedByDish(any())).thenThrow(new YouTubeQuotaExceededException("quota", "15:00"));
+        TrendSnapshots.Ticket failing = snapshots.refresh(30, 100, "manual");
+        snapshots.flush();
+
+        TrendSnapshot failed = repository.findById(failing.snapshotId()).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo(TrendSnapshots.FAILED);
+        assertThat(failed.getErrorMessage()).isEqualTo("quota");
+        assertThat(snapshots.latest("d30-m100").snapshotId()).isEqualTo(good);
+        assertThat(snapshots.trends(request(30, 100)).getData()).extracting(DishGroup::getName).containsExactly("Bạc xỉu");
+    }
+
+    @Test
+    @DisplayName("should Rank Changes Against The Snapshot Of A Week Earlier When Diffing")
+    void should_RankChangesAgainstTheSnapshotOfAWeekEarlier_When_Diffing() throws Exception {
+        // last week's build, then one from yesterday that the diff must skip
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        saveCompleted(now.minusDays(8), ranking("Matcha", "Cà phê muối", "Trà đào", "Sữa chua"));
+        saveCompleted(now.minusDays(1), ranking("Trà đào"));
+        when(live.groupedByDish(any())).thenReturn(ranking("Cà phê muối", "Matcha", "Bạc xỉu", "Sữa chua"));
+        snapshots.refresh(30, 100, "manual").done().get();
+
+        TrendDiff diff = snapshots.diff(30, 100);
+
+        assertThat(diff.getPreviousAt()).isEqualTo(now.minusDays(8));
+        assertThat(diff.getDishes()).extracting(DishTrendChange::getName, DishTrendChange::getStatus, DishTrendChange::getRankChange)
+                .containsExactly(
+                        tuple("Cà phê muối", "up", 1),
+                        tuple("Matcha", "down", -1),
+                        tuple("Bạc xỉu", "new", null),
+                        tuple("Sữa chua", "same", 0),
+                        tuple("Trà đào", "dropped", null));
+    }
+
+    private void saveCompleted(LocalDateTime at, DishTrendsResponse res) throws Exception {
+        repository.save(TrendSnapshot.builder().presetKey("d30-m100").days(30).maxResults(100)
+                .status(TrendSnapshots.COMPLETED).payload(new ObjectMapper().writeValueAsString(res))
+                .createdAt(at).finishedAt(at).build());
+    }
+}
@@ -0,0 +1,138 @@
+package com.kopi.kopi.service.ai;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kopi.kopi.dto.ai.DishExtraction;
+import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.service.OutboundHttp;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("GeminiClient batched dish extraction Tests")
+class GeminiClientTest {
+
+    private static final ObjectMapper OM = new ObjectMapper();
+
+    private GeminiClient gemini;
+    private HttpServer stub;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger sentVideos = new AtomicInteger();
+    // the call with this number answers 429
+    private volatile int failingCall = -1;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newFixedThreadPool(4));
+        stub.createContext("/v1beta/models/", ex -> {
+            if (calls.incrementAndGet() == failingCall) {
+                ex.sendResponseHeaders(429, -1);
+                ex.close();
+            } else {
+                respond(ex, answerEachVideo(new String(ex.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)));
+            }
+        });
+        stub.start();
+        gemini = new GeminiClient(new OutboundHttp(new MockEnvironment()));
+        ReflectionTestUtils.setField(gemini, "apiKey", "test-key");
+        ReflectionTestUtils.setField(gemini, "requestsPerMinute", 6000);
+        ReflectionTestUtils.setField(gemini, "baseUrl", "http://127.0.0.1:" + stub.getAddress().getPort());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    private static void respond(HttpExchange ex, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static VideoItem video(String id, String title) {
+        return VideoItem.builder().videoId(id).title(title).description("Hướng dẫn pha chế tại nhà").build();
+    }
+
+    // Answers every video of the prompt with "Món <id>"
+    private String answerEachVideo(String body) throws IOException {
+        String prompt = OM.readTree(body).path("contents").path(0).path("parts").path(0).path("text").asText();
+        JsonNode videos = OM.readTree(prompt.substring(prompt.lastIndexOf("Videos:") + 7).trim());
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (JsonNode v : videos) {
+            sentVideos.incrementAndGet();
+            String id = v.path("id").asText();
+            items.add(Map.of("id", id, "dishName", "Món " + id, "basicRecipe", "1. Pha", "confidence", 0.9));
+        }
+        String text = OM.writeValueAsString(Map.of("items", items));
+        return OM.writeValueAsString(Map.of("candidates",
+                List.of(Map.of("content", Map.of("parts", List.of(Map.of("text", text)))))));
+    }
+
+    @Test
+    @DisplayName("should Send Only Unknown Videos In One Prompt And Reuse Extractions When Called Again")
+    void should_SendOnlyUnknownVideosInOnePromptAndReuseExtractions_When_CalledAgain() {
+        List<VideoItem> videos = new ArrayList<>();
+        for (int i = 0; i < 30; i++) videos.add(video("v" + i, "Đồ uống mùa hè số " + i));
+        videos.add(video("salt", "Cách làm CÀ PHÊ MUỐI chuẩn Huế"));
+        videos.add(video("egg", "ca phe trung ha noi"));
+        videos.add(video("v3", "Đồ uống mùa hè số 3"));
+        List<DishExtraction> first = gemini.extractDishNames(videos, "vi");
+        List<DishExtraction> second = gemini.extractDishNames(videos.subList(0, 10), "vi");
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(sentVideos.get()).isEqualTo(30);
+        assertThat(first).hasSize(33);
+        assertThat(first).extracting(DishExtraction::getId).startsWith("v0", "v1").endsWith("salt", "egg", "v3");
+        assertThat(first).filteredOn(e -> e.getId().equals("salt")).extracting(DishExtraction::getDishName)
+                .containsExactly("Cà phê muối");
+        assertThat(first).filteredOn(e -> e.getId().equals("egg")).extracting(DishExtraction::getDishName)
+                .containsExactly("Cà phê trứng");
+        assertThat(second).extracting(DishExtraction::getDishName).startsWith("Món v0", "Món v1");
+    }
+
+    @Test
+    @DisplayName("should Split Prompts By Token Budget And Fall Back To Heuristic For A Failed Chunk")
+    void should_SplitPromptsByTokenBudgetAndFallBackToHeuristicForAFailedChunk() {
+        int base = GeminiClient.estimateTokens((String) ReflectionTestUtils.getField(GeminiClient.class, "EXTRACT_PROMPT"));
+        ReflectionTestUtils.setField(gemini, "extractMaxPromptTokens", base + 100);
+        List<VideoItem> videos = new ArrayList<>();
+        for (int i = 0; i < 12; i++) videos.add(video("v" + i, "Latte đá xay công thức " + i));
+
+        List<List<VideoItem>> chunks = gemini.chunk(videos);
+        assertThat(chunks.size()).isGreaterThan(1);
+        assertThat(chunks.stream().mapToInt(List::size).sum()).isEqualTo(12);
+
+        failingCall = chunks.size();
+
+        List<DishExtraction> res = gemini.extractDishNames(videos, "vi");
+
+        assertThat(calls.get()).isEqualTo(chunks.size());
+        assertThat(res).hasSize(12);
+        // the failed chunk's videos get the local guess and are not cached
+        List<DishExtraction> guessed = res.stream().filter(e -> "Latte".equals(e.getDishName())).toList();
+        assertThat(guessed).isNotEmpty();
+        assertThat(res.size() - guessed.size()).isEqualTo(sentVideos.get());
+    }
+}
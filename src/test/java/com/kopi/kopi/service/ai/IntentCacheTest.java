@@ -0,0 +1,90 @@
+package com.kopi.kopi.service.ai;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("IntentCache Tests")
+class IntentCacheTest {
+
+    private final IntentCache cache = new IntentCache();
+
+    @Test
+    @DisplayName("should Reuse Intent When Message Differs Only In Case And Spacing")
+    void should_ReuseIntent_When_MessageDiffersOnlyInCaseAndSpacing() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThat(cache.classify("Xem  menu", "customer", () -> { calls.incrementAndGet(); return "order"; })).isEqualTo("order");
+        assertThat(cache.classify(" xem menu ", "CUSTOMER", () -> { calls.incrementAndGet(); return "general"; })).isEqualTo("order");
+        assertThat(cache.classify("xem menu", "ADMIN", () -> { calls.incrementAndGet(); return "general"; })).isEqualTo("general");
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should Not Cache Failures When Classifier Returns Null")
+    void should_NotCacheFailures_When_ClassifierReturnsNull() {
+        assertThat(cache.classify("doanh thu", "ADMIN", () -> null)).isNull();
+        assertThat(cache.classify("doanh thu", "ADMIN", () -> "revenue")).isEqualTo("revenue");
+        assertThat(cache.stats().failures()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Count Skipped Lookups Apart When The Gate Is Closed")
+    void should_CountSkippedLookupsApart_When_TheGateIsClosed() {
+        AtomicInteger calls = new AtomicInteger();
+        cache.classify("xem menu", "GUEST", () -> "order");
+
+        assertThat(cache.classify("xem menu", "GUEST", () -> false, () -> { calls.incrementAndGet(); return "general"; })).isEqualTo("order");
+        assertThat(cache.classify("doanh thu", "ADMIN", () -> false, () -> { calls.incrementAndGet(); return "revenue"; })).isNull();
+
+        assertThat(calls.get()).isZero();
+        IntentCache.Stats stats = cache.stats();
+        assertThat(stats.skipped()).isEqualTo(1);
+        assertThat(stats.calls()).isEqualTo(1);
+        assertThat(stats.misses()).isEqualTo(1);
+        assertThat(stats.failures()).isZero();
+    }
+
+    @Test
+    @DisplayName("should Make One Call When Identical Requests Arrive Together")
+    void should_MakeOneCall_When_IdenticalRequestsArriveTogether() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> cache.classify("cho 1 ly cà phê sữa", "GUEST", () -> {
+                    calls.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "order";
+                })));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> f : results) assertThat(f.get(5, TimeUnit.SECONDS)).isEqualTo("order");
+        } finally {
+            pool.shutdown();
+        }
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(cache.stats().calls()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,141 @@
+package com.kopi.kopi.service.ai;
+
+import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.exception.YouTubeQuotaExceededException;
+import com.kopi.kopi.repository.YouTubeCacheEntryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Entries are written in the cache's own transactions, so the test must not hold one open
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("YouTubeCache Tests")
+class YouTubeCacheTest {
+
+    private static final String KEY = YouTubeCache.searchKey("Cà phê muối", 30, 5, "VN", "vi", false, null,
+            "none", true, "viewCount");
+
+    @Autowired private YouTubeCacheEntryRepository repository;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private JdbcTemplate jdbcTemplate;
+    private YouTubeQuota quota;
+    private YouTubeCache cache;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        quota = new YouTubeQuota(jdbcTemplate);
+        cache = newCache();
+    }
+
+    private YouTubeCache newCache() {
+        YouTubeCache c = new YouTubeCache(repository, quota, jdbcTemplate, transactionManager);
+        c.start();
+        return c;
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stop();
+        jdbcTemplate.update("DELETE FROM dbo.youtube_cache");
+        jdbcTemplate.update("DELETE FROM dbo.youtube_quota_usage");
+    }
+
+    private List<VideoItem> search(String title) {
+        calls.incrementAndGet();
+        return List.of(VideoItem.builder().videoId("v" + calls.get()).title(title).viewCount(100L).build());
+    }
+
+    // the entry just written is already stale
+    private void expireImmediately() {
+        ReflectionTestUtils.setField(cache, "ttlMs", -1L);
+    }
+
+    @Test
+    @DisplayName("should Serve Repeated Searches Without Calling YouTube When Cached")
+    void should_ServeRepeatedSearchesWithoutCallingYouTube_When_Cached() {
+        List<VideoItem> first = cache.get(KEY, () -> search("first"));
+        first.get(0).setViralScore(9.0);
+
+        assertThat(cache.get(KEY, () -> search("second"))).extracting(VideoItem::getTitle).containsExactly("first");
+        // the same normalized search, after a restart
+        cache.stop();
+        cache = newCache();
+        String sameSearch = YouTubeCache.searchKey("  cà phê   MUỐI ", 30, 5, "vn", "VI", false, "",
+                "none", true, "viewCount");
+        List<VideoItem> restored = cache.get(sameSearch, () -> search("third"));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(restored).extracting(VideoItem::getTitle).containsExactly("first");
+        // callers get their own copies
+        assertThat(restored.get(0).getViralScore()).isNull();
+        assertThat(repository.findById(KEY)).get().extracting(e -> e.getResultCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Serve Stale Result And Refresh In Background When Past TTL")
+    void should_ServeStaleResultAndRefreshInBackground_When_PastTtl() throws Exception {
+        expireImmediately();
+        cache.get(KEY, () -> search("old"));
+
+        assertThat(cache.get(KEY, () -> search("new"))).extracting(VideoItem::getTitle).containsExactly("old");
+        cache.flush();
+
+        assertThat(calls.get()).isEqualTo(2);
+        assertThat(repository.findById(KEY)).get().extracting(e -> e.getPayload()).asString().contains("\"new\"");
+        assertThat(cache.get(KEY, () -> search("newer"))).extracting(VideoItem::getTitle).containsExactly("new");
+    }
+
+    @Test
+    @DisplayName("should Serve Expired Result Without Refreshing When Quota Is Nearly Spent")
+    void should_ServeExpiredResultWithoutRefreshing_When_QuotaIsNearlySpent() throws Exception {
+        expireImmediately();
+        ReflectionTestUtils.setField(cache, "staleMs", -1L);
+        cache.get(KEY, () -> search("old"));
+        ReflectionTestUtils.setField(quota, "dailyUnits", 1000);
+        quota.spend(YouTubeQuota.SEARCH_UNITS);
+
+        assertThat(quota.nearLimit()).isTrue();
+        assertThat(cache.get(KEY, () -> search("new"))).extracting(VideoItem::getTitle).containsExactly("old");
+        cache.flush();
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT units FROM dbo.youtube_quota_usage", Integer.class))
+                .isEqualTo(YouTubeQuota.SEARCH_UNITS);
+    }
+
+    @Test
+    @DisplayName("should Fall Back To Expired Result When YouTube Reports Quota Exceeded")
+    void should_FallBackToExpiredResult_When_YouTubeReportsQuotaExceeded() {
+        expireImmediately();
+        ReflectionTestUtils.setField(cache, "staleMs", -1L);
+        cache.get(KEY, () -> search("old"));
+
+        List<VideoItem> res = cache.get(KEY, () -> {
+            throw new YouTubeQuotaExceededException("quota", "15:00");
+        });
+
+        assertThat(res).extracting(VideoItem::getTitle).containsExactly("old");
+        assertThat(quota.nearLimit()).isTrue();
+    }
+}
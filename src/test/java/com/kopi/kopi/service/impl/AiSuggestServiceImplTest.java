@@ -0,0 +1,117 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.dto.ai.AiSuggestionRequest;
+import com.kopi.kopi.dto.ai.DishGroup;
+import com.kopi.kopi.dto.ai.DishTrendsResponse;
+import com.kopi.kopi.dto.ai.VideoItem;
+import com.kopi.kopi.service.ai.GeminiClient;
+import com.kopi.kopi.service.ai.YouTubeClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("AiSuggestServiceImpl dish search fan-out Tests")
+class AiSuggestServiceImplTest {
+
+    private YouTubeClient yt;
+    private GeminiClient gemini;
+    private AiSuggestServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        yt = mock(YouTubeClient.class);
+        gemini = mock(GeminiClient.class);
+        service = new AiSuggestServiceImpl(yt, gemini);
+        service.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    private DishTrendsResponse run(List<GeminiClient.TrendingDishInfo> dishes) {
+        when(gemini.findHotTrendDishes(anyInt(), anyInt())).thenReturn(dishes);
+        AiSuggestionRequest req = new AiSuggestionRequest();
+        req.setDays(30);
+        req.setMaxResults(dishes.size());
+        return service.groupedByDish(req);
+    }
+
+    private void answerSearches(Answer<List<VideoItem>> answer) {
+        when(yt.searchRecentVideos(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyBoolean(), any(),
+                anyString(), anyBoolean())).thenAnswer(answer);
+        when(yt.searchVideos(anyString(), anyInt(), anyInt(), anyString(), anyString(), anyBoolean(), any(),
+                anyString(), anyBoolean(), anyString())).thenAnswer(answer);
+    }
+
+    private static GeminiClient.TrendingDishInfo dish(String name, double score) {
+        return new GeminiClient.TrendingDishInfo(name, "", score);
+    }
+
+    @Test
+    @DisplayName("should Rank Deterministically Within The Concurrency Cap When Searches Finish Out Of Order")
+    void should_RankDeterministicallyWithinTheConcurrencyCap_When_SearchesFinishOutOfOrder() {
+        ReflectionTestUtils.setField(service, "maxConcurrentSearches", 2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        answerSearches(inv -> {
+            String query = inv.getArgument(0);
+            int now = running.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                // earlier dishes answer last
+                Thread.sleep(query.equals("Dish 1") ? 60 : 5);
+                return List.of();
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        DishTrendsResponse res = run(List.of(dish("Dish 1", 5), dish("Dish 2", 7), dish("Dish 3", 5),
+                dish("Dish 4", 9), dish("Dish 5", 7), dish("Dish 6", 5)));
+
+        // by score, ties in Gemini's order
+        assertThat(res.getData()).extracting(DishGroup::getName)
+                .containsExactly("Dish 4", "Dish 2", "Dish 5", "Dish 1", "Dish 3", "Dish 6");
+        assertThat(peak.get()).isBetween(1, 2);
+        assertThat(res.getMeta()).containsEntry("incomplete", 0);
+    }
+
+    @Test
+    @DisplayName("should Return Partial Results When A Dish Runs Past Its Deadline")
+    void should_ReturnPartialResults_When_ADishRunsPastItsDeadline() {
+        ReflectionTestUtils.setField(service, "dishTimeoutMs", 200L);
+        answerSearches(inv -> {
+            if (inv.getArgument(0).equals("Slow")) Thread.sleep(10_000);
+            return List.of();
+        });
+
+        long t0 = System.currentTimeMillis();
+        DishTrendsResponse res = run(List.of(dish("Fast", 6), dish("Slow", 8)));
+
+        assertThat(System.currentTimeMillis() - t0).isLessThan(5_000);
+        assertThat(res.getData()).extracting(DishGroup::getName).containsExactly("Slow", "Fast");
+        assertThat(res.getData()).allSatisfy(g -> assertThat(g.getTotalVideos()).isZero());
+        assertThat(res.getMeta()).containsEntry("incomplete", 1);
+
+        // the whole fan-out has a deadline too
+        ReflectionTestUtils.setField(service, "dishTimeoutMs", 10_000L);
+        ReflectionTestUtils.setField(service, "fanOutDeadlineMs", 300L);
+        t0 = System.currentTimeMillis();
+        res = run(List.of(dish("Fast", 6), dish("Slow", 8)));
+        assertThat(System.currentTimeMillis() - t0).isLessThan(5_000);
+        assertThat(res.getMeta()).containsEntry("incomplete", 1);
+    }
+}
@@ -0,0 +1,228 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.repository.GeoCacheEntryRepository;
+import com.kopi.kopi.service.GeoCache;
+import com.kopi.kopi.service.OutboundHttp;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Cache rows commit in their own transactions, so the test runs without the test-managed one
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@DisplayName("MapboxService cache Tests")
+class MapboxServiceCacheTest {
+
+    @Autowired private GeoCacheEntryRepository geoCacheEntryRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private HttpServer stub;
+    private final AtomicInteger geocodeCalls = new AtomicInteger();
+    private final AtomicInteger directionsCalls = new AtomicInteger();
+    private volatile boolean outage;
+    private final List<GeoCache> caches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        geoCacheEntryRepository.deleteAll();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.setExecutor(Executors.newFixedThreadPool(4));
+        stub.createContext("/geocoding/", ex -> {
+            geocodeCalls.incrementAndGet();
+            sleep(100);
+            String path = URLDecoder.decode(ex.getRequestURI().getPath(), StandardCharsets.UTF_8);
+            if (outage) {
+                ex.sendResponseHeaders(503, -1);
+                ex.close();
+            } else if (path.contains("nowhere")) {
+                respond(ex, "{\"features\":[]}");
+            } else {
+                respond(ex, """
+                        {"features":[{"center":[108.2200,16.0600],"place_name":"12 Bach Dang, Hai Chau, Da Nang, Vietnam",
+                          "context":[{"id":"place.1","text":"Đà Nẵng"}]}]}
+                        """);
+            }
+        });
+        stub.createContext("/directions/", ex -> {
+            directionsCalls.incrementAndGet();
+            respond(ex, "{\"routes\":[{\"distance\":2345.6}]}");
+        });
+        stub.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.stop(0);
+    }
+
+    private GeoCache newCache() {
+        GeoCache cache = new GeoCache(geoCacheEntryRepository, transactionManager);
+        caches.add(cache);
+        return cache;
+    }
+
+    // cache rows are written on each cache's writer thread
+    private long storedRows() {
+        for (GeoCache c : caches) ReflectionTestUtils.invokeMethod(c, "flush");
+        return geoCacheEntryRepository.count();
+    }
+
+    private MapboxService newService() {
+        MapboxService service = new MapboxService(newCache(), new OutboundHttp(new MockEnvironment()));
+        ReflectionTestUtils.setField(service, "mapboxToken", "test-token");
+        ReflectionTestUtils.setField(service, "baseUrl", "http://127.0.0.1:" + stub.getAddress().getPort());
+        return service;
+    }
+
+    private static void respond(HttpExchange ex, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().add("Content-Type", "application/json");
+        ex.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    @DisplayName("should Call Mapbox Once When Same Address Is Quoted Repeatedly")
+    void should_CallMapboxOnce_When_SameAddressIsQuotedRepeatedly() {
+        MapboxService mapbox = newService();
+
+        MapboxService.GeoResult first = mapbox.geocodeAddress("12 Bạch Đằng, Đà Nẵng");
+        MapboxService.GeoResult again = mapbox.geocodeAddress("  12 bạch đằng,   ĐÀ NẴNG ");
+        double meters = mapbox.getDrivingDistanceMeters(16.047079, 108.206230, first.lat(), first.lng());
+        double metersAgain = mapbox.getDrivingDistanceMeters(16.047079, 108.206230, 16.06001, 108.22002);
+
+        assertThat(first.city()).isEqualTo("Đà Nẵng");
+        assertThat(again).isEqualTo(first);
+        assertThat(meters).isEqualTo(2345.6).isEqualTo(metersAgain);
+        assertThat(geocodeCalls.get()).isEqualTo(1);
+        assertThat(directionsCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Serve From Database Tier When Memory Is Cold")
+    void should_ServeFromDatabaseTier_When_MemoryIsCold() {
+        newService().geocodeAddress("12 Bạch Đằng, Đà Nẵng");
+        newService().geocodeAddress("nowhere at all");
+        assertThat(storedRows()).isEqualTo(2);
+
+        MapboxService restarted = newService();
+        assertThat(restarted.geocodeAddress("12 Bạch Đằng, Đà Nẵng")).isNotNull();
+        assertThat(restarted.geocodeAddress("nowhere at all")).isNull();
+
+        assertThat(geocodeCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should Share One Lookup When Identical Quotes Arrive Together")
+    void should_ShareOneLookup_When_IdenticalQuotesArriveTogether() throws Exception {
+        MapboxService mapbox = newService();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<MapboxService.GeoResult>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) results.add(pool.submit(() -> mapbox.geocodeAddress("99 Tran Phu, Da Nang")));
+            for (Future<MapboxService.GeoResult> f : results) assertThat(f.get()).isNotNull();
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(geocodeCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Not Cache Lookup When Mapbox Fails")
+    void should_NotCacheLookup_When_MapboxFails() {
+        MapboxService mapbox = newService();
+        outage = true;
+
+        assertThat(mapbox.geocodeAddress("12 Bạch Đằng, Đà Nẵng")).isNull();
+        assertThat(storedRows()).isZero();
+
+        outage = false;
+        assertThat(mapbox.geocodeAddress("12 Bạch Đằng, Đà Nẵng")).isNotNull();
+        assertThat(storedRows()).isEqualTo(1);
+        assertThat(geoCacheEntryRepository.findAll()).singleElement()
+                .satisfies(e -> assertThat(e.getFailed()).isFalse());
+
+        // without a token nothing is asked and nothing is cached
+        ReflectionTestUtils.setField(mapbox, "mapboxToken", "");
+        assertThat(mapbox.getDrivingDistanceMeters(16.0, 108.0, 16.1, 108.1)).isEqualTo(-1);
+        assertThat(storedRows()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should Fail Waiters Like The Loading Thread When The Shared Lookup Throws")
+    void should_FailWaitersLikeTheLoadingThread_When_TheSharedLookupThrows() throws Exception {
+        GeoCache cache = newCache();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<GeoCache.Hit> loader = pool.submit(() -> cache.get("geo:down", () -> {
+                loading.countDown();
+                await(release);
+                throw new IllegalStateException("Mapbox answered 503");
+            }));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<GeoCache.Hit> waiter = pool.submit(() -> cache.get("geo:down", () -> {
+                throw new AssertionError("second loader call");
+            }));
+            sleep(100);
+            release.countDown();
+
+            for (Future<GeoCache.Hit> f : List.of(loader, waiter)) {
+                assertThatThrownBy(f::get).hasCauseInstanceOf(IllegalStateException.class)
+                        .hasRootCauseMessage("Mapbox answered 503");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertThat(storedRows()).isZero();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.*;
+import com.kopi.kopi.entity.enums.PaymentMethod;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.repository.*;
+import com.kopi.kopi.service.CartResolver;
+import com.kopi.kopi.service.NotificationService;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.PricingEngine;
+import com.kopi.kopi.service.RevenueRollup;
+import com.kopi.kopi.service.StockLedger;
+import com.kopi.kopi.service.TableService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("OrderServiceImpl listing query count")
+class OrderServiceImplQueryCountTest {
+
+    private static final int ORDERS = 30;
+    private static final int LINES_PER_ORDER = 3;
+
+    @Autowired private EntityManager em;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private OrderRepository orderRepository;
+    @Autowired private ProductRepository productRepository;
+    @Autowired private AddressRepository addressRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private DiningTableRepository diningTableRepository;
+    @Autowired private UserAddressRepository userAddressRepository;
+    @Autowired private ProductSizeRepository productSizeRepository;
+    @Autowired private ProductAddOnRepository productAddOnRepository;
+    @Autowired private SizeRepository sizeRepository;
+    @Autowired private OrderDetailAddOnRepository orderDetailAddOnRepository;
+    @Autowired private DiscountCodeRepository discountCodeRepository;
+    @Autowired private DiscountCodeRedemptionRepository discountCodeRedemptionRepository;
+    @Autowired private DiscountEventRepository discountEventRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private OrderServiceImpl orderService;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        OrderBoard orderBoard = new OrderBoard(orderRepository, orderDetailAddOnRepository, transactionManager);
+        orderBoard.warmUp();
+        orderService = new OrderServiceImpl(orderRepository, productRepository, addressRepository, userRepository,
+                mock(TableService.class), diningTableRepository, userAddressRepository, mock(MapboxService.class),
+                mock(NotificationService.class),
+                new CartResolver(productRepository, productSizeRepository, productAddOnRepository, sizeRepository,
+                        new PricingEngine(discountEventRepository)),
+                mock(StockLedger.class), orderDetailAddOnRepository, discountCodeRepository, discountCodeRedemptionRepository, orderBoard,
+                mock(RevenueRollup.class));
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        seed();
+    }
+
+    private void seed() {
+        LocalDateTime now = LocalDateTime.now();
+        Category category = new Category("Coffee", true, 1);
+        em.persist(category);
+        Size size = Size.builder().name("L").displayOrder(1).createdAt(now).updatedAt(now).build();
+        em.persist(size);
+        AddOn addOn = AddOn.builder().name("Trân châu").displayOrder(1).createdAt(now).updatedAt(now).build();
+        em.persist(addOn);
+        DiningTable table = DiningTable.builder().number(1).status("AVAILABLE").qrToken("qr-1").createdAt(now).updatedAt(now).build();
+        em.persist(table);
+
+        for (int i = 0; i < ORDERS; i++) {
+            Address address = null;
+            if (i % 2 == 0) {
+                address = Address.builder().addressLine("Street " + i).createdAt(now).build();
+                em.persist(address);
+            }
+            OrderEntity order = OrderEntity.builder()
+                    .orderCode("ORD-" + i)
+                    .status("PENDING")
+                    .subtotalAmount(BigDecimal.TEN)
+                    .shippingAmount(BigDecimal.ZERO)
+                    .discountAmount(BigDecimal.ZERO)
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .address(address)
+                    .table(address == null ? table : null)
+                    .build();
+            for (int j = 0; j < LINES_PER_ORDER; j++) {
+                Product product = new Product(category, "Product " + i + "-" + j, "SKU-" + i + "-" + j, BigDecimal.ONE, null);
+                em.persist(product);
+                order.getOrderDetails().add(OrderDetail.builder()
+                        .order(order)
+                        .product(product)
+                        .size(size)
+                        .productNameSnapshot(product.getName())
+                        .unitPrice(BigDecimal.ONE)
+                        .quantity(1)
+                        .build());
+            }
+            order.getPayments().add(Payment.builder()
+                    .order(order)
+                    .amount(BigDecimal.TEN)
+                    .method(PaymentMethod.CASH)
+                    .status(PaymentStatus.PENDING)
+                    .createdAt(now)
+                    .build());
+            em.persist(order);
+            for (OrderDetail d : order.getOrderDetails()) {
+                em.persist(OrderDetailAddOn.builder().orderDetail(d).addOn(addOn).unitPriceSnapshot(BigDecimal.ONE).build());
+            }
+        }
+        em.flush();
+        em.clear();
+    }
+
+    @Test
+    @DisplayName("should Load A Full Page In Constant Statements When Listing Pending Orders")
+    @SuppressWarnings("unchecked")
+    void should_LoadFullPageInConstantStatements_When_ListingPendingOrders() {
+        statistics.clear();
+
+        Map<String, Object> result = orderService.listPending("PENDING", null, 1, ORDERS);
+
+        List<Map<String, Object>> data = (List<Map<String, Object>>) result.get("data");
+        assertThat(data).hasSize(ORDERS);
+        Map<String, Object> first = data.get(0);
+        assertThat(first.get("payment_method")).isEqualTo("CASH");
+        List<Map<String, Object>> products = (List<Map<String, Object>>) first.get("products");
+        assertThat(products).hasSize(LINES_PER_ORDER);
+        assertThat(products.get(0).get("size")).isEqualTo("L");
+        assertThat((List<?>) products.get(0).get("add_ons")).hasSize(1);
+
+        // page + count + details/delivery + payments + add-ons
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("should Not Grow Statement Count With Page Size When Listing By Status")
+    @SuppressWarnings("unchecked")
+    void should_NotGrowStatementCountWithPageSize_When_ListingByStatus() {
+        // TABLE/SHIPPING listings come from the order board; a status filter still pages from the database
+        statistics.clear();
+        Map<String, Object> smallPage = orderService.listPending("PENDING", null, 1, 2);
+        em.clear();
+        long small = statistics.getPrepareStatementCount();
+
+        statistics.clear();
+        Map<String, Object> largePage = orderService.listPending("PENDING", null, 1, 10);
+        long large = statistics.getPrepareStatementCount();
+
+        assertThat((List<Map<String, Object>>) smallPage.get("data")).hasSize(2);
+        assertThat((List<Map<String, Object>>) largePage.get("data")).hasSize(10)
+                .allSatisfy(card -> assertThat((List<?>) card.get("products")).hasSize(LINES_PER_ORDER));
+        assertThat(small).isPositive();
+        assertThat(large).isEqualTo(small);
+    }
+}
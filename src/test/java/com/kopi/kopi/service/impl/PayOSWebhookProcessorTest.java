@@ -0,0 +1,148 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.OrderEntity;
+import com.kopi.kopi.entity.Payment;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.repository.OrderRepository;
+import com.kopi.kopi.repository.PaymentRepository;
+import com.kopi.kopi.service.OrderBoard;
+import com.kopi.kopi.service.RevenueRollup;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("PayOSWebhookProcessor Tests")
+class PayOSWebhookProcessorTest {
+
+    private static final int PAYMENTS = 500;
+    private static final long ORDER_CODE_BASE = 500_000L;
+
+    @Autowired private EntityManager em;
+    @Autowired private EntityManagerFactory emf;
+    @Autowired private DataSource dataSource;
+    @Autowired private PaymentRepository paymentRepository;
+    @Autowired private OrderRepository orderRepository;
+
+    private PayOSWebhookProcessor processor;
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        processor = new PayOSWebhookProcessor(paymentRepository, orderRepository, mock(OrderBoard.class),
+                mock(RevenueRollup.class));
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+
+        LocalDateTime now = LocalDateTime.now();
+        OrderEntity order = OrderEntity.builder()
+                .orderCode("ORD-PAYOS")
+                .status("PENDING")
+                .subtotalAmount(BigDecimal.TEN)
+                .shippingAmount(BigDecimal.ZERO)
+                .discountAmount(BigDecimal.ZERO)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        em.persist(order);
+        em.flush();
+
+        // Even rows carry payos_order_code; odd rows are older payments with only the txnRef
+        List<Object[]> rows = new ArrayList<>(PAYMENTS);
+        Timestamp createdAt = Timestamp.valueOf(now);
+        for (int i = 0; i < PAYMENTS; i++) {
+            long orderCode = ORDER_CODE_BASE + i;
+            rows.add(new Object[]{order.getOrderId(), BigDecimal.TEN, "banking", "pending",
+                    "ORD-" + orderCode + "-" + order.getOrderId(), i % 2 == 0 ? orderCode : null, createdAt});
+        }
+        new JdbcTemplate(dataSource).batchUpdate(
+                "INSERT INTO dbo.payments (order_id, amount, method, status, txn_ref, payos_order_code, created_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+        em.clear();
+    }
+
+    /** Runs the webhook and its flush, returning {statements prepared, payments loaded}. */
+    private long[] measured(Runnable webhook) {
+        statistics.clear();
+        webhook.run();
+        em.flush();
+        long[] counts = {statistics.getPrepareStatementCount(), statistics.getEntityLoadCount()};
+        em.clear();
+        return counts;
+    }
+
+    @Test
+    @DisplayName("should Mark Paid With One Lookup When Order Code Column Is Set")
+    void should_MarkPaidWithOneLookup_When_OrderCodeColumnIsSet() {
+        long orderCode = ORDER_CODE_BASE + 378;
+        PayOSWebhookProcessor.Outcome[] outcome = new PayOSWebhookProcessor.Outcome[1];
+
+        long[] counts = measured(() -> outcome[0] = processor.process(orderCode, 0));
+
+        assertThat(outcome[0]).isEqualTo(PayOSWebhookProcessor.Outcome.PAID);
+        // locked select by payos_order_code, then the update; no scan over the other payments
+        assertThat(counts[0]).isEqualTo(2);
+        assertThat(counts[1]).isEqualTo(1);
+        Payment payment = processor.findByOrderCode(orderCode).orElseThrow();
+        assertThat(payment.getStatus()).isEqualTo(PaymentStatus.PAID);
+        assertThat(payment.getPaidAt()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("should Resolve Older Payments By TxnRef Prefix When Order Code Column Is Empty")
+    void should_ResolveOlderPaymentsByTxnRefPrefix_When_OrderCodeColumnIsEmpty() {
+        long orderCode = ORDER_CODE_BASE + 235;
+
+        long[] counts = measured(() -> processor.process(orderCode, 0));
+
+        // missed order code lookup, txnRef prefix lookup, update
+        assertThat(counts[0]).isEqualTo(3);
+        assertThat(counts[1]).isEqualTo(1);
+        assertThat(processor.findByOrderCode(orderCode).orElseThrow().getStatus()).isEqualTo(PaymentStatus.PAID);
+    }
+
+    @Test
+    @DisplayName("should Ignore Repeated And Late Failure Deliveries When Payment Is Already Paid")
+    void should_IgnoreRepeatedAndLateFailureDeliveries_When_PaymentIsAlreadyPaid() {
+        long orderCode = ORDER_CODE_BASE + 42;
+        processor.process(orderCode, 0);
+        em.flush();
+        em.clear();
+        LocalDateTime paidAt = processor.findByOrderCode(orderCode).orElseThrow().getPaidAt();
+        em.clear();
+
+        PayOSWebhookProcessor.Outcome[] outcomes = new PayOSWebhookProcessor.Outcome[2];
+        long[] counts = measured(() -> {
+            outcomes[0] = processor.process(orderCode, 0);
+            outcomes[1] = processor.process(orderCode, 1);
+        });
+
+        assertThat(outcomes).containsOnly(PayOSWebhookProcessor.Outcome.DUPLICATE);
+        // the test transaction never commits, so each delivery is one locked select and no update
+        assertThat(counts[0]).isEqualTo(2);
+        Payment payment = processor.findByOrderCode(orderCode).orElseThrow();
+        assertThat(payment.getStatus()).isEqualTo(PaymentStatus.PAID);
+        assertThat(payment.getPaidAt()).isEqualTo(paidAt);
+        assertThat(orderRepository.count()).isEqualTo(1);
+    }
+}
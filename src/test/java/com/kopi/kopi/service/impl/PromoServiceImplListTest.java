@@ -0,0 +1,142 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.DiscountCode;
+import com.kopi.kopi.entity.DiscountEvent;
+import com.kopi.kopi.entity.enums.DiscountType;
+import com.kopi.kopi.repository.DiscountCodeRepository;
+import com.kopi.kopi.repository.DiscountEventRepository;
+import com.kopi.kopi.repository.ProductRepository;
+import com.kopi.kopi.service.PricingEngine;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("PromoServiceImpl list Tests")
+class PromoServiceImplListTest {
+
+    @Autowired private EntityManager em;
+    @Autowired private DiscountCodeRepository discountCodeRepository;
+    @Autowired private DiscountEventRepository discountEventRepository;
+    @Autowired private ProductRepository productRepository;
+
+    private PromoServiceImpl promoService;
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @BeforeEach
+    void setUp() {
+        promoService = new PromoServiceImpl(discountCodeRepository, discountEventRepository, productRepository,
+                mock(PricingEngine.class));
+        // codes: current, upcoming, expired, inactive current
+        code("SUMMER10", now.minusDays(2), now.plusDays(2), true);
+        code("AUTUMN15", now.plusDays(5), now.plusDays(9), true);
+        code("SPRING5", now.minusDays(30), now.minusDays(20), true);
+        code("HIDDEN", now.minusDays(1), now.plusDays(1), false);
+        // events: current, upcoming
+        event("Summer sale", now.minusDays(3), now.plusDays(3));
+        event("Tet sale", now.plusDays(10), now.plusDays(12));
+        em.flush();
+        em.clear();
+    }
+
+    private void code(String code, LocalDateTime startsAt, LocalDateTime endsAt, boolean active) {
+        code(code, startsAt, endsAt, active, now);
+    }
+
+    private void code(String code, LocalDateTime startsAt, LocalDateTime endsAt, boolean active, LocalDateTime createdAt) {
+        DiscountCode dc = new DiscountCode();
+        dc.setCode(code);
+        dc.setDescription(code + " off");
+        dc.setDiscountType(DiscountType.PERCENT);
+        dc.setDiscountValue(BigDecimal.TEN);
+        dc.setStartsAt(startsAt);
+        dc.setEndsAt(endsAt);
+        dc.setActive(active);
+        dc.setShippingFee(false);
+        dc.setUsageCount(0);
+        dc.setCreatedAt(createdAt);
+        em.persist(dc);
+    }
+
+    private void event(String name, LocalDateTime startsAt, LocalDateTime endsAt) {
+        DiscountEvent ev = new DiscountEvent();
+        ev.setName(name);
+        ev.setDescription(name);
+        ev.setDiscountType(DiscountType.AMOUNT);
+        ev.setDiscountValue(BigDecimal.ONE);
+        ev.setStartsAt(startsAt);
+        ev.setEndsAt(endsAt);
+        ev.setActive(true);
+        ev.setCreatedAt(now);
+        em.persist(ev);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> titles(Map<String, Object> result) {
+        return ((List<Map<String, Object>>) result.get("data")).stream().map(m -> (String) m.get("title")).toList();
+    }
+
+    @Test
+    @DisplayName("should Merge Codes And Events Newest First When Listing All")
+    void should_MergeCodesAndEventsNewestFirst_When_ListingAll() {
+        Map<String, Object> result = promoService.list(1, 10, null, "all", null);
+
+        assertThat(titles(result)).containsExactly("Tet sale", "AUTUMN15", "HIDDEN", "SUMMER10", "Summer sale", "SPRING5");
+        assertThat((Map<String, Object>) result.get("meta")).containsEntry("totalPage", 1).containsEntry("next", false);
+    }
+
+    @Test
+    @DisplayName("should Page In Database When Filtering By Status And Name")
+    void should_PageInDatabase_When_FilteringByStatusAndName() {
+        Map<String, Object> current = promoService.list(1, 10, null, "current", null);
+        Map<String, Object> available = promoService.list(2, 2, null, "available", null);
+        Map<String, Object> byName = promoService.list(1, 10, "true", null, "summer");
+
+        assertThat(titles(current)).containsExactly("SUMMER10", "Summer sale");
+        assertThat(titles(available)).containsExactly("SUMMER10", "Summer sale");
+        assertThat((Map<String, Object>) available.get("meta"))
+                .containsEntry("currentPage", 2).containsEntry("totalPage", 2).containsEntry("prev", true);
+        assertThat(titles(byName)).containsExactly("SUMMER10", "Summer sale");
+    }
+
+    @Test
+    @DisplayName("should Match Search Text Literally When It Contains Pattern Characters")
+    void should_MatchSearchTextLiterally_When_ItContainsPatternCharacters() {
+        code("BIG50%", now.minusDays(1), now.plusDays(1), true);
+        code("A_B[1]", now.minusDays(1), now.plusDays(1), true);
+        em.flush();
+
+        assertThat(titles(promoService.list(1, 10, null, "all", "50%"))).containsExactly("BIG50%");
+        // '_' would match the "r1" in SUMMER10
+        assertThat(titles(promoService.list(1, 10, null, "all", "r_1"))).isEmpty();
+        assertThat(titles(promoService.list(1, 10, null, "all", "a_b[1"))).containsExactly("A_B[1]");
+        assertThat(titles(promoService.list(1, 10, null, "all", "\\"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should List The Newer Promo First When Start Times Are Equal")
+    void should_ListTheNewerPromoFirst_When_StartTimesAreEqual() {
+        code("OLDER", now.plusDays(20), now.plusDays(21), true, now.minusDays(2));
+        code("NEWER", now.plusDays(20), now.plusDays(21), true, now.minusDays(1));
+        em.flush();
+        em.clear();
+
+        Map<String, Object> result = promoService.list(1, 2, null, "upcoming", null);
+
+        assertThat(titles(result)).containsExactly("NEWER", "OLDER");
+    }
+}
@@ -0,0 +1,118 @@
+package com.kopi.kopi.service.impl;
+
+import com.kopi.kopi.entity.*;
+import com.kopi.kopi.entity.enums.PaymentMethod;
+import com.kopi.kopi.entity.enums.PaymentStatus;
+import com.kopi.kopi.service.RevenueRollup;
+import jakarta.persistence.EntityManager;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.hbm2ddl.create_namespaces=true",
+        "spring.jpa.show-sql=false"
+})
+@DisplayName("ReportServiceImpl order export")
+class ReportServiceImplExportTest {
+
+    private static final LocalDate DAY = LocalDate.of(2026, 3, 2);
+
+    @Autowired private EntityManager em;
+    @Autowired private DataSource dataSource;
+
+    private ReportServiceImpl reportService;
+
+    @BeforeEach
+    void setUp() {
+        reportService = new ReportServiceImpl(mock(RevenueRollup.class), new JdbcTemplate(dataSource));
+        seed();
+    }
+
+    private void seed() {
+        LocalDateTime now = DAY.atTime(8, 0);
+        Category category = new Category("Coffee", true, 1);
+        em.persist(category);
+        Size size = Size.builder().name("L").displayOrder(1).createdAt(now).updatedAt(now).build();
+        em.persist(size);
+        AddOn addOn = AddOn.builder().name("Trân châu").displayOrder(1).createdAt(now).updatedAt(now).build();
+        em.persist(addOn);
+        Product latte = new Product(category, "Latte", "SKU-LATTE", new BigDecimal("45000"), null);
+        em.persist(latte);
+
+        OrderEntity first = order("ORD-1", DAY.atTime(9, 0), "20000");
+        OrderDetail withAddOn = line(first, latte, size, "45000", 2);
+        line(first, latte, null, "40000", 1);
+        first.getPayments().add(Payment.builder().order(first).amount(new BigDecimal("130000"))
+                .method(PaymentMethod.BANKING).status(PaymentStatus.PAID).paidAt(DAY.atTime(9, 5)).createdAt(now).build());
+        em.persist(first);
+        em.persist(OrderDetailAddOn.builder().orderDetail(withAddOn).addOn(addOn)
+                .unitPriceSnapshot(new BigDecimal("5000")).build());
+
+        OrderEntity second = order("ORD-2", DAY.atTime(23, 30), "0");
+        line(second, latte, size, "45000", 1);
+        em.persist(second);
+
+        // outside the exported range
+        OrderEntity next = order("ORD-3", DAY.plusDays(1).atTime(0, 10), "0");
+        line(next, latte, size, "45000", 1);
+        em.persist(next);
+        em.flush();
+    }
+
+    private OrderEntity order(String code, LocalDateTime createdAt, String shipping) {
+        return OrderEntity.builder().orderCode(code).status("COMPLETED")
+                .subtotalAmount(new BigDecimal("130000")).discountAmount(new BigDecimal("10000"))
+                .shippingAmount(new BigDecimal(shipping)).createdAt(createdAt).updatedAt(createdAt).build();
+    }
+
+    private OrderDetail line(OrderEntity order, Product product, Size size, String unitPrice, int quantity) {
+        OrderDetail d = OrderDetail.builder().order(order).product(product).size(size)
+                .productNameSnapshot(product.getName()).unitPrice(new BigDecimal(unitPrice)).quantity(quantity).build();
+        order.getOrderDetails().add(d);
+        return d;
+    }
+
+    @Test
+    @DisplayName("should Write One Row Per Order And Per Line When Exporting A Day")
+    void should_WriteOneRowPerOrderAndPerLine_When_ExportingADay() throws Exception {
+        var out = new ByteArrayOutputStream();
+        reportService.exportOrdersToExcel(DAY, DAY, true, out);
+
+        try (var wb = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet orders = wb.getSheet("Orders");
+            assertThat(orders.getLastRowNum()).isEqualTo(2);
+            Row first = orders.getRow(1);
+            assertThat(first.getCell(1).getStringCellValue()).isEqualTo("ORD-1");
+            assertThat(first.getCell(9).getNumericCellValue()).isEqualTo(140000d);
+            assertThat(first.getCell(10).getStringCellValue()).isEqualTo("banking");
+            assertThat(first.getCell(12).getLocalDateTimeCellValue()).isEqualTo(DAY.atTime(9, 5));
+            assertThat(orders.getRow(2).getCell(1).getStringCellValue()).isEqualTo("ORD-2");
+            assertThat(orders.getRow(2).getCell(11)).isNull();
+
+            Sheet items = wb.getSheet("Order items");
+            assertThat(items.getLastRowNum()).isEqualTo(3);
+            Row line = items.getRow(1);
+            assertThat(line.getCell(5).getStringCellValue()).isEqualTo("L");
+            assertThat(line.getCell(8).getNumericCellValue()).isEqualTo(5000d);
+            assertThat(line.getCell(9).getNumericCellValue()).isEqualTo(90000d);
+            assertThat(items.getRow(2).getCell(5)).isNull();
+        }
+    }
+}